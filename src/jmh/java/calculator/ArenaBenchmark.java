@@ -0,0 +1,60 @@
+package calculator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and runs a large generated program as an {@link AstArena} against
+ * keeping and interpreting the {@link Ast} records. Run with {@code -prof gc} to
+ * compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArenaBenchmark {
+    @Param({"100", "10000"})
+    public int functions;
+
+    private Ast.Program program;
+    private AstArena arena;
+
+    @Setup
+    public void setUp() {
+        program = PrattParser.parseProgram(Workloads.generated(functions));
+        arena = AstArena.encode(program);
+    }
+
+    @Benchmark
+    public AstArena encode() {
+        return AstArena.encode(program);
+    }
+
+    @Benchmark
+    public Ast.Program decode() {
+        return arena.decode();
+    }
+
+    @Benchmark
+    public int runArena() {
+        return arena.callMain();
+    }
+
+    @Benchmark
+    public int runInterpreter() {
+        return new Interpreter().callMain(program);
+    }
+}
@@ -0,0 +1,77 @@
+package calculator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scores a batch of rows with {@link BatchEvaluator} against calling the function
+ * once per row through an {@link ExecutionContext}. The batch runs with the
+ * scalar loops and with the Vector API ones, which only this benchmark's JVM
+ * gets the module for.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class BatchBenchmark {
+    private static final String PROGRAM = """
+            define score(age, income, debt) {
+              ratio = debt * 100 / (income + 1);
+              age * 2 + income / 1000 - ratio + (ratio < 40) * 50;
+            }
+            define main() {
+              0;
+            }""";
+
+    @Param({"1000", "1000000"})
+    public int rows;
+
+    @Param({"scalar", "vector"})
+    public String loops;
+
+    private int[] age;
+    private int[] income;
+    private int[] debt;
+    private BatchEvaluator batch;
+    private ExecutionContext context;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(1);
+        age = random.ints(rows, 18, 100).toArray();
+        income = random.ints(rows, 0, 200_000).toArray();
+        debt = random.ints(rows, 0, 50_000).toArray();
+        var program = PrattParser.parseProgram(PROGRAM);
+        batch = BatchEvaluator.load(program, "score", OutputSink.standardOutput(),
+                loops.equals("scalar") ? ColumnKernel.SCALAR : ColumnKernel.LOOPS);
+        context = LoadedProgram.load(program, "score").newContext();
+    }
+
+    @Benchmark
+    public int[] batch() {
+        return batch.evaluate(age, income, debt);
+    }
+
+    @Benchmark
+    public int[] rowByRow() {
+        var result = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            result[i] = context.call("score", age[i], income[i], debt[i]);
+        }
+        return result;
+    }
+}
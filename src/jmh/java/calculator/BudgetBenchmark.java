@@ -0,0 +1,49 @@
+package calculator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the interpreter on the loop and recursion workloads with and without
+ * an {@link ExecutionBudget} that has every limit set but is never exhausted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BudgetBenchmark {
+    @Param({"fib", "while", "for"})
+    public String workload;
+
+    @Param({"false", "true"})
+    public boolean budgeted;
+
+    private Ast.Program program;
+
+    @Setup
+    public void setUp() {
+        program = PrattParser.parseProgram(Workloads.EXECUTION.get(workload));
+    }
+
+    @Benchmark
+    public int callMain() {
+        var budget = budgeted
+                ? new ExecutionBudget(ExecutionBudget.UNLIMITED_FUEL / 2, 10_000, Duration.ofHours(1))
+                : null;
+        return new Interpreter(0, null, OutputSink.standardOutput(), null, budget).callMain(program);
+    }
+}
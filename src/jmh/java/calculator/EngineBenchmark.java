@@ -0,0 +1,45 @@
+package calculator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs each workload from parsed AST to result, so the numbers include the
+ * per-run setup (resolution, translation or bytecode generation) of each engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+    @Param({"factorial", "fib", "while", "for", "labelled", "globals", "constants"})
+    public String workload;
+
+    @Param({"INTERPRETER", "COMPILER", "VM", "NODES", "STACK", "TIERED"})
+    public Engine engine;
+
+    private Ast.Program program;
+
+    @Setup
+    public void setUp() {
+        program = PrattParser.parseProgram(Workloads.EXECUTION.get(workload));
+    }
+
+    @Benchmark
+    public int callMain() {
+        return engine.callMain(program);
+    }
+}
@@ -0,0 +1,84 @@
+package calculator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares an {@link ExactContext} with the wrapping {@link ExecutionContext}.
+ * fib and loop never overflow, so they measure the cost of the long fast path;
+ * power promotes to {@link BigInteger} after a few iterations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExactBenchmark {
+    private static final String FIB = """
+            define fib(n) {
+              if (n < 2) {
+                n;
+              } else {
+                fib(n - 1) + fib(n - 2);
+              }
+            }
+            define main() {
+              fib(22);
+            }""";
+
+    private static final String LOOP = """
+            define main() {
+              total = 0;
+              for (i in 0 to 100000) {
+                total = total + i * 3 / 2;
+              }
+              total;
+            }""";
+
+    private static final String POWER = """
+            define main() {
+              x = 1;
+              for (i in 0 to 200) {
+                x = x * 3;
+              }
+              x;
+            }""";
+
+    @Param({"fib", "loop", "power"})
+    public String workload;
+
+    private LoadedProgram program;
+
+    @Setup
+    public void setUp() {
+        var source = switch (workload) {
+            case "fib" -> FIB;
+            case "loop" -> LOOP;
+            default -> POWER;
+        };
+        program = LoadedProgram.load(PrattParser.parseProgram(source));
+    }
+
+    @Benchmark
+    public int wrapping() {
+        return program.newContext().run();
+    }
+
+    @Benchmark
+    public BigInteger exact() {
+        return program.newExactContext().run();
+    }
+}
@@ -0,0 +1,46 @@
+package calculator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs workloads loaded with and without the {@link Optimizer}, which
+ * {@link LoadedProgram#load} applies by default.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptimizerBenchmark {
+    @Param({"constants", "factorial", "while"})
+    public String workload;
+
+    @Param({"false", "true"})
+    public boolean optimize;
+
+    private LoadedProgram program;
+
+    @Setup
+    public void setUp() {
+        var ast = PrattParser.parseProgram(Workloads.EXECUTION.get(workload));
+        program = LoadedProgram.load(ast, false, optimize);
+    }
+
+    @Benchmark
+    public int run() {
+        return program.run();
+    }
+}
@@ -0,0 +1,53 @@
+package calculator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a recursive workload on a program loaded sequentially and on one loaded
+ * with {@link LoadedProgram#loadParallel}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelBenchmark {
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private LoadedProgram program;
+
+    @Setup
+    public void setUp() {
+        var ast = PrattParser.parseProgram("""
+                define fib(n) {
+                  if (n < 2) {
+                    n;
+                  } else {
+                    fib(n - 1) + fib(n - 2);
+                  }
+                }
+                define main() {
+                  fib(30);
+                }""");
+        program = parallel ? LoadedProgram.loadParallel(ast) : LoadedProgram.load(ast);
+    }
+
+    @Benchmark
+    public int run() {
+        return program.run();
+    }
+}
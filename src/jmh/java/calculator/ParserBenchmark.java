@@ -0,0 +1,44 @@
+package calculator;
+
+import org.javafp.parsecj.input.Input;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"small", "large"})
+    public String size;
+
+    private String source;
+
+    @Setup
+    public void setUp() {
+        source = size.equals("small") ? Workloads.FACTORIAL : Workloads.generated(500);
+    }
+
+    @Benchmark
+    public Ast.Program parsers() throws Exception {
+        return Parsers.program().parse(Input.of(source)).getResult();
+    }
+
+    @Benchmark
+    public Ast.Program prattParser() {
+        return PrattParser.parseProgram(source);
+    }
+}
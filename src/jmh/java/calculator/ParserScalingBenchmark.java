@@ -0,0 +1,48 @@
+package calculator;
+
+import org.javafp.parsecj.input.Input;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses generated programs of growing size with and without packrat
+ * memoization. The time per function should stay flat across the sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserScalingBenchmark {
+    @Param({"50", "400", "3200"})
+    public int functions;
+
+    private String source;
+
+    @Setup
+    public void setUp() {
+        source = Workloads.generated(functions);
+    }
+
+    @Benchmark
+    public Ast.Program parse() throws Exception {
+        return Parsers.program().parse(Input.of(source)).getResult();
+    }
+
+    @Benchmark
+    public Ast.Program parseMemoized() throws Exception {
+        return Parsers.parseMemoized(Parsers.program(), Input.of(source)).getResult();
+    }
+}
@@ -0,0 +1,65 @@
+package calculator;
+
+import org.javafp.parsecj.input.Input;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from a file on disk to the result of main: parsing the source versus
+ * loading the binary form, where only the functions main calls are decoded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StartupBenchmark {
+    private Path sourcePath;
+    private Path binaryPath;
+
+    @Setup
+    public void setUp() throws IOException {
+        var source = Workloads.generated(500);
+        sourcePath = Files.createTempFile("startup", ".src");
+        Files.writeString(sourcePath, source);
+        binaryPath = Files.createTempFile("startup", ".calc");
+        BinaryProgram.write(PrattParser.parseProgram(source), binaryPath);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(sourcePath);
+        Files.delete(binaryPath);
+    }
+
+    @Benchmark
+    public int fromSourceWithParsers() throws Exception {
+        var program = Parsers.program().parse(Input.of(Files.readString(sourcePath))).getResult();
+        return new Interpreter().callMain(program);
+    }
+
+    @Benchmark
+    public int fromSourceWithPrattParser() throws IOException {
+        return new Interpreter().callMain(PrattParser.parseFile(sourcePath));
+    }
+
+    @Benchmark
+    public int fromBinary() throws IOException {
+        return BinaryProgram.load(binaryPath).callMain();
+    }
+}
@@ -0,0 +1,131 @@
+package calculator;
+
+import java.util.Map;
+
+/**
+ * Fixed scripts shared by the benchmarks. Each one does a constant amount of
+ * work, so results from different runs and engines can be compared directly.
+ */
+public class Workloads {
+    public static final String FACTORIAL = """
+            define fact(n) {
+              if (n < 2) {
+                1;
+              } else {
+                n * fact(n - 1);
+              }
+            }
+            define main() {
+              i = 0;
+              while (i < 1000) {
+                r = fact(12);
+                i = i + 1;
+              }
+              r;
+            }""";
+
+    public static final String FIB = """
+            define fib(n) {
+              if (n < 2) {
+                n;
+              } else {
+                fib(n - 1) + fib(n - 2);
+              }
+            }
+            define main() {
+              fib(20);
+            }""";
+
+    public static final String WHILE_LOOP = """
+            define loop(n) {
+              i = 0;
+              sum = 0;
+              while (i < n) {
+                sum = sum + i;
+                i = i + 1;
+              }
+              sum;
+            }
+            define main() {
+              loop(100000);
+            }""";
+
+    public static final String FOR_LOOP = """
+            define loop(n) {
+              sum = 0;
+              for (i in 0 to n) {
+                sum = sum + i;
+              }
+              sum;
+            }
+            define main() {
+              loop(100000);
+            }""";
+
+    public static final String LABELLED_CALLS = """
+            define volume(width, height, depth) {
+              width * height * depth;
+            }
+            define main() {
+              i = 0;
+              total = 0;
+              while (i < 10000) {
+                total = total + volume[depth=i, width=2, height=3];
+                i = i + 1;
+              }
+              total;
+            }""";
+
+    public static final String GLOBALS = """
+            global counter = 0;
+            global step = 3;
+            global total = 0;
+            define main() {
+              while (counter < 300000) {
+                counter = counter + step;
+                total = total + counter / step;
+              }
+              total;
+            }""";
+
+    // sub-expressions of constants that run on every iteration unless the Optimizer folds them
+    public static final String CONSTANTS = """
+            define loop(n) {
+              sum = 0;
+              for (i in 0 to n) {
+                sum = sum + i * (24 * 60 * 60) / (2 * 3 + 4) - (1 + 2 + 3) * (4 - 2);
+              }
+              sum;
+            }
+            define main() {
+              loop(100000);
+            }""";
+
+    public static final Map<String, String> EXECUTION = Map.of(
+            "factorial", FACTORIAL,
+            "fib", FIB,
+            "while", WHILE_LOOP,
+            "for", FOR_LOOP,
+            "labelled", LABELLED_CALLS,
+            "globals", GLOBALS,
+            "constants", CONSTANTS
+    );
+
+    // a program of the given number of independent functions plus a main calling the last one
+    public static String generated(int functions) {
+        var source = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            source.append("define f").append(i).append("(a, b) {\n")
+                    .append("  c = a * ").append(i).append(" + b;\n")
+                    .append("  if (c > 100) {\n")
+                    .append("    c = c - (a + b) / 2;\n")
+                    .append("  } else {\n")
+                    .append("    while (c < 100) { c = c + 1; }\n")
+                    .append("  }\n")
+                    .append("  c;\n")
+                    .append("}\n");
+        }
+        source.append("define main() {\n  f").append(functions - 1).append("[b=2, a=1];\n}\n");
+        return source.toString();
+    }
+}
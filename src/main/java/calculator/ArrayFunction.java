@@ -0,0 +1,45 @@
+package calculator;
+
+/**
+ * The builtin functions on arrays. Unless the program defines a function of the
+ * same name, a call to one of these names is resolved to a
+ * {@link Resolved.ArrayCall}.
+ */
+public enum ArrayFunction {
+    // array(n) creates an array of n zeros
+    ARRAY("array", 1),
+    // length(a)
+    LENGTH("length", 1),
+    // fill(a, value) sets every element and returns a
+    FILL("fill", 2),
+    // copy(source, target) copies all of source to the start of target and returns target
+    COPY("copy", 2),
+    // sum(a) adds up the elements with wrapping int arithmetic
+    SUM("sum", 1);
+
+    private final String name;
+    private final int arity;
+
+    ArrayFunction(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int arity() {
+        return arity;
+    }
+
+    // the builtin with the given name, or null
+    public static ArrayFunction find(String name) {
+        for (var function : values()) {
+            if (function.name.equals(name)) {
+                return function;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,187 @@
+package calculator;
+
+import java.util.Arrays;
+
+/**
+ * The arrays created by one run of a program.
+ *
+ * Every value stays an int: an array is represented by a handle, which holds the
+ * slot of its {@code int[]} in this heap and a generation that changes each time
+ * the slot is reused, so a handle to a freed array never reaches the array that
+ * took its place. Handles are large numbers, so a small int such as an index or a
+ * counter is never taken for an array; 0 is never a handle.
+ *
+ * Arrays have a fixed length. An engine that runs statement by statement calls
+ * {@link #collect} between statements, when no frame is live: every array that
+ * the given roots, or an array reachable from them, hold the handle of survives
+ * and the rest are freed. Since values carry no type, any int equal to a live
+ * handle keeps that array alive. Other engines drop the heap together with the run.
+ */
+final class ArrayHeap {
+    private static final int SLOT_BITS = 22;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final int GENERATIONS = (1 << (31 - SLOT_BITS)) - 1;
+    // a collection only does work once this many elements, or as many as survived the last one, were allocated since
+    static final int MIN_COLLECTION = 1 << 16;
+
+    private int[][] arrays = new int[16][];
+    // the handle of the array in each slot, or of the last one when the slot is free
+    private int[] handles = new int[16];
+    private int[] free = new int[16];
+    private int freeCount;
+    private int count = 1;
+    private long allocated;
+    private long survived;
+
+    int allocate(int length) {
+        if (length < 0) {
+            throw new LanguageException("Array length " + length + " is negative");
+        }
+        int slot;
+        if (freeCount > 0) {
+            slot = free[--freeCount];
+        } else {
+            if (count > SLOT_MASK) {
+                throw new LanguageException("More than " + SLOT_MASK + " arrays are live");
+            }
+            if (count == arrays.length) {
+                arrays = Arrays.copyOf(arrays, count * 2);
+                handles = Arrays.copyOf(handles, count * 2);
+            }
+            slot = count++;
+        }
+        int generation = handles[slot] >>> SLOT_BITS;
+        handles[slot] = (generation % GENERATIONS + 1) << SLOT_BITS | slot;
+        arrays[slot] = new int[length];
+        allocated += length + 1L;
+        return handles[slot];
+    }
+
+    // the number of arrays that have not been freed
+    int size() {
+        return count - 1 - freeCount;
+    }
+
+    // frees the arrays no root reaches, once enough has been allocated since the last collection
+    void collect(int[] roots) {
+        if (allocated < Math.max(MIN_COLLECTION, survived)) {
+            return;
+        }
+        var marked = new boolean[count];
+        // every slot is pushed at most once
+        var pending = new int[count];
+        int top = 0;
+        for (int value : roots) {
+            top = mark(value, marked, pending, top);
+        }
+        survived = 0;
+        while (top > 0) {
+            var array = arrays[pending[--top]];
+            survived += array.length + 1L;
+            for (int value : array) {
+                top = mark(value, marked, pending, top);
+            }
+        }
+        for (int slot = 1; slot < count; slot++) {
+            if (arrays[slot] != null && !marked[slot]) {
+                arrays[slot] = null;
+                if (freeCount == free.length) {
+                    free = Arrays.copyOf(free, freeCount * 2);
+                }
+                free[freeCount++] = slot;
+            }
+        }
+        allocated = 0;
+    }
+
+    private int mark(int value, boolean[] marked, int[] pending, int top) {
+        if (isHandle(value) && !marked[value & SLOT_MASK]) {
+            marked[value & SLOT_MASK] = true;
+            pending[top++] = value & SLOT_MASK;
+        }
+        return top;
+    }
+
+    private boolean isHandle(int value) {
+        int slot = value & SLOT_MASK;
+        return value > 0 && slot < count && handles[slot] == value && arrays[slot] != null;
+    }
+
+    // sets one element of a freshly allocated array and returns its handle; used for literals
+    int initialize(int handle, int index, int value) {
+        arrays[handle & SLOT_MASK][index] = value;
+        return handle;
+    }
+
+    int[] array(int handle) {
+        if (!isHandle(handle)) {
+            throw new LanguageException("Value " + handle + " is not an array");
+        }
+        return arrays[handle & SLOT_MASK];
+    }
+
+    int load(int handle, int index) {
+        var array = array(handle);
+        checkIndex(array, index);
+        return array[index];
+    }
+
+    int store(int handle, int index, int value) {
+        var array = array(handle);
+        checkIndex(array, index);
+        array[index] = value;
+        return value;
+    }
+
+    // only for accesses a covers check has already proven to be in bounds
+    int loadUnchecked(int handle, int index) {
+        return arrays[handle & SLOT_MASK][index];
+    }
+
+    int storeUnchecked(int handle, int index, int value) {
+        arrays[handle & SLOT_MASK][index] = value;
+        return value;
+    }
+
+    // whether every index in [from, to) is valid for the array; never throws
+    boolean covers(int handle, int from, int to) {
+        if (from >= to) {
+            return true;
+        }
+        return isHandle(handle) && from >= 0 && to <= arrays[handle & SLOT_MASK].length;
+    }
+
+    int call(ArrayFunction function, int first, int second) {
+        return switch (function) {
+            case ARRAY -> allocate(first);
+            case LENGTH -> array(first).length;
+            case FILL -> {
+                Arrays.fill(array(first), second);
+                yield first;
+            }
+            case COPY -> {
+                var source = array(first);
+                var target = array(second);
+                if (source.length > target.length) {
+                    throw new LanguageException("Array of length " + target.length
+                            + " cannot hold " + source.length + " elements");
+                }
+                System.arraycopy(source, 0, target, 0, source.length);
+                yield second;
+            }
+            case SUM -> {
+                int sum = 0;
+                for (int value : array(first)) {
+                    sum += value;
+                }
+                yield sum;
+            }
+        };
+    }
+
+    private static void checkIndex(int[] array, int index) {
+        if (index < 0 || index >= array.length) {
+            throw new LanguageException("Index " + index + " is out of bounds for length " + array.length);
+        }
+    }
+}
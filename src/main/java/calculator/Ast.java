@@ -2,7 +2,6 @@ package calculator;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 public class Ast {
@@ -58,6 +57,9 @@ public class Ast {
     public static BinaryExpression equalEqual(Expression lhs, Expression rhs) {
         return new BinaryExpression(Operator.EQUAL_EQUAL, lhs, rhs);
     }
+    public static BinaryExpression notEqual(Expression lhs, Expression rhs) {
+        return new BinaryExpression(Operator.NOT_EQUAL, lhs, rhs);
+    }
 
     public static Println Println(Expression arg) {
         return new Println(arg);
@@ -70,7 +72,7 @@ public class Ast {
         return new FunctionCall(name, Arrays.asList(args));
     }
 
-    sealed public interface Expression permits Assignment, BinaryExpression, BlockExpression, FunctionCall, Identifier, IfExpression, IntegerLiteral, LabelledCall, Println, WhileExpression {}
+    sealed public interface Expression permits ArrayLiteral, Assignment, BinaryExpression, BlockExpression, FunctionCall, Identifier, IfExpression, Index, IndexAssignment, IntegerLiteral, LabelledCall, Println, WhileExpression {}
 
     public record BinaryExpression(Operator operator, Expression lhs, Expression rhs) implements Expression {}
     public record IntegerLiteral(int value) implements Expression {}
@@ -82,18 +84,6 @@ public class Ast {
     public record WhileExpression(Expression condition, Expression body) implements Expression {}
     public record IfExpression(Expression condition, Expression thenClause, Optional<Expression> elseClause)
         implements Expression {}
-    public record Environment(Map<String, Integer> bindings, Optional<Environment> next) {
-        public Optional<Map<String, Integer>> findBinding(String name) {
-            if (bindings.get(name) != null) {
-                return Optional.of(bindings);
-            }
-            if (next.isPresent()) {
-                return next.get().findBinding(name);
-            }
-            return Optional.empty();
-        }
-    }
-
     sealed public interface TopLevel permits GlobalVariableDefinition, FunctionDefinition {}
 
     public record Program(List<TopLevel> definitions) {}
@@ -106,4 +96,8 @@ public class Ast {
 
     public record LabelledParameter(String name, Expression parameter) {}
     public record LabelledCall(String name, List<LabelledParameter> args) implements Expression {}
+
+    public record ArrayLiteral(List<Expression> elements) implements Expression {}
+    public record Index(Expression array, Expression index) implements Expression {}
+    public record IndexAssignment(Expression array, Expression index, Expression value) implements Expression {}
 }
@@ -0,0 +1,609 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An {@link Ast.Program} stored as a few flat arrays instead of a tree of records.
+ *
+ * Node {@code n} is {@code kinds[n]} with up to three int fields in
+ * {@code first[n]}, {@code second[n]} and {@code third[n]}: child node indexes,
+ * an operator ordinal, a literal value or a symbol. Identifiers are interned once
+ * into {@link #symbols}, and variable-length parts (block elements, arguments,
+ * labels) are runs of {@code lists} that start with their length. When encoded
+ * with sharing, structurally identical subtrees and lists are stored once.
+ *
+ * The arena converts back to {@link Ast} with {@link #decode()} and runs without
+ * any conversion through {@link #callMain()}, which gives the same results as
+ * {@link Interpreter#callMain(Ast.Program)}. Calls are bound when they run, so an
+ * unknown function or a missing argument is reported then rather than before
+ * main starts.
+ */
+public final class AstArena {
+    private static final byte INTEGER = 0;
+    private static final byte IDENTIFIER = 1;
+    private static final byte ASSIGNMENT = 2;
+    private static final byte BINARY = 3;
+    private static final byte IF = 4;
+    private static final byte IF_ELSE = 5;
+    private static final byte WHILE = 6;
+    private static final byte BLOCK = 7;
+    private static final byte CALL = 8;
+    private static final byte LABELLED_CALL = 9;
+    private static final byte PRINTLN = 10;
+    private static final byte ARRAY_LITERAL = 11;
+    private static final byte INDEX = 12;
+    private static final byte INDEX_ASSIGNMENT = 13;
+
+    private static final Operator[] OPERATORS = Operator.values();
+
+    private final byte[] kinds;
+    private final int[] first;
+    private final int[] second;
+    private final int[] third;
+    private final int[] lists;
+    private final String[] symbols;
+    // per top-level definition: its name, then a params list for functions (-1 for globals), then its body
+    private final int[] definitionNames;
+    private final int[] definitionParams;
+    private final int[] definitionBodies;
+    // the function definition of each symbol, or -1
+    private final int[] functions;
+
+    private AstArena(Builder builder) {
+        this.kinds = Arrays.copyOf(builder.kinds, builder.size);
+        this.first = Arrays.copyOf(builder.first, builder.size);
+        this.second = Arrays.copyOf(builder.second, builder.size);
+        this.third = Arrays.copyOf(builder.third, builder.size);
+        this.lists = Arrays.copyOf(builder.lists, builder.listSize);
+        this.symbols = builder.symbolNames.toArray(new String[0]);
+        int count = builder.definitionCount;
+        this.definitionNames = Arrays.copyOf(builder.definitionNames, count);
+        this.definitionParams = Arrays.copyOf(builder.definitionParams, count);
+        this.definitionBodies = Arrays.copyOf(builder.definitionBodies, count);
+        this.functions = new int[symbols.length];
+        Arrays.fill(functions, -1);
+        for (int i = 0; i < count; i++) {
+            if (definitionParams[i] >= 0) {
+                functions[definitionNames[i]] = i;
+            }
+        }
+    }
+
+    public static AstArena encode(Ast.Program program) {
+        return encode(program, true);
+    }
+
+    // with share, identical subtrees are stored once
+    public static AstArena encode(Ast.Program program, boolean share) {
+        var builder = new Builder(share);
+        for (var topLevel : program.definitions()) {
+            if (topLevel instanceof Ast.FunctionDefinition function) {
+                var params = new int[function.args().size()];
+                for (int i = 0; i < params.length; i++) {
+                    params[i] = builder.symbol(function.args().get(i));
+                }
+                builder.define(builder.symbol(function.name()), builder.list(params), builder.node(function.body()));
+            } else if (topLevel instanceof Ast.GlobalVariableDefinition global) {
+                builder.define(builder.symbol(global.name()), -1, builder.node(global.expression()));
+            } else {
+                throw new RuntimeException("not reach here");
+            }
+        }
+        return new AstArena(builder);
+    }
+
+    public int nodeCount() {
+        return kinds.length;
+    }
+
+    public int symbolCount() {
+        return symbols.length;
+    }
+
+    public Ast.Program decode() {
+        // shared nodes decode to shared records
+        var decoded = new Ast.Expression[kinds.length];
+        var definitions = new ArrayList<Ast.TopLevel>(definitionNames.length);
+        for (int i = 0; i < definitionNames.length; i++) {
+            var name = symbols[definitionNames[i]];
+            var body = decode(definitionBodies[i], decoded);
+            if (definitionParams[i] < 0) {
+                definitions.add(new Ast.GlobalVariableDefinition(name, body));
+            } else {
+                definitions.add(new Ast.FunctionDefinition(name, names(definitionParams[i]), body));
+            }
+        }
+        return new Ast.Program(definitions);
+    }
+
+    private Ast.Expression decode(int node, Ast.Expression[] decoded) {
+        var expression = decoded[node];
+        if (expression != null) {
+            return expression;
+        }
+        int a = first[node];
+        int b = second[node];
+        int c = third[node];
+        expression = switch (kinds[node]) {
+            case INTEGER -> new Ast.IntegerLiteral(a);
+            case IDENTIFIER -> new Ast.Identifier(symbols[a]);
+            case ASSIGNMENT -> new Ast.Assignment(symbols[a], decode(b, decoded));
+            case BINARY -> new Ast.BinaryExpression(OPERATORS[a], decode(b, decoded), decode(c, decoded));
+            case IF -> new Ast.IfExpression(decode(a, decoded), decode(b, decoded), Optional.empty());
+            case IF_ELSE -> new Ast.IfExpression(
+                    decode(a, decoded),
+                    decode(b, decoded),
+                    Optional.of(decode(c, decoded))
+            );
+            case WHILE -> new Ast.WhileExpression(decode(a, decoded), decode(b, decoded));
+            case BLOCK -> new Ast.BlockExpression(decodeAll(a, decoded));
+            case CALL -> new Ast.FunctionCall(symbols[a], decodeAll(b, decoded));
+            case LABELLED_CALL -> {
+                var labels = names(b);
+                var args = decodeAll(c, decoded);
+                var parameters = new Ast.LabelledParameter[labels.size()];
+                for (int i = 0; i < parameters.length; i++) {
+                    parameters[i] = new Ast.LabelledParameter(labels.get(i), args.get(i));
+                }
+                yield new Ast.LabelledCall(symbols[a], List.of(parameters));
+            }
+            case PRINTLN -> new Ast.Println(decode(a, decoded));
+            case ARRAY_LITERAL -> new Ast.ArrayLiteral(decodeAll(a, decoded));
+            case INDEX -> new Ast.Index(decode(a, decoded), decode(b, decoded));
+            case INDEX_ASSIGNMENT -> new Ast.IndexAssignment(
+                    decode(a, decoded),
+                    decode(b, decoded),
+                    decode(c, decoded)
+            );
+            default -> throw new RuntimeException("not reach here");
+        };
+        decoded[node] = expression;
+        return expression;
+    }
+
+    private List<Ast.Expression> decodeAll(int list, Ast.Expression[] decoded) {
+        var expressions = new Ast.Expression[lists[list]];
+        for (int i = 0; i < expressions.length; i++) {
+            expressions[i] = decode(lists[list + 1 + i], decoded);
+        }
+        return List.of(expressions);
+    }
+
+    private List<String> names(int list) {
+        var names = new String[lists[list]];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = symbols[lists[list + 1 + i]];
+        }
+        return List.of(names);
+    }
+
+    public int callMain() {
+        return callMain(OutputSink.standardOutput());
+    }
+
+    public int callMain(OutputSink output) {
+        int main = -1;
+        for (int i = 0; i < definitionNames.length; i++) {
+            if (definitionParams[i] >= 0 && symbols[definitionNames[i]].equals("main")) {
+                main = i;
+            }
+        }
+        if (main < 0) {
+            throw new LanguageException("This program doesn't have main() function");
+        }
+        var run = new Run(output);
+        try {
+            for (int i = 0; i < definitionNames.length; i++) {
+                if (definitionParams[i] < 0) {
+                    run.assignGlobal(definitionNames[i], run.evaluate(definitionBodies[i], null, null));
+                }
+            }
+            // main runs in the global scope
+            return run.evaluate(definitionBodies[main], null, null);
+        } finally {
+            output.flush();
+        }
+    }
+
+    // the locals of a function: its sorted variable symbols and the slot each parameter is bound to.
+    // A frame holds the locals and then, for each of them, whether it has been assigned.
+    private record Locals(int[] symbols, int[] paramSlots) {
+        int slot(int symbol) {
+            return Arrays.binarySearch(symbols, symbol);
+        }
+
+        int[] newFrame() {
+            return new int[symbols.length * 2];
+        }
+
+        void assign(int[] frame, int slot, int value) {
+            frame[slot] = value;
+            frame[symbols.length + slot] = 1;
+        }
+
+        boolean isAssigned(int[] frame, int slot) {
+            return frame[symbols.length + slot] != 0;
+        }
+    }
+
+    private Locals locals(int definition) {
+        int params = definitionParams[definition];
+        var names = new TreeSet<Integer>();
+        for (int i = 0; i < lists[params]; i++) {
+            names.add(lists[params + 1 + i]);
+        }
+        collectAssignments(definitionBodies[definition], names);
+        var sorted = names.stream().mapToInt(Integer::intValue).toArray();
+        var paramSlots = new int[lists[params]];
+        var bound = new boolean[sorted.length];
+        for (int i = 0; i < paramSlots.length; i++) {
+            int slot = Arrays.binarySearch(sorted, lists[params + 1 + i]);
+            // a repeated parameter name is bound to its first argument
+            paramSlots[i] = bound[slot] ? -1 : slot;
+            bound[slot] = true;
+        }
+        return new Locals(sorted, paramSlots);
+    }
+
+    private void collectAssignments(int node, Set<Integer> names) {
+        switch (kinds[node]) {
+            case INTEGER, IDENTIFIER -> {
+            }
+            case ASSIGNMENT -> {
+                collectAssignments(second[node], names);
+                names.add(first[node]);
+            }
+            case BINARY, INDEX -> {
+                collectAssignments(second[node], names);
+                collectAssignments(third[node], names);
+            }
+            case IF, WHILE -> {
+                collectAssignments(first[node], names);
+                collectAssignments(second[node], names);
+            }
+            case IF_ELSE, INDEX_ASSIGNMENT -> {
+                collectAssignments(first[node], names);
+                collectAssignments(second[node], names);
+                collectAssignments(third[node], names);
+            }
+            case BLOCK, ARRAY_LITERAL -> collectAll(first[node], names);
+            case CALL -> collectAll(second[node], names);
+            case LABELLED_CALL -> collectAll(third[node], names);
+            case PRINTLN -> collectAssignments(first[node], names);
+            default -> throw new RuntimeException("not reach here");
+        }
+    }
+
+    private void collectAll(int list, Set<Integer> names) {
+        for (int i = 0; i < lists[list]; i++) {
+            collectAssignments(lists[list + 1 + i], names);
+        }
+    }
+
+    // the state of one callMain
+    private final class Run {
+        private final int[] globals = new int[symbols.length];
+        private final boolean[] definedGlobals = new boolean[symbols.length];
+        private final Locals[] scopes = new Locals[definitionNames.length];
+        private final ArrayHeap heap = new ArrayHeap();
+        private final OutputSink output;
+
+        Run(OutputSink output) {
+            this.output = output;
+        }
+
+        void assignGlobal(int symbol, int value) {
+            globals[symbol] = value;
+            definedGlobals[symbol] = true;
+        }
+
+        // frame and scope are null in the global scope
+        int evaluate(int node, int[] frame, Locals scope) {
+            int a = first[node];
+            int b = second[node];
+            int c = third[node];
+            switch (kinds[node]) {
+                case INTEGER:
+                    return a;
+                case IDENTIFIER: {
+                    int slot = scope == null ? -1 : scope.slot(a);
+                    if (slot >= 0) {
+                        if (!scope.isAssigned(frame, slot)) {
+                            throw new LanguageException("Variable " + symbols[a] + " is not defined");
+                        }
+                        return frame[slot];
+                    }
+                    if (!definedGlobals[a]) {
+                        throw new LanguageException("Variable " + symbols[a] + " is not defined");
+                    }
+                    return globals[a];
+                }
+                case ASSIGNMENT: {
+                    int value = evaluate(b, frame, scope);
+                    if (scope == null) {
+                        assignGlobal(a, value);
+                    } else {
+                        scope.assign(frame, scope.slot(a), value);
+                    }
+                    return value;
+                }
+                case BINARY: {
+                    int lhs = evaluate(b, frame, scope);
+                    int rhs = evaluate(c, frame, scope);
+                    return OPERATORS[a].apply(lhs, rhs);
+                }
+                case IF:
+                    return evaluate(a, frame, scope) != 0 ? evaluate(b, frame, scope) : 1;
+                case IF_ELSE:
+                    return evaluate(a, frame, scope) != 0 ? evaluate(b, frame, scope) : evaluate(c, frame, scope);
+                case WHILE:
+                    while (evaluate(a, frame, scope) != 0) {
+                        evaluate(b, frame, scope);
+                    }
+                    return 1;
+                case BLOCK: {
+                    int value = 0;
+                    for (int i = 0; i < lists[a]; i++) {
+                        value = evaluate(lists[a + 1 + i], frame, scope);
+                    }
+                    return value;
+                }
+                case CALL:
+                    return call(a, b, frame, scope);
+                case LABELLED_CALL:
+                    return labelledCall(a, b, c, frame, scope);
+                case PRINTLN: {
+                    int value = evaluate(a, frame, scope);
+                    output.println(value);
+                    return value;
+                }
+                case ARRAY_LITERAL: {
+                    int handle = heap.allocate(lists[a]);
+                    for (int i = 0; i < lists[a]; i++) {
+                        heap.initialize(handle, i, evaluate(lists[a + 1 + i], frame, scope));
+                    }
+                    return handle;
+                }
+                case INDEX: {
+                    int array = evaluate(a, frame, scope);
+                    return heap.load(array, evaluate(b, frame, scope));
+                }
+                case INDEX_ASSIGNMENT: {
+                    int array = evaluate(a, frame, scope);
+                    int index = evaluate(b, frame, scope);
+                    return heap.store(array, index, evaluate(c, frame, scope));
+                }
+                default:
+                    throw new RuntimeException("not reach here");
+            }
+        }
+
+        private int call(int name, int args, int[] frame, Locals scope) {
+            int count = lists[args];
+            int definition = functions[name];
+            if (definition < 0) {
+                var builtin = ArrayFunction.find(symbols[name]);
+                if (builtin == null) {
+                    throw new RuntimeException("Function " + symbols[name] + " is not found");
+                }
+                if (count != builtin.arity()) {
+                    throw new LanguageException("Function " + builtin.getName() + " expects " + builtin.arity()
+                            + " arguments but got " + count);
+                }
+                int firstArg = evaluate(lists[args + 1], frame, scope);
+                int secondArg = count > 1 ? evaluate(lists[args + 2], frame, scope) : 0;
+                return heap.call(builtin, firstArg, secondArg);
+            }
+            var callee = enter(definition, count);
+            var calleeFrame = callee.newFrame();
+            var paramSlots = callee.paramSlots();
+            for (int i = 0; i < count; i++) {
+                int value = evaluate(lists[args + 1 + i], frame, scope);
+                if (i < paramSlots.length && paramSlots[i] >= 0) {
+                    callee.assign(calleeFrame, paramSlots[i], value);
+                }
+            }
+            return evaluate(definitionBodies[definition], calleeFrame, callee);
+        }
+
+        private int labelledCall(int name, int labels, int args, int[] frame, Locals scope) {
+            int definition = functions[name];
+            if (definition < 0) {
+                throw new RuntimeException("Function " + symbols[name] + " is not found");
+            }
+            int params = definitionParams[definition];
+            var callee = enter(definition, lists[params]);
+            var calleeFrame = callee.newFrame();
+            var paramSlots = callee.paramSlots();
+            for (int i = 0; i < paramSlots.length; i++) {
+                int param = lists[params + 1 + i];
+                int arg = -1;
+                // the last occurrence of a duplicated label wins
+                for (int j = lists[labels] - 1; j >= 0 && arg < 0; j--) {
+                    if (lists[labels + 1 + j] == param) {
+                        arg = lists[args + 1 + j];
+                    }
+                }
+                if (arg < 0) {
+                    throw new LanguageException("Label " + symbols[param] + " is missing in call to " + symbols[name]);
+                }
+                int value = evaluate(arg, frame, scope);
+                if (paramSlots[i] >= 0) {
+                    callee.assign(calleeFrame, paramSlots[i], value);
+                }
+            }
+            return evaluate(definitionBodies[definition], calleeFrame, callee);
+        }
+
+        // the locals of the called function, once its arguments are known to suffice
+        private Locals enter(int definition, int argumentCount) {
+            var callee = scopes[definition];
+            if (callee == null) {
+                callee = scopes[definition] = locals(definition);
+            }
+            int arity = callee.paramSlots().length;
+            if (argumentCount < arity) {
+                throw new LanguageException("Function " + symbols[definitionNames[definition]] + " expects " + arity
+                        + " arguments but got " + argumentCount);
+            }
+            return callee;
+        }
+    }
+
+    private static final class Builder {
+        private record Key(byte kind, int first, int second, int third) {}
+
+        private record ListKey(int[] items) {
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof ListKey other && Arrays.equals(items, other.items);
+            }
+
+            @Override
+            public int hashCode() {
+                return Arrays.hashCode(items);
+            }
+        }
+
+        private final boolean share;
+        private final Map<Key, Integer> nodes = new HashMap<>();
+        private final Map<ListKey, Integer> sharedLists = new HashMap<>();
+        private final Map<String, Integer> symbolIds = new HashMap<>();
+        private final List<String> symbolNames = new ArrayList<>();
+        private byte[] kinds = new byte[64];
+        private int[] first = new int[64];
+        private int[] second = new int[64];
+        private int[] third = new int[64];
+        private int size;
+        private int[] lists = new int[64];
+        private int listSize;
+        private int[] definitionNames = new int[8];
+        private int[] definitionParams = new int[8];
+        private int[] definitionBodies = new int[8];
+        private int definitionCount;
+
+        Builder(boolean share) {
+            this.share = share;
+        }
+
+        int symbol(String name) {
+            return symbolIds.computeIfAbsent(name, __ -> {
+                symbolNames.add(name);
+                return symbolNames.size() - 1;
+            });
+        }
+
+        void define(int name, int params, int body) {
+            if (definitionCount == definitionNames.length) {
+                definitionNames = Arrays.copyOf(definitionNames, definitionCount * 2);
+                definitionParams = Arrays.copyOf(definitionParams, definitionCount * 2);
+                definitionBodies = Arrays.copyOf(definitionBodies, definitionCount * 2);
+            }
+            definitionNames[definitionCount] = name;
+            definitionParams[definitionCount] = params;
+            definitionBodies[definitionCount] = body;
+            definitionCount++;
+        }
+
+        int list(int[] items) {
+            if (share) {
+                var shared = sharedLists.get(new ListKey(items));
+                if (shared != null) {
+                    return shared;
+                }
+            }
+            while (listSize + items.length + 1 > lists.length) {
+                lists = Arrays.copyOf(lists, lists.length * 2);
+            }
+            int offset = listSize;
+            lists[listSize++] = items.length;
+            System.arraycopy(items, 0, lists, listSize, items.length);
+            listSize += items.length;
+            if (share) {
+                sharedLists.put(new ListKey(items), offset);
+            }
+            return offset;
+        }
+
+        private int nodes(List<Ast.Expression> expressions) {
+            var items = new int[expressions.size()];
+            for (int i = 0; i < items.length; i++) {
+                items[i] = node(expressions.get(i));
+            }
+            return list(items);
+        }
+
+        int node(Ast.Expression expression) {
+            if (expression instanceof Ast.IntegerLiteral integer) {
+                return add(INTEGER, integer.value(), 0, 0);
+            } else if (expression instanceof Ast.Identifier identifier) {
+                return add(IDENTIFIER, symbol(identifier.name()), 0, 0);
+            } else if (expression instanceof Ast.Assignment assignment) {
+                return add(ASSIGNMENT, symbol(assignment.name()), node(assignment.expression()), 0);
+            } else if (expression instanceof Ast.BinaryExpression binary) {
+                return add(BINARY, binary.operator().ordinal(), node(binary.lhs()), node(binary.rhs()));
+            } else if (expression instanceof Ast.IfExpression ifExpression) {
+                int condition = node(ifExpression.condition());
+                int thenClause = node(ifExpression.thenClause());
+                if (ifExpression.elseClause().isPresent()) {
+                    return add(IF_ELSE, condition, thenClause, node(ifExpression.elseClause().get()));
+                }
+                return add(IF, condition, thenClause, 0);
+            } else if (expression instanceof Ast.WhileExpression whileExpression) {
+                return add(WHILE, node(whileExpression.condition()), node(whileExpression.body()), 0);
+            } else if (expression instanceof Ast.BlockExpression block) {
+                return add(BLOCK, nodes(block.elements()), 0, 0);
+            } else if (expression instanceof Ast.FunctionCall call) {
+                return add(CALL, symbol(call.name()), nodes(call.args()), 0);
+            } else if (expression instanceof Ast.LabelledCall call) {
+                var labels = new int[call.args().size()];
+                var args = new int[labels.length];
+                for (int i = 0; i < labels.length; i++) {
+                    labels[i] = symbol(call.args().get(i).name());
+                    args[i] = node(call.args().get(i).parameter());
+                }
+                return add(LABELLED_CALL, symbol(call.name()), list(labels), list(args));
+            } else if (expression instanceof Ast.Println println) {
+                return add(PRINTLN, node(println.arg()), 0, 0);
+            } else if (expression instanceof Ast.ArrayLiteral array) {
+                return add(ARRAY_LITERAL, nodes(array.elements()), 0, 0);
+            } else if (expression instanceof Ast.Index index) {
+                return add(INDEX, node(index.array()), node(index.index()), 0);
+            } else if (expression instanceof Ast.IndexAssignment assignment) {
+                return add(INDEX_ASSIGNMENT, node(assignment.array()), node(assignment.index()), node(assignment.value()));
+            } else {
+                throw new RuntimeException("not reach here");
+            }
+        }
+
+        private int add(byte kind, int a, int b, int c) {
+            if (share) {
+                var shared = nodes.get(new Key(kind, a, b, c));
+                if (shared != null) {
+                    return shared;
+                }
+            }
+            if (size == kinds.length) {
+                kinds = Arrays.copyOf(kinds, size * 2);
+                first = Arrays.copyOf(first, size * 2);
+                second = Arrays.copyOf(second, size * 2);
+                third = Arrays.copyOf(third, size * 2);
+            }
+            kinds[size] = kind;
+            first[size] = a;
+            second[size] = b;
+            third[size] = c;
+            if (share) {
+                nodes.put(new Key(kind, a, b, c), size);
+            }
+            return size++;
+        }
+    }
+}
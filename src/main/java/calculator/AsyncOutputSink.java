@@ -0,0 +1,187 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Collects printed values into batches on the evaluating thread and passes full
+ * batches to a background thread, which writes them to the delegate sink. The
+ * queue is bounded, so a slow destination eventually slows the producer down
+ * instead of buffering without limit.
+ *
+ * Lines of text, such as values beyond int, travel in the same batch on a side
+ * list that records where they fall between the int values.
+ *
+ * {@link #println(int)} must be called from one thread at a time. {@link #flush()}
+ * waits until everything printed before it has reached the delegate and the
+ * delegate has been flushed; a failure on the background thread is rethrown by
+ * the next call.
+ */
+final class AsyncOutputSink implements OutputSink {
+    static final int DEFAULT_BATCH_SIZE = 1024;
+
+    // a line printed before values[before]
+    private record Line(int before, String text) {}
+
+    // lines is null when the batch holds only int values
+    private record Batch(int[] values, int size, List<Line> lines, CountDownLatch flushed) {}
+
+    private static final Batch STOP = new Batch(new int[0], 0, null, null);
+
+    private final OutputSink delegate;
+    private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(16);
+    private final Thread thread;
+    private volatile RuntimeException failure;
+    private int[] values;
+    private int size;
+    private List<Line> lines;
+    private boolean closed;
+
+    AsyncOutputSink(OutputSink delegate, int batchSize) {
+        this.delegate = delegate;
+        this.values = new int[Math.max(batchSize, 1)];
+        this.thread = new Thread(this::drain, "calculator-output");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void println(int value) {
+        if (closed) {
+            throw new IllegalStateException("output sink is closed");
+        }
+        values[size++] = value;
+        if (size == values.length) {
+            hand(null);
+        }
+    }
+
+    @Override
+    public void println(CharSequence line) {
+        if (closed) {
+            throw new IllegalStateException("output sink is closed");
+        }
+        if (lines == null) {
+            lines = new ArrayList<>();
+        }
+        // copied, since the caller may reuse a mutable sequence
+        lines.add(new Line(size, line.toString()));
+        if (size + lines.size() >= values.length) {
+            hand(null);
+        }
+    }
+
+    @Override
+    public void flush() {
+        var flushed = new CountDownLatch(1);
+        hand(flushed);
+        await(flushed);
+        checkFailure();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            put(STOP);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void hand(CountDownLatch flushed) {
+        checkFailure();
+        if (closed) {
+            throw new IllegalStateException("output sink is closed");
+        }
+        put(new Batch(values, size, lines, flushed));
+        values = new int[values.length];
+        size = 0;
+        lines = null;
+    }
+
+    private void put(Batch batch) {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while printing", e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while flushing output", e);
+        }
+    }
+
+    private void checkFailure() {
+        var error = failure;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void write(Batch batch) {
+        var values = batch.values();
+        var lines = batch.lines();
+        if (lines == null) {
+            for (int i = 0; i < batch.size(); i++) {
+                delegate.println(values[i]);
+            }
+            return;
+        }
+        int next = 0;
+        for (var line : lines) {
+            for (; next < line.before(); next++) {
+                delegate.println(values[next]);
+            }
+            delegate.println(line.text());
+        }
+        for (; next < batch.size(); next++) {
+            delegate.println(values[next]);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Batch batch;
+            try {
+                batch = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (batch == STOP) {
+                return;
+            }
+            try {
+                if (failure == null) {
+                    write(batch);
+                    if (batch.flushed() != null) {
+                        delegate.flush();
+                    }
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                if (batch.flushed() != null) {
+                    batch.flushed().countDown();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package calculator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calls one function of a program once per row of columnar arguments.
+ *
+ * Column {@code i} holds parameter {@code i} of every row, and the result holds
+ * the value of every row in the same order. A branch-free body is evaluated a
+ * column at a time by a {@link ColumnKernel}; any other body is called row by row.
+ * Pure functions (see {@link Purity}) are split across the cores of the common
+ * fork/join pool, since their rows cannot observe one another.
+ *
+ * Each {@link #evaluate} is one run: an impure function sees globals freshly
+ * assigned by the initializers, and its rows run in order.
+ */
+public final class BatchEvaluator {
+    // rows below which a batch is not split further
+    static final int SPLIT_THRESHOLD = 8 * ColumnKernel.CHUNK;
+
+    private final LoadedProgram program;
+    private final String name;
+    private final int arity;
+    private final ColumnKernel kernel;
+    private final boolean pure;
+    private final OutputSink output;
+
+    private BatchEvaluator(
+            LoadedProgram program,
+            String name,
+            int arity,
+            ColumnKernel kernel,
+            boolean pure,
+            OutputSink output
+    ) {
+        this.program = program;
+        this.name = name;
+        this.arity = arity;
+        this.kernel = kernel;
+        this.pure = pure;
+        this.output = output;
+    }
+
+    public static BatchEvaluator load(Ast.Program program, String function) {
+        return load(program, function, OutputSink.standardOutput());
+    }
+
+    public static BatchEvaluator load(Ast.Program program, String function, OutputSink output) {
+        return load(program, function, output, ColumnKernel.LOOPS);
+    }
+
+    static BatchEvaluator load(Ast.Program program, String function, OutputSink output, ColumnKernel.Loops loops) {
+        var loaded = LoadedProgram.load(program, function);
+        var functions = new Resolver().resolveProgram(program).functions();
+        var resolved = functions.get(function);
+        return new BatchEvaluator(
+                loaded,
+                function,
+                resolved.params().length,
+                ColumnKernel.compile(resolved, loops),
+                Purity.pureFunctions(functions).contains(function),
+                output
+        );
+    }
+
+    public boolean isVectorized() {
+        return kernel != null;
+    }
+
+    public boolean isParallel() {
+        return pure;
+    }
+
+    public int[] evaluate(int[]... columns) {
+        if (columns.length != arity) {
+            throw new LanguageException(
+                    "Function " + name + " expects " + arity + " arguments but got " + columns.length
+            );
+        }
+        int rows = columns.length == 0 ? 0 : columns[0].length;
+        for (int i = 1; i < columns.length; i++) {
+            if (columns[i].length != rows) {
+                throw new IllegalArgumentException(
+                        "Column " + i + " has " + columns[i].length + " rows but column 0 has " + rows
+                );
+            }
+        }
+        var result = new int[rows];
+        if (!pure) {
+            var context = program.newContext(output);
+            try {
+                context.initialize();
+                evaluateRows(context, columns, 0, rows, result);
+            } finally {
+                context.flushOutput();
+            }
+            return result;
+        }
+        var slice = new Slice(columns, result, 0, rows);
+        ForkJoinPool.commonPool().invoke(slice);
+        var failure = slice.failure();
+        if (failure != null) {
+            throw failure;
+        }
+        return result;
+    }
+
+    private void evaluate(int[][] columns, int from, int to, int[] result) {
+        if (kernel != null) {
+            kernel.evaluate(columns, from, to, result);
+        } else {
+            // pure functions read no globals, so the context needs no initializers
+            evaluateRows(program.newContext(output), columns, from, to, result);
+        }
+    }
+
+    private void evaluateRows(ExecutionContext context, int[][] columns, int from, int to, int[] result) {
+        int index = program.entry(name);
+        var args = new int[arity];
+        for (int row = from; row < to; row++) {
+            for (int i = 0; i < arity; i++) {
+                args[i] = columns[i][row];
+            }
+            result[row] = context.invoke(index, args);
+        }
+    }
+
+    // the failure of the first failing slice is rethrown as is, as if the rows ran in order
+    private final class Slice extends RecursiveAction {
+        private final int[][] columns;
+        private final int[] result;
+        private final int from;
+        private final int to;
+        private Slice left;
+        private Slice right;
+        private RuntimeException failure;
+
+        Slice(int[][] columns, int[] result, int from, int to) {
+            this.columns = columns;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                try {
+                    evaluate(columns, from, to, result);
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            left = new Slice(columns, result, from, middle);
+            right = new Slice(columns, result, middle, to);
+            invokeAll(left, right);
+        }
+
+        RuntimeException failure() {
+            if (failure != null || left == null) {
+                return failure;
+            }
+            var first = left.failure();
+            return first != null ? first : right.failure();
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package calculator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Compact binary encoding of an {@link Ast.Program}, so a script can be parsed
+ * once and then started without parsing.
+ *
+ * Layout: magic, version, an interned string table, then one record per
+ * top-level definition holding its kind, name, parameters and the byte length of
+ * its encoded body. Expressions are encoded in prefix order with a tag byte per
+ * node, and all integers are variable-length (literals zigzag-encoded). Loading
+ * reads only the string table and the definition headers. Running main decodes
+ * the global initializers and the functions reachable from main, which are linked
+ * before main starts; the other functions are never decoded.
+ *
+ * Input that does not follow the layout, such as a truncated file, fails with a
+ * {@link LanguageException} when the part holding the error is read.
+ */
+public class BinaryProgram {
+    private static final int MAGIC = 0x43414c43;
+    private static final int VERSION = 1;
+
+    private static final int FUNCTION = 0;
+    private static final int GLOBAL = 1;
+
+    private static final int INTEGER = 0;
+    private static final int IDENTIFIER = 1;
+    private static final int ASSIGNMENT = 2;
+    private static final int BINARY = 3;
+    private static final int IF = 4;
+    private static final int IF_ELSE = 5;
+    private static final int WHILE = 6;
+    private static final int BLOCK = 7;
+    private static final int CALL = 8;
+    private static final int LABELLED_CALL = 9;
+    private static final int PRINTLN = 10;
+    private static final int ARRAY_LITERAL = 11;
+    private static final int INDEX = 12;
+    private static final int INDEX_ASSIGNMENT = 13;
+
+    private static final Operator[] OPERATORS = Operator.values();
+
+    private record Definition(int kind, String name, List<String> params, int bodyOffset) {}
+
+    private final ByteBuffer buffer;
+    private final String[] strings;
+    private final List<Definition> definitions;
+    private int decodedBodies;
+
+    private BinaryProgram(ByteBuffer buffer) {
+        this.buffer = buffer;
+        var reader = new Reader(buffer, 0);
+        if (buffer.remaining() < 4 || buffer.getInt(0) != MAGIC) {
+            throw new LanguageException("Not a binary program");
+        }
+        reader.position = 4;
+        int version = reader.varInt();
+        if (version != VERSION) {
+            throw new LanguageException("Unsupported binary program version " + version);
+        }
+        this.strings = new String[reader.count()];
+        for (int i = 0; i < strings.length; i++) {
+            int length = reader.count();
+            strings[i] = StandardCharsets.UTF_8.decode(buffer.slice(reader.position, length)).toString();
+            reader.position += length;
+        }
+        int count = reader.count();
+        this.definitions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = reader.varInt();
+            if (kind != FUNCTION && kind != GLOBAL) {
+                throw reader.malformed();
+            }
+            var name = reader.string();
+            var params = new ArrayList<String>();
+            if (kind == FUNCTION) {
+                int paramCount = reader.count();
+                for (int j = 0; j < paramCount; j++) {
+                    params.add(reader.string());
+                }
+            }
+            int length = reader.count();
+            definitions.add(new Definition(kind, name, List.copyOf(params), reader.position));
+            reader.position += length;
+        }
+    }
+
+    public static BinaryProgram of(ByteBuffer buffer) {
+        return new BinaryProgram(buffer.slice());
+    }
+
+    public static BinaryProgram load(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new BinaryProgram(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static void write(Ast.Program program, Path path) throws IOException {
+        Files.write(path, encode(program));
+    }
+
+    public static byte[] encode(Ast.Program program) {
+        var writer = new Writer();
+        var body = new Writer(writer.strings);
+        var out = new Writer(writer.strings);
+        out.varInt(program.definitions().size());
+        for (var topLevel : program.definitions()) {
+            body.bytes.reset();
+            if (topLevel instanceof Ast.FunctionDefinition functionDefinition) {
+                out.varInt(FUNCTION);
+                out.string(functionDefinition.name());
+                out.varInt(functionDefinition.args().size());
+                for (var arg : functionDefinition.args()) {
+                    out.string(arg);
+                }
+                body.expression(functionDefinition.body());
+            } else if (topLevel instanceof Ast.GlobalVariableDefinition globalVariableDefinition) {
+                out.varInt(GLOBAL);
+                out.string(globalVariableDefinition.name());
+                body.expression(globalVariableDefinition.expression());
+            } else {
+                throw new RuntimeException("not reach here");
+            }
+            out.varInt(body.bytes.size());
+            out.bytes.writeBytes(body.bytes.toByteArray());
+        }
+        writer.bytes.write(MAGIC >>> 24);
+        writer.bytes.write(MAGIC >>> 16);
+        writer.bytes.write(MAGIC >>> 8);
+        writer.bytes.write(MAGIC);
+        writer.varInt(VERSION);
+        writer.varInt(writer.strings.size());
+        for (var string : writer.strings.keySet()) {
+            var encoded = string.getBytes(StandardCharsets.UTF_8);
+            writer.varInt(encoded.length);
+            writer.bytes.writeBytes(encoded);
+        }
+        writer.bytes.writeBytes(out.bytes.toByteArray());
+        return writer.bytes.toByteArray();
+    }
+
+    // decodes every definition eagerly
+    public Ast.Program decode() {
+        var topLevels = new ArrayList<Ast.TopLevel>(definitions.size());
+        for (var definition : definitions) {
+            if (definition.kind() == FUNCTION) {
+                topLevels.add(function(definition));
+            } else {
+                topLevels.add(new Ast.GlobalVariableDefinition(definition.name(), body(definition)));
+            }
+        }
+        return new Ast.Program(topLevels);
+    }
+
+    public int callMain() {
+        return callMain(0, null, OutputSink.standardOutput());
+    }
+
+    // runs main in a new interpreter, which decodes the functions reachable from main as it links them
+    public int callMain(int memoCapacity, Profiler profiler, OutputSink output) {
+        var functions = new LazyFunctions();
+        var interpreter = new Interpreter(functions, memoCapacity, profiler, output);
+        try {
+            for (var definition : definitions) {
+                if (definition.kind() == FUNCTION) {
+                    functions.register(definition);
+                } else {
+                    interpreter.interpret(new Ast.Assignment(definition.name(), body(definition)));
+                }
+            }
+            return interpreter.runMain();
+        } finally {
+            interpreter.flushOutput();
+        }
+    }
+
+    // number of bodies decoded so far, including global initializers
+    public int decodedBodies() {
+        return decodedBodies;
+    }
+
+    private Ast.FunctionDefinition function(Definition definition) {
+        return new Ast.FunctionDefinition(definition.name(), definition.params(), body(definition));
+    }
+
+    private Ast.Expression body(Definition definition) {
+        decodedBodies++;
+        return new Reader(buffer, definition.bodyOffset()).expression();
+    }
+
+    private final class LazyFunctions extends AbstractMap<String, Ast.FunctionDefinition> {
+        // a value is either the decoded function or its not yet decoded Definition
+        private final Map<String, Object> functions = new HashMap<>();
+
+        void register(Definition definition) {
+            functions.put(definition.name(), definition);
+        }
+
+        @Override
+        public Ast.FunctionDefinition get(Object name) {
+            var value = functions.get(name);
+            if (value instanceof Definition definition) {
+                var function = function(definition);
+                functions.put(definition.name(), function);
+                return function;
+            }
+            return (Ast.FunctionDefinition) value;
+        }
+
+        @Override
+        public Ast.FunctionDefinition put(String name, Ast.FunctionDefinition function) {
+            var previous = get(name);
+            functions.put(name, function);
+            return previous;
+        }
+
+        @Override
+        public boolean containsKey(Object name) {
+            return functions.containsKey(name);
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return functions.keySet();
+        }
+
+        @Override
+        public Set<Entry<String, Ast.FunctionDefinition>> entrySet() {
+            var entries = new LinkedHashMap<String, Ast.FunctionDefinition>();
+            for (var name : functions.keySet()) {
+                entries.put(name, get(name));
+            }
+            return entries.entrySet();
+        }
+    }
+
+    private static final class Writer {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Map<String, Integer> strings;
+
+        Writer() {
+            this(new LinkedHashMap<>());
+        }
+
+        Writer(Map<String, Integer> strings) {
+            this.strings = strings;
+        }
+
+        void varInt(int value) {
+            while ((value & ~0x7f) != 0) {
+                bytes.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes.write(value);
+        }
+
+        void string(String string) {
+            varInt(strings.computeIfAbsent(string, __ -> strings.size()));
+        }
+
+        void expression(Ast.Expression expression) {
+            if (expression instanceof Ast.IntegerLiteral literal) {
+                varInt(INTEGER);
+                int value = literal.value();
+                varInt((value << 1) ^ (value >> 31));
+            } else if (expression instanceof Ast.Identifier identifier) {
+                varInt(IDENTIFIER);
+                string(identifier.name());
+            } else if (expression instanceof Ast.Assignment assignment) {
+                varInt(ASSIGNMENT);
+                string(assignment.name());
+                expression(assignment.expression());
+            } else if (expression instanceof Ast.BinaryExpression binaryExpression) {
+                varInt(BINARY);
+                varInt(binaryExpression.operator().ordinal());
+                expression(binaryExpression.lhs());
+                expression(binaryExpression.rhs());
+            } else if (expression instanceof Ast.IfExpression ifExpression) {
+                varInt(ifExpression.elseClause().isPresent() ? IF_ELSE : IF);
+                expression(ifExpression.condition());
+                expression(ifExpression.thenClause());
+                ifExpression.elseClause().ifPresent(this::expression);
+            } else if (expression instanceof Ast.WhileExpression whileExpression) {
+                varInt(WHILE);
+                expression(whileExpression.condition());
+                expression(whileExpression.body());
+            } else if (expression instanceof Ast.BlockExpression blockExpression) {
+                varInt(BLOCK);
+                varInt(blockExpression.elements().size());
+                blockExpression.elements().forEach(this::expression);
+            } else if (expression instanceof Ast.FunctionCall functionCall) {
+                varInt(CALL);
+                string(functionCall.name());
+                varInt(functionCall.args().size());
+                functionCall.args().forEach(this::expression);
+            } else if (expression instanceof Ast.LabelledCall labelledCall) {
+                varInt(LABELLED_CALL);
+                string(labelledCall.name());
+                varInt(labelledCall.args().size());
+                for (var arg : labelledCall.args()) {
+                    string(arg.name());
+                    expression(arg.parameter());
+                }
+            } else if (expression instanceof Ast.Println println) {
+                varInt(PRINTLN);
+                expression(println.arg());
+            } else if (expression instanceof Ast.ArrayLiteral arrayLiteral) {
+                varInt(ARRAY_LITERAL);
+                varInt(arrayLiteral.elements().size());
+                arrayLiteral.elements().forEach(this::expression);
+            } else if (expression instanceof Ast.Index index) {
+                varInt(INDEX);
+                expression(index.array());
+                expression(index.index());
+            } else if (expression instanceof Ast.IndexAssignment assignment) {
+                varInt(INDEX_ASSIGNMENT);
+                expression(assignment.array());
+                expression(assignment.index());
+                expression(assignment.value());
+            } else {
+                throw new RuntimeException("not reach here");
+            }
+        }
+    }
+
+    // reads with absolute gets, so several readers can share one buffer
+    private final class Reader {
+        final ByteBuffer buffer;
+        int position;
+
+        Reader(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        int varInt() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                if (position >= buffer.limit()) {
+                    throw malformed();
+                }
+                byte b = buffer.get(position++);
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw malformed();
+        }
+
+        // a number of bytes, or of items that take at least a byte each, so it cannot exceed the bytes left
+        int count() {
+            int count = varInt();
+            if (count < 0 || count > buffer.limit() - position) {
+                throw malformed();
+            }
+            return count;
+        }
+
+        String string() {
+            int index = varInt();
+            if (index < 0 || index >= strings.length) {
+                throw malformed();
+            }
+            return strings[index];
+        }
+
+        LanguageException malformed() {
+            return new LanguageException("Malformed binary program at offset " + position);
+        }
+
+        Ast.Expression expression() {
+            int tag = varInt();
+            switch (tag) {
+                case INTEGER: {
+                    int encoded = varInt();
+                    return new Ast.IntegerLiteral((encoded >>> 1) ^ -(encoded & 1));
+                }
+                case IDENTIFIER:
+                    return new Ast.Identifier(string());
+                case ASSIGNMENT: {
+                    var name = string();
+                    return new Ast.Assignment(name, expression());
+                }
+                case BINARY: {
+                    int ordinal = varInt();
+                    if (ordinal < 0 || ordinal >= OPERATORS.length) {
+                        throw malformed();
+                    }
+                    var operator = OPERATORS[ordinal];
+                    var lhs = expression();
+                    return new Ast.BinaryExpression(operator, lhs, expression());
+                }
+                case IF:
+                case IF_ELSE: {
+                    var condition = expression();
+                    var thenClause = expression();
+                    Optional<Ast.Expression> elseClause = tag == IF_ELSE ? Optional.of(expression()) : Optional.empty();
+                    return new Ast.IfExpression(condition, thenClause, elseClause);
+                }
+                case WHILE: {
+                    var condition = expression();
+                    return new Ast.WhileExpression(condition, expression());
+                }
+                case BLOCK:
+                    return new Ast.BlockExpression(expressions(count()));
+                case CALL: {
+                    var name = string();
+                    return new Ast.FunctionCall(name, expressions(count()));
+                }
+                case LABELLED_CALL: {
+                    var name = string();
+                    int count = count();
+                    var args = new ArrayList<Ast.LabelledParameter>(count);
+                    for (int i = 0; i < count; i++) {
+                        var label = string();
+                        args.add(new Ast.LabelledParameter(label, expression()));
+                    }
+                    return new Ast.LabelledCall(name, List.copyOf(args));
+                }
+                case PRINTLN:
+                    return new Ast.Println(expression());
+                case ARRAY_LITERAL:
+                    return new Ast.ArrayLiteral(expressions(count()));
+                case INDEX: {
+                    var array = expression();
+                    return new Ast.Index(array, expression());
+                }
+                case INDEX_ASSIGNMENT: {
+                    var array = expression();
+                    var index = expression();
+                    return new Ast.IndexAssignment(array, index, expression());
+                }
+                default:
+                    throw new LanguageException("Malformed binary program at offset " + (position - 1));
+            }
+        }
+
+        private List<Ast.Expression> expressions(int count) {
+            var expressions = new ArrayList<Ast.Expression>(count);
+            for (int i = 0; i < count; i++) {
+                expressions.add(expression());
+            }
+            return List.copyOf(expressions);
+        }
+    }
+}
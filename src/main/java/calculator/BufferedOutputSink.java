@@ -0,0 +1,139 @@
+package calculator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Formats values straight into a char buffer and hands whole buffers to an
+ * encoding {@link Writer}, so printing a number allocates nothing. The methods
+ * are synchronized, which lets concurrent runs share one sink without splitting
+ * lines.
+ *
+ * {@link #STANDARD_OUTPUT} looks up {@code System.out} each time it prints or
+ * flushes, so a {@code System.setOut} takes effect even for engines created before
+ * it; lines printed before the switch still go to the previous stream.
+ */
+final class BufferedOutputSink implements OutputSink {
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+    static final BufferedOutputSink STANDARD_OUTPUT =
+            new BufferedOutputSink(System.out, Charset.defaultCharset(), FlushPolicy.SIZE, DEFAULT_BUFFER_SIZE, true);
+
+    private static final char[] LINE_SEPARATOR = System.lineSeparator().toCharArray();
+    // "-2147483648" plus the line separator
+    private static final int MAX_LINE = 11 + LINE_SEPARATOR.length;
+
+    private final Charset charset;
+    private final FlushPolicy policy;
+    private final char[] buffer;
+    private final boolean followsSystemOut;
+    private OutputStream out;
+    private Writer writer;
+    private int size;
+
+    BufferedOutputSink(OutputStream out, Charset charset, FlushPolicy policy, int bufferSize) {
+        this(out, charset, policy, bufferSize, false);
+    }
+
+    private BufferedOutputSink(OutputStream out, Charset charset, FlushPolicy policy, int bufferSize,
+                               boolean followsSystemOut) {
+        this.out = out;
+        this.writer = new OutputStreamWriter(out, charset);
+        this.charset = charset;
+        this.policy = policy;
+        this.buffer = new char[Math.max(bufferSize, MAX_LINE)];
+        this.followsSystemOut = followsSystemOut;
+    }
+
+    @Override
+    public synchronized void println(int value) {
+        follow();
+        if (size + MAX_LINE > buffer.length) {
+            drain(policy == FlushPolicy.SIZE);
+        }
+        size = format(value, buffer, size);
+        for (char c : LINE_SEPARATOR) {
+            buffer[size++] = c;
+        }
+        if (policy == FlushPolicy.LINE) {
+            drain(true);
+        }
+    }
+
+    @Override
+    public synchronized void println(CharSequence line) {
+        follow();
+        int length = line.length();
+        if (size + length + LINE_SEPARATOR.length > buffer.length) {
+            drain(policy == FlushPolicy.SIZE);
+        }
+        if (length + LINE_SEPARATOR.length > buffer.length) {
+            // larger than the whole buffer, so it bypasses it
+            try {
+                writer.append(line);
+                writer.write(LINE_SEPARATOR);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                buffer[size++] = line.charAt(i);
+            }
+            for (char c : LINE_SEPARATOR) {
+                buffer[size++] = c;
+            }
+        }
+        if (policy == FlushPolicy.LINE) {
+            drain(true);
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        follow();
+        drain(true);
+    }
+
+    // what was buffered so far was printed before System.out changed, so it goes to the old stream
+    private void follow() {
+        if (followsSystemOut && System.out != out) {
+            drain(true);
+            out = System.out;
+            writer = new OutputStreamWriter(out, charset);
+        }
+    }
+
+    private void drain(boolean flushStream) {
+        try {
+            writer.write(buffer, 0, size);
+            size = 0;
+            if (flushStream) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // writes the decimal digits of value at offset and returns the offset after them
+    private static int format(int value, char[] chars, int offset) {
+        long magnitude = value;
+        if (magnitude < 0) {
+            chars[offset++] = '-';
+            magnitude = -magnitude;
+        }
+        int digits = 1;
+        for (long bound = 10; bound <= magnitude; bound *= 10) {
+            digits++;
+        }
+        int end = offset + digits;
+        for (int i = end - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + magnitude % 10);
+            magnitude /= 10;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,387 @@
+package calculator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal class file writer used by {@link Compiler}.
+ *
+ * Classes are emitted as version 49 (Java 5) so that the JVM verifies them by type
+ * inference and no StackMapTable has to be computed. Only the handful of
+ * instructions the compiler needs are supported.
+ */
+final class ClassFile {
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    public static final int ICONST_0 = 0x03;
+    public static final int BIPUSH = 0x10;
+    public static final int SIPUSH = 0x11;
+    public static final int LDC = 0x12;
+    public static final int LDC_W = 0x13;
+    public static final int ILOAD = 0x15;
+    public static final int ISTORE = 0x36;
+    public static final int POP = 0x57;
+    public static final int DUP = 0x59;
+    public static final int SWAP = 0x5f;
+    public static final int IADD = 0x60;
+    public static final int ISUB = 0x64;
+    public static final int IMUL = 0x68;
+    public static final int IDIV = 0x6c;
+    public static final int IFEQ = 0x99;
+    public static final int IFNE = 0x9a;
+    public static final int IF_ICMPEQ = 0x9f;
+    public static final int IF_ICMPNE = 0xa0;
+    public static final int IF_ICMPLT = 0xa1;
+    public static final int IF_ICMPGE = 0xa2;
+    public static final int IF_ICMPGT = 0xa3;
+    public static final int IF_ICMPLE = 0xa4;
+    public static final int GOTO = 0xa7;
+    public static final int IRETURN = 0xac;
+    public static final int GETSTATIC = 0xb2;
+    public static final int PUTSTATIC = 0xb3;
+    public static final int INVOKEVIRTUAL = 0xb6;
+    public static final int INVOKESTATIC = 0xb8;
+    public static final int ATHROW = 0xbf;
+    public static final int WIDE = 0xc4;
+
+    private final String name;
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    public ClassFile(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    private int constant(String key, Writer writer) {
+        var index = poolIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            writer.write(poolOut);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        poolIndex.put(key, poolCount);
+        return poolCount++;
+    }
+
+    public int utf8(String value) {
+        return constant("U" + value, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    public int classRef(String internalName) {
+        int nameIndex = utf8(internalName);
+        return constant("C" + internalName, out -> {
+            out.writeByte(7);
+            out.writeShort(nameIndex);
+        });
+    }
+
+    public int string(String value) {
+        int valueIndex = utf8(value);
+        return constant("S" + value, out -> {
+            out.writeByte(8);
+            out.writeShort(valueIndex);
+        });
+    }
+
+    public int integer(int value) {
+        return constant("I" + value, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    private int nameAndType(String memberName, String descriptor) {
+        int nameIndex = utf8(memberName);
+        int descriptorIndex = utf8(descriptor);
+        return constant("N" + memberName + ":" + descriptor, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+    }
+
+    public int fieldRef(String owner, String fieldName, String descriptor) {
+        int classIndex = classRef(owner);
+        int nameAndTypeIndex = nameAndType(fieldName, descriptor);
+        return constant("F" + owner + "." + fieldName + ":" + descriptor, out -> {
+            out.writeByte(9);
+            out.writeShort(classIndex);
+            out.writeShort(nameAndTypeIndex);
+        });
+    }
+
+    public int methodRef(String owner, String methodName, String descriptor) {
+        int classIndex = classRef(owner);
+        int nameAndTypeIndex = nameAndType(methodName, descriptor);
+        return constant("M" + owner + "." + methodName + ":" + descriptor, out -> {
+            out.writeByte(10);
+            out.writeShort(classIndex);
+            out.writeShort(nameAndTypeIndex);
+        });
+    }
+
+    public void field(int access, String fieldName, String descriptor) {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(fieldName));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    public Code method(int access, String methodName, String descriptor, int maxLocals) {
+        return new Code(access, methodName, descriptor, maxLocals);
+    }
+
+    public byte[] toByteArray() {
+        int thisIndex = classRef(name);
+        int superIndex = classRef("java/lang/Object");
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            out.write(pool.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisIndex);
+            out.writeShort(superIndex);
+            out.writeShort(0);
+            out.writeShort(fields.size());
+            for (var field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (var method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    public static final class Label {
+        private int position = -1;
+        private int stack = -1;
+        private final List<Integer> references = new ArrayList<>();
+    }
+
+    /**
+     * Bytecode of a single method. Tracks the operand stack depth so that
+     * max_stack can be computed without a separate analysis pass.
+     */
+    public final class Code {
+        private final int access;
+        private final String methodName;
+        private final String descriptor;
+        private final int maxLocals;
+        private final List<Label> labels = new ArrayList<>();
+        private byte[] code = new byte[64];
+        private int length;
+        private int stack;
+        private int maxStack;
+
+        private Code(int access, String methodName, String descriptor, int maxLocals) {
+            this.access = access;
+            this.methodName = methodName;
+            this.descriptor = descriptor;
+            this.maxLocals = maxLocals;
+        }
+
+        private void u1(int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[length++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        public int stack() {
+            return stack;
+        }
+
+        public void setStack(int depth) {
+            stack = depth;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void adjust(int delta) {
+            setStack(stack + delta);
+        }
+
+        public void op(int opcode, int stackDelta) {
+            u1(opcode);
+            adjust(stackDelta);
+        }
+
+        public void iconst(int value) {
+            if (value >= -1 && value <= 5) {
+                u1(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(SIPUSH);
+                u2(value);
+            } else {
+                ldc(integer(value));
+                return;
+            }
+            adjust(1);
+        }
+
+        public void ldc(int index) {
+            if (index <= 0xff) {
+                u1(LDC);
+                u1(index);
+            } else {
+                u1(LDC_W);
+                u2(index);
+            }
+            adjust(1);
+        }
+
+        private void local(int opcode, int slot) {
+            if (slot <= 0xff) {
+                u1(opcode);
+                u1(slot);
+            } else {
+                u1(WIDE);
+                u1(opcode);
+                u2(slot);
+            }
+        }
+
+        public void iload(int slot) {
+            local(ILOAD, slot);
+            adjust(1);
+        }
+
+        public void istore(int slot) {
+            local(ISTORE, slot);
+            adjust(-1);
+        }
+
+        public void getstatic(int fieldRef) {
+            u1(GETSTATIC);
+            u2(fieldRef);
+            adjust(1);
+        }
+
+        public void putstatic(int fieldRef) {
+            u1(PUTSTATIC);
+            u2(fieldRef);
+            adjust(-1);
+        }
+
+        public void invokestatic(int methodRef, int argumentCount, int returnSize) {
+            u1(INVOKESTATIC);
+            u2(methodRef);
+            adjust(returnSize - argumentCount);
+        }
+
+        // the receiver is below the arguments on the stack
+        public void invokevirtual(int methodRef, int argumentCount, int returnSize) {
+            u1(INVOKEVIRTUAL);
+            u2(methodRef);
+            adjust(returnSize - argumentCount - 1);
+        }
+
+        public Label newLabel() {
+            var label = new Label();
+            labels.add(label);
+            return label;
+        }
+
+        public void jump(int opcode, Label label, int pops) {
+            adjust(-pops);
+            label.stack = stack;
+            label.references.add(length);
+            u1(opcode);
+            u2(0);
+        }
+
+        public void mark(Label label) {
+            label.position = length;
+            if (label.stack >= 0) {
+                setStack(label.stack);
+            }
+        }
+
+        public void finish() {
+            for (var label : labels) {
+                for (int at : label.references) {
+                    int offset = label.position - at;
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        throw new LanguageException("Function " + methodName + " is too large to compile");
+                    }
+                    code[at + 1] = (byte) (offset >> 8);
+                    code[at + 2] = (byte) offset;
+                }
+            }
+            if (length > 0xffff) {
+                throw new LanguageException("Function " + methodName + " is too large to compile");
+            }
+            var bytes = new ByteArrayOutputStream();
+            var out = new DataOutputStream(bytes);
+            try {
+                out.writeShort(access);
+                out.writeShort(utf8(methodName));
+                out.writeShort(utf8(descriptor));
+                out.writeShort(1);
+                out.writeShort(utf8("Code"));
+                out.writeInt(12 + length);
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(length);
+                out.write(code, 0, length);
+                out.writeShort(0);
+                out.writeShort(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            methods.add(bytes.toByteArray());
+        }
+    }
+}
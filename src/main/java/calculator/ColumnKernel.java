@@ -0,0 +1,179 @@
+package calculator;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates a branch-free function body over columns of arguments, a chunk of
+ * rows at a time.
+ *
+ * A body is branch-free when it consists only of literals, parameters, local
+ * assignments, blocks and arithmetic. Each node then becomes one loop over int
+ * arrays. A division by zero fails the chunk with the same exception a row would.
+ *
+ * The loops are {@code VectorLoops}, written with the Vector API, when the JVM
+ * was started with {@code --add-modules jdk.incubator.vector} and that class,
+ * which the build compiles apart from the rest, is on the class path; otherwise
+ * they are plain scalar loops that the JIT may still auto-vectorize.
+ */
+final class ColumnKernel {
+    // rows per chunk, small enough that the intermediate columns stay in cache
+    static final int CHUNK = 1024;
+
+    // applies operator to the first size elements of lhs and rhs
+    interface Loops {
+        void apply(Operator operator, int[] lhs, int[] rhs, int[] out, int size);
+    }
+
+    static final Loops SCALAR = (operator, lhs, rhs, out, size) -> scalar(operator, lhs, rhs, out, 0, size);
+    static final Loops LOOPS = loops();
+
+    private final Resolved.Node body;
+    private final int arity;
+    private final int frameSize;
+    private final Loops loops;
+
+    private ColumnKernel(Resolved.Node body, int arity, int frameSize, Loops loops) {
+        this.body = body;
+        this.arity = arity;
+        this.frameSize = frameSize;
+        this.loops = loops;
+    }
+
+    // VectorLoops is only loaded once the module is known to be there, so this links on any JDK
+    // and without the class
+    private static Loops loops() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (Loops) Class.forName("calculator.VectorLoops").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+
+    static ColumnKernel compile(Resolved.Function function) {
+        return compile(function, LOOPS);
+    }
+
+    // null when the body has control flow, calls, globals, output or arrays
+    static ColumnKernel compile(Resolved.Function function, Loops loops) {
+        if (!isBranchFree(function.body())) {
+            return null;
+        }
+        return new ColumnKernel(function.body(), function.params().length, function.frameSize(), loops);
+    }
+
+    private static boolean isBranchFree(Resolved.Node node) {
+        if (node instanceof Resolved.Literal || node instanceof Resolved.LocalLoad) {
+            return true;
+        } else if (node instanceof Resolved.LocalStore store) {
+            return isBranchFree(store.value());
+        } else if (node instanceof Resolved.Binary binary) {
+            return isBranchFree(binary.lhs()) && isBranchFree(binary.rhs());
+        } else if (node instanceof Resolved.Block block) {
+            return Arrays.stream(block.elements()).allMatch(ColumnKernel::isBranchFree);
+        }
+        return false;
+    }
+
+    // writes the results of rows [from, to) into result
+    void evaluate(int[][] columns, int from, int to, int[] result) {
+        var slots = new int[frameSize][];
+        for (int start = from; start < to; start += CHUNK) {
+            int size = Math.min(CHUNK, to - start);
+            for (int i = 0; i < arity; i++) {
+                slots[i] = Arrays.copyOfRange(columns[i], start, start + size);
+            }
+            // a plain local is never read before it is assigned; these slots only fill the frame
+            var zeros = new int[size];
+            for (int i = arity; i < frameSize; i++) {
+                slots[i] = zeros;
+            }
+            System.arraycopy(evaluate(body, slots, size), 0, result, start, size);
+        }
+    }
+
+    // a column is never written once it is returned, so slots may share them
+    private int[] evaluate(Resolved.Node node, int[][] slots, int size) {
+        if (node instanceof Resolved.Literal literal) {
+            var column = new int[size];
+            Arrays.fill(column, literal.value());
+            return column;
+        } else if (node instanceof Resolved.LocalLoad load) {
+            return slots[load.slot()];
+        } else if (node instanceof Resolved.LocalStore store) {
+            var column = evaluate(store.value(), slots, size);
+            slots[store.slot()] = column;
+            return column;
+        } else if (node instanceof Resolved.Block block) {
+            var column = new int[size];
+            for (var element : block.elements()) {
+                column = evaluate(element, slots, size);
+            }
+            return column;
+        }
+        var binary = (Resolved.Binary) node;
+        var lhs = evaluate(binary.lhs(), slots, size);
+        var rhs = evaluate(binary.rhs(), slots, size);
+        var out = new int[size];
+        loops.apply(binary.operator(), lhs, rhs, out, size);
+        return out;
+    }
+
+    // computes elements [from, size); VectorLoops also runs its tails and divisions through it
+    static void scalar(Operator operator, int[] lhs, int[] rhs, int[] out, int from, int size) {
+        switch (operator) {
+            case ADD -> {
+                for (int i = from; i < size; i++) {
+                    out[i] = lhs[i] + rhs[i];
+                }
+            }
+            case SUBTRACT -> {
+                for (int i = from; i < size; i++) {
+                    out[i] = lhs[i] - rhs[i];
+                }
+            }
+            case MULTIPLY -> {
+                for (int i = from; i < size; i++) {
+                    out[i] = lhs[i] * rhs[i];
+                }
+            }
+            case DIVIDE -> {
+                for (int i = from; i < size; i++) {
+                    out[i] = lhs[i] / rhs[i];
+                }
+            }
+            case LESS_THAN -> {
+                for (int i = from; i < size; i++) {
+                    out[i] = lhs[i] < rhs[i] ? 1 : 0;
+                }
+            }
+            case LESS_OR_EQUAL -> {
+                for (int i = from; i < size; i++) {
+                    out[i] = lhs[i] <= rhs[i] ? 1 : 0;
+                }
+            }
+            case GREATER_THAN -> {
+                for (int i = from; i < size; i++) {
+                    out[i] = lhs[i] > rhs[i] ? 1 : 0;
+                }
+            }
+            case GREATER_OR_EQUAL -> {
+                for (int i = from; i < size; i++) {
+                    out[i] = lhs[i] >= rhs[i] ? 1 : 0;
+                }
+            }
+            case EQUAL_EQUAL -> {
+                for (int i = from; i < size; i++) {
+                    out[i] = lhs[i] == rhs[i] ? 1 : 0;
+                }
+            }
+            case NOT_EQUAL -> {
+                for (int i = from; i < size; i++) {
+                    out[i] = lhs[i] != rhs[i] ? 1 : 0;
+                }
+            }
+        }
+    }
+}
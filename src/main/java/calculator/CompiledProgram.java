@@ -0,0 +1,57 @@
+package calculator;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+
+/**
+ * A program compiled by {@link Compiler}. Globals live in static fields of the
+ * generated class, so they persist across runs just like they do for one
+ * {@link Interpreter} instance.
+ */
+public class CompiledProgram {
+    private final MethodHandles.Lookup lookup;
+    private final MethodHandle run;
+    private final Resolver resolver;
+    private final OutputSink output;
+
+    CompiledProgram(MethodHandles.Lookup lookup, MethodHandle run, Resolver resolver, OutputSink output) {
+        this.lookup = lookup;
+        this.run = run;
+        this.resolver = resolver;
+        this.output = output;
+    }
+
+    public int callMain() {
+        var previous = Compiler.OUTPUT.get();
+        Compiler.OUTPUT.set(output);
+        try {
+            return (int) run.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        } finally {
+            Compiler.OUTPUT.set(previous);
+            output.flush();
+        }
+    }
+
+    public Integer getValue(String name) {
+        var slot = resolver.findGlobal(name);
+        if (slot == null) {
+            return null;
+        }
+        try {
+            var type = lookup.lookupClass();
+            var defined = (boolean) lookup.findStaticGetter(type, Compiler.definedField(slot), boolean.class).invoke();
+            if (!defined) {
+                return null;
+            }
+            return (int) lookup.findStaticGetter(type, Compiler.valueField(slot), int.class).invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
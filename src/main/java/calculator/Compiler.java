@@ -0,0 +1,426 @@
+package calculator;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+
+/**
+ * Compiles an {@link Ast.Program} to a hidden JVM class so that HotSpot can JIT it.
+ *
+ * Every function becomes a static int method taking its parameters as ints, every
+ * global becomes a static int field and the global initializers followed by the
+ * body of main become the static method {@code run}. Arrays live in an
+ * {@link ArrayHeap} held by the static field {@code heap}. Errors the interpreter only
+ * detects while running (undefined variables, unknown functions, wrong arity) are
+ * compiled into code that throws the same {@link LanguageException} when reached.
+ */
+public class Compiler {
+    private static final String CLASS_NAME = "calculator/CompiledScript";
+    private static final String SELF = "calculator/Compiler";
+    private static final String ERROR = "(Ljava/lang/String;)Ljava/lang/RuntimeException;";
+    private static final String HEAP = "calculator/ArrayHeap";
+    private static final String HEAP_FIELD = "heap";
+    private static final String ARRAY_FUNCTION = "calculator/ArrayFunction";
+
+    // the sink of the program running on this thread; generated code prints through println(int)
+    static final ThreadLocal<OutputSink> OUTPUT = ThreadLocal.withInitial(OutputSink::standardOutput);
+
+    private final OutputSink output;
+
+    public Compiler() {
+        this(OutputSink.standardOutput());
+    }
+
+    public Compiler(OutputSink output) {
+        this.output = output;
+    }
+
+    public int callMain(Ast.Program program) {
+        return compile(program).callMain();
+    }
+
+    public CompiledProgram compile(Ast.Program program) {
+        var resolver = new Resolver();
+        var resolved = resolver.resolveProgram(program);
+        var functions = resolved.functions();
+
+        var classFile = new ClassFile(CLASS_NAME);
+        var generator = new Generator(classFile, functions);
+        classFile.field(ClassFile.ACC_STATIC, HEAP_FIELD, "L" + HEAP + ";");
+        for (int slot = 0; slot < resolver.globalCount(); slot++) {
+            classFile.field(ClassFile.ACC_STATIC, valueField(slot), "I");
+            classFile.field(ClassFile.ACC_STATIC, definedField(slot), "Z");
+        }
+        for (var function : functions.values()) {
+            generator.function(function);
+        }
+        generator.run(resolved.initializers(), resolved.main());
+
+        try {
+            var lookup = MethodHandles.lookup().defineHiddenClass(classFile.toByteArray(), true);
+            var run = lookup.findStatic(lookup.lookupClass(), "run", MethodType.methodType(int.class));
+            lookup.findStaticVarHandle(lookup.lookupClass(), HEAP_FIELD, ArrayHeap.class).set(new ArrayHeap());
+            return new CompiledProgram(lookup, run, resolver, output);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String valueField(int slot) {
+        return "g" + slot;
+    }
+
+    static String definedField(int slot) {
+        return "d" + slot;
+    }
+
+    private static String methodName(String function) {
+        return "f_" + function;
+    }
+
+    private static String descriptor(int arity) {
+        return "(" + "I".repeat(arity) + ")I";
+    }
+
+    // called from generated code; each returns the exception for the caller to throw
+    static RuntimeException undefinedVariable(String name) {
+        return new LanguageException("Variable " + name + " is not defined");
+    }
+
+    static RuntimeException functionNotFound(String name) {
+        return new RuntimeException("Function " + name + " is not found");
+    }
+
+    static RuntimeException arityMismatch(String message) {
+        return new LanguageException(message);
+    }
+
+    static RuntimeException missingLabel(String message) {
+        return new LanguageException(message);
+    }
+
+    static RuntimeException notReachHere(String message) {
+        return new RuntimeException(message);
+    }
+
+    static void println(int value) {
+        OUTPUT.get().println(value);
+    }
+
+    private static class Generator {
+        private final ClassFile classFile;
+        private final Map<String, Resolved.Function> functions;
+
+        Generator(ClassFile classFile, Map<String, Resolved.Function> functions) {
+            this.classFile = classFile;
+            this.functions = functions;
+        }
+
+        void function(Resolved.Function function) {
+            int arity = function.params().length;
+            var code = classFile.method(
+                    ClassFile.ACC_STATIC,
+                    methodName(function.name()),
+                    descriptor(arity),
+                    function.frameSize()
+            );
+            // the verifier needs every local assigned before it is read
+            for (int slot = arity; slot < function.frameSize(); slot++) {
+                code.iconst(0);
+                code.istore(slot);
+            }
+            expression(code, function.body());
+            code.op(ClassFile.IRETURN, -1);
+            code.finish();
+        }
+
+        void run(Iterable<Resolved.Node> initializers, Resolved.Node main) {
+            var code = classFile.method(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, "run", "()I", 0);
+            for (var initializer : initializers) {
+                expression(code, initializer);
+                code.op(ClassFile.POP, -1);
+            }
+            expression(code, main);
+            code.op(ClassFile.IRETURN, -1);
+            code.finish();
+        }
+
+        private void raise(ClassFile.Code code, String helper, String message) {
+            int depth = code.stack();
+            code.ldc(classFile.string(message));
+            code.invokestatic(classFile.methodRef(SELF, helper, ERROR), 1, 1);
+            code.op(ClassFile.ATHROW, -1);
+            // the value the failed expression would have produced; the code after it is unreachable
+            code.setStack(depth + 1);
+        }
+
+        private void expression(ClassFile.Code code, Resolved.Node node) {
+            if (node instanceof Resolved.Binary binary) {
+                var operator = binary.operator();
+                switch (operator) {
+                    case ADD, SUBTRACT, MULTIPLY, DIVIDE -> {
+                        expression(code, binary.lhs());
+                        expression(code, binary.rhs());
+                        code.op(switch (operator) {
+                            case ADD -> ClassFile.IADD;
+                            case SUBTRACT -> ClassFile.ISUB;
+                            case MULTIPLY -> ClassFile.IMUL;
+                            default -> ClassFile.IDIV;
+                        }, -1);
+                    }
+                    default -> {
+                        var isFalse = code.newLabel();
+                        var end = code.newLabel();
+                        branchIfFalse(code, binary, isFalse);
+                        code.iconst(1);
+                        code.jump(ClassFile.GOTO, end, 0);
+                        code.mark(isFalse);
+                        code.iconst(0);
+                        code.mark(end);
+                    }
+                }
+            } else if (node instanceof Resolved.Literal literal) {
+                code.iconst(literal.value());
+            } else if (node instanceof Resolved.LocalLoad load) {
+                code.iload(load.slot());
+            } else if (node instanceof Resolved.GuardedLoad load) {
+                var defined = code.newLabel();
+                code.iload(load.flag());
+                code.jump(ClassFile.IFNE, defined, 1);
+                raise(code, "undefinedVariable", load.name());
+                code.mark(defined);
+                code.iload(load.slot());
+            } else if (node instanceof Resolved.GlobalLoad load) {
+                var defined = code.newLabel();
+                code.getstatic(classFile.fieldRef(CLASS_NAME, definedField(load.slot()), "Z"));
+                code.jump(ClassFile.IFNE, defined, 1);
+                raise(code, "undefinedVariable", load.name());
+                code.mark(defined);
+                code.getstatic(classFile.fieldRef(CLASS_NAME, valueField(load.slot()), "I"));
+            } else if (node instanceof Resolved.LocalStore store) {
+                expression(code, store.value());
+                code.op(ClassFile.DUP, 1);
+                code.istore(store.slot());
+            } else if (node instanceof Resolved.GlobalStore store) {
+                expression(code, store.value());
+                code.op(ClassFile.DUP, 1);
+                code.putstatic(classFile.fieldRef(CLASS_NAME, valueField(store.slot()), "I"));
+                code.iconst(1);
+                code.putstatic(classFile.fieldRef(CLASS_NAME, definedField(store.slot()), "Z"));
+            } else if (node instanceof Resolved.If ifNode) {
+                var elseLabel = code.newLabel();
+                var end = code.newLabel();
+                branchIfFalse(code, ifNode.condition(), elseLabel);
+                expression(code, ifNode.thenClause());
+                code.jump(ClassFile.GOTO, end, 0);
+                code.mark(elseLabel);
+                expression(code, ifNode.elseClause());
+                code.mark(end);
+            } else if (node instanceof Resolved.While whileNode) {
+                var condition = code.newLabel();
+                var end = code.newLabel();
+                code.mark(condition);
+                branchIfFalse(code, whileNode.condition(), end);
+                expression(code, whileNode.body());
+                code.op(ClassFile.POP, -1);
+                code.jump(ClassFile.GOTO, condition, 0);
+                code.mark(end);
+                code.iconst(1);
+            } else if (node instanceof Resolved.Block block) {
+                var elements = block.elements();
+                if (elements.length == 0) {
+                    code.iconst(0);
+                }
+                for (int i = 0; i < elements.length; i++) {
+                    expression(code, elements[i]);
+                    if (i < elements.length - 1) {
+                        code.op(ClassFile.POP, -1);
+                    }
+                }
+            } else if (node instanceof Resolved.Call call) {
+                var function = functions.get(call.name());
+                if (function == null) {
+                    raise(code, "functionNotFound", call.name());
+                    return;
+                }
+                var args = call.args();
+                int arity = function.params().length;
+                if (args.length < arity) {
+                    raise(code, "arityMismatch", "Function " + function.name() + " expects " + arity
+                            + " arguments but got " + args.length);
+                    return;
+                }
+                for (int i = 0; i < args.length; i++) {
+                    expression(code, args[i]);
+                    if (i >= arity) {
+                        code.op(ClassFile.POP, -1);
+                    }
+                }
+                invoke(code, function);
+            } else if (node instanceof Resolved.LabelledCall labelledCall) {
+                var function = functions.get(labelledCall.name());
+                if (function == null) {
+                    raise(code, "functionNotFound", labelledCall.name());
+                    return;
+                }
+                int depth = code.stack();
+                for (var param : function.params()) {
+                    var arg = labelledArgument(labelledCall, param);
+                    if (arg == null) {
+                        raise(code, "missingLabel", "Label " + param + " is missing in call to " + labelledCall.name());
+                        code.setStack(depth + 1);
+                        return;
+                    }
+                    expression(code, arg);
+                }
+                invoke(code, function);
+            } else if (node instanceof Resolved.Println println) {
+                expression(code, println.arg());
+                code.op(ClassFile.DUP, 1);
+                code.invokestatic(classFile.methodRef(SELF, "println", "(I)V"), 1, 0);
+            } else if (node instanceof Resolved.NewArray newArray) {
+                var elements = newArray.elements();
+                heap(code);
+                code.iconst(elements.length);
+                code.invokevirtual(classFile.methodRef(HEAP, "allocate", "(I)I"), 1, 1);
+                for (int i = 0; i < elements.length; i++) {
+                    heap(code);
+                    code.op(ClassFile.SWAP, 0);
+                    code.iconst(i);
+                    expression(code, elements[i]);
+                    code.invokevirtual(classFile.methodRef(HEAP, "initialize", "(III)I"), 3, 1);
+                }
+            } else if (node instanceof Resolved.Index index) {
+                heap(code);
+                expression(code, index.array());
+                expression(code, index.index());
+                var method = index.checked() ? "load" : "loadUnchecked";
+                code.invokevirtual(classFile.methodRef(HEAP, method, "(II)I"), 2, 1);
+            } else if (node instanceof Resolved.IndexStore store) {
+                heap(code);
+                expression(code, store.array());
+                expression(code, store.index());
+                expression(code, store.value());
+                var method = store.checked() ? "store" : "storeUnchecked";
+                code.invokevirtual(classFile.methodRef(HEAP, method, "(III)I"), 3, 1);
+            } else if (node instanceof Resolved.ArrayCall call) {
+                var args = call.args();
+                heap(code);
+                code.getstatic(classFile.fieldRef(ARRAY_FUNCTION, call.function().name(), "L" + ARRAY_FUNCTION + ";"));
+                expression(code, args[0]);
+                if (args.length > 1) {
+                    expression(code, args[1]);
+                } else {
+                    code.iconst(0);
+                }
+                code.invokevirtual(classFile.methodRef(HEAP, "call", "(L" + ARRAY_FUNCTION + ";II)I"), 3, 1);
+            } else if (node instanceof Resolved.CountedLoop loop) {
+                var checked = code.newLabel();
+                var end = code.newLabel();
+                for (var array : loop.arrays()) {
+                    heap(code);
+                    if (array instanceof Resolved.GlobalLoad load) {
+                        // an undefined global reads as 0, which is never an array
+                        code.getstatic(classFile.fieldRef(CLASS_NAME, valueField(load.slot()), "I"));
+                    } else {
+                        code.iload(((Resolved.LocalLoad) array).slot());
+                    }
+                    expression(code, loop.index());
+                    expression(code, loop.bound());
+                    code.invokevirtual(classFile.methodRef(HEAP, "covers", "(III)Z"), 3, 1);
+                    code.jump(ClassFile.IFEQ, checked, 1);
+                }
+                countedLoop(code, loop, loop.unchecked());
+                if (loop.arrays().length > 0) {
+                    code.jump(ClassFile.GOTO, end, 0);
+                    code.mark(checked);
+                    countedLoop(code, loop, loop.checked());
+                }
+                code.mark(end);
+            } else {
+                raise(code, "notReachHere", "not reach here");
+            }
+        }
+
+        // the bound is evaluated once and stays on the operand stack while the loop runs
+        private void countedLoop(ClassFile.Code code, Resolved.CountedLoop loop, Resolved.Node body) {
+            var condition = code.newLabel();
+            var end = code.newLabel();
+            expression(code, loop.bound());
+            code.mark(condition);
+            code.op(ClassFile.DUP, 1);
+            variable(code, loop.index());
+            code.jump(ClassFile.IF_ICMPLE, end, 2);
+            expression(code, body);
+            code.op(ClassFile.POP, -1);
+            // the body never assigns the loop variable, so it is incremented in place
+            variable(code, loop.index());
+            code.iconst(1);
+            code.op(ClassFile.IADD, -1);
+            if (loop.index() instanceof Resolved.GlobalLoad load) {
+                code.putstatic(classFile.fieldRef(CLASS_NAME, valueField(load.slot()), "I"));
+            } else {
+                code.istore(((Resolved.LocalLoad) loop.index()).slot());
+            }
+            code.jump(ClassFile.GOTO, condition, 0);
+            code.mark(end);
+            code.op(ClassFile.POP, -1);
+            code.iconst(1);
+        }
+
+        // reads a variable without the definedness check of a global
+        private void variable(ClassFile.Code code, Resolved.Node load) {
+            if (load instanceof Resolved.GlobalLoad global) {
+                code.getstatic(classFile.fieldRef(CLASS_NAME, valueField(global.slot()), "I"));
+            } else {
+                code.iload(((Resolved.LocalLoad) load).slot());
+            }
+        }
+
+        private void heap(ClassFile.Code code) {
+            code.getstatic(classFile.fieldRef(CLASS_NAME, HEAP_FIELD, "L" + HEAP + ";"));
+        }
+
+        private void invoke(ClassFile.Code code, Resolved.Function function) {
+            int arity = function.params().length;
+            code.invokestatic(
+                    classFile.methodRef(CLASS_NAME, methodName(function.name()), descriptor(arity)),
+                    arity,
+                    1
+            );
+        }
+
+        private static Resolved.Node labelledArgument(Resolved.LabelledCall labelledCall, String param) {
+            var labels = labelledCall.labels();
+            for (int i = labels.length - 1; i >= 0; i--) {
+                if (labels[i].equals(param)) {
+                    return labelledCall.args()[i];
+                }
+            }
+            return null;
+        }
+
+        // jumps straight on the comparison instead of materializing 0/1 first
+        private void branchIfFalse(ClassFile.Code code, Resolved.Node condition, ClassFile.Label target) {
+            if (condition instanceof Resolved.Binary binary) {
+                int opcode = switch (binary.operator()) {
+                    case LESS_THAN -> ClassFile.IF_ICMPGE;
+                    case LESS_OR_EQUAL -> ClassFile.IF_ICMPGT;
+                    case GREATER_THAN -> ClassFile.IF_ICMPLE;
+                    case GREATER_OR_EQUAL -> ClassFile.IF_ICMPLT;
+                    case EQUAL_EQUAL -> ClassFile.IF_ICMPNE;
+                    case NOT_EQUAL -> ClassFile.IF_ICMPEQ;
+                    default -> -1;
+                };
+                if (opcode != -1) {
+                    expression(code, binary.lhs());
+                    expression(code, binary.rhs());
+                    code.jump(opcode, target, 2);
+                    return;
+                }
+            }
+            expression(code, condition);
+            code.jump(ClassFile.IFEQ, target, 1);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package calculator;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Recognizes counted loops so that engines can run them natively.
+ *
+ * A counted loop is what {@code for (i in from to bound)} desugars to: a store to
+ * {@code i} directly followed by {@code while (i < bound) { ...; i = i + 1; }}.
+ * When the body never assigns {@code i} and {@code bound} is a literal, a variable
+ * the body does not assign or the length of such a variable, {@code i} walks
+ * exactly the range {@code [i, bound)}; calls cannot change it, because a function
+ * writes neither its caller's locals nor globals. The loop then becomes a
+ * {@link Resolved.CountedLoop} that evaluates its bound once and increments
+ * {@code i} itself.
+ *
+ * Every {@code a[i]} in the body whose array variable is not assigned by the body
+ * is in bounds as soon as {@code a} covers that range, so the loop also gets a copy
+ * of its body with those accesses unchecked, chosen when the range is covered.
+ */
+final class CountedLoops {
+    private record Variable(boolean global, int slot) {}
+
+    private CountedLoops() {
+    }
+
+    // replaces, in place, every counted loop of a block by a CountedLoop
+    static Resolved.Node[] recognize(Resolved.Node[] elements) {
+        for (int i = 1; i < elements.length; i++) {
+            var loop = countedLoop(elements[i - 1], elements[i]);
+            if (loop != null) {
+                elements[i] = loop;
+            }
+        }
+        return elements;
+    }
+
+    private static Resolved.Node countedLoop(Resolved.Node initializer, Resolved.Node next) {
+        var variable = stored(initializer);
+        if (variable == null
+                || !(next instanceof Resolved.While loop)
+                || !(loop.condition() instanceof Resolved.Binary condition)
+                || condition.operator() != Operator.LESS_THAN
+                || !variable.equals(loaded(condition.lhs()))
+                || !(loop.body() instanceof Resolved.Block block)) {
+            return null;
+        }
+        var elements = block.elements();
+        int last = elements.length - 1;
+        if (last < 0 || !isIncrement(elements[last], variable)) {
+            return null;
+        }
+        var assigned = new HashSet<Variable>();
+        for (int i = 0; i < last; i++) {
+            collectStores(elements[i], assigned);
+        }
+        if (assigned.contains(variable) || !isInvariant(condition.rhs(), variable, assigned)) {
+            return null;
+        }
+        var arrays = new LinkedHashMap<Variable, Resolved.Node>();
+        for (int i = 0; i < last; i++) {
+            collectArrays(elements[i], variable, assigned, arrays);
+        }
+        var body = new Resolved.Block(Arrays.copyOf(elements, last));
+        var unchecked = arrays.isEmpty() ? body : uncheck(body, variable, arrays.keySet());
+        return new Resolved.CountedLoop(
+                condition.lhs(),
+                condition.rhs(),
+                arrays.values().toArray(Resolved.Node[]::new),
+                body,
+                unchecked
+        );
+    }
+
+    private static Variable stored(Resolved.Node node) {
+        if (node instanceof Resolved.LocalStore store) {
+            return new Variable(false, store.slot());
+        } else if (node instanceof Resolved.GlobalStore store) {
+            return new Variable(true, store.slot());
+        }
+        return null;
+    }
+
+    private static Variable loaded(Resolved.Node node) {
+        if (node instanceof Resolved.LocalLoad load) {
+            return new Variable(false, load.slot());
+        } else if (node instanceof Resolved.GlobalLoad load) {
+            return new Variable(true, load.slot());
+        }
+        return null;
+    }
+
+    // i = i + 1
+    private static boolean isIncrement(Resolved.Node node, Variable variable) {
+        Resolved.Node value;
+        if (node instanceof Resolved.LocalStore store) {
+            value = store.value();
+        } else if (node instanceof Resolved.GlobalStore store) {
+            value = store.value();
+        } else {
+            return false;
+        }
+        return variable.equals(stored(node))
+                && value instanceof Resolved.Binary binary
+                && binary.operator() == Operator.ADD
+                && variable.equals(loaded(binary.lhs()))
+                && binary.rhs() instanceof Resolved.Literal literal
+                && literal.value() == 1;
+    }
+
+    private static boolean isInvariant(Resolved.Node bound, Variable variable, Set<Variable> assigned) {
+        if (bound instanceof Resolved.Literal) {
+            return true;
+        }
+        if (bound instanceof Resolved.ArrayCall call && call.function() == ArrayFunction.LENGTH) {
+            bound = call.args()[0];
+        }
+        var read = loaded(bound);
+        return read != null && !read.equals(variable) && !assigned.contains(read);
+    }
+
+    private static void collectStores(Resolved.Node node, Set<Variable> assigned) {
+        var variable = stored(node);
+        if (variable != null) {
+            assigned.add(variable);
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            assigned.add(loaded(loop.index()));
+        }
+        for (var child : children(node)) {
+            collectStores(child, assigned);
+        }
+    }
+
+    // the array variables the body indexes with the loop variable
+    private static void collectArrays(
+            Resolved.Node node,
+            Variable variable,
+            Set<Variable> assigned,
+            Map<Variable, Resolved.Node> arrays
+    ) {
+        Resolved.Node array = null;
+        Resolved.Node index = null;
+        if (node instanceof Resolved.Index access && access.checked()) {
+            array = access.array();
+            index = access.index();
+        } else if (node instanceof Resolved.IndexStore access && access.checked()) {
+            array = access.array();
+            index = access.index();
+        }
+        if (array != null && variable.equals(loaded(index))) {
+            var arrayVariable = loaded(array);
+            if (arrayVariable != null && !assigned.contains(arrayVariable)) {
+                arrays.putIfAbsent(arrayVariable, array);
+            }
+        }
+        for (var child : children(node)) {
+            collectArrays(child, variable, assigned, arrays);
+        }
+    }
+
+    private static boolean isCovered(Resolved.Node array, Resolved.Node index, Variable variable, Set<Variable> arrays) {
+        return variable.equals(loaded(index)) && arrays.contains(loaded(array));
+    }
+
+    private static Resolved.Node uncheck(Resolved.Node node, Variable variable, Set<Variable> arrays) {
+        if (node instanceof Resolved.Index access) {
+            boolean checked = access.checked() && !isCovered(access.array(), access.index(), variable, arrays);
+            return new Resolved.Index(
+                    uncheck(access.array(), variable, arrays),
+                    uncheck(access.index(), variable, arrays),
+                    checked
+            );
+        } else if (node instanceof Resolved.IndexStore access) {
+            boolean checked = access.checked() && !isCovered(access.array(), access.index(), variable, arrays);
+            return new Resolved.IndexStore(
+                    uncheck(access.array(), variable, arrays),
+                    uncheck(access.index(), variable, arrays),
+                    uncheck(access.value(), variable, arrays),
+                    checked
+            );
+        } else if (node instanceof Resolved.Binary binary) {
+            return new Resolved.Binary(
+                    binary.operator(),
+                    uncheck(binary.lhs(), variable, arrays),
+                    uncheck(binary.rhs(), variable, arrays)
+            );
+        } else if (node instanceof Resolved.LocalStore store) {
+            return new Resolved.LocalStore(store.slot(), uncheck(store.value(), variable, arrays));
+        } else if (node instanceof Resolved.GlobalStore store) {
+            return new Resolved.GlobalStore(store.slot(), uncheck(store.value(), variable, arrays));
+        } else if (node instanceof Resolved.If ifNode) {
+            return new Resolved.If(
+                    uncheck(ifNode.condition(), variable, arrays),
+                    uncheck(ifNode.thenClause(), variable, arrays),
+                    uncheck(ifNode.elseClause(), variable, arrays)
+            );
+        } else if (node instanceof Resolved.While whileNode) {
+            return new Resolved.While(
+                    uncheck(whileNode.condition(), variable, arrays),
+                    uncheck(whileNode.body(), variable, arrays)
+            );
+        } else if (node instanceof Resolved.Block block) {
+            return new Resolved.Block(uncheckAll(block.elements(), variable, arrays));
+        } else if (node instanceof Resolved.Call call) {
+            return new Resolved.Call(call.name(), uncheckAll(call.args(), variable, arrays));
+        } else if (node instanceof Resolved.LabelledCall call) {
+            return new Resolved.LabelledCall(call.name(), call.labels(), uncheckAll(call.args(), variable, arrays));
+        } else if (node instanceof Resolved.DirectCall call) {
+            return new Resolved.DirectCall(call.function(), uncheckAll(call.args(), variable, arrays));
+        } else if (node instanceof Resolved.Println println) {
+            return new Resolved.Println(uncheck(println.arg(), variable, arrays));
+        } else if (node instanceof Resolved.NewArray newArray) {
+            return new Resolved.NewArray(uncheckAll(newArray.elements(), variable, arrays));
+        } else if (node instanceof Resolved.ArrayCall call) {
+            return new Resolved.ArrayCall(call.function(), uncheckAll(call.args(), variable, arrays));
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            var checked = uncheck(loop.checked(), variable, arrays);
+            return new Resolved.CountedLoop(
+                    loop.index(),
+                    loop.bound(),
+                    loop.arrays(),
+                    checked,
+                    loop.unchecked() == loop.checked() ? checked : uncheck(loop.unchecked(), variable, arrays)
+            );
+        } else {
+            return node;
+        }
+    }
+
+    private static Resolved.Node[] uncheckAll(Resolved.Node[] nodes, Variable variable, Set<Variable> arrays) {
+        var result = new Resolved.Node[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            result[i] = uncheck(nodes[i], variable, arrays);
+        }
+        return result;
+    }
+
+    private static List<Resolved.Node> children(Resolved.Node node) {
+        if (node instanceof Resolved.Binary binary) {
+            return List.of(binary.lhs(), binary.rhs());
+        } else if (node instanceof Resolved.LocalStore store) {
+            return List.of(store.value());
+        } else if (node instanceof Resolved.GlobalStore store) {
+            return List.of(store.value());
+        } else if (node instanceof Resolved.If ifNode) {
+            return List.of(ifNode.condition(), ifNode.thenClause(), ifNode.elseClause());
+        } else if (node instanceof Resolved.While whileNode) {
+            return List.of(whileNode.condition(), whileNode.body());
+        } else if (node instanceof Resolved.Block block) {
+            return List.of(block.elements());
+        } else if (node instanceof Resolved.Call call) {
+            return List.of(call.args());
+        } else if (node instanceof Resolved.LabelledCall call) {
+            return List.of(call.args());
+        } else if (node instanceof Resolved.DirectCall call) {
+            return List.of(call.args());
+        } else if (node instanceof Resolved.Println println) {
+            return List.of(println.arg());
+        } else if (node instanceof Resolved.NewArray newArray) {
+            return List.of(newArray.elements());
+        } else if (node instanceof Resolved.Index access) {
+            return List.of(access.array(), access.index());
+        } else if (node instanceof Resolved.IndexStore access) {
+            return List.of(access.array(), access.index(), access.value());
+        } else if (node instanceof Resolved.ArrayCall call) {
+            return List.of(call.args());
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            // both versions assign and index the same variables
+            return List.of(loop.index(), loop.bound(), loop.checked());
+        } else {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package calculator;
+
+/**
+ * The execution engines a program can be run with. All of them give the same
+ * results as {@link Interpreter#callMain(Ast.Program)}.
+ */
+public enum Engine {
+    INTERPRETER {
+        @Override
+        public int callMain(Ast.Program program) {
+            return new Interpreter().callMain(program);
+        }
+    },
+    COMPILER {
+        @Override
+        public int callMain(Ast.Program program) {
+            return new Compiler().callMain(program);
+        }
+    },
+    VM {
+        @Override
+        public int callMain(Ast.Program program) {
+            return new Vm(new VmCompiler().compile(program)).callMain();
+        }
+    },
+    NODES {
+        @Override
+        public int callMain(Ast.Program program) {
+            return new NodeCompiler().compile(program).callMain();
+        }
+    },
+    STACK {
+        @Override
+        public int callMain(Ast.Program program) {
+            return new StackEvaluator().callMain(program);
+        }
+    },
+    TIERED {
+        @Override
+        public int callMain(Ast.Program program) {
+            return new Interpreter(0, null, OutputSink.standardOutput(), new Tiering(), null).callMain(program);
+        }
+    };
+
+    public abstract int callMain(Ast.Program program);
+}
@@ -0,0 +1,333 @@
+package calculator;
+
+import java.math.BigInteger;
+
+/**
+ * Runs a {@link LoadedProgram} with integers of unlimited size instead of
+ * wrapping ints.
+ *
+ * Values are held as primitive longs and computed with overflow-detecting
+ * operations. Only a result that does not fit a long is promoted to a
+ * {@link BigInteger}; evaluation then returns {@link #BIG} and leaves the value in
+ * {@link #big}. A value that fits a long again is demoted, so {@link #BIG}, which
+ * is {@link Long#MIN_VALUE}, is never a small value itself. Array elements stay
+ * ints, so storing a value beyond the int range in an array fails.
+ */
+public final class ExactContext {
+    // the value is in big rather than in the returned long
+    private static final long BIG = Long.MIN_VALUE;
+
+    private static final class Frame {
+        final long[] values;
+        // allocated when the first big value is stored
+        BigInteger[] bigs;
+
+        Frame(int size) {
+            values = new long[size];
+        }
+
+        BigInteger[] bigs() {
+            if (bigs == null) {
+                bigs = new BigInteger[values.length];
+            }
+            return bigs;
+        }
+    }
+
+    private final LoadedProgram program;
+    private final Frame globals;
+    private final boolean[] definedGlobals;
+    private final OutputSink output;
+    private final ArrayHeap heap = new ArrayHeap();
+    private BigInteger big;
+
+    ExactContext(LoadedProgram program, OutputSink output) {
+        this.program = program;
+        this.output = output;
+        this.globals = new Frame(program.globalCount());
+        this.definedGlobals = new boolean[program.globalCount()];
+    }
+
+    public BigInteger run() {
+        try {
+            for (var initializer : program.initializers()) {
+                evaluate(initializer, null);
+            }
+            return box(evaluate(program.main(), null));
+        } finally {
+            output.flush();
+        }
+    }
+
+    public BigInteger getValue(String name) {
+        var slot = program.globalSlot(name);
+        if (slot == null || !definedGlobals[slot]) {
+            return null;
+        }
+        return box(load(globals, slot));
+    }
+
+    private BigInteger box(long value) {
+        return value == BIG ? big : BigInteger.valueOf(value);
+    }
+
+    // the long of a value, or BIG with the value left in big
+    private long unbox(BigInteger value) {
+        if (value.bitLength() < Long.SIZE && value.longValue() != BIG) {
+            return value.longValue();
+        }
+        big = value;
+        return BIG;
+    }
+
+    private long load(Frame frame, int slot) {
+        long value = frame.values[slot];
+        if (value == BIG) {
+            big = frame.bigs[slot];
+        }
+        return value;
+    }
+
+    private long store(Frame frame, int slot, long value) {
+        frame.values[slot] = value;
+        if (value == BIG) {
+            frame.bigs()[slot] = big;
+        }
+        return value;
+    }
+
+    private long evaluate(Resolved.Node node, Frame frame) {
+        if (node instanceof Resolved.Binary binary) {
+            return binary(binary.operator(), binary.lhs(), binary.rhs(), frame);
+        } else if (node instanceof Resolved.ForkedBinary binary) {
+            return binary(binary.operator(), binary.lhs(), binary.rhs(), frame);
+        } else if (node instanceof Resolved.Literal literal) {
+            return literal.value();
+        } else if (node instanceof Resolved.LocalLoad load) {
+            return load(frame, load.slot());
+        } else if (node instanceof Resolved.GuardedLoad load) {
+            if (frame.values[load.flag()] == 0) {
+                throw new LanguageException("Variable " + load.name() + " is not defined");
+            }
+            return load(frame, load.slot());
+        } else if (node instanceof Resolved.GlobalLoad load) {
+            if (!definedGlobals[load.slot()]) {
+                throw new LanguageException("Variable " + load.name() + " is not defined");
+            }
+            return load(globals, load.slot());
+        } else if (node instanceof Resolved.LocalStore store) {
+            return store(frame, store.slot(), evaluate(store.value(), frame));
+        } else if (node instanceof Resolved.GlobalStore store) {
+            long value = store(globals, store.slot(), evaluate(store.value(), frame));
+            definedGlobals[store.slot()] = true;
+            return value;
+        } else if (node instanceof Resolved.If ifNode) {
+            // a big value is never zero
+            if (evaluate(ifNode.condition(), frame) != 0) {
+                return evaluate(ifNode.thenClause(), frame);
+            } else {
+                return evaluate(ifNode.elseClause(), frame);
+            }
+        } else if (node instanceof Resolved.While whileNode) {
+            while (evaluate(whileNode.condition(), frame) != 0) {
+                evaluate(whileNode.body(), frame);
+            }
+            return 1;
+        } else if (node instanceof Resolved.Block block) {
+            long value = 0;
+            for (var e : block.elements()) {
+                value = evaluate(e, frame);
+            }
+            return value;
+        } else if (node instanceof Resolved.Println println) {
+            long value = evaluate(println.arg(), frame);
+            if (value == BIG) {
+                output.println(big);
+            } else if (value == (int) value) {
+                output.println((int) value);
+            } else {
+                output.println(BigInteger.valueOf(value));
+            }
+            return value;
+        } else if (node instanceof Resolved.DirectCall call) {
+            var function = program.function(call.function());
+            var args = call.args();
+            int arity = function.params().length;
+            var calleeFrame = new Frame(function.frameSize());
+            for (int i = 0; i < args.length; i++) {
+                long value = evaluate(args[i], frame);
+                if (i < arity) {
+                    store(calleeFrame, i, value);
+                }
+            }
+            return evaluate(function.body(), calleeFrame);
+        } else if (node instanceof Resolved.NewArray newArray) {
+            var elements = newArray.elements();
+            int handle = heap.allocate(elements.length);
+            for (int i = 0; i < elements.length; i++) {
+                heap.initialize(handle, i, element(evaluate(elements[i], frame)));
+            }
+            return handle;
+        } else if (node instanceof Resolved.Index index) {
+            int array = handle(evaluate(index.array(), frame));
+            int i = position(evaluate(index.index(), frame), array);
+            return index.checked() ? heap.load(array, i) : heap.loadUnchecked(array, i);
+        } else if (node instanceof Resolved.IndexStore store) {
+            int array = handle(evaluate(store.array(), frame));
+            int i = position(evaluate(store.index(), frame), array);
+            int value = element(evaluate(store.value(), frame));
+            return store.checked() ? heap.store(array, i, value) : heap.storeUnchecked(array, i, value);
+        } else if (node instanceof Resolved.ArrayCall call) {
+            return arrayCall(call, frame);
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            return countedLoop(loop, frame);
+        } else {
+            throw new RuntimeException("not reach here");
+        }
+    }
+
+    private long binary(Operator operator, Resolved.Node lhsNode, Resolved.Node rhsNode, Frame frame) {
+        long lhs = evaluate(lhsNode, frame);
+        var lhsBig = lhs == BIG ? big : null;
+        long rhs = evaluate(rhsNode, frame);
+        if (lhs != BIG && rhs != BIG) {
+            try {
+                long result = switch (operator) {
+                    case ADD -> Math.addExact(lhs, rhs);
+                    case SUBTRACT -> Math.subtractExact(lhs, rhs);
+                    case MULTIPLY -> Math.multiplyExact(lhs, rhs);
+                    // neither operand is Long.MIN_VALUE, so only division by zero can fail
+                    case DIVIDE -> lhs / rhs;
+                    case LESS_THAN -> lhs < rhs ? 1 : 0;
+                    case LESS_OR_EQUAL -> lhs <= rhs ? 1 : 0;
+                    case GREATER_THAN -> lhs > rhs ? 1 : 0;
+                    case GREATER_OR_EQUAL -> lhs >= rhs ? 1 : 0;
+                    case EQUAL_EQUAL -> lhs == rhs ? 1 : 0;
+                    case NOT_EQUAL -> lhs != rhs ? 1 : 0;
+                };
+                if (result != BIG) {
+                    return result;
+                }
+            } catch (ArithmeticException e) {
+                if (operator == Operator.DIVIDE) {
+                    throw e;
+                }
+            }
+        }
+        var l = lhsBig != null ? lhsBig : BigInteger.valueOf(lhs);
+        var r = rhs == BIG ? big : BigInteger.valueOf(rhs);
+        return switch (operator) {
+            case ADD -> unbox(l.add(r));
+            case SUBTRACT -> unbox(l.subtract(r));
+            case MULTIPLY -> unbox(l.multiply(r));
+            case DIVIDE -> {
+                if (r.signum() == 0) {
+                    throw new ArithmeticException("/ by zero");
+                }
+                yield unbox(l.divide(r));
+            }
+            case LESS_THAN -> l.compareTo(r) < 0 ? 1 : 0;
+            case LESS_OR_EQUAL -> l.compareTo(r) <= 0 ? 1 : 0;
+            case GREATER_THAN -> l.compareTo(r) > 0 ? 1 : 0;
+            case GREATER_OR_EQUAL -> l.compareTo(r) >= 0 ? 1 : 0;
+            case EQUAL_EQUAL -> l.equals(r) ? 1 : 0;
+            case NOT_EQUAL -> l.equals(r) ? 0 : 1;
+        };
+    }
+
+    private long arrayCall(Resolved.ArrayCall call, Frame frame) {
+        var args = call.args();
+        long value = evaluate(args[0], frame);
+        int first = call.function() == ArrayFunction.ARRAY ? length(value) : handle(value);
+        long second = args.length > 1 ? evaluate(args[1], frame) : 0;
+        return switch (call.function()) {
+            case ARRAY -> heap.allocate(first);
+            case FILL -> heap.call(ArrayFunction.FILL, first, element(second));
+            case SUM -> {
+                // at most 2^31 ints, so the sum always fits a long
+                long sum = 0;
+                for (int element : heap.array(first)) {
+                    sum += element;
+                }
+                yield sum;
+            }
+            default -> heap.call(call.function(), first, handle(second));
+        };
+    }
+
+    private long countedLoop(Resolved.CountedLoop loop, Frame frame) {
+        long from = evaluate(loop.index(), frame);
+        var start = from == BIG ? big : null;
+        long to = evaluate(loop.bound(), frame);
+        if (from == BIG || to == BIG) {
+            // an end beyond a long rules out any array, so the checked body steps a big index
+            var bound = box(to);
+            for (var i = start != null ? start : BigInteger.valueOf(from); i.compareTo(bound) < 0; ) {
+                evaluate(loop.checked(), frame);
+                i = i.add(BigInteger.ONE);
+                assign(loop.index(), frame, unbox(i));
+            }
+            return 1;
+        }
+        var body = covered(loop, frame, from, to) ? loop.unchecked() : loop.checked();
+        // the body never assigns the loop variable, so it always holds i
+        for (long i = from; i < to; i++) {
+            evaluate(body, frame);
+            assign(loop.index(), frame, i + 1);
+        }
+        return 1;
+    }
+
+    private void assign(Resolved.Node variable, Frame frame, long value) {
+        if (variable instanceof Resolved.LocalLoad load) {
+            store(frame, load.slot(), value);
+        } else {
+            store(globals, ((Resolved.GlobalLoad) variable).slot(), value);
+        }
+    }
+
+    private boolean covered(Resolved.CountedLoop loop, Frame frame, long from, long to) {
+        if (from != (int) from || to != (int) to) {
+            return false;
+        }
+        for (var array : loop.arrays()) {
+            // an undefined global reads as 0, which is never an array
+            long handle = array instanceof Resolved.LocalLoad load
+                    ? frame.values[load.slot()]
+                    : globals.values[((Resolved.GlobalLoad) array).slot()];
+            if (handle != (int) handle || !heap.covers((int) handle, (int) from, (int) to)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int handle(long value) {
+        if (value != (int) value) {
+            throw new LanguageException("Value " + box(value) + " is not an array");
+        }
+        return (int) value;
+    }
+
+    private int position(long value, int array) {
+        if (value != (int) value) {
+            int length = heap.array(array).length;
+            throw new LanguageException("Index " + box(value) + " is out of bounds for length " + length);
+        }
+        return (int) value;
+    }
+
+    private int length(long value) {
+        if (value != (int) value) {
+            throw new LanguageException("Array length " + box(value) + (box(value).signum() < 0 ? " is negative" : " is too large"));
+        }
+        return (int) value;
+    }
+
+    private int element(long value) {
+        if (value != (int) value) {
+            throw new LanguageException("Value " + box(value) + " does not fit in an array element");
+        }
+        return (int) value;
+    }
+}
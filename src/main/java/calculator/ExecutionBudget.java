@@ -0,0 +1,116 @@
+package calculator;
+
+import java.time.Duration;
+
+/**
+ * Bounds what an {@link Interpreter} or {@link ExecutionContext} created with it
+ * may do, including code {@link Tiering} has optimized: a number of steps
+ * (fuel), a call depth and a wall-clock deadline, and it lets another thread
+ * cancel the run. Going over any of them throws a {@link LimitExceededException}.
+ *
+ * A step is one loop iteration or one function call, so straight-line code is
+ * never metered. Fuel is handed out in slices of {@link #CHECK_INTERVAL} steps;
+ * the cancellation flag and the deadline are only looked at when a slice runs
+ * out, which keeps the per-step cost to a decrement and a branch.
+ *
+ * The deadline counts from the construction of the budget. A budget is used up
+ * across every run it is given to, such as the statements of one
+ * {@link StatementStream}, and is not meant to be shared by runs that go on at
+ * the same time. For the same reason a program loaded with
+ * {@link LoadedProgram#loadParallel} evaluates its operands sequentially when it
+ * runs with a budget.
+ */
+public final class ExecutionBudget {
+    public static final long UNLIMITED_FUEL = Long.MAX_VALUE;
+    public static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+    public static final int CHECK_INTERVAL = 1024;
+
+    private final long initialFuel;
+    private final int maxDepth;
+    private final Duration timeout;
+    private final long deadline;
+    // fuel not yet handed to the current slice
+    private long fuel;
+    private int slice;
+    private int depth;
+    private volatile boolean cancelled;
+
+    public ExecutionBudget(long fuel, int maxDepth) {
+        this(fuel, maxDepth, null);
+    }
+
+    // a null timeout means no deadline
+    public ExecutionBudget(long fuel, int maxDepth, Duration timeout) {
+        if (fuel < 0) {
+            throw new IllegalArgumentException("fuel must not be negative: " + fuel);
+        }
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth must not be negative: " + maxDepth);
+        }
+        this.initialFuel = fuel;
+        this.maxDepth = maxDepth;
+        this.timeout = timeout;
+        this.deadline = timeout == null ? 0 : System.nanoTime() + timeout.toNanos();
+        this.fuel = fuel;
+    }
+
+    // may be called from any thread; the run stops at its next check
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long remainingFuel() {
+        return fuel + slice;
+    }
+
+    public long usedFuel() {
+        return initialFuel - remainingFuel();
+    }
+
+    // pays for one step
+    void charge() {
+        if (--slice < 0) {
+            refill();
+        }
+    }
+
+    // pays for a call and checks that it stays within maxDepth
+    void enter() {
+        charge();
+        if (depth == maxDepth) {
+            throw new LimitExceededException(
+                    LimitExceededException.Limit.DEPTH, "Call depth exceeds " + maxDepth
+            );
+        }
+        depth++;
+    }
+
+    void exit() {
+        depth--;
+    }
+
+    private void refill() {
+        // the step that ran the slice out is not paid for yet
+        slice = 0;
+        if (cancelled) {
+            throw new LimitExceededException(LimitExceededException.Limit.CANCELLED, "Execution was cancelled");
+        }
+        if (timeout != null && System.nanoTime() - deadline >= 0) {
+            throw new LimitExceededException(
+                    LimitExceededException.Limit.DEADLINE, "Deadline of " + timeout + " has passed"
+            );
+        }
+        if (fuel == 0) {
+            throw new LimitExceededException(
+                    LimitExceededException.Limit.FUEL, "Fuel of " + initialFuel + " steps is exhausted"
+            );
+        }
+        int granted = (int) Math.min(fuel, CHECK_INTERVAL);
+        fuel -= granted;
+        slice = granted - 1;
+    }
+}
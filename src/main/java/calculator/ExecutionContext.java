@@ -0,0 +1,522 @@
+package calculator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * The mutable state of one run of a {@link LoadedProgram}: its globals, its arrays
+ * and, while running, its call frames. A context is cheap to create and must be used by one
+ * thread at a time; the program it runs is shared. A context created with an
+ * {@link ExecutionBudget} charges everything it runs to it.
+ *
+ * This is also where an {@link Interpreter} evaluates: it keeps one context for
+ * as long as it lives, resolves the functions that are called by name for it and
+ * gives it the profiler, tiering, budget and memo cache it was created with.
+ *
+ * In a program loaded with {@link LoadedProgram#loadParallel}, the operands of a
+ * {@link Resolved.ForkedBinary} run as tasks of the common fork/join pool,
+ * unless the context has a budget: a budget meters one call stack, so its
+ * operands then run one after the other. Once an operand fails, the operands
+ * still running stop at their next loop iteration or call, and the failure is
+ * only rethrown after they have.
+ */
+public class ExecutionContext {
+    // null in the context of an Interpreter
+    private final LoadedProgram program;
+    // resolves a Resolved.Call or Resolved.LabelledCall, which only an Interpreter has
+    private final Function<String, Resolved.Function> lookup;
+    private final OutputSink output;
+    private final Profiler profiler;
+    private final Tiering tiering;
+    private final ExecutionBudget budget;
+    private final MemoCache memo;
+    private final Set<Resolved.Function> pureFunctions = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final ArrayHeap heap = new ArrayHeap();
+    private final boolean forks;
+    // set once a forked operand has failed; the run is over, so every operand may stop
+    private volatile boolean abandoned;
+    // the targets of DirectCall nodes
+    private Resolved.Function[] functions;
+    private int[] globals;
+    private boolean[] definedGlobals;
+
+    ExecutionContext(LoadedProgram program, OutputSink output, ExecutionBudget budget) {
+        this(program, ExecutionContext::unlinked, program.functions(), program.globalCount(),
+                output, null, null, budget, null);
+    }
+
+    ExecutionContext(
+            Function<String, Resolved.Function> lookup,
+            OutputSink output,
+            Profiler profiler,
+            Tiering tiering,
+            ExecutionBudget budget,
+            MemoCache memo
+    ) {
+        this(null, lookup, new Resolved.Function[0], 16, output, profiler, tiering, budget, memo);
+    }
+
+    private ExecutionContext(
+            LoadedProgram program,
+            Function<String, Resolved.Function> lookup,
+            Resolved.Function[] functions,
+            int globalCount,
+            OutputSink output,
+            Profiler profiler,
+            Tiering tiering,
+            ExecutionBudget budget,
+            MemoCache memo
+    ) {
+        this.program = program;
+        this.lookup = lookup;
+        this.functions = functions;
+        this.globals = new int[globalCount];
+        this.definedGlobals = new boolean[globalCount];
+        this.output = output;
+        this.profiler = profiler;
+        this.tiering = tiering;
+        this.budget = budget;
+        this.memo = memo;
+        this.forks = program != null && program.isParallel();
+    }
+
+    // a loaded program is linked, so it never calls by name
+    private static Resolved.Function unlinked(String name) {
+        throw new RuntimeException("Function " + name + " is not linked");
+    }
+
+    public int run() {
+        abandoned = false;
+        try {
+            initialize();
+            return evaluate(program.main(), null);
+        } finally {
+            output.flush();
+        }
+    }
+
+    // assigns the globals without running main, for a context that is used through call
+    public void initialize() {
+        abandoned = false;
+        for (var initializer : program.initializers()) {
+            evaluate(initializer, null);
+        }
+    }
+
+    // calls one of the entries the program was loaded with
+    public int call(String name, int... args) {
+        var index = program.entry(name);
+        if (index == null) {
+            throw new RuntimeException("Function " + name + " is not an entry of the program");
+        }
+        try {
+            return invoke(index, args);
+        } finally {
+            output.flush();
+        }
+    }
+
+    // leaves flushing to the caller, which may make many calls
+    int invoke(int index, int[] args) {
+        abandoned = false;
+        var function = functions[index];
+        int arity = function.params().length;
+        if (args.length != arity) {
+            throw new LanguageException(
+                    "Function " + function.name() + " expects " + arity + " arguments but got " + args.length
+            );
+        }
+        return invoke(function, Arrays.copyOf(args, function.frameSize()));
+    }
+
+    void flushOutput() {
+        output.flush();
+    }
+
+    public Integer getValue(String name) {
+        var slot = program.globalSlot(name);
+        return slot == null ? null : globalValue(slot);
+    }
+
+    Integer globalValue(int slot) {
+        if (slot >= globals.length || !definedGlobals[slot]) {
+            return null;
+        }
+        return globals[slot];
+    }
+
+    // makes room for the globals an Interpreter has resolved so far
+    void ensureGlobalCapacity(int count) {
+        if (count > globals.length) {
+            int capacity = Math.max(count, globals.length * 2);
+            globals = Arrays.copyOf(globals, capacity);
+            definedGlobals = Arrays.copyOf(definedGlobals, capacity);
+        }
+    }
+
+    // a top-level statement, which runs in the global scope; no frame is live before it,
+    // so the arrays the globals do not reach can be freed
+    int evaluate(Resolved.Node node) {
+        heap.collect(globals);
+        return evaluate(node, null);
+    }
+
+    int arrayCount() {
+        return heap.size();
+    }
+
+    // runs the main of an Interpreter program, whose calls reachable from main are linked to functions
+    int runMain(String name, Resolved.Node main, Resolved.Function[] functions) {
+        this.functions = functions;
+        if (memo != null) {
+            // purity is decided over the linked functions only, so unreached ones are never resolved
+            var pure = Purity.pureFunctions(functions);
+            for (var function : functions) {
+                if (pure.contains(function.name())) {
+                    pureFunctions.add(function);
+                }
+            }
+        }
+        if (tiering != null) {
+            tiering.start(main, functions, globals, definedGlobals, output, heap, budget);
+        }
+        if (profiler == null) {
+            return evaluate(main, null);
+        }
+        profiler.enter(name, false);
+        try {
+            return evaluate(main, null);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    private int evaluate(Resolved.Node node, int[] frame) {
+        if (node instanceof Resolved.Binary binary) {
+            var lhs = evaluate(binary.lhs(), frame);
+            var rhs = evaluate(binary.rhs(), frame);
+            return binary.operator().apply(lhs, rhs);
+        } else if (node instanceof Resolved.ForkedBinary binary) {
+            return fork(binary, frame);
+        } else if (node instanceof Resolved.Literal literal) {
+            return literal.value();
+        } else if (node instanceof Resolved.LocalLoad load) {
+            return frame[load.slot()];
+        } else if (node instanceof Resolved.GuardedLoad load) {
+            if (frame[load.flag()] == 0) {
+                throw new LanguageException("Variable " + load.name() + " is not defined");
+            }
+            return frame[load.slot()];
+        } else if (node instanceof Resolved.GlobalLoad load) {
+            if (!definedGlobals[load.slot()]) {
+                throw new LanguageException("Variable " + load.name() + " is not defined");
+            }
+            return globals[load.slot()];
+        } else if (node instanceof Resolved.LocalStore store) {
+            int value = evaluate(store.value(), frame);
+            frame[store.slot()] = value;
+            return value;
+        } else if (node instanceof Resolved.GlobalStore store) {
+            int value = evaluate(store.value(), frame);
+            globals[store.slot()] = value;
+            definedGlobals[store.slot()] = true;
+            return value;
+        } else if (node instanceof Resolved.If ifNode) {
+            if (evaluate(ifNode.condition(), frame) != 0) {
+                return evaluate(ifNode.thenClause(), frame);
+            } else {
+                return evaluate(ifNode.elseClause(), frame);
+            }
+        } else if (node instanceof Resolved.While whileNode) {
+            while (evaluate(whileNode.condition(), frame) != 0) {
+                if (profiler != null) {
+                    profiler.loopIteration();
+                }
+                if (budget != null) {
+                    budget.charge();
+                }
+                if (forks) {
+                    checkAbandoned();
+                }
+                evaluate(whileNode.body(), frame);
+                if (tiering != null) {
+                    var optimized = tiering.backEdge(whileNode);
+                    if (optimized != null) {
+                        // on-stack replacement: the rest of the loop runs optimized
+                        return tiering.execute(optimized, frame);
+                    }
+                }
+            }
+            return 1;
+        } else if (node instanceof Resolved.Block block) {
+            int value = 0;
+            for (var e : block.elements()) {
+                value = evaluate(e, frame);
+            }
+            return value;
+        } else if (node instanceof Resolved.Call call) {
+            var function = lookup.apply(call.name());
+            var args = call.args();
+            var calleeFrame = newFrame(function, args.length);
+            for (int i = 0; i < args.length; i++) {
+                int value = evaluate(args[i], frame);
+                if (i < function.params().length) {
+                    calleeFrame[i] = value;
+                }
+            }
+            return invoke(function, calleeFrame);
+        } else if (node instanceof Resolved.LabelledCall labelledCall) {
+            var function = lookup.apply(labelledCall.name());
+            var params = function.params();
+            var calleeFrame = newFrame(function, params.length);
+            for (int i = 0; i < params.length; i++) {
+                calleeFrame[i] = evaluate(labelledArgument(labelledCall, params[i]), frame);
+            }
+            return invoke(function, calleeFrame);
+        } else if (node instanceof Resolved.Println println) {
+            int value = evaluate(println.arg(), frame);
+            output.println(value);
+            return value;
+        } else if (node instanceof Resolved.DirectCall call) {
+            var function = functions[call.function()];
+            var args = call.args();
+            int arity = function.params().length;
+            var calleeFrame = new int[function.frameSize()];
+            for (int i = 0; i < args.length; i++) {
+                int value = evaluate(args[i], frame);
+                if (i < arity) {
+                    calleeFrame[i] = value;
+                }
+            }
+            return invoke(function, calleeFrame);
+        } else if (node instanceof Resolved.NewArray newArray) {
+            var elements = newArray.elements();
+            int handle = heap.allocate(elements.length);
+            for (int i = 0; i < elements.length; i++) {
+                heap.initialize(handle, i, evaluate(elements[i], frame));
+            }
+            return handle;
+        } else if (node instanceof Resolved.Index index) {
+            int array = evaluate(index.array(), frame);
+            int i = evaluate(index.index(), frame);
+            return index.checked() ? heap.load(array, i) : heap.loadUnchecked(array, i);
+        } else if (node instanceof Resolved.IndexStore store) {
+            int array = evaluate(store.array(), frame);
+            int i = evaluate(store.index(), frame);
+            int value = evaluate(store.value(), frame);
+            return store.checked() ? heap.store(array, i, value) : heap.storeUnchecked(array, i, value);
+        } else if (node instanceof Resolved.ArrayCall call) {
+            var args = call.args();
+            int first = evaluate(args[0], frame);
+            int second = args.length > 1 ? evaluate(args[1], frame) : 0;
+            return heap.call(call.function(), first, second);
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            int from = evaluate(loop.index(), frame);
+            int to = evaluate(loop.bound(), frame);
+            var body = covered(loop, frame, from, to) ? loop.unchecked() : loop.checked();
+            // the body never assigns the loop variable, so it always holds i
+            for (int i = from; i < to; i++) {
+                if (profiler != null) {
+                    profiler.loopIteration();
+                }
+                if (budget != null) {
+                    budget.charge();
+                }
+                if (forks) {
+                    checkAbandoned();
+                }
+                evaluate(body, frame);
+                if (loop.index() instanceof Resolved.LocalLoad load) {
+                    frame[load.slot()] = i + 1;
+                } else {
+                    globals[((Resolved.GlobalLoad) loop.index()).slot()] = i + 1;
+                }
+                if (tiering != null) {
+                    var optimized = tiering.backEdge(loop);
+                    if (optimized != null) {
+                        // the index already holds i + 1, where the optimized loop starts
+                        return tiering.execute(optimized, frame);
+                    }
+                }
+            }
+            return 1;
+        } else {
+            throw new RuntimeException("not reach here");
+        }
+    }
+
+    private int invoke(Resolved.Function function, int[] frame) {
+        if (forks) {
+            checkAbandoned();
+        }
+        if (budget != null) {
+            budget.enter();
+            try {
+                return profile(function, frame);
+            } finally {
+                budget.exit();
+            }
+        }
+        return profile(function, frame);
+    }
+
+    private int profile(Resolved.Function function, int[] frame) {
+        if (profiler == null) {
+            return run(function, frame);
+        }
+        profiler.enter(function.name(), true);
+        try {
+            return run(function, frame);
+        } finally {
+            profiler.exit();
+        }
+    }
+
+    private int run(Resolved.Function function, int[] frame) {
+        if (memo == null || !pureFunctions.contains(function)) {
+            return body(function, frame);
+        }
+        int arity = function.params().length;
+        var cached = memo.get(function, frame, arity);
+        if (cached != null) {
+            return cached;
+        }
+        // the body may assign its parameters, so the key is copied before it runs
+        var args = Arrays.copyOf(frame, arity);
+        int value = body(function, frame);
+        memo.put(function, args, arity, value);
+        return value;
+    }
+
+    private int body(Resolved.Function function, int[] frame) {
+        if (tiering != null) {
+            var optimized = tiering.enter(function);
+            if (optimized != null) {
+                return tiering.execute(optimized, frame);
+            }
+        }
+        return evaluate(function.body(), frame);
+    }
+
+    private static int[] newFrame(Resolved.Function function, int actualCount) {
+        if (actualCount < function.params().length) {
+            throw new LanguageException(
+                    "Function " + function.name() + " expects " + function.params().length
+                            + " arguments but got " + actualCount
+            );
+        }
+        return new int[function.frameSize()];
+    }
+
+    private static Resolved.Node labelledArgument(Resolved.LabelledCall labelledCall, String param) {
+        var labels = labelledCall.labels();
+        // the last occurrence of a duplicated label wins, as it did with the label map
+        for (int i = labels.length - 1; i >= 0; i--) {
+            if (labels[i].equals(param)) {
+                return labelledCall.args()[i];
+            }
+        }
+        throw new LanguageException("Label " + param + " is missing in call to " + labelledCall.name());
+    }
+
+    // the operands call pure functions, which touch neither globals, arrays nor output,
+    // so they may run on other threads against the same context
+    private int fork(Resolved.ForkedBinary binary, int[] frame) {
+        if (budget != null || !Parallelism.shouldFork()) {
+            int lhs = evaluate(binary.lhs(), frame);
+            return binary.operator().apply(lhs, evaluate(binary.rhs(), frame));
+        }
+        var rhs = new Operand(binary.rhs(), frame);
+        if (ForkJoinTask.inForkJoinPool()) {
+            rhs.fork();
+        } else {
+            ForkJoinPool.commonPool().execute(rhs);
+        }
+        int lhs;
+        try {
+            lhs = evaluate(binary.lhs(), frame);
+        } catch (RuntimeException | Error e) {
+            // a right operand that loops forever would otherwise keep a worker busy after the run has failed
+            abandoned = true;
+            rhs.cancel(false);
+            rhs.quietlyJoin();
+            if (e instanceof Abandoned) {
+                // the failure is the right operand's, or further out, where another fork rethrows it
+                rhs.result();
+            }
+            throw e;
+        }
+        rhs.join();
+        return binary.operator().apply(lhs, rhs.result());
+    }
+
+    private void checkAbandoned() {
+        if (abandoned) {
+            throw Abandoned.INSTANCE;
+        }
+    }
+
+    // stops an operand once another one has failed; never leaves the run, whose own failure is thrown instead
+    private static final class Abandoned extends RuntimeException {
+        static final Abandoned INSTANCE = new Abandoned();
+
+        private Abandoned() {
+            super(null, null, false, false);
+        }
+    }
+
+    // keeps the exception an operand throws as is, rather than the copy join would rethrow
+    private final class Operand extends RecursiveAction {
+        private final Resolved.Node node;
+        private final int[] frame;
+        private int value;
+        private Throwable failure;
+
+        Operand(Resolved.Node node, int[] frame) {
+            this.node = node;
+            this.frame = frame;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                value = evaluate(node, frame);
+            } catch (RuntimeException | Error e) {
+                failure = e;
+                abandoned = true;
+            }
+        }
+
+        int result() {
+            if (failure instanceof RuntimeException e) {
+                throw e;
+            } else if (failure instanceof Error e) {
+                throw e;
+            }
+            return value;
+        }
+    }
+
+    private boolean covered(Resolved.CountedLoop loop, int[] frame, int from, int to) {
+        for (var array : loop.arrays()) {
+            if (!heap.covers(arrayHandle(array, frame), from, to)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // an undefined global reads as 0, which is never an array
+    private int arrayHandle(Resolved.Node array, int[] frame) {
+        if (array instanceof Resolved.LocalLoad load) {
+            return frame[load.slot()];
+        }
+        return globals[((Resolved.GlobalLoad) array).slot()];
+    }
+}
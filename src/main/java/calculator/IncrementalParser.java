@@ -0,0 +1,124 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parses successive versions of one script, re-parsing only the top-level
+ * definitions whose text changed since the previous version.
+ *
+ * The source is split wherever {@code define} or {@code global} starts a word
+ * outside any braces, and each chunk is looked up by its text in the chunks of the
+ * previous version. Splitting is a single scan over the characters; only chunks
+ * that were not seen before go through {@link PrattParser}. When a chunk does not
+ * parse as exactly one definition, the whole source is parsed again so that
+ * errors are reported against the full text.
+ */
+public class IncrementalParser {
+    private Map<String, Ast.TopLevel> chunks = new HashMap<>();
+    private int lastParsed;
+    private int lastReused;
+
+    public Ast.Program parse(String source) {
+        var starts = split(source);
+        if (starts == null) {
+            return fullParse(source);
+        }
+        var current = new HashMap<String, Ast.TopLevel>();
+        var definitions = new ArrayList<Ast.TopLevel>(starts.size());
+        int parsed = 0;
+        for (int i = 0; i < starts.size(); i++) {
+            int start = starts.get(i);
+            int end = i + 1 < starts.size() ? starts.get(i + 1) : source.length();
+            var text = source.substring(start, end);
+            var definition = current.get(text);
+            if (definition == null) {
+                definition = chunks.get(text);
+            }
+            if (definition == null) {
+                Ast.Program program;
+                try {
+                    program = PrattParser.parseProgram(text);
+                } catch (LanguageException e) {
+                    return fullParse(source);
+                }
+                if (program.definitions().size() != 1) {
+                    return fullParse(source);
+                }
+                definition = program.definitions().get(0);
+                parsed++;
+            }
+            current.put(text, definition);
+            definitions.add(definition);
+        }
+        chunks = current;
+        lastParsed = parsed;
+        lastReused = starts.size() - parsed;
+        return new Ast.Program(definitions);
+    }
+
+    // number of definitions parsed and reused by the last call to parse
+    public int lastParsed() {
+        return lastParsed;
+    }
+
+    public int lastReused() {
+        return lastReused;
+    }
+
+    private Ast.Program fullParse(String source) {
+        var program = PrattParser.parseProgram(source);
+        chunks = new HashMap<>();
+        lastParsed = program.definitions().size();
+        lastReused = 0;
+        return program;
+    }
+
+    // offsets of the top-level keywords, or null when anything but spacing precedes the first one
+    private static ArrayList<Integer> split(String source) {
+        var starts = new ArrayList<Integer>();
+        int depth = 0;
+        int length = source.length();
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+            if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/') {
+                while (i < length && source.charAt(i) != '\n' && source.charAt(i) != '\r') {
+                    i++;
+                }
+                continue;
+            }
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+            } else if (isIdentifierPart(c)) {
+                int end = i;
+                while (end < length && isIdentifierPart(source.charAt(end))) {
+                    end++;
+                }
+                if (depth == 0 && isTopLevelKeyword(source, i, end)) {
+                    starts.add(i);
+                } else if (starts.isEmpty()) {
+                    return null;
+                }
+                i = end;
+                continue;
+            } else if (starts.isEmpty() && !Character.isWhitespace(c)) {
+                return null;
+            }
+            i++;
+        }
+        return starts.isEmpty() ? null : starts;
+    }
+
+    private static boolean isTopLevelKeyword(String source, int start, int end) {
+        return source.startsWith("define", start) && end - start == 6
+                || source.startsWith("global", start) && end - start == 6;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || (c >= '0' && c <= '9');
+    }
+}
@@ -1,152 +1,151 @@
 package calculator;
 
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
 
+/**
+ * Runs a program statement by statement or from {@link #callMain}. The interpreter
+ * holds what the program has declared so far, its function definitions and the
+ * resolver that numbers their globals, and evaluates in one
+ * {@link ExecutionContext} that keeps the state of the run. A whole program is
+ * rewritten by the {@link Optimizer} before it runs; single statements are not.
+ */
 public class Interpreter {
-    public Ast.Environment variableEnvironment;
     public final Map<String, Ast.FunctionDefinition> functionEnvironment;
+    private final Resolver resolver;
+    private final Map<Ast.FunctionDefinition, Resolved.Function> resolvedFunctions;
+    private final MemoCache memo;
+    private final ExecutionContext context;
     public Interpreter() {
-        this.variableEnvironment = newEnvironment(Optional.empty());
-        this.functionEnvironment = new HashMap<>();
+        this(0);
     }
 
-    private static Ast.Environment newEnvironment(Optional<Ast.Environment> next) {
-        return new Ast.Environment(new HashMap<>(), next);
+    // with a positive capacity, results of pure functions are cached
+    public Interpreter(int memoCapacity) {
+        this(memoCapacity, null);
+    }
+
+    // a non-null profiler records every call and loop iteration
+    public Interpreter(int memoCapacity, Profiler profiler) {
+        this(memoCapacity, profiler, OutputSink.standardOutput());
+    }
+
+    public Interpreter(int memoCapacity, Profiler profiler, OutputSink output) {
+        this(new HashMap<>(), memoCapacity, profiler, output, null, null);
+    }
+
+    // a non-null tiering moves hot functions and loops to optimized code, see Tiering, and a
+    // non-null budget meters loop iterations and calls in either tier, see ExecutionBudget
+    public Interpreter(
+            int memoCapacity,
+            Profiler profiler,
+            OutputSink output,
+            Tiering tiering,
+            ExecutionBudget budget
+    ) {
+        this(new HashMap<>(), memoCapacity, profiler, output, tiering, budget);
+    }
+
+    // lets a loader supply function definitions on demand instead of all up front
+    Interpreter(
+            Map<String, Ast.FunctionDefinition> functionEnvironment,
+            int memoCapacity,
+            Profiler profiler,
+            OutputSink output
+    ) {
+        this(functionEnvironment, memoCapacity, profiler, output, null, null);
+    }
+
+    private Interpreter(
+            Map<String, Ast.FunctionDefinition> functionEnvironment,
+            int memoCapacity,
+            Profiler profiler,
+            OutputSink output,
+            Tiering tiering,
+            ExecutionBudget budget
+    ) {
+        this.functionEnvironment = functionEnvironment;
+        this.resolver = new Resolver(functionEnvironment::containsKey);
+        this.resolvedFunctions = new IdentityHashMap<>();
+        this.memo = memoCapacity > 0 ? new MemoCache(memoCapacity) : null;
+        this.context = new ExecutionContext(this::resolvedFunction, output, profiler, tiering, budget, memo);
+    }
+
+    // the arrays the statements so far have left alive
+    int arrayCount() {
+        return context.arrayCount();
+    }
+
+    public MemoCache.Statistics memoStatistics() {
+        if (memo == null) {
+            return new MemoCache.Statistics(0, 0, 0, 0, 0);
+        }
+        return memo.statistics();
     }
 
     public Integer getValue(String name) {
-        return variableEnvironment.bindings().get(name);
+        var slot = resolver.findGlobal(name);
+        return slot == null ? null : context.globalValue(slot);
     }
 
     public int interpret(Ast.Expression expression) {
-        if (expression instanceof Ast.BinaryExpression binaryExpression) {
-            var lhs = interpret(binaryExpression.lhs());
-            var rhs = interpret(binaryExpression.rhs());
-            return switch (binaryExpression.operator()) {
-                case ADD -> lhs + rhs;
-                case SUBTRACT -> lhs - rhs;
-                case MULTIPLY -> lhs * rhs;
-                case DIVIDE -> lhs / rhs;
-                case LESS_THAN -> lhs < rhs ? 1 : 0;
-                case LESS_OR_EQUAL -> lhs <= rhs ? 1 : 0;
-                case GREATER_THAN -> lhs > rhs ? 1 : 0;
-                case GREATER_OR_EQUAL -> lhs >= rhs ? 1 : 0;
-                case EQUAL_EQUAL -> lhs == rhs ? 1 : 0;
-                case NOT_EQUAL -> lhs != rhs ? 1 : 0;
-            };
-        } else if (expression instanceof Ast.IntegerLiteral integer) {
-            return integer.value();
-        } else if (expression instanceof Ast.Identifier identifier) {
-            var bindingsOpt = variableEnvironment.findBinding(identifier.name());
-            return bindingsOpt.get().get(identifier.name());
-        } else if (expression instanceof Ast.Assignment assignment) {
-            int value = interpret(assignment.expression());
-            variableEnvironment.bindings().put(assignment.name(), value);
-            return value;
-        } else if (expression instanceof Ast.IfExpression ifExpression) {
-            int condition = interpret(ifExpression.condition());
-            if (condition != 0) {
-                return interpret(ifExpression.thenClause());
-            } else {
-                var elseClauseOpt = ifExpression.elseClause();
-                return elseClauseOpt.map(this::interpret).orElse(1);
-            }
-        } else if (expression instanceof Ast.WhileExpression whileExpression) {
-            while (true) {
-                int condition = interpret(whileExpression.condition());
-                if (condition != 0) {
-                    interpret(whileExpression.body());
-                } else {
-                    break;
-                }
-            }
-            return 1;
-        } else if (expression instanceof Ast.BlockExpression block) {
-            int value = 0;
-            for (var e : block.elements()) {
-                value = interpret(e);
-            }
-            return value;
-        } else if (expression instanceof Ast.FunctionCall functionCall) {
-            var definition = functionEnvironment.get(functionCall.name());
-            if (definition == null) {
-                throw new RuntimeException("Function " + functionCall.name() + " is not found");
-            }
-
-            var actualParams = functionCall.args();
-            var formalParams = definition.args();
-            var body = definition.body();
-            var values = actualParams.stream()
-                    .map(a -> interpret(a))
-                    .collect(Collectors.toUnmodifiableList());
-            var backup = variableEnvironment;
-            variableEnvironment = newEnvironment(Optional.of(variableEnvironment));
-            int i = 0;
-            for (var formalParamName : formalParams) {
-                variableEnvironment.bindings().put(formalParamName, values.get(i));
-                i++;
-            }
-            var result = interpret(body);
-            variableEnvironment = backup;
-            return result;
-        } else if (expression instanceof Ast.LabelledCall labelledCall) {
-            var definition = functionEnvironment.get(labelledCall.name());
-            if (definition == null) {
-                throw new RuntimeException("Function " + labelledCall.name() + "  is not found");
-            }
-            var labels = labelledCall.args();
-            var mapping = new HashMap<String, Ast.Expression>();
-            for (var label : labels) {
-                mapping.put(label.name(), label.parameter());
-            }
-            var formalParams = definition.args();
-            var actualParams = new ArrayList<Ast.Expression>();
-            for (var param : formalParams) {
-                actualParams.add(mapping.get(param));
-            }
+        var node = resolver.resolveTopLevel(expression);
+        context.ensureGlobalCapacity(resolver.globalCount());
+        return context.evaluate(node);
+    }
 
-            var body = definition.body();
-            var values = actualParams.stream()
-                    .map(a -> interpret(a))
-                    .collect(Collectors.toList());
-            var backup = variableEnvironment;
-            variableEnvironment = newEnvironment(Optional.of(variableEnvironment));
-            int i = 0;
-            for (var formalParamName : formalParams) {
-                variableEnvironment.bindings().put(formalParamName, values.get(i));
-                i++;
-            }
-            var result = interpret(body);
-            variableEnvironment = backup;
-            return result;
-        } else {
-            throw new RuntimeException("not reach here");
+    private Resolved.Function resolvedFunction(String name) {
+        var definition = functionEnvironment.get(name);
+        if (definition == null) {
+            throw new RuntimeException("Function " + name + " is not found");
+        }
+        var function = resolvedFunctions.get(definition);
+        if (function == null) {
+            function = resolver.resolveFunction(definition);
+            resolvedFunctions.put(definition, function);
+            context.ensureGlobalCapacity(resolver.globalCount());
         }
+        return function;
     }
 
     public int callMain(Ast.Program program) {
-        var topLevels = program.definitions();
-        for (var topLevel : topLevels) {
-            if (topLevel instanceof Ast.FunctionDefinition functionDefinition) {
-                functionEnvironment.put(functionDefinition.name(), functionDefinition);
-            } else if (topLevel instanceof Ast.GlobalVariableDefinition globalVariableDefinition) {
-                variableEnvironment.bindings().put(
-                        globalVariableDefinition.name(),
-                        interpret(globalVariableDefinition.expression())
-                );
-            } else {
-                throw new RuntimeException("not reach here");
+        try {
+            var topLevels = Optimizer.optimize(program).definitions();
+            for (var topLevel : topLevels) {
+                if (topLevel instanceof Ast.FunctionDefinition functionDefinition) {
+                    functionEnvironment.put(functionDefinition.name(), functionDefinition);
+                } else if (topLevel instanceof Ast.GlobalVariableDefinition globalVariableDefinition) {
+                    interpret(new Ast.Assignment(
+                            globalVariableDefinition.name(),
+                            globalVariableDefinition.expression()
+                    ));
+                } else {
+                    throw new RuntimeException("not reach here");
+                }
             }
+            return runMain();
+        } finally {
+            context.flushOutput();
         }
+    }
+
+    // called when a run ends, however it ends
+    void flushOutput() {
+        context.flushOutput();
+    }
+
+    // runs main once the functions of a program are registered and its globals assigned
+    int runMain() {
         var mainFunction = functionEnvironment.get("main");
-        if (mainFunction != null) {
-            return interpret(mainFunction.body());
-        } else {
+        if (mainFunction == null) {
             throw new LanguageException("This program doesn't have main() function");
         }
+        // calls reachable from main are bound up front, so a missing function fails before main starts
+        var linker = new Linker(name -> functionEnvironment.containsKey(name) ? resolvedFunction(name) : null);
+        var main = linker.link(resolver.resolveTopLevel(mainFunction.body()));
+        context.ensureGlobalCapacity(resolver.globalCount());
+        // main runs in the global scope, so its assignments define globals
+        return context.runMain(mainFunction.name(), main, linker.functions());
     }
 }
@@ -0,0 +1,253 @@
+package calculator;
+
+/**
+ * Tokenizer over a {@code char[]} used by {@link PrattParser}.
+ *
+ * The lexer keeps only the current token: its kind, its offsets and, for
+ * identifiers and integers, its value. Identifiers are interned through a small
+ * symbol table so repeated names share one String and cost no allocation.
+ */
+public class Lexer {
+    public static final int EOF = 0;
+    public static final int IDENT = 1;
+    public static final int INTEGER = 2;
+    public static final int PLUS = 3;
+    public static final int MINUS = 4;
+    public static final int ASTER = 5;
+    public static final int SLASH = 6;
+    public static final int LT = 7;
+    public static final int LT_EQ = 8;
+    public static final int GT = 9;
+    public static final int GT_EQ = 10;
+    public static final int EQEQ = 11;
+    public static final int NOT_EQ = 12;
+    public static final int EQ = 13;
+    public static final int COMMA = 14;
+    public static final int SEMI_COLON = 15;
+    public static final int LPAREN = 16;
+    public static final int RPAREN = 17;
+    public static final int LBRACE = 18;
+    public static final int RBRACE = 19;
+    public static final int LBRACKET = 20;
+    public static final int RBRACKET = 21;
+
+    private final char[] source;
+    private final int offset;
+    private final int limit;
+    private int position;
+    private final SymbolTable symbols = new SymbolTable();
+
+    private int kind;
+    private int start;
+    private int end;
+    private String identifier;
+    private long integer;
+
+    public Lexer(char[] source, int offset, int length) {
+        this.source = source;
+        this.offset = offset;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public int kind() {
+        return kind;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    public String identifier() {
+        return identifier;
+    }
+
+    // the magnitude of an integer token; its sign is applied by the parser
+    public long integer() {
+        return integer;
+    }
+
+    public String text() {
+        return new String(source, start, end - start);
+    }
+
+    // the kind of the token after the current one, without consuming anything
+    public int peek() {
+        int savedPosition = position;
+        int savedKind = kind;
+        int savedStart = start;
+        int savedEnd = end;
+        var savedIdentifier = identifier;
+        long savedInteger = integer;
+        int next = next();
+        position = savedPosition;
+        kind = savedKind;
+        start = savedStart;
+        end = savedEnd;
+        identifier = savedIdentifier;
+        integer = savedInteger;
+        return next;
+    }
+
+    public int next() {
+        skipSpacing();
+        start = position;
+        if (position >= limit) {
+            end = position;
+            return kind = EOF;
+        }
+        char c = source[position++];
+        switch (c) {
+            case '+' -> kind = PLUS;
+            case '-' -> kind = MINUS;
+            case '*' -> kind = ASTER;
+            case '/' -> kind = SLASH;
+            case ',' -> kind = COMMA;
+            case ';' -> kind = SEMI_COLON;
+            case '(' -> kind = LPAREN;
+            case ')' -> kind = RPAREN;
+            case '{' -> kind = LBRACE;
+            case '}' -> kind = RBRACE;
+            case '[' -> kind = LBRACKET;
+            case ']' -> kind = RBRACKET;
+            case '<' -> kind = match('=') ? LT_EQ : LT;
+            case '>' -> kind = match('=') ? GT_EQ : GT;
+            case '=' -> kind = match('=') ? EQEQ : EQ;
+            case '!' -> {
+                if (!match('=')) {
+                    throw error("unexpected character '!'");
+                }
+                kind = NOT_EQ;
+            }
+            default -> {
+                if (isIdentifierStart(c)) {
+                    while (position < limit && isIdentifierPart(source[position])) {
+                        position++;
+                    }
+                    identifier = symbols.intern(source, start, position);
+                    kind = IDENT;
+                } else if (c >= '0' && c <= '9') {
+                    long value = c - '0';
+                    while (position < limit && source[position] >= '0' && source[position] <= '9') {
+                        value = value * 10 + (source[position++] - '0');
+                        if (value > 1L + Integer.MAX_VALUE) {
+                            throw error("integer literal is too large");
+                        }
+                    }
+                    integer = value;
+                    kind = INTEGER;
+                } else {
+                    throw error("unexpected character '" + c + "'");
+                }
+            }
+        }
+        end = position;
+        return kind;
+    }
+
+    private boolean match(char expected) {
+        if (position < limit && source[position] == expected) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipSpacing() {
+        while (position < limit) {
+            char c = source[position];
+            if (Character.isWhitespace(c)) {
+                position++;
+            } else if (c == '/' && position + 1 < limit && source[position + 1] == '/') {
+                while (position < limit && source[position] != '\n' && source[position] != '\r') {
+                    position++;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || (c >= '0' && c <= '9');
+    }
+
+    public LanguageException error(String message) {
+        int line = 1;
+        int column = 1;
+        for (int i = offset; i < start && i < limit; i++) {
+            if (source[i] == '\n') {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+        }
+        return new LanguageException(line + ":" + column + ": " + message);
+    }
+
+    // open addressing table keyed directly by the characters of the source
+    private static final class SymbolTable {
+        private String[] table = new String[64];
+        private int size;
+
+        String intern(char[] chars, int from, int to) {
+            int hash = 0;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + chars[i];
+            }
+            int mask = table.length - 1;
+            int index = hash & mask;
+            while (true) {
+                var symbol = table[index];
+                if (symbol == null) {
+                    symbol = new String(chars, from, to - from);
+                    table[index] = symbol;
+                    if (++size * 2 > table.length) {
+                        grow();
+                    }
+                    return symbol;
+                }
+                if (symbol.hashCode() == hash && matches(symbol, chars, from, to)) {
+                    return symbol;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+
+        private static boolean matches(String symbol, char[] chars, int from, int to) {
+            if (symbol.length() != to - from) {
+                return false;
+            }
+            for (int i = 0; i < symbol.length(); i++) {
+                if (symbol.charAt(i) != chars[from + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void grow() {
+            var old = table;
+            table = new String[old.length * 2];
+            int mask = table.length - 1;
+            for (var symbol : old) {
+                if (symbol != null) {
+                    int index = symbol.hashCode() & mask;
+                    while (table[index] != null) {
+                        index = (index + 1) & mask;
+                    }
+                    table[index] = symbol;
+                }
+            }
+        }
+    }
+}
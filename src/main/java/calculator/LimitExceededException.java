@@ -0,0 +1,22 @@
+package calculator;
+
+// thrown when a run goes over its ExecutionBudget
+public class LimitExceededException extends LanguageException {
+    public enum Limit {
+        FUEL,
+        DEPTH,
+        DEADLINE,
+        CANCELLED
+    }
+
+    private final Limit limit;
+
+    public LimitExceededException(Limit limit, String message) {
+        super(message);
+        this.limit = limit;
+    }
+
+    public Limit limit() {
+        return limit;
+    }
+}
@@ -0,0 +1,148 @@
+package calculator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Binds call sites to the functions they call before anything runs.
+ *
+ * Every {@link Resolved.Call} and {@link Resolved.LabelledCall} reachable from the
+ * linked code becomes a {@link Resolved.DirectCall} holding the index of its
+ * target in {@link #functions()}; labelled arguments are reordered into parameter
+ * order once. Unknown functions, missing arguments and missing labels are reported
+ * here, with the messages the interpreter would use when the call runs. Functions
+ * that cannot be reached are neither looked up nor linked.
+ */
+public class Linker {
+    private final Function<String, Resolved.Function> lookup;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final List<Resolved.Function> functions = new ArrayList<>();
+    private final ArrayDeque<Integer> pending = new ArrayDeque<>();
+
+    // lookup returns null for a function that does not exist
+    public Linker(Function<String, Resolved.Function> lookup) {
+        this.lookup = lookup;
+    }
+
+    // links node and then every function it can reach that is not linked yet
+    public Resolved.Node link(Resolved.Node node) {
+        var linked = rewrite(node);
+        while (!pending.isEmpty()) {
+            int index = pending.poll();
+            var function = functions.get(index);
+            functions.set(index, new Resolved.Function(
+                    function.name(),
+                    function.params(),
+                    function.frameSize(),
+                    rewrite(function.body())
+            ));
+        }
+        return linked;
+    }
+
+    public Resolved.Function[] functions() {
+        return functions.toArray(Resolved.Function[]::new);
+    }
+
+    private int index(String name) {
+        var index = indexes.get(name);
+        if (index == null) {
+            var function = lookup.apply(name);
+            if (function == null) {
+                throw new RuntimeException("Function " + name + " is not found");
+            }
+            index = functions.size();
+            functions.add(function);
+            indexes.put(name, index);
+            pending.add(index);
+        }
+        return index;
+    }
+
+    private Resolved.Node rewrite(Resolved.Node node) {
+        if (node instanceof Resolved.Binary binary) {
+            return new Resolved.Binary(binary.operator(), rewrite(binary.lhs()), rewrite(binary.rhs()));
+        } else if (node instanceof Resolved.LocalStore store) {
+            return new Resolved.LocalStore(store.slot(), rewrite(store.value()));
+        } else if (node instanceof Resolved.GlobalStore store) {
+            return new Resolved.GlobalStore(store.slot(), rewrite(store.value()));
+        } else if (node instanceof Resolved.If ifNode) {
+            return new Resolved.If(
+                    rewrite(ifNode.condition()),
+                    rewrite(ifNode.thenClause()),
+                    rewrite(ifNode.elseClause())
+            );
+        } else if (node instanceof Resolved.While whileNode) {
+            return new Resolved.While(rewrite(whileNode.condition()), rewrite(whileNode.body()));
+        } else if (node instanceof Resolved.Block block) {
+            return new Resolved.Block(rewriteAll(block.elements()));
+        } else if (node instanceof Resolved.Call call) {
+            int index = index(call.name());
+            var params = functions.get(index).params();
+            var args = call.args();
+            if (args.length < params.length) {
+                throw new LanguageException("Function " + call.name() + " expects " + params.length
+                        + " arguments but got " + args.length);
+            }
+            return new Resolved.DirectCall(index, rewriteAll(args));
+        } else if (node instanceof Resolved.LabelledCall labelledCall) {
+            int index = index(labelledCall.name());
+            var params = functions.get(index).params();
+            var ordered = new Resolved.Node[params.length];
+            for (int i = 0; i < params.length; i++) {
+                ordered[i] = rewrite(labelledArgument(labelledCall, params[i]));
+            }
+            return new Resolved.DirectCall(index, ordered);
+        } else if (node instanceof Resolved.Println println) {
+            return new Resolved.Println(rewrite(println.arg()));
+        } else if (node instanceof Resolved.NewArray newArray) {
+            return new Resolved.NewArray(rewriteAll(newArray.elements()));
+        } else if (node instanceof Resolved.Index index) {
+            return new Resolved.Index(rewrite(index.array()), rewrite(index.index()), index.checked());
+        } else if (node instanceof Resolved.IndexStore store) {
+            return new Resolved.IndexStore(
+                    rewrite(store.array()),
+                    rewrite(store.index()),
+                    rewrite(store.value()),
+                    store.checked()
+            );
+        } else if (node instanceof Resolved.ArrayCall call) {
+            return new Resolved.ArrayCall(call.function(), rewriteAll(call.args()));
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            // the index, bound and guard read only variables, so only the bodies can contain calls
+            var checked = rewrite(loop.checked());
+            return new Resolved.CountedLoop(
+                    loop.index(),
+                    loop.bound(),
+                    loop.arrays(),
+                    checked,
+                    loop.unchecked() == loop.checked() ? checked : rewrite(loop.unchecked())
+            );
+        } else {
+            return node;
+        }
+    }
+
+    private Resolved.Node[] rewriteAll(Resolved.Node[] nodes) {
+        var rewritten = new Resolved.Node[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            rewritten[i] = rewrite(nodes[i]);
+        }
+        return rewritten;
+    }
+
+    // the last occurrence of a duplicated label wins
+    private static Resolved.Node labelledArgument(Resolved.LabelledCall labelledCall, String param) {
+        var labels = labelledCall.labels();
+        for (int i = labels.length - 1; i >= 0; i--) {
+            if (labels[i].equals(param)) {
+                return labelledCall.args()[i];
+            }
+        }
+        throw new LanguageException("Label " + param + " is missing in call to " + labelledCall.name());
+    }
+}
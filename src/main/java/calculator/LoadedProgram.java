@@ -0,0 +1,150 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A resolved and linked program that never changes after {@link #load}, so one
+ * instance can be shared by any number of threads. Each run gets its own
+ * {@link ExecutionContext} holding globals and frames.
+ *
+ * Loading links every call reachable from the initializers and main with
+ * {@link Linker}, so calls to unknown functions, missing arguments and missing
+ * labels are reported by {@code load} rather than in the middle of a run. The
+ * program is rewritten by the {@link Optimizer} before it is resolved.
+ */
+public final class LoadedProgram {
+    private final Resolved.Function[] functions;
+    private final List<Resolved.Node> initializers;
+    private final Resolved.Node main;
+    private final Map<String, Integer> globalSlots;
+    private final Map<String, Integer> entries;
+    private final boolean parallel;
+
+    private LoadedProgram(
+            Resolved.Function[] functions,
+            List<Resolved.Node> initializers,
+            Resolved.Node main,
+            Map<String, Integer> globalSlots,
+            Map<String, Integer> entries,
+            boolean parallel
+    ) {
+        this.functions = functions;
+        this.initializers = initializers;
+        this.main = main;
+        this.globalSlots = globalSlots;
+        this.entries = entries;
+        this.parallel = parallel;
+    }
+
+    // entries are functions that are linked as well, to be called through ExecutionContext.call
+    public static LoadedProgram load(Ast.Program program, String... entries) {
+        return load(program, false, true, entries);
+    }
+
+    // independent calls of pure functions run in parallel, see Parallelism
+    public static LoadedProgram loadParallel(Ast.Program program, String... entries) {
+        return load(program, true, true, entries);
+    }
+
+    // without optimize the program runs as written, which only benchmarks comparing the two want
+    static LoadedProgram load(Ast.Program program, boolean parallel, boolean optimize, String... entries) {
+        var resolver = new Resolver();
+        var resolved = resolver.resolveProgram(optimize ? Optimizer.optimize(program) : program);
+        var linker = new Linker(resolved.functions()::get);
+        var initializers = resolved.initializers().stream().map(linker::link).toList();
+        var main = linker.link(resolved.main());
+        var entryIndexes = new HashMap<String, Integer>();
+        for (var name : entries) {
+            var function = resolved.functions().get(name);
+            if (function == null) {
+                throw new RuntimeException("Function " + name + " is not found");
+            }
+            var args = new Resolved.Node[function.params().length];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = new Resolved.LocalLoad(i);
+            }
+            var call = (Resolved.DirectCall) linker.link(new Resolved.Call(name, args));
+            entryIndexes.put(name, call.function());
+        }
+        var functions = linker.functions();
+        if (parallel) {
+            var roots = new ArrayList<>(initializers);
+            roots.add(main);
+            var forked = Parallelism.fork(functions, Purity.pureFunctions(resolved.functions()), roots);
+            int count = initializers.size();
+            initializers = List.copyOf(forked.subList(0, count));
+            main = forked.get(count);
+        }
+        return new LoadedProgram(
+                functions,
+                initializers,
+                main,
+                resolver.globalSlots(),
+                Map.copyOf(entryIndexes),
+                parallel
+        );
+    }
+
+    public ExecutionContext newContext() {
+        return newContext(OutputSink.standardOutput());
+    }
+
+    public ExecutionContext newContext(OutputSink output) {
+        return newContext(output, null);
+    }
+
+    // a non-null budget meters loop iterations and calls of the run, see ExecutionBudget
+    public ExecutionContext newContext(OutputSink output, ExecutionBudget budget) {
+        return new ExecutionContext(this, output, budget);
+    }
+
+    // integers never overflow in this mode, see ExactContext
+    public ExactContext newExactContext() {
+        return newExactContext(OutputSink.standardOutput());
+    }
+
+    public ExactContext newExactContext(OutputSink output) {
+        return new ExactContext(this, output);
+    }
+
+    public int run() {
+        return newContext().run();
+    }
+
+    Resolved.Function function(int index) {
+        return functions[index];
+    }
+
+    // shared by every context, which never writes to it
+    Resolved.Function[] functions() {
+        return functions;
+    }
+
+    List<Resolved.Node> initializers() {
+        return initializers;
+    }
+
+    Resolved.Node main() {
+        return main;
+    }
+
+    // whether the program has Resolved.ForkedBinary nodes
+    boolean isParallel() {
+        return parallel;
+    }
+
+    int globalCount() {
+        return globalSlots.size();
+    }
+
+    Integer entry(String name) {
+        return entries.get(name);
+    }
+
+    Integer globalSlot(String name) {
+        return globalSlots.get(name);
+    }
+}
@@ -0,0 +1,272 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hoists loop-invariant arithmetic out of the loops of a function.
+ *
+ * An expression is invariant in a loop when it is built from literals and locals
+ * the loop never assigns; calls cannot change those, because a function writes
+ * neither its caller's locals nor globals. Such an expression is evaluated once
+ * into a fresh local before the loop and the loop reads that local instead.
+ *
+ * Only expressions that cannot fail are hoisted, so evaluating one before a loop
+ * that then never runs it is unobservable: globals may be undefined and division
+ * may be by zero, so neither is hoisted except division by a non-zero literal.
+ * Main runs in the global scope and has no frame, so its loops are left alone.
+ */
+final class LoopInvariants {
+    private int frameSize;
+
+    private LoopInvariants(int frameSize) {
+        this.frameSize = frameSize;
+    }
+
+    static Resolved.Function hoist(Resolved.Function function) {
+        var hoisting = new LoopInvariants(function.frameSize());
+        var body = hoisting.rewrite(function.body());
+        if (hoisting.frameSize == function.frameSize()) {
+            return function;
+        }
+        return new Resolved.Function(function.name(), function.params(), hoisting.frameSize, body);
+    }
+
+    // inner loops are rewritten first, so their hoisted stores can in turn leave the outer loop
+    private Resolved.Node rewrite(Resolved.Node node) {
+        if (node instanceof Resolved.While whileNode) {
+            return hoistFrom(new Resolved.While(rewrite(whileNode.condition()), rewrite(whileNode.body())));
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            var checked = rewrite(loop.checked());
+            return hoistFrom(new Resolved.CountedLoop(
+                    loop.index(),
+                    loop.bound(),
+                    loop.arrays(),
+                    checked,
+                    loop.unchecked() == loop.checked() ? checked : rewrite(loop.unchecked())
+            ));
+        } else if (node instanceof Resolved.LocalStore store) {
+            return new Resolved.LocalStore(store.slot(), rewrite(store.value()));
+        } else if (node instanceof Resolved.GlobalStore store) {
+            return new Resolved.GlobalStore(store.slot(), rewrite(store.value()));
+        } else if (node instanceof Resolved.Binary binary) {
+            return new Resolved.Binary(binary.operator(), rewrite(binary.lhs()), rewrite(binary.rhs()));
+        } else if (node instanceof Resolved.If ifNode) {
+            return new Resolved.If(
+                    rewrite(ifNode.condition()),
+                    rewrite(ifNode.thenClause()),
+                    rewrite(ifNode.elseClause())
+            );
+        } else if (node instanceof Resolved.Block block) {
+            return new Resolved.Block(rewriteAll(block.elements()));
+        } else if (node instanceof Resolved.Call call) {
+            return new Resolved.Call(call.name(), rewriteAll(call.args()));
+        } else if (node instanceof Resolved.LabelledCall call) {
+            return new Resolved.LabelledCall(call.name(), call.labels(), rewriteAll(call.args()));
+        } else if (node instanceof Resolved.DirectCall call) {
+            return new Resolved.DirectCall(call.function(), rewriteAll(call.args()));
+        } else if (node instanceof Resolved.Println println) {
+            return new Resolved.Println(rewrite(println.arg()));
+        } else if (node instanceof Resolved.NewArray newArray) {
+            return new Resolved.NewArray(rewriteAll(newArray.elements()));
+        } else if (node instanceof Resolved.Index index) {
+            return new Resolved.Index(rewrite(index.array()), rewrite(index.index()), index.checked());
+        } else if (node instanceof Resolved.IndexStore store) {
+            return new Resolved.IndexStore(
+                    rewrite(store.array()),
+                    rewrite(store.index()),
+                    rewrite(store.value()),
+                    store.checked()
+            );
+        } else if (node instanceof Resolved.ArrayCall call) {
+            return new Resolved.ArrayCall(call.function(), rewriteAll(call.args()));
+        } else {
+            return node;
+        }
+    }
+
+    private Resolved.Node[] rewriteAll(Resolved.Node[] nodes) {
+        var rewritten = new Resolved.Node[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            rewritten[i] = rewrite(nodes[i]);
+        }
+        return rewritten;
+    }
+
+    private Resolved.Node hoistFrom(Resolved.Node loop) {
+        var assigned = new HashSet<Integer>();
+        collectStores(loop, assigned);
+        var hoisted = new LinkedHashMap<Resolved.Node, Integer>();
+        Resolved.Node result;
+        if (loop instanceof Resolved.While whileNode) {
+            result = new Resolved.While(
+                    replace(whileNode.condition(), assigned, hoisted),
+                    replace(whileNode.body(), assigned, hoisted)
+            );
+        } else {
+            var counted = (Resolved.CountedLoop) loop;
+            var checked = replace(counted.checked(), assigned, hoisted);
+            result = new Resolved.CountedLoop(
+                    counted.index(),
+                    counted.bound(),
+                    counted.arrays(),
+                    checked,
+                    counted.unchecked() == counted.checked()
+                            ? checked
+                            : replace(counted.unchecked(), assigned, hoisted)
+            );
+        }
+        if (hoisted.isEmpty()) {
+            return loop;
+        }
+        // the block yields the value of the loop, as the loop alone did
+        var elements = new ArrayList<Resolved.Node>();
+        hoisted.forEach((expression, slot) -> elements.add(new Resolved.LocalStore(slot, expression)));
+        elements.add(result);
+        return new Resolved.Block(elements.toArray(Resolved.Node[]::new));
+    }
+
+    // equal invariant expressions share one local, so each is evaluated once
+    private Resolved.Node replace(Resolved.Node node, Set<Integer> assigned, Map<Resolved.Node, Integer> hoisted) {
+        if (node instanceof Resolved.Binary binary && isInvariant(binary, assigned)) {
+            return new Resolved.LocalLoad(hoisted.computeIfAbsent(binary, __ -> frameSize++));
+        } else if (node instanceof Resolved.Binary binary) {
+            return new Resolved.Binary(
+                    binary.operator(),
+                    replace(binary.lhs(), assigned, hoisted),
+                    replace(binary.rhs(), assigned, hoisted)
+            );
+        } else if (node instanceof Resolved.LocalStore store) {
+            return new Resolved.LocalStore(store.slot(), replace(store.value(), assigned, hoisted));
+        } else if (node instanceof Resolved.GlobalStore store) {
+            return new Resolved.GlobalStore(store.slot(), replace(store.value(), assigned, hoisted));
+        } else if (node instanceof Resolved.If ifNode) {
+            return new Resolved.If(
+                    replace(ifNode.condition(), assigned, hoisted),
+                    replace(ifNode.thenClause(), assigned, hoisted),
+                    replace(ifNode.elseClause(), assigned, hoisted)
+            );
+        } else if (node instanceof Resolved.While whileNode) {
+            return new Resolved.While(
+                    replace(whileNode.condition(), assigned, hoisted),
+                    replace(whileNode.body(), assigned, hoisted)
+            );
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            var checked = replace(loop.checked(), assigned, hoisted);
+            return new Resolved.CountedLoop(
+                    loop.index(),
+                    loop.bound(),
+                    loop.arrays(),
+                    checked,
+                    loop.unchecked() == loop.checked() ? checked : replace(loop.unchecked(), assigned, hoisted)
+            );
+        } else if (node instanceof Resolved.Block block) {
+            return new Resolved.Block(replaceAll(block.elements(), assigned, hoisted));
+        } else if (node instanceof Resolved.Call call) {
+            return new Resolved.Call(call.name(), replaceAll(call.args(), assigned, hoisted));
+        } else if (node instanceof Resolved.LabelledCall call) {
+            return new Resolved.LabelledCall(call.name(), call.labels(), replaceAll(call.args(), assigned, hoisted));
+        } else if (node instanceof Resolved.DirectCall call) {
+            return new Resolved.DirectCall(call.function(), replaceAll(call.args(), assigned, hoisted));
+        } else if (node instanceof Resolved.Println println) {
+            return new Resolved.Println(replace(println.arg(), assigned, hoisted));
+        } else if (node instanceof Resolved.NewArray newArray) {
+            return new Resolved.NewArray(replaceAll(newArray.elements(), assigned, hoisted));
+        } else if (node instanceof Resolved.Index index) {
+            return new Resolved.Index(
+                    replace(index.array(), assigned, hoisted),
+                    replace(index.index(), assigned, hoisted),
+                    index.checked()
+            );
+        } else if (node instanceof Resolved.IndexStore store) {
+            return new Resolved.IndexStore(
+                    replace(store.array(), assigned, hoisted),
+                    replace(store.index(), assigned, hoisted),
+                    replace(store.value(), assigned, hoisted),
+                    store.checked()
+            );
+        } else if (node instanceof Resolved.ArrayCall call) {
+            return new Resolved.ArrayCall(call.function(), replaceAll(call.args(), assigned, hoisted));
+        } else {
+            return node;
+        }
+    }
+
+    private Resolved.Node[] replaceAll(Resolved.Node[] nodes, Set<Integer> assigned, Map<Resolved.Node, Integer> hoisted) {
+        var replaced = new Resolved.Node[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            replaced[i] = replace(nodes[i], assigned, hoisted);
+        }
+        return replaced;
+    }
+
+    private static boolean isInvariant(Resolved.Node node, Set<Integer> assigned) {
+        if (node instanceof Resolved.Literal) {
+            return true;
+        } else if (node instanceof Resolved.LocalLoad load) {
+            return !assigned.contains(load.slot());
+        } else if (node instanceof Resolved.Binary binary) {
+            if (binary.operator() == Operator.DIVIDE
+                    && !(binary.rhs() instanceof Resolved.Literal literal && literal.value() != 0)) {
+                return false;
+            }
+            return isInvariant(binary.lhs(), assigned) && isInvariant(binary.rhs(), assigned);
+        }
+        return false;
+    }
+
+    // the local slots a loop assigns, including the variable a counted loop increments
+    private static void collectStores(Resolved.Node node, Set<Integer> assigned) {
+        if (node instanceof Resolved.LocalStore store) {
+            assigned.add(store.slot());
+            collectStores(store.value(), assigned);
+        } else if (node instanceof Resolved.GlobalStore store) {
+            collectStores(store.value(), assigned);
+        } else if (node instanceof Resolved.Binary binary) {
+            collectStores(binary.lhs(), assigned);
+            collectStores(binary.rhs(), assigned);
+        } else if (node instanceof Resolved.If ifNode) {
+            collectStores(ifNode.condition(), assigned);
+            collectStores(ifNode.thenClause(), assigned);
+            collectStores(ifNode.elseClause(), assigned);
+        } else if (node instanceof Resolved.While whileNode) {
+            collectStores(whileNode.condition(), assigned);
+            collectStores(whileNode.body(), assigned);
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            if (loop.index() instanceof Resolved.LocalLoad load) {
+                assigned.add(load.slot());
+            }
+            collectStores(loop.checked(), assigned);
+        } else if (node instanceof Resolved.Block block) {
+            collectAll(block.elements(), assigned);
+        } else if (node instanceof Resolved.Call call) {
+            collectAll(call.args(), assigned);
+        } else if (node instanceof Resolved.LabelledCall call) {
+            collectAll(call.args(), assigned);
+        } else if (node instanceof Resolved.DirectCall call) {
+            collectAll(call.args(), assigned);
+        } else if (node instanceof Resolved.Println println) {
+            collectStores(println.arg(), assigned);
+        } else if (node instanceof Resolved.NewArray newArray) {
+            collectAll(newArray.elements(), assigned);
+        } else if (node instanceof Resolved.Index index) {
+            collectStores(index.array(), assigned);
+            collectStores(index.index(), assigned);
+        } else if (node instanceof Resolved.IndexStore store) {
+            collectStores(store.array(), assigned);
+            collectStores(store.index(), assigned);
+            collectStores(store.value(), assigned);
+        } else if (node instanceof Resolved.ArrayCall call) {
+            collectAll(call.args(), assigned);
+        }
+    }
+
+    private static void collectAll(Resolved.Node[] nodes, Set<Integer> assigned) {
+        for (var node : nodes) {
+            collectStores(node, assigned);
+        }
+    }
+}
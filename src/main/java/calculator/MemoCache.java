@@ -0,0 +1,99 @@
+package calculator;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of pure function results keyed on the function and its int
+ * arguments. Once {@code capacity} entries are held, the least recently used one
+ * is evicted for each new result.
+ */
+public class MemoCache {
+    public record Statistics(long hits, long misses, long evictions, int size, int capacity) {
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Integer> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public MemoCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest) {
+                if (size() > MemoCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // only args[0, count) take part in the key, so a callee frame can be passed as is
+    public Integer get(Object function, int[] args, int count) {
+        var value = entries.get(new Key(function, args, count));
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    // the cache keeps args, so the caller must not modify it afterwards
+    public void put(Object function, int[] args, int count, int value) {
+        entries.put(new Key(function, args, count), value);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public Statistics statistics() {
+        return new Statistics(hits, misses, evictions, entries.size(), capacity);
+    }
+
+    private static final class Key {
+        private final Object function;
+        private final int[] args;
+        private final int count;
+        private final int hash;
+
+        Key(Object function, int[] args, int count) {
+            this.function = function;
+            this.args = args;
+            this.count = count;
+            int h = System.identityHashCode(function);
+            for (int i = 0; i < count; i++) {
+                h = 31 * h + args[i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key other)) {
+                return false;
+            }
+            return function == other.function
+                    && count == other.count
+                    && Arrays.equals(args, 0, count, other.args, 0, count);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
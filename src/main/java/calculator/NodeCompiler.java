@@ -0,0 +1,152 @@
+package calculator;
+
+import java.util.HashMap;
+
+/**
+ * Translates resolved code into {@link Nodes}, choosing the most specific node
+ * class for each operator and operand shape.
+ */
+public class NodeCompiler {
+    public NodeProgram compile(Ast.Program program) {
+        return compile(program, OutputSink.standardOutput());
+    }
+
+    public NodeProgram compile(Ast.Program program, OutputSink output) {
+        var resolver = new Resolver();
+        var resolved = resolver.resolveProgram(program);
+        var functions = new HashMap<String, Nodes.CallTarget>();
+        for (var function : resolved.functions().values()) {
+            functions.put(function.name(), new Nodes.CallTarget(function));
+        }
+        var initializers = resolved.initializers().stream()
+                .map(NodeCompiler::translate)
+                .toArray(Nodes.Node[]::new);
+        var main = translate(resolved.main());
+        var context = new Nodes.Context(resolver.globalCount(), functions, output);
+        return new NodeProgram(context, initializers, main, resolver);
+    }
+
+    public static Nodes.Node translate(Resolved.Node node) {
+        if (node instanceof Resolved.Binary binary) {
+            return binary(binary.operator(), binary.lhs(), binary.rhs());
+        } else if (node instanceof Resolved.Literal literal) {
+            return new Nodes.Literal(literal.value());
+        } else if (node instanceof Resolved.LocalLoad load) {
+            return new Nodes.ReadLocal(load.slot());
+        } else if (node instanceof Resolved.GuardedLoad load) {
+            return new Nodes.ReadGuardedLocal(load.slot(), load.flag(), load.name());
+        } else if (node instanceof Resolved.GlobalLoad load) {
+            return new Nodes.ReadGlobal(load.slot(), load.name());
+        } else if (node instanceof Resolved.LocalStore store) {
+            return new Nodes.WriteLocal(store.slot(), translate(store.value()));
+        } else if (node instanceof Resolved.GlobalStore store) {
+            return new Nodes.WriteGlobal(store.slot(), translate(store.value()));
+        } else if (node instanceof Resolved.If ifNode) {
+            return new Nodes.If(
+                    translate(ifNode.condition()),
+                    translate(ifNode.thenClause()),
+                    translate(ifNode.elseClause())
+            );
+        } else if (node instanceof Resolved.While whileNode) {
+            return new Nodes.While(translate(whileNode.condition()), translate(whileNode.body()));
+        } else if (node instanceof Resolved.Block block) {
+            var elements = block.elements();
+            if (elements.length == 1) {
+                return translate(elements[0]);
+            }
+            return new Nodes.Block(translateAll(elements));
+        } else if (node instanceof Resolved.Call call) {
+            return new Nodes.Call(call.name(), null, translateAll(call.args()));
+        } else if (node instanceof Resolved.LabelledCall labelledCall) {
+            return new Nodes.Call(labelledCall.name(), labelledCall.labels(), translateAll(labelledCall.args()));
+        } else if (node instanceof Resolved.DirectCall call) {
+            return new Nodes.DirectCall(call.function(), translateAll(call.args()));
+        } else if (node instanceof Resolved.Println println) {
+            return new Nodes.Println(translate(println.arg()));
+        } else if (node instanceof Resolved.NewArray newArray) {
+            return new Nodes.NewArray(translateAll(newArray.elements()));
+        } else if (node instanceof Resolved.Index index) {
+            var array = translate(index.array());
+            var i = translate(index.index());
+            return index.checked() ? new Nodes.ReadElement(array, i) : new Nodes.ReadElementUnchecked(array, i);
+        } else if (node instanceof Resolved.IndexStore store) {
+            return new Nodes.WriteElement(
+                    translate(store.array()),
+                    translate(store.index()),
+                    translate(store.value()),
+                    store.checked()
+            );
+        } else if (node instanceof Resolved.ArrayCall call) {
+            var args = call.args();
+            return new Nodes.ArrayCall(call.function(), translate(args[0]), args.length > 1 ? translate(args[1]) : null);
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            var arrays = loop.arrays();
+            var slots = new int[arrays.length];
+            var global = new boolean[arrays.length];
+            for (int i = 0; i < arrays.length; i++) {
+                if (arrays[i] instanceof Resolved.GlobalLoad load) {
+                    slots[i] = load.slot();
+                    global[i] = true;
+                } else {
+                    slots[i] = ((Resolved.LocalLoad) arrays[i]).slot();
+                }
+            }
+            var checked = translate(loop.checked());
+            boolean globalIndex = loop.index() instanceof Resolved.GlobalLoad;
+            return new Nodes.CountedLoop(
+                    translate(loop.index()),
+                    translate(loop.bound()),
+                    globalIndex ? ((Resolved.GlobalLoad) loop.index()).slot() : ((Resolved.LocalLoad) loop.index()).slot(),
+                    globalIndex,
+                    slots,
+                    global,
+                    checked,
+                    loop.unchecked() == loop.checked() ? checked : translate(loop.unchecked())
+            );
+        } else {
+            return new Nodes.Error("not reach here");
+        }
+    }
+
+    private static Nodes.Node[] translateAll(Resolved.Node[] nodes) {
+        var result = new Nodes.Node[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            result[i] = translate(nodes[i]);
+        }
+        return result;
+    }
+
+    private static Nodes.Node binary(Operator operator, Resolved.Node lhs, Resolved.Node rhs) {
+        if (lhs instanceof Resolved.LocalLoad local && rhs instanceof Resolved.Literal literal) {
+            switch (operator) {
+                case ADD:
+                    return new Nodes.AddLocalConstant(local.slot(), literal.value());
+                case SUBTRACT:
+                    return new Nodes.AddLocalConstant(local.slot(), -literal.value());
+                case LESS_THAN:
+                    return new Nodes.LocalLessThanConstant(local.slot(), literal.value());
+                default:
+                    break;
+            }
+        }
+        if (operator == Operator.LESS_THAN
+                && lhs instanceof Resolved.LocalLoad left
+                && rhs instanceof Resolved.LocalLoad right) {
+            return new Nodes.LocalLessThanLocal(left.slot(), right.slot());
+        }
+        var l = translate(lhs);
+        var r = translate(rhs);
+        return switch (operator) {
+            case ADD -> new Nodes.Add(l, r);
+            case SUBTRACT -> new Nodes.Subtract(l, r);
+            case MULTIPLY -> new Nodes.Multiply(l, r);
+            case DIVIDE -> new Nodes.Divide(l, r);
+            case LESS_THAN -> new Nodes.LessThan(l, r);
+            case LESS_OR_EQUAL -> new Nodes.LessOrEqual(l, r);
+            case GREATER_THAN -> new Nodes.GreaterThan(l, r);
+            case GREATER_OR_EQUAL -> new Nodes.GreaterOrEqual(l, r);
+            case EQUAL_EQUAL -> new Nodes.EqualEqual(l, r);
+            case NOT_EQUAL -> new Nodes.NotEqual(l, r);
+        };
+    }
+}
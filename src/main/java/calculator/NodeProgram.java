@@ -0,0 +1,39 @@
+package calculator;
+
+/**
+ * A program translated to {@link Nodes}. Globals persist across runs just like
+ * they do for one {@link Interpreter} instance.
+ */
+public class NodeProgram {
+    private final Nodes.Context context;
+    private final Nodes.Node[] initializers;
+    private final Nodes.Node main;
+    private final Resolver resolver;
+
+    NodeProgram(Nodes.Context context, Nodes.Node[] initializers, Nodes.Node main, Resolver resolver) {
+        this.context = context;
+        this.initializers = initializers;
+        this.main = main;
+        this.resolver = resolver;
+    }
+
+    public int callMain() {
+        var frame = new Nodes.Frame(0, context);
+        try {
+            for (var initializer : initializers) {
+                initializer.execute(frame);
+            }
+            return main.execute(frame);
+        } finally {
+            context.output.flush();
+        }
+    }
+
+    public Integer getValue(String name) {
+        var slot = resolver.findGlobal(name);
+        if (slot == null || !context.definedGlobals[slot]) {
+            return null;
+        }
+        return context.globals[slot];
+    }
+}
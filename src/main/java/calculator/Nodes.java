@@ -0,0 +1,739 @@
+package calculator;
+
+import java.util.Map;
+
+/**
+ * Executable node tree built once from the resolved program by {@link NodeCompiler}.
+ *
+ * Each node knows how to execute itself, so evaluation is a virtual call per node
+ * instead of an instanceof chain. Nodes are specialized per operator and for the
+ * common shapes (a local plus a constant, a comparison feeding a branch), and call
+ * sites cache their resolved target after the first execution.
+ */
+public class Nodes {
+    public static final class Context {
+        final int[] globals;
+        final boolean[] definedGlobals;
+        final Map<String, CallTarget> functions;
+        // the targets of DirectCall nodes, by the index Linker gave them
+        final CallTarget[] linked;
+        final OutputSink output;
+        final ArrayHeap heap;
+        // charged for loop iterations and calls as the interpreter does, when not null
+        final ExecutionBudget budget;
+
+        Context(int globalCount, Map<String, CallTarget> functions, OutputSink output) {
+            this(new int[globalCount], new boolean[globalCount], functions, new CallTarget[0], output, new ArrayHeap(),
+                    null);
+        }
+
+        // shares the state of another engine; used by Tiering to run nodes on an Interpreter's data
+        Context(
+                int[] globals,
+                boolean[] definedGlobals,
+                Map<String, CallTarget> functions,
+                CallTarget[] linked,
+                OutputSink output,
+                ArrayHeap heap,
+                ExecutionBudget budget
+        ) {
+            this.globals = globals;
+            this.definedGlobals = definedGlobals;
+            this.functions = functions;
+            this.linked = linked;
+            this.output = output;
+            this.heap = heap;
+            this.budget = budget;
+        }
+    }
+
+    public static final class Frame {
+        final int[] locals;
+        final Context context;
+
+        Frame(int size, Context context) {
+            this(new int[size], context);
+        }
+
+        Frame(int[] locals, Context context) {
+            this.locals = locals;
+            this.context = context;
+        }
+    }
+
+    // a function whose body is translated on its first call
+    public static final class CallTarget {
+        final Resolved.Function function;
+        final int arity;
+        private Node body;
+
+        CallTarget(Resolved.Function function) {
+            this.function = function;
+            this.arity = function.params().length;
+        }
+
+        Node body() {
+            var node = body;
+            if (node == null) {
+                node = body = NodeCompiler.translate(function.body());
+            }
+            return node;
+        }
+
+        int invoke(Frame frame) {
+            var budget = frame.context.budget;
+            if (budget == null) {
+                return body().execute(frame);
+            }
+            budget.enter();
+            try {
+                return body().execute(frame);
+            } finally {
+                budget.exit();
+            }
+        }
+    }
+
+    public abstract static class Node {
+        public abstract int execute(Frame frame);
+
+        // comparisons override this so that branches never materialize 0 or 1
+        public boolean executeCondition(Frame frame) {
+            return execute(frame) != 0;
+        }
+    }
+
+    public static final class Literal extends Node {
+        private final int value;
+
+        Literal(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            return value;
+        }
+    }
+
+    public static final class ReadLocal extends Node {
+        private final int slot;
+
+        ReadLocal(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            return frame.locals[slot];
+        }
+    }
+
+    public static final class ReadGuardedLocal extends Node {
+        private final int slot;
+        private final int flag;
+        private final String name;
+
+        ReadGuardedLocal(int slot, int flag, String name) {
+            this.slot = slot;
+            this.flag = flag;
+            this.name = name;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            if (frame.locals[flag] == 0) {
+                throw new LanguageException("Variable " + name + " is not defined");
+            }
+            return frame.locals[slot];
+        }
+    }
+
+    public static final class WriteLocal extends Node {
+        private final int slot;
+        private final Node value;
+
+        WriteLocal(int slot, Node value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            int result = value.execute(frame);
+            frame.locals[slot] = result;
+            return result;
+        }
+    }
+
+    public static final class ReadGlobal extends Node {
+        private final int slot;
+        private final String name;
+
+        ReadGlobal(int slot, String name) {
+            this.slot = slot;
+            this.name = name;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            var context = frame.context;
+            if (!context.definedGlobals[slot]) {
+                throw new LanguageException("Variable " + name + " is not defined");
+            }
+            return context.globals[slot];
+        }
+    }
+
+    public static final class WriteGlobal extends Node {
+        private final int slot;
+        private final Node value;
+
+        WriteGlobal(int slot, Node value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            int result = value.execute(frame);
+            var context = frame.context;
+            context.globals[slot] = result;
+            context.definedGlobals[slot] = true;
+            return result;
+        }
+    }
+
+    public abstract static class BinaryNode extends Node {
+        final Node lhs;
+        final Node rhs;
+
+        BinaryNode(Node lhs, Node rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+    }
+
+    public static final class Add extends BinaryNode {
+        Add(Node lhs, Node rhs) {
+            super(lhs, rhs);
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            return lhs.execute(frame) + rhs.execute(frame);
+        }
+    }
+
+    public static final class Subtract extends BinaryNode {
+        Subtract(Node lhs, Node rhs) {
+            super(lhs, rhs);
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            return lhs.execute(frame) - rhs.execute(frame);
+        }
+    }
+
+    public static final class Multiply extends BinaryNode {
+        Multiply(Node lhs, Node rhs) {
+            super(lhs, rhs);
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            return lhs.execute(frame) * rhs.execute(frame);
+        }
+    }
+
+    public static final class Divide extends BinaryNode {
+        Divide(Node lhs, Node rhs) {
+            super(lhs, rhs);
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            return lhs.execute(frame) / rhs.execute(frame);
+        }
+    }
+
+    // local + constant and local - constant, the shape of every loop increment
+    public static final class AddLocalConstant extends Node {
+        private final int slot;
+        private final int constant;
+
+        AddLocalConstant(int slot, int constant) {
+            this.slot = slot;
+            this.constant = constant;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            return frame.locals[slot] + constant;
+        }
+    }
+
+    public abstract static class Comparison extends BinaryNode {
+        Comparison(Node lhs, Node rhs) {
+            super(lhs, rhs);
+        }
+
+        @Override
+        public final int execute(Frame frame) {
+            return executeCondition(frame) ? 1 : 0;
+        }
+    }
+
+    public static final class LessThan extends Comparison {
+        LessThan(Node lhs, Node rhs) {
+            super(lhs, rhs);
+        }
+
+        @Override
+        public boolean executeCondition(Frame frame) {
+            return lhs.execute(frame) < rhs.execute(frame);
+        }
+    }
+
+    public static final class LessOrEqual extends Comparison {
+        LessOrEqual(Node lhs, Node rhs) {
+            super(lhs, rhs);
+        }
+
+        @Override
+        public boolean executeCondition(Frame frame) {
+            return lhs.execute(frame) <= rhs.execute(frame);
+        }
+    }
+
+    public static final class GreaterThan extends Comparison {
+        GreaterThan(Node lhs, Node rhs) {
+            super(lhs, rhs);
+        }
+
+        @Override
+        public boolean executeCondition(Frame frame) {
+            return lhs.execute(frame) > rhs.execute(frame);
+        }
+    }
+
+    public static final class GreaterOrEqual extends Comparison {
+        GreaterOrEqual(Node lhs, Node rhs) {
+            super(lhs, rhs);
+        }
+
+        @Override
+        public boolean executeCondition(Frame frame) {
+            return lhs.execute(frame) >= rhs.execute(frame);
+        }
+    }
+
+    public static final class EqualEqual extends Comparison {
+        EqualEqual(Node lhs, Node rhs) {
+            super(lhs, rhs);
+        }
+
+        @Override
+        public boolean executeCondition(Frame frame) {
+            return lhs.execute(frame) == rhs.execute(frame);
+        }
+    }
+
+    public static final class NotEqual extends Comparison {
+        NotEqual(Node lhs, Node rhs) {
+            super(lhs, rhs);
+        }
+
+        @Override
+        public boolean executeCondition(Frame frame) {
+            return lhs.execute(frame) != rhs.execute(frame);
+        }
+    }
+
+    // local < constant, the condition of loops with a literal bound
+    public static final class LocalLessThanConstant extends Node {
+        private final int slot;
+        private final int constant;
+
+        LocalLessThanConstant(int slot, int constant) {
+            this.slot = slot;
+            this.constant = constant;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            return executeCondition(frame) ? 1 : 0;
+        }
+
+        @Override
+        public boolean executeCondition(Frame frame) {
+            return frame.locals[slot] < constant;
+        }
+    }
+
+    // local < local, the condition of loops bounded by a parameter
+    public static final class LocalLessThanLocal extends Node {
+        private final int lhs;
+        private final int rhs;
+
+        LocalLessThanLocal(int lhs, int rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            return executeCondition(frame) ? 1 : 0;
+        }
+
+        @Override
+        public boolean executeCondition(Frame frame) {
+            var locals = frame.locals;
+            return locals[lhs] < locals[rhs];
+        }
+    }
+
+    public static final class If extends Node {
+        private final Node condition;
+        private final Node thenClause;
+        private final Node elseClause;
+
+        If(Node condition, Node thenClause, Node elseClause) {
+            this.condition = condition;
+            this.thenClause = thenClause;
+            this.elseClause = elseClause;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            if (condition.executeCondition(frame)) {
+                return thenClause.execute(frame);
+            } else {
+                return elseClause.execute(frame);
+            }
+        }
+    }
+
+    public static final class While extends Node {
+        private final Node condition;
+        private final Node body;
+
+        While(Node condition, Node body) {
+            this.condition = condition;
+            this.body = body;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            var budget = frame.context.budget;
+            while (condition.executeCondition(frame)) {
+                if (budget != null) {
+                    budget.charge();
+                }
+                body.execute(frame);
+            }
+            return 1;
+        }
+    }
+
+    public static final class Block extends Node {
+        private final Node[] elements;
+
+        Block(Node[] elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            int value = 0;
+            for (var e : elements) {
+                value = e.execute(frame);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * A call site. It looks its target up by name on the first execution only and
+     * keeps it afterwards; labelled calls also compute their argument order then.
+     */
+    public static final class Call extends Node {
+        private final String name;
+        private final String[] labels;
+        private final Node[] args;
+        private CallTarget target;
+        private Node[] orderedArgs;
+
+        Call(String name, String[] labels, Node[] args) {
+            this.name = name;
+            this.labels = labels;
+            this.args = args;
+        }
+
+        private CallTarget specialize(Context context) {
+            var callTarget = context.functions.get(name);
+            if (callTarget == null) {
+                throw new RuntimeException("Function " + name + " is not found");
+            }
+            var params = callTarget.function.params();
+            if (labels == null) {
+                if (args.length < params.length) {
+                    throw new LanguageException("Function " + name + " expects " + params.length
+                            + " arguments but got " + args.length);
+                }
+                orderedArgs = args;
+            } else {
+                var ordered = new Node[params.length];
+                for (int i = 0; i < params.length; i++) {
+                    ordered[i] = labelledArgument(params[i]);
+                }
+                orderedArgs = ordered;
+            }
+            target = callTarget;
+            return callTarget;
+        }
+
+        private Node labelledArgument(String param) {
+            for (int i = labels.length - 1; i >= 0; i--) {
+                if (labels[i].equals(param)) {
+                    return args[i];
+                }
+            }
+            throw new LanguageException("Label " + param + " is missing in call to " + name);
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            var callTarget = target;
+            if (callTarget == null) {
+                callTarget = specialize(frame.context);
+            }
+            var values = orderedArgs;
+            var calleeFrame = new Frame(callTarget.function.frameSize(), frame.context);
+            var locals = calleeFrame.locals;
+            int arity = callTarget.arity;
+            for (int i = 0; i < values.length; i++) {
+                int value = values[i].execute(frame);
+                if (i < arity) {
+                    locals[i] = value;
+                }
+            }
+            return callTarget.invoke(calleeFrame);
+        }
+    }
+
+    // a call bound by Linker, so its target and arity are known before it runs
+    public static final class DirectCall extends Node {
+        private final int function;
+        private final Node[] args;
+
+        DirectCall(int function, Node[] args) {
+            this.function = function;
+            this.args = args;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            var callTarget = frame.context.linked[function];
+            var calleeFrame = new Frame(callTarget.function.frameSize(), frame.context);
+            var locals = calleeFrame.locals;
+            int arity = callTarget.arity;
+            for (int i = 0; i < args.length; i++) {
+                int value = args[i].execute(frame);
+                if (i < arity) {
+                    locals[i] = value;
+                }
+            }
+            return callTarget.invoke(calleeFrame);
+        }
+    }
+
+    public static final class Println extends Node {
+        private final Node arg;
+
+        Println(Node arg) {
+            this.arg = arg;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            int value = arg.execute(frame);
+            frame.context.output.println(value);
+            return value;
+        }
+    }
+
+    public static final class NewArray extends Node {
+        private final Node[] elements;
+
+        NewArray(Node[] elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            var heap = frame.context.heap;
+            int handle = heap.allocate(elements.length);
+            for (int i = 0; i < elements.length; i++) {
+                heap.initialize(handle, i, elements[i].execute(frame));
+            }
+            return handle;
+        }
+    }
+
+    public static final class ReadElement extends Node {
+        private final Node array;
+        private final Node index;
+
+        ReadElement(Node array, Node index) {
+            this.array = array;
+            this.index = index;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            int handle = array.execute(frame);
+            return frame.context.heap.load(handle, index.execute(frame));
+        }
+    }
+
+    // only created inside the unchecked version of a CountedLoop
+    public static final class ReadElementUnchecked extends Node {
+        private final Node array;
+        private final Node index;
+
+        ReadElementUnchecked(Node array, Node index) {
+            this.array = array;
+            this.index = index;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            int handle = array.execute(frame);
+            return frame.context.heap.loadUnchecked(handle, index.execute(frame));
+        }
+    }
+
+    public static final class WriteElement extends Node {
+        private final Node array;
+        private final Node index;
+        private final Node value;
+        private final boolean checked;
+
+        WriteElement(Node array, Node index, Node value, boolean checked) {
+            this.array = array;
+            this.index = index;
+            this.value = value;
+            this.checked = checked;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            int handle = array.execute(frame);
+            int i = index.execute(frame);
+            int result = value.execute(frame);
+            var heap = frame.context.heap;
+            return checked ? heap.store(handle, i, result) : heap.storeUnchecked(handle, i, result);
+        }
+    }
+
+    public static final class ArrayCall extends Node {
+        private final ArrayFunction function;
+        private final Node first;
+        private final Node second;
+
+        // second is null for the functions that take one argument
+        ArrayCall(ArrayFunction function, Node first, Node second) {
+            this.function = function;
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            int a = first.execute(frame);
+            int b = second == null ? 0 : second.execute(frame);
+            return frame.context.heap.call(function, a, b);
+        }
+    }
+
+    public static final class CountedLoop extends Node {
+        private final Node index;
+        private final Node bound;
+        // the loop variable and every array variable are global slots when their flag is set
+        private final int slot;
+        private final boolean global;
+        private final int[] arraySlots;
+        private final boolean[] globalArrays;
+        private final Node checked;
+        private final Node unchecked;
+
+        CountedLoop(
+                Node index,
+                Node bound,
+                int slot,
+                boolean global,
+                int[] arraySlots,
+                boolean[] globalArrays,
+                Node checked,
+                Node unchecked
+        ) {
+            this.index = index;
+            this.bound = bound;
+            this.slot = slot;
+            this.global = global;
+            this.arraySlots = arraySlots;
+            this.globalArrays = globalArrays;
+            this.checked = checked;
+            this.unchecked = unchecked;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            int from = index.execute(frame);
+            int to = bound.execute(frame);
+            var context = frame.context;
+            var body = covered(frame, from, to) ? unchecked : checked;
+            var budget = context.budget;
+            // the body never assigns the loop variable, so it always holds i
+            for (int i = from; i < to; i++) {
+                if (budget != null) {
+                    budget.charge();
+                }
+                body.execute(frame);
+                if (global) {
+                    context.globals[slot] = i + 1;
+                } else {
+                    frame.locals[slot] = i + 1;
+                }
+            }
+            return 1;
+        }
+
+        private boolean covered(Frame frame, int from, int to) {
+            var context = frame.context;
+            for (int i = 0; i < arraySlots.length; i++) {
+                // an undefined global reads as 0, which is never an array
+                int handle = globalArrays[i] ? context.globals[arraySlots[i]] : frame.locals[arraySlots[i]];
+                if (!context.heap.covers(handle, from, to)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public static final class Error extends Node {
+        private final String message;
+
+        Error(String message) {
+            this.message = message;
+        }
+
+        @Override
+        public int execute(Frame frame) {
+            throw new RuntimeException(message);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package calculator;
+
+/**
+ * Instruction set of the register {@link Vm}. Operands follow the opcode inline in
+ * the code array; {@code r} operands are register numbers relative to the current
+ * frame base.
+ */
+public class Opcodes {
+    // CONST r, value
+    public static final int CONST = 0;
+    // MOVE r, src
+    public static final int MOVE = 1;
+    // LOAD_GLOBAL r, slot, error
+    public static final int LOAD_GLOBAL = 2;
+    // STORE_GLOBAL slot, src
+    public static final int STORE_GLOBAL = 3;
+
+    // <op> r, lhs, rhs
+    public static final int ADD = 4;
+    public static final int SUBTRACT = 5;
+    public static final int MULTIPLY = 6;
+    public static final int DIVIDE = 7;
+    public static final int LESS_THAN = 8;
+    public static final int LESS_OR_EQUAL = 9;
+    public static final int GREATER_THAN = 10;
+    public static final int GREATER_OR_EQUAL = 11;
+    public static final int EQUAL_EQUAL = 12;
+    public static final int NOT_EQUAL = 13;
+    // ADD_IMMEDIATE r, src, value
+    public static final int ADD_IMMEDIATE = 14;
+
+    // JUMP target
+    public static final int JUMP = 15;
+    // JUMP_IF_ZERO src, target
+    public static final int JUMP_IF_ZERO = 16;
+    // JUMP_IF_<cmp> lhs, rhs, target
+    public static final int JUMP_IF_LESS_THAN = 17;
+    public static final int JUMP_IF_LESS_OR_EQUAL = 18;
+    public static final int JUMP_IF_GREATER_THAN = 19;
+    public static final int JUMP_IF_GREATER_OR_EQUAL = 20;
+    public static final int JUMP_IF_EQUAL = 21;
+    public static final int JUMP_IF_NOT_EQUAL = 22;
+
+    // CALL r, function, firstArgument
+    public static final int CALL = 23;
+    // RETURN src
+    public static final int RETURN = 24;
+    // ERROR error
+    public static final int ERROR = 25;
+    // PRINTLN src
+    public static final int PRINTLN = 26;
+
+    // NEW_ARRAY r, length
+    public static final int NEW_ARRAY = 27;
+    // ARRAY_INITIALIZE array, index, src; index is an immediate into a fresh array
+    public static final int ARRAY_INITIALIZE = 28;
+    // ARRAY_LOAD r, array, index
+    public static final int ARRAY_LOAD = 29;
+    public static final int ARRAY_LOAD_UNCHECKED = 30;
+    // ARRAY_STORE array, index, src
+    public static final int ARRAY_STORE = 31;
+    public static final int ARRAY_STORE_UNCHECKED = 32;
+    // ARRAY_CALL r, function, firstArgument; function is an ArrayFunction ordinal
+    public static final int ARRAY_CALL = 33;
+    // PEEK_GLOBAL r, slot; reads a global without the definedness check, undefined reads as 0
+    public static final int PEEK_GLOBAL = 34;
+    // JUMP_UNLESS_COVERS array, from, to, target
+    public static final int JUMP_UNLESS_COVERS = 35;
+
+    public static int of(Operator operator) {
+        return switch (operator) {
+            case ADD -> ADD;
+            case SUBTRACT -> SUBTRACT;
+            case MULTIPLY -> MULTIPLY;
+            case DIVIDE -> DIVIDE;
+            case LESS_THAN -> LESS_THAN;
+            case LESS_OR_EQUAL -> LESS_OR_EQUAL;
+            case GREATER_THAN -> GREATER_THAN;
+            case GREATER_OR_EQUAL -> GREATER_OR_EQUAL;
+            case EQUAL_EQUAL -> EQUAL_EQUAL;
+            case NOT_EQUAL -> NOT_EQUAL;
+        };
+    }
+
+    // the conditional jump taken when the comparison does not hold, or -1 for arithmetic operators
+    public static int jumpUnless(Operator operator) {
+        return switch (operator) {
+            case LESS_THAN -> JUMP_IF_GREATER_OR_EQUAL;
+            case LESS_OR_EQUAL -> JUMP_IF_GREATER_THAN;
+            case GREATER_THAN -> JUMP_IF_LESS_OR_EQUAL;
+            case GREATER_OR_EQUAL -> JUMP_IF_LESS_THAN;
+            case EQUAL_EQUAL -> JUMP_IF_NOT_EQUAL;
+            case NOT_EQUAL -> JUMP_IF_EQUAL;
+            default -> -1;
+        };
+    }
+}
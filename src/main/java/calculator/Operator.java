@@ -14,4 +14,27 @@ public enum Operator {
     public String getName() {
         return name;
     }
+
+    // int semantics: arithmetic wraps around and a comparison yields 1 or 0
+    public int apply(int lhs, int rhs) {
+        return switch (this) {
+            case ADD -> lhs + rhs;
+            case SUBTRACT -> lhs - rhs;
+            case MULTIPLY -> lhs * rhs;
+            case DIVIDE -> {
+                // thrown here rather than by the division, which the JIT replaces with a
+                // preallocated exception without a message once every engine's runs make it hot
+                if (rhs == 0) {
+                    throw new ArithmeticException("/ by zero");
+                }
+                yield lhs / rhs;
+            }
+            case LESS_THAN -> lhs < rhs ? 1 : 0;
+            case LESS_OR_EQUAL -> lhs <= rhs ? 1 : 0;
+            case GREATER_THAN -> lhs > rhs ? 1 : 0;
+            case GREATER_OR_EQUAL -> lhs >= rhs ? 1 : 0;
+            case EQUAL_EQUAL -> lhs == rhs ? 1 : 0;
+            case NOT_EQUAL -> lhs != rhs ? 1 : 0;
+        };
+    }
 }
@@ -0,0 +1,255 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Rewrites an {@link Ast.Program} into an equivalent, cheaper one before it is run.
+ *
+ * Every rewrite keeps the observable behaviour exactly: arithmetic is only folded
+ * when its result fits an int, so that the folded program means the same to the
+ * engines that wrap and to an {@link ExactContext}, which does not; a division by a
+ * constant zero is left in place so that it still throws, and an operand is only dropped or
+ * duplicated when it is a literal or a variable read. A branch or loop that can
+ * never run is kept when it assigns a variable, because that assignment makes the
+ * variable local to its function even though it never runs, or when it calls a
+ * function, because linking reports a call to an unknown function even there.
+ */
+public class Optimizer {
+    public static Ast.Program optimize(Ast.Program program) {
+        var definitions = new ArrayList<Ast.TopLevel>();
+        for (var topLevel : program.definitions()) {
+            if (topLevel instanceof Ast.FunctionDefinition functionDefinition) {
+                definitions.add(new Ast.FunctionDefinition(
+                        functionDefinition.name(),
+                        functionDefinition.args(),
+                        optimize(functionDefinition.body())
+                ));
+            } else if (topLevel instanceof Ast.GlobalVariableDefinition globalVariableDefinition) {
+                definitions.add(new Ast.GlobalVariableDefinition(
+                        globalVariableDefinition.name(),
+                        optimize(globalVariableDefinition.expression())
+                ));
+            } else {
+                throw new RuntimeException("not reach here");
+            }
+        }
+        return new Ast.Program(definitions);
+    }
+
+    public static Ast.Expression optimize(Ast.Expression expression) {
+        if (expression instanceof Ast.BinaryExpression binaryExpression) {
+            return binary(
+                    binaryExpression.operator(),
+                    optimize(binaryExpression.lhs()),
+                    optimize(binaryExpression.rhs())
+            );
+        } else if (expression instanceof Ast.IntegerLiteral || expression instanceof Ast.Identifier) {
+            return expression;
+        } else if (expression instanceof Ast.Assignment assignment) {
+            return new Ast.Assignment(assignment.name(), optimize(assignment.expression()));
+        } else if (expression instanceof Ast.IfExpression ifExpression) {
+            var condition = optimize(ifExpression.condition());
+            if (condition instanceof Ast.IntegerLiteral literal) {
+                if (literal.value() != 0 && ifExpression.elseClause().filter(Optimizer::bindsNames).isEmpty()) {
+                    return optimize(ifExpression.thenClause());
+                }
+                if (literal.value() == 0 && !bindsNames(ifExpression.thenClause())) {
+                    return ifExpression.elseClause()
+                            .map(Optimizer::optimize)
+                            .orElse(new Ast.IntegerLiteral(1));
+                }
+            }
+            return new Ast.IfExpression(
+                    condition,
+                    optimize(ifExpression.thenClause()),
+                    ifExpression.elseClause().map(Optimizer::optimize)
+            );
+        } else if (expression instanceof Ast.WhileExpression whileExpression) {
+            var condition = optimize(whileExpression.condition());
+            if (condition instanceof Ast.IntegerLiteral literal && literal.value() == 0
+                    && !bindsNames(whileExpression.body())) {
+                return new Ast.IntegerLiteral(1);
+            }
+            return new Ast.WhileExpression(condition, optimize(whileExpression.body()));
+        } else if (expression instanceof Ast.BlockExpression block) {
+            return block(block.elements());
+        } else if (expression instanceof Ast.FunctionCall functionCall) {
+            return new Ast.FunctionCall(
+                    functionCall.name(),
+                    functionCall.args().stream().map(Optimizer::optimize).toList()
+            );
+        } else if (expression instanceof Ast.LabelledCall labelledCall) {
+            return new Ast.LabelledCall(
+                    labelledCall.name(),
+                    labelledCall.args().stream()
+                            .map(a -> new Ast.LabelledParameter(a.name(), optimize(a.parameter())))
+                            .toList()
+            );
+        } else if (expression instanceof Ast.Println println) {
+            return new Ast.Println(optimize(println.arg()));
+        } else if (expression instanceof Ast.ArrayLiteral arrayLiteral) {
+            return new Ast.ArrayLiteral(arrayLiteral.elements().stream().map(Optimizer::optimize).toList());
+        } else if (expression instanceof Ast.Index index) {
+            return new Ast.Index(optimize(index.array()), optimize(index.index()));
+        } else if (expression instanceof Ast.IndexAssignment assignment) {
+            return new Ast.IndexAssignment(
+                    optimize(assignment.array()),
+                    optimize(assignment.index()),
+                    optimize(assignment.value())
+            );
+        } else {
+            throw new RuntimeException("not reach here");
+        }
+    }
+
+    // splices nested blocks into their parent; only the last element's value is observable
+    private static Ast.Expression block(List<Ast.Expression> elements) {
+        var flattened = new ArrayList<Ast.Expression>();
+        for (int i = 0; i < elements.size(); i++) {
+            var element = optimize(elements.get(i));
+            boolean last = i == elements.size() - 1;
+            if (element instanceof Ast.BlockExpression inner) {
+                if (inner.elements().isEmpty()) {
+                    if (last) {
+                        flattened.add(new Ast.IntegerLiteral(0));
+                    }
+                } else {
+                    flattened.addAll(inner.elements());
+                }
+            } else if (!last && isPure(element)) {
+                // a literal whose value is discarded does nothing
+                continue;
+            } else {
+                flattened.add(element);
+            }
+        }
+        if (flattened.size() == 1) {
+            return flattened.get(0);
+        }
+        return new Ast.BlockExpression(List.copyOf(flattened));
+    }
+
+    // whether dead code must stay: an assignment binds a variable and a call is bound when linked
+    private static boolean bindsNames(Ast.Expression expression) {
+        if (expression instanceof Ast.Assignment) {
+            return true;
+        } else if (expression instanceof Ast.BinaryExpression binaryExpression) {
+            return bindsNames(binaryExpression.lhs()) || bindsNames(binaryExpression.rhs());
+        } else if (expression instanceof Ast.IfExpression ifExpression) {
+            return bindsNames(ifExpression.condition())
+                    || bindsNames(ifExpression.thenClause())
+                    || ifExpression.elseClause().filter(Optimizer::bindsNames).isPresent();
+        } else if (expression instanceof Ast.WhileExpression whileExpression) {
+            return bindsNames(whileExpression.condition()) || bindsNames(whileExpression.body());
+        } else if (expression instanceof Ast.BlockExpression block) {
+            return block.elements().stream().anyMatch(Optimizer::bindsNames);
+        } else if (expression instanceof Ast.FunctionCall || expression instanceof Ast.LabelledCall) {
+            return true;
+        } else if (expression instanceof Ast.Println println) {
+            return bindsNames(println.arg());
+        } else if (expression instanceof Ast.ArrayLiteral arrayLiteral) {
+            return arrayLiteral.elements().stream().anyMatch(Optimizer::bindsNames);
+        } else if (expression instanceof Ast.Index index) {
+            return bindsNames(index.array()) || bindsNames(index.index());
+        } else if (expression instanceof Ast.IndexAssignment assignment) {
+            // writes an element, not a variable
+            return bindsNames(assignment.array()) || bindsNames(assignment.index()) || bindsNames(assignment.value());
+        }
+        return false;
+    }
+
+    private static boolean isPure(Ast.Expression expression) {
+        return expression instanceof Ast.IntegerLiteral;
+    }
+
+    // reading a variable has no side effect other than possibly failing, which is kept
+    private static boolean isVariable(Ast.Expression expression) {
+        return expression instanceof Ast.Identifier;
+    }
+
+    private static Optional<Integer> constant(Ast.Expression expression) {
+        if (expression instanceof Ast.IntegerLiteral literal) {
+            return Optional.of(literal.value());
+        }
+        return Optional.empty();
+    }
+
+    private static Ast.Expression binary(Operator operator, Ast.Expression lhs, Ast.Expression rhs) {
+        var l = constant(lhs);
+        var r = constant(rhs);
+        if (l.isPresent() && r.isPresent()) {
+            int a = l.get();
+            int b = r.get();
+            // folding 1 / 0 would throw here instead of when the program runs
+            if (!(operator == Operator.DIVIDE && b == 0)) {
+                long exact = switch (operator) {
+                    case ADD -> (long) a + b;
+                    case SUBTRACT -> (long) a - b;
+                    case MULTIPLY -> (long) a * b;
+                    case DIVIDE -> (long) a / b;
+                    default -> operator.apply(a, b);
+                };
+                if (exact == (int) exact) {
+                    return new Ast.IntegerLiteral((int) exact);
+                }
+            }
+        }
+        switch (operator) {
+            case ADD:
+                if (r.isPresent() && r.get() == 0) {
+                    return lhs;
+                }
+                if (l.isPresent() && l.get() == 0) {
+                    return rhs;
+                }
+                break;
+            case SUBTRACT:
+                if (r.isPresent() && r.get() == 0) {
+                    return lhs;
+                }
+                break;
+            case MULTIPLY:
+                if (r.isPresent()) {
+                    var reduced = multiplyByConstant(lhs, r.get());
+                    if (reduced != null) {
+                        return reduced;
+                    }
+                }
+                if (l.isPresent()) {
+                    var reduced = multiplyByConstant(rhs, l.get());
+                    if (reduced != null) {
+                        return reduced;
+                    }
+                }
+                break;
+            case DIVIDE:
+                if (r.isPresent() && r.get() == 1) {
+                    return lhs;
+                }
+                // x / -1 wraps exactly like 0 - x, including for Integer.MIN_VALUE
+                if (r.isPresent() && r.get() == -1) {
+                    return new Ast.BinaryExpression(Operator.SUBTRACT, new Ast.IntegerLiteral(0), lhs);
+                }
+                break;
+            default:
+                break;
+        }
+        return new Ast.BinaryExpression(operator, lhs, rhs);
+    }
+
+    // the Ast has no shift operator, so powers of two are reduced to additions where possible
+    private static Ast.Expression multiplyByConstant(Ast.Expression operand, int constant) {
+        if (constant == 1) {
+            return operand;
+        }
+        if (constant == -1) {
+            return new Ast.BinaryExpression(Operator.SUBTRACT, new Ast.IntegerLiteral(0), operand);
+        }
+        if (constant == 2 && isVariable(operand)) {
+            return new Ast.BinaryExpression(Operator.ADD, operand, operand);
+        }
+        return null;
+    }
+}
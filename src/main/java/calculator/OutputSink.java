@@ -0,0 +1,69 @@
+package calculator;
+
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+
+/**
+ * Where {@code println} writes. Engines call {@link #println(int)} for every
+ * printed value and {@link #flush()} when a run ends, normally or not. Only an
+ * {@link ExactContext} prints values that need {@link #println(BigInteger)}.
+ *
+ * A sink only has to implement {@link #println(CharSequence)}, which writes one
+ * line of text, and {@link #flush()}; the number methods print the decimal form
+ * through it unless a sink has a faster way.
+ */
+public interface OutputSink extends AutoCloseable {
+    enum FlushPolicy {
+        // flush the underlying stream after every line
+        LINE,
+        // flush the underlying stream whenever the buffer fills up
+        SIZE,
+        // flush the underlying stream only when the run ends
+        END
+    }
+
+    void println(CharSequence line);
+
+    default void println(int value) {
+        println(Integer.toString(value));
+    }
+
+    // values outside the int range are printed only by an ExactContext
+    default void println(BigInteger value) {
+        if (value.bitLength() < Integer.SIZE) {
+            println(value.intValue());
+        } else {
+            println(value.toString());
+        }
+    }
+
+    void flush();
+
+    @Override
+    default void close() {
+        flush();
+    }
+
+    // writes to System.out as it is at each line, so it sees a later System.setOut
+    static OutputSink standardOutput() {
+        return BufferedOutputSink.STANDARD_OUTPUT;
+    }
+
+    static OutputSink buffered(OutputStream out, Charset charset, FlushPolicy policy) {
+        return new BufferedOutputSink(out, charset, policy, BufferedOutputSink.DEFAULT_BUFFER_SIZE);
+    }
+
+    static OutputSink buffered(OutputStream out, Charset charset, FlushPolicy policy, int bufferSize) {
+        return new BufferedOutputSink(out, charset, policy, bufferSize);
+    }
+
+    // values are handed to delegate on a background thread in batches; see AsyncOutputSink
+    static OutputSink async(OutputSink delegate) {
+        return new AsyncOutputSink(delegate, AsyncOutputSink.DEFAULT_BATCH_SIZE);
+    }
+
+    static OutputSink async(OutputSink delegate, int batchSize) {
+        return new AsyncOutputSink(delegate, batchSize);
+    }
+}
@@ -0,0 +1,240 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Finds the binary operations of a linked program whose two operands can run at
+ * the same time, and turns them into {@link Resolved.ForkedBinary} nodes.
+ *
+ * Both operands must call a pure function (see {@link Purity}) that is worth a
+ * task: one that loops, recurses or calls such a function. Their arguments may
+ * read variables and call pure functions but assign nothing, so neither operand
+ * can observe the other. How deep forking goes is decided while running, by
+ * {@link #shouldFork()}.
+ */
+final class Parallelism {
+    // queued tasks per worker above which operands run sequentially
+    static final int SURPLUS_THRESHOLD = 2;
+    // with a single worker a task only adds overhead
+    private static final boolean PARALLEL = ForkJoinPool.getCommonPoolParallelism() > 1;
+
+    private final boolean[] pure;
+    private final boolean[] heavy;
+
+    private Parallelism(Resolved.Function[] functions, Set<String> pureNames) {
+        this.pure = new boolean[functions.length];
+        for (int i = 0; i < functions.length; i++) {
+            pure[i] = pureNames.contains(functions[i].name());
+        }
+        this.heavy = heavyFunctions(functions);
+    }
+
+    // rewrites functions in place; the returned nodes are the rewritten roots
+    static List<Resolved.Node> fork(Resolved.Function[] functions, Set<String> pureNames, List<Resolved.Node> roots) {
+        var parallelism = new Parallelism(functions, pureNames);
+        for (int i = 0; i < functions.length; i++) {
+            var function = functions[i];
+            functions[i] = new Resolved.Function(
+                    function.name(),
+                    function.params(),
+                    function.frameSize(),
+                    parallelism.rewrite(function.body())
+            );
+        }
+        var rewritten = new ArrayList<Resolved.Node>();
+        for (var root : roots) {
+            rewritten.add(parallelism.rewrite(root));
+        }
+        return rewritten;
+    }
+
+    // few queued tasks mean idle workers may steal another one; outside a pool it is always 0
+    static boolean shouldFork() {
+        return PARALLEL && ForkJoinTask.getSurplusQueuedTaskCount() <= SURPLUS_THRESHOLD;
+    }
+
+    private Resolved.Node rewrite(Resolved.Node node) {
+        if (node instanceof Resolved.Binary binary) {
+            var lhs = rewrite(binary.lhs());
+            var rhs = rewrite(binary.rhs());
+            if (isForkable(binary.lhs()) && isForkable(binary.rhs())) {
+                return new Resolved.ForkedBinary(binary.operator(), lhs, rhs);
+            }
+            return new Resolved.Binary(binary.operator(), lhs, rhs);
+        } else if (node instanceof Resolved.LocalStore store) {
+            return new Resolved.LocalStore(store.slot(), rewrite(store.value()));
+        } else if (node instanceof Resolved.GlobalStore store) {
+            return new Resolved.GlobalStore(store.slot(), rewrite(store.value()));
+        } else if (node instanceof Resolved.If ifNode) {
+            return new Resolved.If(
+                    rewrite(ifNode.condition()),
+                    rewrite(ifNode.thenClause()),
+                    rewrite(ifNode.elseClause())
+            );
+        } else if (node instanceof Resolved.While whileNode) {
+            return new Resolved.While(rewrite(whileNode.condition()), rewrite(whileNode.body()));
+        } else if (node instanceof Resolved.Block block) {
+            return new Resolved.Block(rewriteAll(block.elements()));
+        } else if (node instanceof Resolved.DirectCall call) {
+            return new Resolved.DirectCall(call.function(), rewriteAll(call.args()));
+        } else if (node instanceof Resolved.Println println) {
+            return new Resolved.Println(rewrite(println.arg()));
+        } else if (node instanceof Resolved.NewArray newArray) {
+            return new Resolved.NewArray(rewriteAll(newArray.elements()));
+        } else if (node instanceof Resolved.Index index) {
+            return new Resolved.Index(rewrite(index.array()), rewrite(index.index()), index.checked());
+        } else if (node instanceof Resolved.IndexStore store) {
+            return new Resolved.IndexStore(
+                    rewrite(store.array()),
+                    rewrite(store.index()),
+                    rewrite(store.value()),
+                    store.checked()
+            );
+        } else if (node instanceof Resolved.ArrayCall call) {
+            return new Resolved.ArrayCall(call.function(), rewriteAll(call.args()));
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            var checked = rewrite(loop.checked());
+            return new Resolved.CountedLoop(
+                    loop.index(),
+                    loop.bound(),
+                    loop.arrays(),
+                    checked,
+                    loop.unchecked() == loop.checked() ? checked : rewrite(loop.unchecked())
+            );
+        } else {
+            return node;
+        }
+    }
+
+    private Resolved.Node[] rewriteAll(Resolved.Node[] nodes) {
+        var rewritten = new Resolved.Node[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            rewritten[i] = rewrite(nodes[i]);
+        }
+        return rewritten;
+    }
+
+    private boolean isForkable(Resolved.Node operand) {
+        return operand instanceof Resolved.DirectCall call
+                && pure[call.function()]
+                && heavy[call.function()]
+                && isIndependent(operand);
+    }
+
+    // reads variables and calls pure functions, but assigns nothing
+    private boolean isIndependent(Resolved.Node node) {
+        if (node instanceof Resolved.Literal
+                || node instanceof Resolved.LocalLoad
+                || node instanceof Resolved.GuardedLoad
+                || node instanceof Resolved.GlobalLoad) {
+            return true;
+        } else if (node instanceof Resolved.Binary binary) {
+            return isIndependent(binary.lhs()) && isIndependent(binary.rhs());
+        } else if (node instanceof Resolved.DirectCall call) {
+            if (!pure[call.function()]) {
+                return false;
+            }
+            for (var arg : call.args()) {
+                if (!isIndependent(arg)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // a function is heavy when it loops, takes part in recursion or calls a heavy function
+    private static boolean[] heavyFunctions(Resolved.Function[] functions) {
+        var callees = new ArrayList<List<Integer>>();
+        var heavy = new boolean[functions.length];
+        for (int i = 0; i < functions.length; i++) {
+            var calls = new ArrayList<Integer>();
+            heavy[i] = scan(functions[i].body(), calls);
+            callees.add(calls);
+        }
+        for (int i = 0; i < functions.length; i++) {
+            if (!heavy[i] && reaches(callees, i, i, new boolean[functions.length])) {
+                heavy[i] = true;
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < functions.length; i++) {
+                if (!heavy[i] && callees.get(i).stream().anyMatch(callee -> heavy[callee])) {
+                    heavy[i] = true;
+                    changed = true;
+                }
+            }
+        }
+        return heavy;
+    }
+
+    private static boolean reaches(List<List<Integer>> callees, int from, int target, boolean[] visited) {
+        for (int callee : callees.get(from)) {
+            if (callee == target) {
+                return true;
+            }
+            if (!visited[callee]) {
+                visited[callee] = true;
+                if (reaches(callees, callee, target, visited)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // collects the functions node calls and tells whether it loops
+    private static boolean scan(Resolved.Node node, List<Integer> calls) {
+        if (node instanceof Resolved.While || node instanceof Resolved.CountedLoop) {
+            children(node).forEach(child -> scan(child, calls));
+            return true;
+        }
+        if (node instanceof Resolved.DirectCall call) {
+            calls.add(call.function());
+        }
+        boolean loops = false;
+        for (var child : children(node)) {
+            loops |= scan(child, calls);
+        }
+        return loops;
+    }
+
+    private static List<Resolved.Node> children(Resolved.Node node) {
+        if (node instanceof Resolved.Binary binary) {
+            return List.of(binary.lhs(), binary.rhs());
+        } else if (node instanceof Resolved.LocalStore store) {
+            return List.of(store.value());
+        } else if (node instanceof Resolved.GlobalStore store) {
+            return List.of(store.value());
+        } else if (node instanceof Resolved.If ifNode) {
+            return List.of(ifNode.condition(), ifNode.thenClause(), ifNode.elseClause());
+        } else if (node instanceof Resolved.While whileNode) {
+            return List.of(whileNode.condition(), whileNode.body());
+        } else if (node instanceof Resolved.Block block) {
+            return List.of(block.elements());
+        } else if (node instanceof Resolved.DirectCall call) {
+            return List.of(call.args());
+        } else if (node instanceof Resolved.Println println) {
+            return List.of(println.arg());
+        } else if (node instanceof Resolved.NewArray newArray) {
+            return List.of(newArray.elements());
+        } else if (node instanceof Resolved.Index index) {
+            return List.of(index.array(), index.index());
+        } else if (node instanceof Resolved.IndexStore store) {
+            return List.of(store.array(), store.index(), store.value());
+        } else if (node instanceof Resolved.ArrayCall call) {
+            return List.of(call.args());
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            return List.of(loop.index(), loop.bound(), loop.checked());
+        } else {
+            return List.of();
+        }
+    }
+}
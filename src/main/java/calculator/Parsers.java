@@ -3,9 +3,14 @@ package calculator;
 import org.javafp.data.IList;
 import org.javafp.data.Unit;
 import org.javafp.parsecj.Combinators;
+import org.javafp.parsecj.ConsumedT;
 import org.javafp.parsecj.Parser;
+import org.javafp.parsecj.Reply;
+import org.javafp.parsecj.input.Input;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.BinaryOperator;
 
 import static org.javafp.parsecj.Text.*;
@@ -50,172 +55,195 @@ public class Parsers {
 
     public static Parser<Character, Ast.IntegerLiteral> integer = intr.map(Ast::integer).bind(v -> SPACINGS.map(__ -> v));
 
-    // program <- topLevelDefinition*;
-    public static Parser<Character, Program> program() {
-        return SPACINGS.bind(_1 -> topLevelDefinition().many().map(IList::toList).map(Program::new));
-    }
+    // The grammar is built once. Every rule is a reference so that rules can refer to
+    // each other regardless of the order they are defined in below.
+    private static final Parser.Ref<Character, Program> PROGRAM = Parser.ref();
+    private static final Parser.Ref<Character, List<Expression>> LINES = Parser.ref();
+    private static final Parser.Ref<Character, TopLevel> TOP_LEVEL_DEFINITION = Parser.ref();
+    private static final Parser.Ref<Character, FunctionDefinition> FUNCTION_DEFINITION = Parser.ref();
+    private static final Parser.Ref<Character, GlobalVariableDefinition> GLOBAL_VARIABLE_DEFINITION = Parser.ref();
+    private static final Parser.Ref<Character, Expression> LINE = Parser.ref();
+    private static final Parser.Ref<Character, Expression> PRINTLN_LINE = Parser.ref();
+    private static final Parser.Ref<Character, Expression> IF_EXPRESSION = Parser.ref();
+    private static final Parser.Ref<Character, Expression> WHILE_EXPRESSION = Parser.ref();
+    private static final Parser.Ref<Character, Expression> BLOCK_EXPRESSION = Parser.ref();
+    private static final Parser.Ref<Character, Expression> ASSIGNMENT = Parser.ref();
+    private static final Parser.Ref<Character, Expression> INDEX_ASSIGNMENT = Parser.ref();
+    private static final Parser.Ref<Character, Expression> EXPRESSION_LINE = Parser.ref();
+    private static final Parser.Ref<Character, Expression> EXPRESSION = Parser.ref();
+    private static final Parser.Ref<Character, Expression> COMPARATIVE = Parser.ref();
+    private static final Parser.Ref<Character, Expression> ADDITIVE = Parser.ref();
+    private static final Parser.Ref<Character, Expression> MULTITIVE = Parser.ref();
+    private static final Parser.Ref<Character, Expression> PRIMARY = Parser.ref();
+    private static final Parser.Ref<Character, FunctionCall> FUNCTION_CALL = Parser.ref();
+    private static final Parser.Ref<Character, LabelledCall> LABELLED_CALL = Parser.ref();
+    private static final Parser.Ref<Character, Identifier> IDENTIFIER = Parser.ref();
+    private static final Parser.Ref<Character, Expression> ARRAY_LITERAL = Parser.ref();
+    private static final Parser.Ref<Character, Expression> INDEX = Parser.ref();
+    private static final Parser.Ref<Character, Expression> FOR_IN_EXPRESSION = Parser.ref();
 
-    // lines <- line+ EOF;
-    public static Parser<Character, List<Expression>> lines() {
-        return line().many1().bind(s -> Combinators.<Character>eof().map(__ -> s.toList()));
-    }
+    // rule numbers for the packrat memo table
+    private static final int LINE_RULE = 0;
+    private static final int EXPRESSION_RULE = 1;
+    private static final int PRIMARY_RULE = 2;
 
-    // topLevelDefinition <- globalVariableDefinition / functionDefinition;
-    public static Parser<Character, Ast.TopLevel> topLevelDefinition() {
-        return globalVariableDefinition().map(g -> (TopLevel) g).or(functionDefinition().map(f -> (TopLevel) f));
+    private static final ThreadLocal<MemoTable> MEMO = new ThreadLocal<>();
+
+    // the packrat table of one parseMemoized call; lookups counts every memoized rule invocation
+    static final class MemoTable {
+        private final Map<Long, ConsumedT<Character, ?>> entries = new HashMap<>();
+        private long lookups;
+
+        int size() {
+            return entries.size();
+        }
+
+        long lookups() {
+            return lookups;
+        }
     }
 
-    // functionDefinition <-
-    //     "define" identifier
-    //     "(" (identifier ("," identifier)*)? ")"
-    //     blockExpression;
-    public static Parser<Character, FunctionDefinition> functionDefinition() {
+    static {
+        // program <- topLevelDefinition*;
+        PROGRAM.set(SPACINGS.bind(_1 -> TOP_LEVEL_DEFINITION.many().map(IList::toList).map(Program::new)));
+
+        // lines <- line+ EOF;
+        LINES.set(LINE.many1().bind(s -> Combinators.<Character>eof().map(__ -> s.toList())));
+
+        // topLevelDefinition <- globalVariableDefinition / functionDefinition;
+        TOP_LEVEL_DEFINITION.set(GLOBAL_VARIABLE_DEFINITION.map(g -> (TopLevel) g)
+                .or(FUNCTION_DEFINITION.map(f -> (TopLevel) f)));
+
+        // functionDefinition <-
+        //     "define" identifier
+        //     "(" (identifier ("," identifier)*)? ")"
+        //     blockExpression;
         var defName = DEFINE.then(IDENT);
         var defArgs = IDENT.sepBy(COMMA).between(LPAREN, RPAREN);
-        return defName.bind(name ->
+        FUNCTION_DEFINITION.set(defName.bind(name ->
                 defArgs.bind(args ->
-                        blockExpression().map(body -> new FunctionDefinition(name, args.toList(), body))
+                        BLOCK_EXPRESSION.map(body -> new FunctionDefinition(name, args.toList(), body))
                 )
-        );
-    }
+        ));
 
-    // globalVariableDefinition <- "global" identifier "=" expression;
-    public static Parser<Character, GlobalVariableDefinition> globalVariableDefinition() {
+        // globalVariableDefinition <- "global" identifier "=" expression;
         var defGlobal = GLOBAL.then(IDENT);
-        var defInitializer = EQ.then(expression());
-        return defGlobal.bind(name ->
+        var defInitializer = EQ.then(EXPRESSION);
+        GLOBAL_VARIABLE_DEFINITION.set(defGlobal.bind(name ->
                 defInitializer.bind(expression ->
                         SEMI_COLON.map(_1 -> new GlobalVariableDefinition(name, expression))
                 )
-        );
-    }
+        ));
 
-    // line <- println / whileExpression / ifExpression / assignment /expressionLine / blockExpression;
-    public static Parser<Character, Expression> line() {
-        return println().or(whileExpression())
-                .or(ifExpression())
-                .or(assignment())
-                .or(expressionLine())
-                .or(blockExpression())
-                .or(forInExpression());
-    }
+        // line <- println / whileExpression / ifExpression / assignment / indexAssignment / expressionLine / blockExpression;
+        LINE.set(memo(LINE_RULE, PRINTLN_LINE.or(WHILE_EXPRESSION)
+                .or(IF_EXPRESSION)
+                .or(ASSIGNMENT)
+                .or(INDEX_ASSIGNMENT)
+                .or(EXPRESSION_LINE)
+                .or(BLOCK_EXPRESSION)
+                .or(FOR_IN_EXPRESSION)));
 
-    public static Parser<Character, Expression> println() {
-        return PRINTLN.bind(_1 ->
-                expression().between(LPAREN, RPAREN).bind(param ->
+        PRINTLN_LINE.set(PRINTLN.bind(_1 ->
+                EXPRESSION.between(LPAREN, RPAREN).bind(param ->
                         SEMI_COLON.map(_2 -> (Expression) new Println(param))
                 )
-        ).attempt();
-    }
-
-//    public static Parser<Character, Expression> println() {
-//        return PRINTLN.bind(_1 ->
-//                expression().between(LPAREN, RPAREN).bind(paaram ->
-//                        SEMI_COLON.map(_2 -> (Expression) new Println(param))
-//                )
-//        );
-//    }
+        ).attempt());
 
-    public static Parser<Character, Expression> ifExpression() {
-        var condition = IF.then(expression().between(LPAREN, RPAREN));
-        return condition.bind(c ->
-                line().bind(thenCLause ->
-                        ELSE.then(line()).optionalOpt().map(elseClauseOpt ->
+        var ifCondition = IF.then(EXPRESSION.between(LPAREN, RPAREN));
+        var elseClause = ELSE.then(LINE).optionalOpt();
+        IF_EXPRESSION.set(ifCondition.bind(c ->
+                LINE.bind(thenCLause ->
+                        elseClause.map(elseClauseOpt ->
                                 (Expression) new IfExpression(c, thenCLause, elseClauseOpt)
                         )
                 )
-        ).attempt();
-    }
+        ).attempt());
 
-    public static Parser<Character, Expression> whileExpression() {
-        var condition = WHILE.then(expression().between(LPAREN, RPAREN));
-        return condition.bind(c -> line().map(body -> (Expression) new WhileExpression(c, body))).attempt();
-    }
+        var whileCondition = WHILE.then(EXPRESSION.between(LPAREN, RPAREN));
+        WHILE_EXPRESSION.set(whileCondition.bind(c -> LINE.map(body -> (Expression) new WhileExpression(c, body))).attempt());
 
-    public static Parser<Character, Expression> blockExpression() {
-        return LBRACE.bind(__ -> line().many().bind(expressions -> RBRACE.map(___ -> new BlockExpression(expressions.stream().toList()))));
-    }
+        BLOCK_EXPRESSION.set(LBRACE.bind(__ -> LINE.many().bind(expressions -> RBRACE.map(___ -> new BlockExpression(expressions.stream().toList())))));
 
-    public static Parser<Character, Expression> assignment() {
-        return IDENT.bind(name ->
-                EQ.then(expression().bind(e -> SEMI_COLON.map(__ -> (Expression) new Assignment(name, e))))
-        ).attempt();
-    }
+        ASSIGNMENT.set(IDENT.bind(name ->
+                EQ.then(EXPRESSION.bind(e -> SEMI_COLON.map(__ -> (Expression) new Assignment(name, e))))
+        ).attempt());
 
-    public static Parser<Character, Expression> expressionLine() {
-        return expression().bind(e -> SEMI_COLON.map(__ -> e)).attempt();
-    }
+        // indexAssignment <- identifier "[" expression "]" "=" expression ";";
+        INDEX_ASSIGNMENT.set(IDENT.bind(name ->
+                EXPRESSION.between(LBRACKET, RBRACKET).bind(index ->
+                        EQ.then(EXPRESSION.bind(e -> SEMI_COLON.map(__ ->
+                                (Expression) new IndexAssignment(new Identifier(name), index, e))))
+                )
+        ).attempt());
 
-    public static Parser<Character, Expression> expression() {
-        return comparative();
-    }
+        EXPRESSION_LINE.set(EXPRESSION.bind(e -> SEMI_COLON.map(__ -> e)).attempt());
+
+        EXPRESSION.set(memo(EXPRESSION_RULE, COMPARATIVE));
 
-    public static Parser<Character, Expression> comparative() {
         Parser<Character, BinaryOperator<Expression>> lt = LT.attempt().map(op -> Ast::lessThan);
         Parser<Character, BinaryOperator<Expression>> gt = GT.attempt().map(op -> Ast::greaterThan);
         Parser<Character, BinaryOperator<Expression>> lte = LT_EQ.attempt().map(op -> Ast::lessOrEqual);
         Parser<Character, BinaryOperator<Expression>> gte = GT_EQ.attempt().map(op -> Ast::greaterOrEqual);
         Parser<Character, BinaryOperator<Expression>> eq = EQEQ.attempt().map(op -> Ast::equalEqual);
-        Parser<Character, BinaryOperator<Expression>> neq = NOT_EQ.attempt().map(op -> Ast::equalEqual);
-        return additive().chainl1(lte.or(gte).or(neq).or(lt).or(gt).or(eq));
-    }
+        Parser<Character, BinaryOperator<Expression>> neq = NOT_EQ.attempt().map(op -> Ast::notEqual);
+        COMPARATIVE.set(ADDITIVE.chainl1(lte.or(gte).or(neq).or(lt).or(gt).or(eq)));
 
-    public static Parser<Character, Expression> additive() {
         Parser<Character, BinaryOperator<Expression>> add = PLUS.map(op -> Ast::add);
         Parser<Character, BinaryOperator<Expression>> sub = MINUS.map(op -> Ast::subtract);
-        return multitive().chainl1(add.or(sub));
-    }
+        ADDITIVE.set(MULTITIVE.chainl1(add.or(sub)));
 
-    public static Parser<Character, Expression> multitive() {
         Parser<Character, BinaryOperator<Expression>> mul = ASTER.map(op -> Ast::multiply);
         Parser<Character, BinaryOperator<Expression>> div = SLASH.map(op -> Ast::divide);
-        return primary().chainl1(mul.or(div));
-    }
+        MULTITIVE.set(PRIMARY.chainl1(mul.or(div)));
 
-    // primary <- "(" expression ")"
-    //         / integer
-    //         / functionCall
-    //         / labelledCall
-    //         / identifier;
-    public static Parser<Character, Expression> primary() {
-        return LPAREN.bind(_1 -> expression().bind(v -> RPAREN.map(_2 -> v)))
+        // primary <- "(" expression ")"
+        //         / integer
+        //         / functionCall
+        //         / labelledCall
+        //         / arrayLiteral
+        //         / index
+        //         / identifier;
+        PRIMARY.set(memo(PRIMARY_RULE, LPAREN.bind(_1 -> EXPRESSION.bind(v -> RPAREN.map(_2 -> v)))
                 .or(integer)
-                .or(functionCall())
-                .or(labelledCall())
-//                .or(arrayLiteral())
+                .or(FUNCTION_CALL)
+                .or(LABELLED_CALL)
+                .or(ARRAY_LITERAL)
+                .or(INDEX)
 //                .or(boolLiteral())
-                .or(identifier());
-    }
+                .or(IDENTIFIER)));
 
-    public static Parser<Character, FunctionCall> functionCall() {
-        return IDENT.bind(name ->
-                expression().sepBy(COMMA).between(LPAREN, RPAREN).map(params -> new FunctionCall(name, params.toList()))
-        ).attempt();
-    }
+        FUNCTION_CALL.set(IDENT.bind(name ->
+                EXPRESSION.sepBy(COMMA).between(LPAREN, RPAREN).map(params -> new FunctionCall(name, params.toList()))
+        ).attempt());
 
-    // labelledParameter <- identifier "=" expression;
-    public static Parser<Character, LabelledCall> labelledCall() {
-        return IDENT.bind(name ->
+        // labelledParameter <- identifier "=" expression;
+        LABELLED_CALL.set(IDENT.bind(name ->
                 // labelledCall <- identifier
                 IDENT.bind(label ->
-                                EQ.then(expression().map(param -> new LabelledParameter(label, param)))
+                                EQ.then(EXPRESSION.map(param -> new LabelledParameter(label, param)))
                         )
                         .sepBy(COMMA)
                         .between(LBRACKET, RBRACKET)
                         .map(params -> new LabelledCall(name, params.toList()))
-        ).attempt();
-    }
+        ).attempt());
 
-    public static Parser<Character, Identifier> identifier() {
-        return IDENT.map(Identifier::new);
-    }
+        IDENTIFIER.set(IDENT.map(Identifier::new));
 
-    // forInExpression <- "for" "(" ループ変数 "in" 開始値 "to" 終了値 ")" ループ本体;
-    public static Parser<Character, Expression> forInExpression() {
-        return FOR.then(LPAREN.then(IDENT).bind(name ->
-                IN.then(expression()).bind(from ->
-                        TO.then(expression()).bind(to ->
-                                RPAREN.then(line()).map(body ->
+        // arrayLiteral <- "[" (expression ("," expression)*)? "]";
+        ARRAY_LITERAL.set(EXPRESSION.sepBy(COMMA).between(LBRACKET, RBRACKET)
+                .map(elements -> (Expression) new ArrayLiteral(elements.toList())));
+
+        // index <- identifier "[" expression "]"; tried after labelledCall, which also starts with "["
+        INDEX.set(IDENT.bind(name ->
+                EXPRESSION.between(LBRACKET, RBRACKET).map(index -> (Expression) new Index(new Identifier(name), index))
+        ).attempt());
+
+        // forInExpression <- "for" "(" ループ変数 "in" 開始値 "to" 終了値 ")" ループ本体;
+        FOR_IN_EXPRESSION.set(FOR.then(LPAREN.then(IDENT).bind(name ->
+                IN.then(EXPRESSION).bind(from ->
+                        TO.then(EXPRESSION).bind(to ->
+                                RPAREN.then(LINE).map(body ->
                                         (Expression) Block(
                                                 Ast.assignment(name, from),
                                                 While(lessThan(Ast.identifier(name), to),
@@ -228,6 +256,149 @@ public class Parsers {
                                 )
                         )
                 )
-        )).attempt();
+        )).attempt());
+    }
+
+    /**
+     * Packrat memoization: while a {@link #parseMemoized} call is running, the result
+     * of a rule at a given input position is computed once and then replayed, so
+     * backtracking never re-parses the same prefix with the same rule.
+     */
+    private static <A> Parser<Character, A> memo(int rule, Parser<Character, A> parser) {
+        return input -> {
+            var table = MEMO.get();
+            if (table == null) {
+                return parser.apply(input);
+            }
+            table.lookups++;
+            long key = ((long) input.position() << 2) | rule;
+            @SuppressWarnings("unchecked")
+            var cached = (ConsumedT<Character, A>) table.entries.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            var consumed = parser.apply(input);
+            var reply = consumed.getReply();
+            ConsumedT<Character, A> result = consumed.isConsumed()
+                    ? ConsumedT.consumed(() -> reply)
+                    : ConsumedT.empty(reply);
+            table.entries.put(key, result);
+            return result;
+        };
+    }
+
+    public static <A> Reply<Character, A> parseMemoized(Parser<Character, A> parser, Input<Character> input) {
+        return parseMemoized(parser, input, new MemoTable());
+    }
+
+    // fills table, which is left for the caller to inspect
+    static <A> Reply<Character, A> parseMemoized(Parser<Character, A> parser, Input<Character> input, MemoTable table) {
+        var outer = MEMO.get();
+        MEMO.set(table);
+        try {
+            return parser.parse(input);
+        } finally {
+            if (outer == null) {
+                MEMO.remove();
+            } else {
+                MEMO.set(outer);
+            }
+        }
+    }
+
+    public static Parser<Character, Program> program() {
+        return PROGRAM;
+    }
+
+    public static Parser<Character, List<Expression>> lines() {
+        return LINES;
+    }
+
+    public static Parser<Character, Ast.TopLevel> topLevelDefinition() {
+        return TOP_LEVEL_DEFINITION;
+    }
+
+    public static Parser<Character, FunctionDefinition> functionDefinition() {
+        return FUNCTION_DEFINITION;
+    }
+
+    public static Parser<Character, GlobalVariableDefinition> globalVariableDefinition() {
+        return GLOBAL_VARIABLE_DEFINITION;
+    }
+
+    public static Parser<Character, Expression> line() {
+        return LINE;
+    }
+
+    public static Parser<Character, Expression> println() {
+        return PRINTLN_LINE;
+    }
+
+    public static Parser<Character, Expression> ifExpression() {
+        return IF_EXPRESSION;
+    }
+
+    public static Parser<Character, Expression> whileExpression() {
+        return WHILE_EXPRESSION;
+    }
+
+    public static Parser<Character, Expression> blockExpression() {
+        return BLOCK_EXPRESSION;
+    }
+
+    public static Parser<Character, Expression> assignment() {
+        return ASSIGNMENT;
+    }
+
+    public static Parser<Character, Expression> expressionLine() {
+        return EXPRESSION_LINE;
+    }
+
+    public static Parser<Character, Expression> expression() {
+        return EXPRESSION;
+    }
+
+    public static Parser<Character, Expression> comparative() {
+        return COMPARATIVE;
+    }
+
+    public static Parser<Character, Expression> additive() {
+        return ADDITIVE;
+    }
+
+    public static Parser<Character, Expression> multitive() {
+        return MULTITIVE;
+    }
+
+    public static Parser<Character, Expression> primary() {
+        return PRIMARY;
+    }
+
+    public static Parser<Character, FunctionCall> functionCall() {
+        return FUNCTION_CALL;
+    }
+
+    public static Parser<Character, LabelledCall> labelledCall() {
+        return LABELLED_CALL;
+    }
+
+    public static Parser<Character, Identifier> identifier() {
+        return IDENTIFIER;
+    }
+
+    public static Parser<Character, Expression> arrayLiteral() {
+        return ARRAY_LITERAL;
+    }
+
+    public static Parser<Character, Expression> index() {
+        return INDEX;
+    }
+
+    public static Parser<Character, Expression> indexAssignment() {
+        return INDEX_ASSIGNMENT;
+    }
+
+    public static Parser<Character, Expression> forInExpression() {
+        return FOR_IN_EXPRESSION;
     }
 }
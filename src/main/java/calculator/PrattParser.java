@@ -0,0 +1,381 @@
+package calculator;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static calculator.Ast.*;
+import static calculator.Lexer.*;
+
+/**
+ * Hand-written parser for the same grammar as {@link Parsers}, producing the same
+ * {@link Ast}. Statements are parsed by recursive descent with one token of
+ * lookahead and binary operators by precedence climbing, so parsing is linear in
+ * the size of the source and never backtracks.
+ */
+public class PrattParser {
+    private final Lexer lexer;
+
+    public PrattParser(char[] source, int offset, int length) {
+        this.lexer = new Lexer(source, offset, length);
+        lexer.next();
+    }
+
+    public PrattParser(CharSequence source) {
+        this(source.toString().toCharArray(), 0, source.length());
+    }
+
+    public static Program parseProgram(CharSequence source) {
+        return new PrattParser(source).program();
+    }
+
+    public static List<Expression> parseLines(CharSequence source) {
+        return new PrattParser(source).lines();
+    }
+
+    // maps the file and decodes it once into a char buffer
+    public static Program parseFile(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            var chars = StandardCharsets.UTF_8.decode(bytes);
+            return new PrattParser(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining()).program();
+        }
+    }
+
+    // program <- topLevelDefinition* EOF;
+    public Program program() {
+        var definitions = new ArrayList<TopLevel>();
+        while (lexer.kind() != EOF) {
+            definitions.add(topLevelDefinition());
+        }
+        return new Program(definitions);
+    }
+
+    // lines <- line+ EOF;
+    public List<Expression> lines() {
+        var lines = new ArrayList<Expression>();
+        do {
+            lines.add(line());
+        } while (lexer.kind() != EOF);
+        return lines;
+    }
+
+    private void expect(int kind, String what) {
+        if (lexer.kind() != kind) {
+            throw lexer.error("expected " + what + " but found " + describe());
+        }
+        lexer.next();
+    }
+
+    private String identifier() {
+        if (lexer.kind() != IDENT) {
+            throw lexer.error("expected identifier but found " + describe());
+        }
+        var name = lexer.identifier();
+        lexer.next();
+        return name;
+    }
+
+    private void keyword(String keyword) {
+        if (lexer.kind() != IDENT || !lexer.identifier().equals(keyword)) {
+            throw lexer.error("expected " + keyword + " but found " + describe());
+        }
+        lexer.next();
+    }
+
+    private boolean atKeyword(String keyword) {
+        return lexer.kind() == IDENT && lexer.identifier().equals(keyword);
+    }
+
+    private String describe() {
+        return lexer.kind() == EOF ? "end of input" : "'" + lexer.text() + "'";
+    }
+
+    // topLevelDefinition <- globalVariableDefinition / functionDefinition;
+    public TopLevel topLevelDefinition() {
+        if (atKeyword("global")) {
+            lexer.next();
+            var name = identifier();
+            expect(EQ, "'='");
+            var expression = expression();
+            expect(SEMI_COLON, "';'");
+            return new GlobalVariableDefinition(name, expression);
+        }
+        keyword("define");
+        var name = identifier();
+        expect(LPAREN, "'('");
+        var args = new ArrayList<String>();
+        if (lexer.kind() != RPAREN) {
+            args.add(identifier());
+            while (lexer.kind() == COMMA) {
+                lexer.next();
+                args.add(identifier());
+            }
+        }
+        expect(RPAREN, "')'");
+        if (lexer.kind() != LBRACE) {
+            throw lexer.error("expected '{' but found " + describe());
+        }
+        return new FunctionDefinition(name, args, blockExpression());
+    }
+
+    // line <- println / whileExpression / ifExpression / assignment / indexAssignment / expressionLine / blockExpression / forInExpression;
+    public Expression line() {
+        if (lexer.kind() == LBRACE) {
+            return blockExpression();
+        }
+        if (lexer.kind() == IDENT) {
+            var name = lexer.identifier();
+            int following = lexer.peek();
+            if (following == LPAREN) {
+                switch (name) {
+                    case "println":
+                        return println();
+                    case "while":
+                        return whileExpression();
+                    case "if":
+                        return ifExpression();
+                    case "for":
+                        return forInExpression();
+                    default:
+                        break;
+                }
+            } else if (following == EQ) {
+                lexer.next();
+                lexer.next();
+                var expression = expression();
+                expect(SEMI_COLON, "';'");
+                return new Assignment(name, expression);
+            }
+        }
+        var expression = expression();
+        if (expression instanceof Index index && lexer.kind() == EQ) {
+            // indexAssignment <- identifier "[" expression "]" "=" expression ";";
+            lexer.next();
+            var value = expression();
+            expect(SEMI_COLON, "';'");
+            return new IndexAssignment(index.array(), index.index(), value);
+        }
+        expect(SEMI_COLON, "';'");
+        return expression;
+    }
+
+    private Expression println() {
+        lexer.next();
+        expect(LPAREN, "'('");
+        var arg = expression();
+        expect(RPAREN, "')'");
+        expect(SEMI_COLON, "';'");
+        return new Println(arg);
+    }
+
+    private Expression condition() {
+        lexer.next();
+        expect(LPAREN, "'('");
+        var condition = expression();
+        expect(RPAREN, "')'");
+        return condition;
+    }
+
+    private Expression whileExpression() {
+        var condition = condition();
+        return new WhileExpression(condition, line());
+    }
+
+    private Expression ifExpression() {
+        var condition = condition();
+        var thenClause = line();
+        Optional<Expression> elseClause = Optional.empty();
+        if (atKeyword("else")) {
+            lexer.next();
+            elseClause = Optional.of(line());
+        }
+        return new IfExpression(condition, thenClause, elseClause);
+    }
+
+    private Expression blockExpression() {
+        expect(LBRACE, "'{'");
+        var elements = new ArrayList<Expression>();
+        while (lexer.kind() != RBRACE) {
+            if (lexer.kind() == EOF) {
+                throw lexer.error("expected '}' but found end of input");
+            }
+            elements.add(line());
+        }
+        lexer.next();
+        return new BlockExpression(List.copyOf(elements));
+    }
+
+    // forInExpression <- "for" "(" identifier "in" expression "to" expression ")" line;
+    private Expression forInExpression() {
+        lexer.next();
+        expect(LPAREN, "'('");
+        var name = identifier();
+        keyword("in");
+        var from = expression();
+        keyword("to");
+        var to = expression();
+        expect(RPAREN, "')'");
+        var body = line();
+        return Block(
+                assignment(name, from),
+                While(lessThan(Ast.identifier(name), to),
+                        Block(body, assignment(name, add(Ast.identifier(name), integer(1))))
+                )
+        );
+    }
+
+    private static int precedence(int kind) {
+        return switch (kind) {
+            case LT, LT_EQ, GT, GT_EQ, EQEQ, NOT_EQ -> 1;
+            case PLUS, MINUS -> 2;
+            case ASTER, SLASH -> 3;
+            default -> -1;
+        };
+    }
+
+    private static Operator operator(int kind) {
+        return switch (kind) {
+            case PLUS -> Operator.ADD;
+            case MINUS -> Operator.SUBTRACT;
+            case ASTER -> Operator.MULTIPLY;
+            case SLASH -> Operator.DIVIDE;
+            case LT -> Operator.LESS_THAN;
+            case LT_EQ -> Operator.LESS_OR_EQUAL;
+            case GT -> Operator.GREATER_THAN;
+            case GT_EQ -> Operator.GREATER_OR_EQUAL;
+            case EQEQ -> Operator.EQUAL_EQUAL;
+            case NOT_EQ -> Operator.NOT_EQUAL;
+            default -> throw new RuntimeException("not reach here");
+        };
+    }
+
+    public Expression expression() {
+        return expression(1);
+    }
+
+    // every level is left associative, so the right operand binds one level tighter
+    private Expression expression(int minimumPrecedence) {
+        var lhs = primary();
+        while (true) {
+            int kind = lexer.kind();
+            int precedence = precedence(kind);
+            if (precedence < minimumPrecedence) {
+                return lhs;
+            }
+            lexer.next();
+            var rhs = expression(precedence + 1);
+            lhs = new BinaryExpression(operator(kind), lhs, rhs);
+        }
+    }
+
+    // primary <- "(" expression ")" / integer / functionCall / labelledCall / arrayLiteral / index / identifier;
+    private Expression primary() {
+        switch (lexer.kind()) {
+            case LPAREN: {
+                lexer.next();
+                var expression = expression();
+                expect(RPAREN, "')'");
+                return expression;
+            }
+            case INTEGER:
+                return integerLiteral(false);
+            case LBRACKET:
+                return arrayLiteral();
+            case MINUS: {
+                // a sign directly followed by digits is part of the literal
+                int signEnd = lexer.end();
+                if (lexer.peek() == INTEGER) {
+                    lexer.next();
+                    if (lexer.start() == signEnd) {
+                        return integerLiteral(true);
+                    }
+                }
+                throw lexer.error("expected expression but found " + describe());
+            }
+            case IDENT: {
+                var name = lexer.identifier();
+                lexer.next();
+                if (lexer.kind() == LPAREN) {
+                    return functionCall(name);
+                } else if (lexer.kind() == LBRACKET) {
+                    lexer.next();
+                    // a labelled call has no arguments or starts with "label ="
+                    if (lexer.kind() == RBRACKET || (lexer.kind() == IDENT && lexer.peek() == EQ)) {
+                        return labelledCall(name);
+                    }
+                    var index = expression();
+                    expect(RBRACKET, "']'");
+                    return new Index(new Identifier(name), index);
+                }
+                return new Identifier(name);
+            }
+            default:
+                throw lexer.error("expected expression but found " + describe());
+        }
+    }
+
+    private Expression integerLiteral(boolean negative) {
+        long value = negative ? -lexer.integer() : lexer.integer();
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            throw lexer.error("integer literal is out of range");
+        }
+        lexer.next();
+        return new IntegerLiteral((int) value);
+    }
+
+    private Expression functionCall(String name) {
+        lexer.next();
+        var args = new ArrayList<Expression>();
+        if (lexer.kind() != RPAREN) {
+            args.add(expression());
+            while (lexer.kind() == COMMA) {
+                lexer.next();
+                args.add(expression());
+            }
+        }
+        expect(RPAREN, "')'");
+        return new FunctionCall(name, List.copyOf(args));
+    }
+
+    // arrayLiteral <- "[" (expression ("," expression)*)? "]";
+    private Expression arrayLiteral() {
+        lexer.next();
+        var elements = new ArrayList<Expression>();
+        if (lexer.kind() != RBRACKET) {
+            elements.add(expression());
+            while (lexer.kind() == COMMA) {
+                lexer.next();
+                elements.add(expression());
+            }
+        }
+        expect(RBRACKET, "']'");
+        return new ArrayLiteral(List.copyOf(elements));
+    }
+
+    // called with the "[" already consumed
+    private Expression labelledCall(String name) {
+        var args = new ArrayList<LabelledParameter>();
+        if (lexer.kind() != RBRACKET) {
+            args.add(labelledParameter());
+            while (lexer.kind() == COMMA) {
+                lexer.next();
+                args.add(labelledParameter());
+            }
+        }
+        expect(RBRACKET, "']'");
+        return new LabelledCall(name, List.copyOf(args));
+    }
+
+    // labelledParameter <- identifier "=" expression;
+    private LabelledParameter labelledParameter() {
+        var label = identifier();
+        expect(EQ, "'='");
+        return new LabelledParameter(label, expression());
+    }
+}
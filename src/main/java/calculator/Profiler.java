@@ -0,0 +1,205 @@
+package calculator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects per-function statistics from an {@link Interpreter} created with it.
+ *
+ * Time is measured with {@link System#nanoTime()} around every call. Inclusive
+ * time counts only the outermost activation of a recursive function, and
+ * exclusive time leaves out the time spent in callees. Loop iterations outside
+ * any function are recorded under {@link #TOP_LEVEL}.
+ *
+ * Besides {@link #snapshot()}, results are available as JDK Flight Recorder
+ * events: a {@code calculator.FunctionCall} event per call while that event is
+ * enabled in a recording, and a {@code calculator.FunctionProfile} event per
+ * function from {@link #emitEvents()}.
+ */
+public class Profiler {
+    public static final String TOP_LEVEL = "<top level>";
+
+    public record FunctionStatistics(
+            String name,
+            long calls,
+            long inclusiveNanos,
+            long exclusiveNanos,
+            int maxDepth,
+            long loopIterations,
+            long frameAllocations
+    ) {}
+
+    @Name("calculator.FunctionCall")
+    @Label("Function Call")
+    @Category("Calculator")
+    @Description("One call of a script function")
+    public static class FunctionCallEvent extends Event {
+        @Label("Function")
+        String function;
+
+        @Label("Depth")
+        int depth;
+    }
+
+    @Name("calculator.FunctionProfile")
+    @Label("Function Profile")
+    @Category("Calculator")
+    @Description("Accumulated statistics of a script function")
+    public static class FunctionProfileEvent extends Event {
+        @Label("Function")
+        String function;
+
+        @Label("Calls")
+        long calls;
+
+        @Label("Inclusive Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long inclusive;
+
+        @Label("Exclusive Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long exclusive;
+
+        @Label("Max Depth")
+        int maxDepth;
+
+        @Label("Loop Iterations")
+        long loopIterations;
+
+        @Label("Frame Allocations")
+        long frameAllocations;
+    }
+
+    private static final class Record {
+        final String name;
+        long calls;
+        long inclusiveNanos;
+        long exclusiveNanos;
+        int depth;
+        int maxDepth;
+        long loopIterations;
+        long frameAllocations;
+
+        Record(String name) {
+            this.name = name;
+        }
+    }
+
+    private final EventType callEventType = EventType.getEventType(FunctionCallEvent.class);
+    private final Map<String, Record> records = new LinkedHashMap<>();
+
+    // the active calls; index 0 is the top level and is never popped
+    private Record[] active = new Record[64];
+    private long[] starts = new long[64];
+    private long[] childNanos = new long[64];
+    // the call events being timed, or null where the event was disabled at enter
+    private FunctionCallEvent[] events = new FunctionCallEvent[64];
+    private int top;
+
+    public Profiler() {
+        active[0] = record(TOP_LEVEL);
+    }
+
+    private Record record(String name) {
+        return records.computeIfAbsent(name, Record::new);
+    }
+
+    void enter(String name, boolean allocatesFrame) {
+        var record = record(name);
+        record.calls++;
+        if (allocatesFrame) {
+            record.frameAllocations++;
+        }
+        record.maxDepth = Math.max(record.maxDepth, ++record.depth);
+        if (++top == active.length) {
+            active = Arrays.copyOf(active, top * 2);
+            starts = Arrays.copyOf(starts, top * 2);
+            childNanos = Arrays.copyOf(childNanos, top * 2);
+            events = Arrays.copyOf(events, top * 2);
+        }
+        if (callEventType.isEnabled()) {
+            var event = new FunctionCallEvent();
+            event.function = name;
+            event.depth = record.depth;
+            event.begin();
+            events[top] = event;
+        }
+        active[top] = record;
+        childNanos[top] = 0;
+        starts[top] = System.nanoTime();
+    }
+
+    void exit() {
+        long elapsed = System.nanoTime() - starts[top];
+        var record = active[top];
+        record.exclusiveNanos += elapsed - childNanos[top];
+        if (--record.depth == 0) {
+            record.inclusiveNanos += elapsed;
+        }
+        var event = events[top];
+        if (event != null) {
+            event.commit();
+            events[top] = null;
+        }
+        active[top--] = null;
+        childNanos[top] += elapsed;
+    }
+
+    void loopIteration() {
+        active[top].loopIterations++;
+    }
+
+    public Map<String, FunctionStatistics> snapshot() {
+        var snapshot = new LinkedHashMap<String, FunctionStatistics>();
+        for (var record : records.values()) {
+            snapshot.put(record.name, new FunctionStatistics(
+                    record.name,
+                    record.calls,
+                    record.inclusiveNanos,
+                    record.exclusiveNanos,
+                    record.maxDepth,
+                    record.loopIterations,
+                    record.frameAllocations
+            ));
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    public void emitEvents() {
+        for (var statistics : snapshot().values()) {
+            var event = new FunctionProfileEvent();
+            if (!event.isEnabled()) {
+                return;
+            }
+            event.function = statistics.name();
+            event.calls = statistics.calls();
+            event.inclusive = statistics.inclusiveNanos();
+            event.exclusive = statistics.exclusiveNanos();
+            event.maxDepth = statistics.maxDepth();
+            event.loopIterations = statistics.loopIterations();
+            event.frameAllocations = statistics.frameAllocations();
+            event.commit();
+        }
+    }
+
+    public void reset() {
+        for (var record : records.values()) {
+            record.calls = 0;
+            record.inclusiveNanos = 0;
+            record.exclusiveNanos = 0;
+            record.maxDepth = record.depth;
+            record.loopIterations = 0;
+            record.frameAllocations = 0;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Runs independent executions of {@link LoadedProgram}s concurrently, each in a
+ * fresh {@link ExecutionContext}. Nothing is parsed or resolved per execution.
+ *
+ * {@link #create()} uses one virtual thread per execution when the running JDK
+ * has them and a pool with one platform thread per core otherwise.
+ */
+public class ProgramExecutor implements AutoCloseable {
+    private final ExecutorService executor;
+
+    public ProgramExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public static ProgramExecutor create() {
+        return new ProgramExecutor(defaultExecutor());
+    }
+
+    // looked up reflectively so that this still compiles and runs on JDKs without virtual threads
+    private static ExecutorService defaultExecutor() {
+        try {
+            var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    public CompletableFuture<Integer> submit(LoadedProgram program) {
+        return submit(program, ExecutionContext::run);
+    }
+
+    // the budget bounds this execution only; each one needs its own
+    public CompletableFuture<Integer> submit(LoadedProgram program, ExecutionBudget budget) {
+        return submit(program, budget, ExecutionContext::run);
+    }
+
+    // the body gets a fresh context and may run the program and then read its globals
+    public <T> CompletableFuture<T> submit(LoadedProgram program, Function<ExecutionContext, T> body) {
+        return submit(program, null, body);
+    }
+
+    public <T> CompletableFuture<T> submit(
+            LoadedProgram program,
+            ExecutionBudget budget,
+            Function<ExecutionContext, T> body
+    ) {
+        return CompletableFuture.supplyAsync(
+                () -> body.apply(program.newContext(OutputSink.standardOutput(), budget)), executor
+        );
+    }
+
+    public List<Integer> runAll(LoadedProgram program, int count) throws InterruptedException, ExecutionException {
+        var futures = new ArrayList<CompletableFuture<Integer>>(count);
+        for (int i = 0; i < count; i++) {
+            futures.add(submit(program));
+        }
+        var results = new ArrayList<Integer>(count);
+        for (var future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,126 @@
+package calculator;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Decides which functions are pure: their result depends only on their
+ * arguments and calling them has no effect other than possibly failing. Such a
+ * function touches no global, never prints and calls only pure functions.
+ */
+public class Purity {
+    // an unlinked program has no DirectCall nodes; should one turn up, its callee counts as impure
+    public static Set<String> pureFunctions(Map<String, Resolved.Function> functions) {
+        return pureFunctions(functions, index -> null);
+    }
+
+    // the functions a Linker reached, whose DirectCall nodes index into linked
+    public static Set<String> pureFunctions(Resolved.Function[] linked) {
+        var functions = new HashMap<String, Resolved.Function>();
+        for (var function : linked) {
+            functions.put(function.name(), function);
+        }
+        return pureFunctions(functions, index -> linked[index].name());
+    }
+
+    private static Set<String> pureFunctions(Map<String, Resolved.Function> functions, IntFunction<String> linkedName) {
+        var pure = new HashSet<String>();
+        for (var function : functions.values()) {
+            if (isLocal(function.body())) {
+                pure.add(function.name());
+            }
+        }
+        // drop callers of impure functions until nothing changes, so recursion stays pure
+        boolean changed = true;
+        while (changed) {
+            changed = pure.removeIf(name -> !callsOnly(functions.get(name).body(), pure, linkedName));
+        }
+        return pure;
+    }
+
+    private static boolean isLocal(Resolved.Node node) {
+        if (node instanceof Resolved.Literal
+                || node instanceof Resolved.LocalLoad
+                || node instanceof Resolved.GuardedLoad) {
+            return true;
+        } else if (node instanceof Resolved.GlobalLoad
+                || node instanceof Resolved.GlobalStore
+                || node instanceof Resolved.Println) {
+            return false;
+        } else if (node instanceof Resolved.NewArray
+                || node instanceof Resolved.Index
+                || node instanceof Resolved.IndexStore
+                || node instanceof Resolved.ArrayCall) {
+            // array contents can change between calls with the same handles
+            return false;
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            // the arrays a loop guards are indexed by its bodies, which are then not local either
+            return isLocal(loop.index()) && isLocal(loop.bound()) && isLocal(loop.checked());
+        } else if (node instanceof Resolved.LocalStore store) {
+            return isLocal(store.value());
+        } else if (node instanceof Resolved.Binary binary) {
+            return isLocal(binary.lhs()) && isLocal(binary.rhs());
+        } else if (node instanceof Resolved.If ifNode) {
+            return isLocal(ifNode.condition()) && isLocal(ifNode.thenClause()) && isLocal(ifNode.elseClause());
+        } else if (node instanceof Resolved.While whileNode) {
+            return isLocal(whileNode.condition()) && isLocal(whileNode.body());
+        } else if (node instanceof Resolved.Block block) {
+            return allLocal(block.elements());
+        } else if (node instanceof Resolved.Call call) {
+            return allLocal(call.args());
+        } else if (node instanceof Resolved.LabelledCall labelledCall) {
+            return allLocal(labelledCall.args());
+        } else if (node instanceof Resolved.DirectCall call) {
+            return allLocal(call.args());
+        } else {
+            throw new RuntimeException("not reach here");
+        }
+    }
+
+    private static boolean allLocal(Resolved.Node[] nodes) {
+        for (var node : nodes) {
+            if (!isLocal(node)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean callsOnly(Resolved.Node node, Set<String> pure, IntFunction<String> linkedName) {
+        if (node instanceof Resolved.LocalStore store) {
+            return callsOnly(store.value(), pure, linkedName);
+        } else if (node instanceof Resolved.Binary binary) {
+            return callsOnly(binary.lhs(), pure, linkedName) && callsOnly(binary.rhs(), pure, linkedName);
+        } else if (node instanceof Resolved.If ifNode) {
+            return callsOnly(ifNode.condition(), pure, linkedName)
+                    && callsOnly(ifNode.thenClause(), pure, linkedName)
+                    && callsOnly(ifNode.elseClause(), pure, linkedName);
+        } else if (node instanceof Resolved.While whileNode) {
+            return callsOnly(whileNode.condition(), pure, linkedName) && callsOnly(whileNode.body(), pure, linkedName);
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            return callsOnly(loop.checked(), pure, linkedName);
+        } else if (node instanceof Resolved.Block block) {
+            return allCallOnly(block.elements(), pure, linkedName);
+        } else if (node instanceof Resolved.Call call) {
+            return pure.contains(call.name()) && allCallOnly(call.args(), pure, linkedName);
+        } else if (node instanceof Resolved.LabelledCall labelledCall) {
+            return pure.contains(labelledCall.name()) && allCallOnly(labelledCall.args(), pure, linkedName);
+        } else if (node instanceof Resolved.DirectCall call) {
+            return pure.contains(linkedName.apply(call.function())) && allCallOnly(call.args(), pure, linkedName);
+        } else {
+            return true;
+        }
+    }
+
+    private static boolean allCallOnly(Resolved.Node[] nodes, Set<String> pure, IntFunction<String> linkedName) {
+        for (var node : nodes) {
+            if (!callsOnly(node, pure, linkedName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
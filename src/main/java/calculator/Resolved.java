@@ -0,0 +1,62 @@
+package calculator;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Slot-resolved form of {@link Ast}. Every variable reference has already been
+ * bound to a fixed index either in the current function frame or in the global
+ * table, so evaluation never looks names up.
+ */
+public class Resolved {
+    sealed public interface Node permits Literal, LocalLoad, GuardedLoad, LocalStore, GlobalLoad, GlobalStore, Binary, If, While, Block, Call, LabelledCall, DirectCall, Println, NewArray, Index, IndexStore, ArrayCall, CountedLoop, ForkedBinary {}
+
+    public record Literal(int value) implements Node {}
+
+    public record LocalLoad(int slot) implements Node {}
+    // a local that may be read before it is assigned; frame[flag] is nonzero once it has been
+    public record GuardedLoad(int slot, int flag, String name) implements Node {}
+    public record LocalStore(int slot, Node value) implements Node {}
+
+    public record GlobalLoad(int slot, String name) implements Node {}
+    public record GlobalStore(int slot, Node value) implements Node {}
+
+    public record Binary(Operator operator, Node lhs, Node rhs) implements Node {}
+
+    // a missing else clause is resolved to Literal(1), which is what the interpreter used to yield
+    public record If(Node condition, Node thenClause, Node elseClause) implements Node {}
+    public record While(Node condition, Node body) implements Node {}
+    public record Block(Node[] elements) implements Node {}
+
+    public record Call(String name, Node[] args) implements Node {}
+    public record LabelledCall(String name, String[] labels, Node[] args) implements Node {}
+    // a call bound by Linker to a function index; the arguments are already in parameter order
+    public record DirectCall(int function, Node[] args) implements Node {}
+
+    public record Println(Node arg) implements Node {}
+
+    // arrays are int handles into the ArrayHeap of the run
+    public record NewArray(Node[] elements) implements Node {}
+    // an unchecked access is only ever reached after CountedLoop has checked its whole range
+    public record Index(Node array, Node index, boolean checked) implements Node {}
+    public record IndexStore(Node array, Node index, Node value, boolean checked) implements Node {}
+    public record ArrayCall(ArrayFunction function, Node[] args) implements Node {}
+
+    // a for loop recognized by CountedLoops: bound is evaluated once, then while index < bound a body
+    // runs and the loop increments index, a LocalLoad or GlobalLoad the bodies never assign. It yields
+    // 1 like While. unchecked is the body when every array covers [index, bound), otherwise checked,
+    // the original; they are the same node when there are no arrays. arrays are LocalLoad or
+    // GlobalLoad nodes and are read without the definedness check, an undefined global reads as 0
+    // which is never an array.
+    public record CountedLoop(Node index, Node bound, Node[] arrays, Node checked, Node unchecked) implements Node {}
+
+    // a Binary whose operands are independent calls of pure functions, evaluated as fork/join tasks by
+    // ExecutionContext. Only Parallelism creates it, for programs loaded with LoadedProgram.loadParallel.
+    public record ForkedBinary(Operator operator, Node lhs, Node rhs) implements Node {}
+
+    // parameters occupy slots [0, params.length), the remaining locals follow them
+    public record Function(String name, String[] params, int frameSize, Node body) {}
+
+    // initializers assign the globals in definition order; main is resolved in the global scope
+    public record Program(Map<String, Function> functions, List<Node> initializers, Node main) {}
+}
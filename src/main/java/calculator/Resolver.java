@@ -0,0 +1,330 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Binds every variable reference of an {@link Ast} to a frame or global slot.
+ *
+ * Inside a function body a name is local when it is a parameter or the target of
+ * an assignment anywhere in the body; every other name refers to a global.
+ * Top-level statements (and the body of main, which runs in the global scope)
+ * only see globals.
+ *
+ * Reading a local before it is assigned fails like reading an undefined global.
+ * A definite assignment analysis finds the locals for which that can happen; only
+ * those get a flag slot after the other locals, set by every assignment and
+ * checked by {@link Resolved.GuardedLoad}. All other reads stay plain loads.
+ *
+ * A call to the name of an {@link ArrayFunction} is a builtin call unless the
+ * program defines a function with that name, which then takes precedence.
+ *
+ * For loops become {@link Resolved.CountedLoop}s where {@link CountedLoops} can
+ * prove their count, and {@link LoopInvariants} hoists invariant arithmetic out
+ * of the loops of function bodies.
+ */
+public class Resolver {
+    private final Map<String, Integer> globalSlots = new HashMap<>();
+    private Predicate<String> defines;
+    // the flag slots of the locals of the function being resolved that may be read unassigned
+    private Map<String, Integer> guards = Map.of();
+
+    public Resolver() {
+        this(name -> false);
+    }
+
+    // defines tells whether the program has a function of the given name
+    public Resolver(Predicate<String> defines) {
+        this.defines = defines;
+    }
+
+    public Integer findGlobal(String name) {
+        return globalSlots.get(name);
+    }
+
+    public int globalSlot(String name) {
+        return globalSlots.computeIfAbsent(name, __ -> globalSlots.size());
+    }
+
+    public int globalCount() {
+        return globalSlots.size();
+    }
+
+    public Map<String, Integer> globalSlots() {
+        return Map.copyOf(globalSlots);
+    }
+
+    public Resolved.Node resolveTopLevel(Ast.Expression expression) {
+        return resolve(expression, null);
+    }
+
+    public Resolved.Program resolveProgram(Ast.Program program) {
+        var definitions = new LinkedHashMap<String, Ast.FunctionDefinition>();
+        var initializers = new ArrayList<Resolved.Node>();
+        var names = new HashSet<String>();
+        for (var topLevel : program.definitions()) {
+            if (topLevel instanceof Ast.FunctionDefinition functionDefinition) {
+                names.add(functionDefinition.name());
+            }
+        }
+        defines = names::contains;
+        for (var topLevel : program.definitions()) {
+            if (topLevel instanceof Ast.FunctionDefinition functionDefinition) {
+                definitions.put(functionDefinition.name(), functionDefinition);
+            } else if (topLevel instanceof Ast.GlobalVariableDefinition globalVariableDefinition) {
+                initializers.add(resolveTopLevel(new Ast.Assignment(
+                        globalVariableDefinition.name(),
+                        globalVariableDefinition.expression()
+                )));
+            } else {
+                throw new RuntimeException("not reach here");
+            }
+        }
+        var mainFunction = definitions.get("main");
+        if (mainFunction == null) {
+            throw new LanguageException("This program doesn't have main() function");
+        }
+        var functions = new LinkedHashMap<String, Resolved.Function>();
+        for (var definition : definitions.values()) {
+            functions.put(definition.name(), resolveFunction(definition));
+        }
+        return new Resolved.Program(functions, initializers, resolveTopLevel(mainFunction.body()));
+    }
+
+    public Resolved.Function resolveFunction(Ast.FunctionDefinition definition) {
+        var locals = new LinkedHashMap<String, Integer>();
+        for (var param : definition.args()) {
+            locals.putIfAbsent(param, locals.size());
+        }
+        collectAssignments(definition.body(), locals);
+        var unassigned = new HashSet<String>();
+        assign(definition.body(), locals.keySet(), new HashSet<>(definition.args()), unassigned);
+        int frameSize = Math.max(locals.size(), definition.args().size());
+        var flags = new HashMap<String, Integer>();
+        for (var name : locals.keySet()) {
+            if (unassigned.contains(name)) {
+                flags.put(name, frameSize++);
+            }
+        }
+        var enclosing = guards;
+        guards = flags;
+        try {
+            return LoopInvariants.hoist(new Resolved.Function(
+                    definition.name(),
+                    definition.args().toArray(new String[0]),
+                    frameSize,
+                    resolve(definition.body(), locals)
+            ));
+        } finally {
+            guards = enclosing;
+        }
+    }
+
+    // follows evaluation order, adding to assigned the locals that are definitely assigned once
+    // expression has run, and to unassigned the locals it may read before they are
+    private static void assign(
+            Ast.Expression expression,
+            Set<String> locals,
+            Set<String> assigned,
+            Set<String> unassigned
+    ) {
+        if (expression instanceof Ast.BinaryExpression binaryExpression) {
+            assign(binaryExpression.lhs(), locals, assigned, unassigned);
+            assign(binaryExpression.rhs(), locals, assigned, unassigned);
+        } else if (expression instanceof Ast.Identifier identifier) {
+            if (locals.contains(identifier.name()) && !assigned.contains(identifier.name())) {
+                unassigned.add(identifier.name());
+            }
+        } else if (expression instanceof Ast.Assignment assignment) {
+            assign(assignment.expression(), locals, assigned, unassigned);
+            assigned.add(assignment.name());
+        } else if (expression instanceof Ast.IfExpression ifExpression) {
+            assign(ifExpression.condition(), locals, assigned, unassigned);
+            var thenAssigned = new HashSet<>(assigned);
+            assign(ifExpression.thenClause(), locals, thenAssigned, unassigned);
+            var elseAssigned = new HashSet<>(assigned);
+            ifExpression.elseClause().ifPresent(e -> assign(e, locals, elseAssigned, unassigned));
+            thenAssigned.retainAll(elseAssigned);
+            assigned.addAll(thenAssigned);
+        } else if (expression instanceof Ast.WhileExpression whileExpression) {
+            // the body may not run at all, and its first iteration sees what the condition left
+            assign(whileExpression.condition(), locals, assigned, unassigned);
+            assign(whileExpression.body(), locals, new HashSet<>(assigned), unassigned);
+        } else if (expression instanceof Ast.BlockExpression block) {
+            assignAll(block.elements(), locals, assigned, unassigned);
+        } else if (expression instanceof Ast.FunctionCall functionCall) {
+            assignAll(functionCall.args(), locals, assigned, unassigned);
+        } else if (expression instanceof Ast.LabelledCall labelledCall) {
+            // arguments run in parameter order and some may not run, so none counts as assigning
+            for (var a : labelledCall.args()) {
+                assign(a.parameter(), locals, new HashSet<>(assigned), unassigned);
+            }
+        } else if (expression instanceof Ast.Println println) {
+            assign(println.arg(), locals, assigned, unassigned);
+        } else if (expression instanceof Ast.ArrayLiteral arrayLiteral) {
+            assignAll(arrayLiteral.elements(), locals, assigned, unassigned);
+        } else if (expression instanceof Ast.Index index) {
+            assign(index.array(), locals, assigned, unassigned);
+            assign(index.index(), locals, assigned, unassigned);
+        } else if (expression instanceof Ast.IndexAssignment assignment) {
+            assign(assignment.array(), locals, assigned, unassigned);
+            assign(assignment.index(), locals, assigned, unassigned);
+            assign(assignment.value(), locals, assigned, unassigned);
+        }
+    }
+
+    private static void assignAll(
+            List<Ast.Expression> expressions,
+            Set<String> locals,
+            Set<String> assigned,
+            Set<String> unassigned
+    ) {
+        for (var e : expressions) {
+            assign(e, locals, assigned, unassigned);
+        }
+    }
+
+    private static void collectAssignments(Ast.Expression expression, Map<String, Integer> locals) {
+        if (expression instanceof Ast.BinaryExpression binaryExpression) {
+            collectAssignments(binaryExpression.lhs(), locals);
+            collectAssignments(binaryExpression.rhs(), locals);
+        } else if (expression instanceof Ast.Assignment assignment) {
+            collectAssignments(assignment.expression(), locals);
+            locals.putIfAbsent(assignment.name(), locals.size());
+        } else if (expression instanceof Ast.IfExpression ifExpression) {
+            collectAssignments(ifExpression.condition(), locals);
+            collectAssignments(ifExpression.thenClause(), locals);
+            ifExpression.elseClause().ifPresent(e -> collectAssignments(e, locals));
+        } else if (expression instanceof Ast.WhileExpression whileExpression) {
+            collectAssignments(whileExpression.condition(), locals);
+            collectAssignments(whileExpression.body(), locals);
+        } else if (expression instanceof Ast.BlockExpression block) {
+            for (var e : block.elements()) {
+                collectAssignments(e, locals);
+            }
+        } else if (expression instanceof Ast.FunctionCall functionCall) {
+            for (var a : functionCall.args()) {
+                collectAssignments(a, locals);
+            }
+        } else if (expression instanceof Ast.LabelledCall labelledCall) {
+            for (var a : labelledCall.args()) {
+                collectAssignments(a.parameter(), locals);
+            }
+        } else if (expression instanceof Ast.Println println) {
+            collectAssignments(println.arg(), locals);
+        } else if (expression instanceof Ast.ArrayLiteral arrayLiteral) {
+            for (var e : arrayLiteral.elements()) {
+                collectAssignments(e, locals);
+            }
+        } else if (expression instanceof Ast.Index index) {
+            collectAssignments(index.array(), locals);
+            collectAssignments(index.index(), locals);
+        } else if (expression instanceof Ast.IndexAssignment assignment) {
+            // writes an element, not the variable holding the array
+            collectAssignments(assignment.array(), locals);
+            collectAssignments(assignment.index(), locals);
+            collectAssignments(assignment.value(), locals);
+        }
+    }
+
+    private Resolved.Node[] resolveAll(List<Ast.Expression> expressions, Map<String, Integer> locals) {
+        var nodes = new Resolved.Node[expressions.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = resolve(expressions.get(i), locals);
+        }
+        return nodes;
+    }
+
+    private Resolved.Node resolve(Ast.Expression expression, Map<String, Integer> locals) {
+        if (expression instanceof Ast.BinaryExpression binaryExpression) {
+            return new Resolved.Binary(
+                    binaryExpression.operator(),
+                    resolve(binaryExpression.lhs(), locals),
+                    resolve(binaryExpression.rhs(), locals)
+            );
+        } else if (expression instanceof Ast.IntegerLiteral integer) {
+            return new Resolved.Literal(integer.value());
+        } else if (expression instanceof Ast.Identifier identifier) {
+            var slot = locals == null ? null : locals.get(identifier.name());
+            if (slot != null) {
+                var flag = guards.get(identifier.name());
+                if (flag != null) {
+                    return new Resolved.GuardedLoad(slot, flag, identifier.name());
+                }
+                return new Resolved.LocalLoad(slot);
+            }
+            return new Resolved.GlobalLoad(globalSlot(identifier.name()), identifier.name());
+        } else if (expression instanceof Ast.Assignment assignment) {
+            var value = resolve(assignment.expression(), locals);
+            if (locals != null) {
+                int slot = locals.get(assignment.name());
+                var flag = guards.get(assignment.name());
+                if (flag != null) {
+                    // yields the value like a plain store, with the local marked as assigned
+                    return new Resolved.Block(new Resolved.Node[]{
+                            new Resolved.LocalStore(slot, value),
+                            new Resolved.LocalStore(flag, new Resolved.Literal(1)),
+                            new Resolved.LocalLoad(slot)
+                    });
+                }
+                return new Resolved.LocalStore(slot, value);
+            }
+            return new Resolved.GlobalStore(globalSlot(assignment.name()), value);
+        } else if (expression instanceof Ast.IfExpression ifExpression) {
+            return new Resolved.If(
+                    resolve(ifExpression.condition(), locals),
+                    resolve(ifExpression.thenClause(), locals),
+                    ifExpression.elseClause()
+                            .map(e -> resolve(e, locals))
+                            .orElse(new Resolved.Literal(1))
+            );
+        } else if (expression instanceof Ast.WhileExpression whileExpression) {
+            return new Resolved.While(
+                    resolve(whileExpression.condition(), locals),
+                    resolve(whileExpression.body(), locals)
+            );
+        } else if (expression instanceof Ast.BlockExpression block) {
+            return new Resolved.Block(CountedLoops.recognize(resolveAll(block.elements(), locals)));
+        } else if (expression instanceof Ast.FunctionCall functionCall) {
+            var builtin = ArrayFunction.find(functionCall.name());
+            if (builtin != null && !defines.test(functionCall.name())) {
+                if (functionCall.args().size() != builtin.arity()) {
+                    throw new LanguageException("Function " + builtin.getName() + " expects " + builtin.arity()
+                            + " arguments but got " + functionCall.args().size());
+                }
+                return new Resolved.ArrayCall(builtin, resolveAll(functionCall.args(), locals));
+            }
+            return new Resolved.Call(functionCall.name(), resolveAll(functionCall.args(), locals));
+        } else if (expression instanceof Ast.LabelledCall labelledCall) {
+            var labelledArgs = labelledCall.args();
+            var labels = new String[labelledArgs.size()];
+            var args = new Resolved.Node[labelledArgs.size()];
+            for (int i = 0; i < args.length; i++) {
+                labels[i] = labelledArgs.get(i).name();
+                args[i] = resolve(labelledArgs.get(i).parameter(), locals);
+            }
+            return new Resolved.LabelledCall(labelledCall.name(), labels, args);
+        } else if (expression instanceof Ast.Println println) {
+            return new Resolved.Println(resolve(println.arg(), locals));
+        } else if (expression instanceof Ast.ArrayLiteral arrayLiteral) {
+            return new Resolved.NewArray(resolveAll(arrayLiteral.elements(), locals));
+        } else if (expression instanceof Ast.Index index) {
+            return new Resolved.Index(resolve(index.array(), locals), resolve(index.index(), locals), true);
+        } else if (expression instanceof Ast.IndexAssignment assignment) {
+            return new Resolved.IndexStore(
+                    resolve(assignment.array(), locals),
+                    resolve(assignment.index(), locals),
+                    resolve(assignment.value(), locals),
+                    true
+            );
+        } else {
+            throw new RuntimeException("not reach here");
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package calculator;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Evaluates resolved code without recursing on the Java stack.
+ *
+ * Pending work is kept on a heap-allocated continuation stack of (node, phase)
+ * entries and intermediate results on an int value stack, so recursion depth is
+ * bounded only by {@code maxFrames}. An {@code If} or the last element of a
+ * {@code Block} replaces its own entry, which leaves a call in tail position
+ * directly above its caller's return marker; such a call reuses the caller's
+ * frame slot instead of pushing a new one.
+ */
+public class StackEvaluator {
+    public static final int DEFAULT_MAX_FRAMES = 10_000_000;
+
+    // marks the point where a function body returns to its caller
+    private static final Object RETURN = new Object();
+
+    private final int maxFrames;
+    private final OutputSink output;
+    private final Resolver resolver = new Resolver();
+    private final Map<Resolved.LabelledCall, Resolved.Call> orderedCalls = new IdentityHashMap<>();
+    private Map<String, Resolved.Function> functions = Map.of();
+    private int[] globals = new int[0];
+    private boolean[] definedGlobals = new boolean[0];
+    private final ArrayHeap heap = new ArrayHeap();
+
+    private Object[] nodes = new Object[64];
+    private int[] phases = new int[64];
+    private int top;
+
+    private int[] values = new int[64];
+    private int valueTop;
+
+    private int[][] frames = new int[16][];
+    private int frameTop;
+
+    public StackEvaluator() {
+        this(DEFAULT_MAX_FRAMES);
+    }
+
+    public StackEvaluator(int maxFrames) {
+        this(maxFrames, OutputSink.standardOutput());
+    }
+
+    public StackEvaluator(int maxFrames, OutputSink output) {
+        this.maxFrames = maxFrames;
+        this.output = output;
+    }
+
+    public int callMain(Ast.Program program) {
+        var resolved = resolver.resolveProgram(program);
+        functions = resolved.functions();
+        int count = resolver.globalCount();
+        globals = Arrays.copyOf(globals, count);
+        definedGlobals = Arrays.copyOf(definedGlobals, count);
+        try {
+            for (var initializer : resolved.initializers()) {
+                run(initializer);
+            }
+            return run(resolved.main());
+        } finally {
+            output.flush();
+        }
+    }
+
+    public Integer getValue(String name) {
+        var slot = resolver.findGlobal(name);
+        if (slot == null || !definedGlobals[slot]) {
+            return null;
+        }
+        return globals[slot];
+    }
+
+    private int run(Resolved.Node node) {
+        top = 0;
+        valueTop = 0;
+        frameTop = 0;
+        // the global scope has no locals
+        frames[0] = null;
+        push(node);
+        try {
+            loop();
+        } finally {
+            Arrays.fill(nodes, 0, nodes.length, null);
+            Arrays.fill(frames, 0, frames.length, null);
+        }
+        return values[0];
+    }
+
+    private void loop() {
+        while (top > 0) {
+            var entry = nodes[top - 1];
+            int phase = phases[top - 1];
+            var frame = frames[frameTop];
+            if (entry == RETURN) {
+                top--;
+                frames[frameTop--] = null;
+            } else if (entry instanceof Resolved.Binary binary) {
+                if (phase == 0) {
+                    phases[top - 1] = 1;
+                    push(binary.lhs());
+                } else if (phase == 1) {
+                    phases[top - 1] = 2;
+                    push(binary.rhs());
+                } else {
+                    top--;
+                    int rhs = values[--valueTop];
+                    int lhs = values[valueTop - 1];
+                    values[valueTop - 1] = binary.operator().apply(lhs, rhs);
+                }
+            } else if (entry instanceof Resolved.Literal literal) {
+                top--;
+                pushValue(literal.value());
+            } else if (entry instanceof Resolved.LocalLoad load) {
+                top--;
+                pushValue(frame[load.slot()]);
+            } else if (entry instanceof Resolved.GuardedLoad load) {
+                if (frame[load.flag()] == 0) {
+                    throw new LanguageException("Variable " + load.name() + " is not defined");
+                }
+                top--;
+                pushValue(frame[load.slot()]);
+            } else if (entry instanceof Resolved.GlobalLoad load) {
+                if (!definedGlobals[load.slot()]) {
+                    throw new LanguageException("Variable " + load.name() + " is not defined");
+                }
+                top--;
+                pushValue(globals[load.slot()]);
+            } else if (entry instanceof Resolved.LocalStore store) {
+                if (phase == 0) {
+                    phases[top - 1] = 1;
+                    push(store.value());
+                } else {
+                    top--;
+                    frame[store.slot()] = values[valueTop - 1];
+                }
+            } else if (entry instanceof Resolved.GlobalStore store) {
+                if (phase == 0) {
+                    phases[top - 1] = 1;
+                    push(store.value());
+                } else {
+                    top--;
+                    globals[store.slot()] = values[valueTop - 1];
+                    definedGlobals[store.slot()] = true;
+                }
+            } else if (entry instanceof Resolved.If ifNode) {
+                if (phase == 0) {
+                    phases[top - 1] = 1;
+                    push(ifNode.condition());
+                } else {
+                    // the chosen branch takes the place of the If, keeping tail position
+                    nodes[top - 1] = values[--valueTop] != 0 ? ifNode.thenClause() : ifNode.elseClause();
+                    phases[top - 1] = 0;
+                }
+            } else if (entry instanceof Resolved.While whileNode) {
+                if (phase == 0) {
+                    phases[top - 1] = 1;
+                    push(whileNode.condition());
+                } else if (phase == 1) {
+                    if (values[--valueTop] != 0) {
+                        phases[top - 1] = 2;
+                        push(whileNode.body());
+                    } else {
+                        top--;
+                        pushValue(1);
+                    }
+                } else {
+                    valueTop--;
+                    phases[top - 1] = 1;
+                    push(whileNode.condition());
+                }
+            } else if (entry instanceof Resolved.Block block) {
+                var elements = block.elements();
+                if (elements.length == 0) {
+                    top--;
+                    pushValue(0);
+                } else {
+                    if (phase > 0) {
+                        valueTop--;
+                    }
+                    if (phase == elements.length - 1) {
+                        // the last element takes the place of the block, keeping tail position
+                        nodes[top - 1] = elements[phase];
+                        phases[top - 1] = 0;
+                    } else {
+                        phases[top - 1] = phase + 1;
+                        push(elements[phase]);
+                    }
+                }
+            } else if (entry instanceof Resolved.Call call) {
+                var args = call.args();
+                if (phase == 0) {
+                    checkArity(function(call.name()), args.length);
+                }
+                if (phase < args.length) {
+                    phases[top - 1] = phase + 1;
+                    push(args[phase]);
+                } else {
+                    top--;
+                    enter(function(call.name()), args.length);
+                }
+            } else if (entry instanceof Resolved.LabelledCall labelledCall) {
+                nodes[top - 1] = ordered(labelledCall);
+            } else if (entry instanceof Resolved.Println println) {
+                if (phase == 0) {
+                    phases[top - 1] = 1;
+                    push(println.arg());
+                } else {
+                    top--;
+                    output.println(values[valueTop - 1]);
+                }
+            } else if (entry instanceof Resolved.NewArray newArray) {
+                var elements = newArray.elements();
+                if (phase == 0) {
+                    pushValue(heap.allocate(elements.length));
+                } else {
+                    int value = values[--valueTop];
+                    heap.initialize(values[valueTop - 1], phase - 1, value);
+                }
+                if (phase < elements.length) {
+                    phases[top - 1] = phase + 1;
+                    push(elements[phase]);
+                } else {
+                    top--;
+                }
+            } else if (entry instanceof Resolved.Index index) {
+                if (phase == 0) {
+                    phases[top - 1] = 1;
+                    push(index.array());
+                } else if (phase == 1) {
+                    phases[top - 1] = 2;
+                    push(index.index());
+                } else {
+                    top--;
+                    int i = values[--valueTop];
+                    int array = values[valueTop - 1];
+                    values[valueTop - 1] = index.checked() ? heap.load(array, i) : heap.loadUnchecked(array, i);
+                }
+            } else if (entry instanceof Resolved.IndexStore store) {
+                if (phase < 3) {
+                    phases[top - 1] = phase + 1;
+                    push(phase == 0 ? store.array() : phase == 1 ? store.index() : store.value());
+                } else {
+                    top--;
+                    int value = values[--valueTop];
+                    int i = values[--valueTop];
+                    int array = values[valueTop - 1];
+                    values[valueTop - 1] = store.checked()
+                            ? heap.store(array, i, value)
+                            : heap.storeUnchecked(array, i, value);
+                }
+            } else if (entry instanceof Resolved.ArrayCall call) {
+                var args = call.args();
+                if (phase < args.length) {
+                    phases[top - 1] = phase + 1;
+                    push(args[phase]);
+                } else {
+                    top--;
+                    int second = args.length > 1 ? values[--valueTop] : 0;
+                    values[valueTop - 1] = heap.call(call.function(), values[valueTop - 1], second);
+                }
+            } else if (entry instanceof Resolved.CountedLoop loop) {
+                if (phase < 2) {
+                    phases[top - 1] = phase + 1;
+                    push(phase == 0 ? loop.index() : loop.bound());
+                } else {
+                    // the bound stays on the value stack while the loop runs, the phase tells the version
+                    int i;
+                    if (phase == 2) {
+                        int to = values[--valueTop];
+                        i = values[valueTop - 1];
+                        values[valueTop - 1] = to;
+                        phases[top - 1] = covered(loop, frame, i, to) ? 4 : 3;
+                    } else {
+                        valueTop--;
+                        i = increment(loop.index(), frame);
+                    }
+                    if (i < values[valueTop - 1]) {
+                        push(phases[top - 1] == 4 ? loop.unchecked() : loop.checked());
+                    } else {
+                        top--;
+                        values[valueTop - 1] = 1;
+                    }
+                }
+            } else {
+                throw new RuntimeException("not reach here");
+            }
+        }
+    }
+
+    // the body never assigns the loop variable, so it is incremented in place
+    private int increment(Resolved.Node variable, int[] frame) {
+        if (variable instanceof Resolved.LocalLoad load) {
+            return ++frame[load.slot()];
+        }
+        return ++globals[((Resolved.GlobalLoad) variable).slot()];
+    }
+
+    private boolean covered(Resolved.CountedLoop loop, int[] frame, int from, int to) {
+        for (var array : loop.arrays()) {
+            // an undefined global reads as 0, which is never an array
+            int handle = array instanceof Resolved.LocalLoad load
+                    ? frame[load.slot()]
+                    : globals[((Resolved.GlobalLoad) array).slot()];
+            if (!heap.covers(handle, from, to)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // pops the evaluated arguments into a new frame and schedules the body
+    private void enter(Resolved.Function function, int argumentCount) {
+        var calleeFrame = new int[function.frameSize()];
+        int base = valueTop - argumentCount;
+        System.arraycopy(values, base, calleeFrame, 0, Math.min(argumentCount, function.params().length));
+        valueTop = base;
+        if (top > 0 && nodes[top - 1] == RETURN) {
+            frames[frameTop] = calleeFrame;
+        } else {
+            if (frameTop + 1 > maxFrames) {
+                throw new LanguageException("Call depth exceeded the limit of " + maxFrames + " frames");
+            }
+            if (frameTop + 1 == frames.length) {
+                frames = Arrays.copyOf(frames, frames.length * 2);
+            }
+            frames[++frameTop] = calleeFrame;
+            push(RETURN);
+        }
+        push(function.body());
+    }
+
+    private Resolved.Function function(String name) {
+        var function = functions.get(name);
+        if (function == null) {
+            throw new RuntimeException("Function " + name + " is not found");
+        }
+        return function;
+    }
+
+    private static void checkArity(Resolved.Function function, int actualCount) {
+        if (actualCount < function.params().length) {
+            throw new LanguageException(
+                    "Function " + function.name() + " expects " + function.params().length
+                            + " arguments but got " + actualCount
+            );
+        }
+    }
+
+    // a labelled call is a positional call whose arguments are listed in parameter order
+    private Resolved.Call ordered(Resolved.LabelledCall labelledCall) {
+        var call = orderedCalls.get(labelledCall);
+        if (call == null) {
+            var params = function(labelledCall.name()).params();
+            var args = new Resolved.Node[params.length];
+            for (int i = 0; i < params.length; i++) {
+                args[i] = labelledArgument(labelledCall, params[i]);
+            }
+            call = new Resolved.Call(labelledCall.name(), args);
+            orderedCalls.put(labelledCall, call);
+        }
+        return call;
+    }
+
+    private static Resolved.Node labelledArgument(Resolved.LabelledCall labelledCall, String param) {
+        var labels = labelledCall.labels();
+        for (int i = labels.length - 1; i >= 0; i--) {
+            if (labels[i].equals(param)) {
+                return labelledCall.args()[i];
+            }
+        }
+        throw new LanguageException("Label " + param + " is missing in call to " + labelledCall.name());
+    }
+
+    private void push(Object node) {
+        if (top == nodes.length) {
+            nodes = Arrays.copyOf(nodes, top * 2);
+            phases = Arrays.copyOf(phases, top * 2);
+        }
+        nodes[top] = node;
+        phases[top++] = 0;
+    }
+
+    private void pushValue(int value) {
+        if (valueTop == values.length) {
+            values = Arrays.copyOf(values, valueTop * 2);
+        }
+        values[valueTop++] = value;
+    }
+}
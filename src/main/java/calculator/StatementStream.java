@@ -0,0 +1,282 @@
+package calculator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Executes a script as it arrives, one statement at a time, against the state of
+ * one {@link Interpreter}.
+ *
+ * Input is read into a buffer that is scanned for the end of the next statement:
+ * a {@code ;} or {@code }} outside any brackets. Only when an {@code if} outside
+ * brackets is still waiting for its {@code else} does the stream read on to see
+ * whether one follows. That statement is parsed by {@link PrattParser}, executed and
+ * dropped from the buffer, so the buffer only ever has to hold the longest
+ * statement. Besides {@code line} statements, the stream may contain
+ * {@code define} and {@code global} definitions. Output is flushed whenever the
+ * stream waits for more input.
+ */
+public final class StatementStream {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final Interpreter interpreter;
+    private final Reader reader;
+    private char[] buffer;
+    private int length;
+    private boolean endOfInput;
+    // scanning state of the statement at the start of the buffer
+    private int scan;
+    private int depth;
+    private boolean comment;
+    private int openIfs;
+    // the end of the statement if no else follows it, or -1
+    private int candidate = -1;
+    private long statements;
+    private int lastValue;
+
+    public StatementStream(Interpreter interpreter, Reader reader) {
+        this(interpreter, reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    // the buffer grows only for a single statement longer than bufferSize
+    public StatementStream(Interpreter interpreter, Reader reader, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        this.interpreter = interpreter;
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+    }
+
+    public static StatementStream of(Interpreter interpreter, ReadableByteChannel channel, Charset charset) {
+        return new StatementStream(interpreter, Channels.newReader(channel, charset));
+    }
+
+    // executes every remaining statement and returns the value of the last one, 0 when there is none
+    public int run() throws IOException {
+        try {
+            while (executeNext()) {
+                // keep going
+            }
+            return lastValue;
+        } finally {
+            interpreter.flushOutput();
+        }
+    }
+
+    // reads and executes the next statement or definition; false once the input is exhausted
+    public boolean executeNext() throws IOException {
+        while (true) {
+            int end = findEnd();
+            if (end >= 0) {
+                execute(end);
+                return true;
+            }
+            if (endOfInput) {
+                if (skipSpacing(0, length) == length) {
+                    return false;
+                }
+                // an unfinished statement, which the parser reports
+                execute(length);
+                return true;
+            }
+            fill();
+        }
+    }
+
+    public long statements() {
+        return statements;
+    }
+
+    public int lastValue() {
+        return lastValue;
+    }
+
+    int bufferCapacity() {
+        return buffer.length;
+    }
+
+    private void fill() throws IOException {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        if (!reader.ready()) {
+            // whatever was printed so far should not wait for input that may be slow to come
+            interpreter.flushOutput();
+        }
+        int count = reader.read(buffer, length, buffer.length - length);
+        if (count < 0) {
+            endOfInput = true;
+        } else {
+            length += count;
+        }
+    }
+
+    // the end of the first statement in the buffer, or -1 when more input is needed
+    private int findEnd() {
+        while (true) {
+            if (candidate >= 0) {
+                if (openIfs == 0) {
+                    return candidate;
+                }
+                int follows = followedByElse(candidate);
+                if (follows < 0) {
+                    return -1;
+                }
+                if (follows == 0) {
+                    return candidate;
+                }
+                candidate = -1;
+            }
+            if (!scanToCandidate()) {
+                return -1;
+            }
+        }
+    }
+
+    // advances scan up to the next possible statement end; false when the buffer runs out first
+    private boolean scanToCandidate() {
+        while (scan < length) {
+            char c = buffer[scan++];
+            if (comment) {
+                comment = c != '\n' && c != '\r';
+            } else if (c == '/') {
+                if (scan == length && !endOfInput) {
+                    // a comment may start with the next character
+                    scan--;
+                    return false;
+                }
+                if (scan < length && buffer[scan] == '/') {
+                    comment = true;
+                    scan++;
+                }
+            } else if (c == '(' || c == '[' || c == '{') {
+                depth++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                depth--;
+                if (depth < 0 || (depth == 0 && c == '}')) {
+                    candidate = scan;
+                    return true;
+                }
+            } else if (c == ';' && depth == 0) {
+                candidate = scan;
+                return true;
+            } else if (depth == 0 && isIdentifierPart(c)) {
+                int start = scan - 1;
+                while (scan < length && isIdentifierPart(buffer[scan])) {
+                    scan++;
+                }
+                if (scan == length && !endOfInput) {
+                    // the word may go on in the next read
+                    scan = start;
+                    return false;
+                }
+                int word = scan - start;
+                if (word == 2 && buffer[start] == 'i' && buffer[start + 1] == 'f') {
+                    openIfs++;
+                } else if (word == 4 && new String(buffer, start, 4).equals("else") && openIfs > 0) {
+                    openIfs--;
+                }
+            }
+        }
+        return false;
+    }
+
+    // 1 when else follows position, 0 when something else does, -1 when that is not known yet
+    private int followedByElse(int position) {
+        int i = position;
+        while (true) {
+            if (i == length) {
+                return endOfInput ? 0 : -1;
+            }
+            char c = buffer[i];
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '/' && i + 1 == length && !endOfInput) {
+                return -1;
+            } else if (c == '/' && i + 1 < length && buffer[i + 1] == '/') {
+                while (i < length && buffer[i] != '\n' && buffer[i] != '\r') {
+                    i++;
+                }
+            } else {
+                break;
+            }
+        }
+        int start = i;
+        while (i < length && isIdentifierPart(buffer[i])) {
+            i++;
+        }
+        if (i == length && !endOfInput) {
+            return -1;
+        }
+        return i - start == 4 && new String(buffer, start, 4).equals("else") ? 1 : 0;
+    }
+
+    private void execute(int end) {
+        try {
+            if (startsDefinition(end)) {
+                for (var definition : new PrattParser(buffer, 0, end).program().definitions()) {
+                    define(definition);
+                }
+            } else {
+                for (var line : new PrattParser(buffer, 0, end).lines()) {
+                    lastValue = interpreter.interpret(line);
+                    statements++;
+                }
+            }
+        } finally {
+            System.arraycopy(buffer, end, buffer, 0, length - end);
+            length -= end;
+            scan = 0;
+            depth = 0;
+            comment = false;
+            openIfs = 0;
+            candidate = -1;
+        }
+    }
+
+    private void define(Ast.TopLevel definition) {
+        if (definition instanceof Ast.FunctionDefinition function) {
+            interpreter.functionEnvironment.put(function.name(), function);
+        } else if (definition instanceof Ast.GlobalVariableDefinition global) {
+            interpreter.interpret(new Ast.Assignment(global.name(), global.expression()));
+        } else {
+            throw new RuntimeException("not reach here");
+        }
+    }
+
+    private boolean startsDefinition(int end) {
+        int i = skipSpacing(0, end);
+        int start = i;
+        while (i < end && isIdentifierPart(buffer[i])) {
+            i++;
+        }
+        var word = new String(buffer, start, i - start);
+        return word.equals("define") || word.equals("global");
+    }
+
+    // the first position in [from, to) that is neither whitespace nor part of a comment, or to
+    private int skipSpacing(int from, int to) {
+        int i = from;
+        while (i < to) {
+            if (buffer[i] == '/' && i + 1 < to && buffer[i + 1] == '/') {
+                while (i < to && buffer[i] != '\n' && buffer[i] != '\r') {
+                    i++;
+                }
+            } else if (Character.isWhitespace(buffer[i])) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || (c >= '0' && c <= '9');
+    }
+}
@@ -0,0 +1,213 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tiered execution for an {@link Interpreter} created with it.
+ *
+ * Every function starts out interpreted. Once a linked function has been called
+ * {@code callThreshold} times, its body is translated to {@link Nodes} on the
+ * compiler executor while the interpreter carries on; calls made after the
+ * translation is installed run the nodes. A {@code while} or {@code for} loop
+ * whose back edges reach {@code backEdgeThreshold} is translated the same way and,
+ * once ready, the running loop continues as nodes from the state its last
+ * iteration left behind. A {@link Resolved.CountedLoop} picks up at the index its
+ * last iteration stored; its bound is invariant, so evaluating it again is safe.
+ *
+ * Optimized code shares the globals, arrays, output and execution budget of the
+ * interpreter, and everything it calls runs optimized as well, so the profiler
+ * and the memo cache only see calls made by interpreted code. Loop iterations and
+ * calls cost the same fuel and depth in either tier. One instance belongs to one
+ * interpreter.
+ */
+public final class Tiering {
+    public static final int DEFAULT_CALL_THRESHOLD = 1000;
+    public static final int DEFAULT_BACK_EDGE_THRESHOLD = 10_000;
+
+    public enum Kind {
+        // a function switched to optimized code on a call
+        PROMOTION,
+        // a running loop switched to optimized code between two iterations
+        ON_STACK_REPLACEMENT
+    }
+
+    // count is the number of calls or back edges that had been interpreted at the switch
+    public record Transition(String function, Kind kind, long count) {}
+
+    // optimizedCalls counts calls from the interpreter into optimized code only
+    public record Statistics(long interpretedCalls, long optimizedCalls, List<Transition> transitions) {}
+
+    private static final class Counter {
+        final String name;
+        long count;
+        boolean requested;
+        boolean reported;
+        // written by the compiler executor
+        volatile Nodes.Node optimized;
+
+        Counter(String name) {
+            this.name = name;
+        }
+    }
+
+    private final int callThreshold;
+    private final int backEdgeThreshold;
+    private final Executor compiler;
+    private final Map<Resolved.Function, Counter> functions = new IdentityHashMap<>();
+    // keyed by Resolved.While and Resolved.CountedLoop nodes
+    private final Map<Resolved.Node, Counter> loops = new IdentityHashMap<>();
+    private final List<Transition> transitions = new ArrayList<>();
+    private Nodes.Context context;
+    private long interpretedCalls;
+    private long optimizedCalls;
+
+    public Tiering() {
+        this(DEFAULT_CALL_THRESHOLD, DEFAULT_BACK_EDGE_THRESHOLD);
+    }
+
+    public Tiering(int callThreshold, int backEdgeThreshold) {
+        this(callThreshold, backEdgeThreshold, ForkJoinPool.commonPool());
+    }
+
+    // translations run on compiler; Runnable::run translates on the spot
+    public Tiering(int callThreshold, int backEdgeThreshold, Executor compiler) {
+        if (callThreshold <= 0) {
+            throw new IllegalArgumentException("callThreshold must be positive: " + callThreshold);
+        }
+        if (backEdgeThreshold <= 0) {
+            throw new IllegalArgumentException("backEdgeThreshold must be positive: " + backEdgeThreshold);
+        }
+        this.callThreshold = callThreshold;
+        this.backEdgeThreshold = backEdgeThreshold;
+        this.compiler = compiler;
+    }
+
+    public Statistics statistics() {
+        return new Statistics(interpretedCalls, optimizedCalls, List.copyOf(transitions));
+    }
+
+    // called once main is linked; the arrays must stay the interpreter's for the whole run
+    void start(
+            Resolved.Node main,
+            Resolved.Function[] linkedFunctions,
+            int[] globals,
+            boolean[] definedGlobals,
+            OutputSink output,
+            ArrayHeap heap,
+            ExecutionBudget budget
+    ) {
+        functions.clear();
+        loops.clear();
+        var targets = new Nodes.CallTarget[linkedFunctions.length];
+        for (int i = 0; i < targets.length; i++) {
+            var function = linkedFunctions[i];
+            targets[i] = new Nodes.CallTarget(function);
+            functions.put(function, new Counter(function.name()));
+            findLoops(function.body(), function.name());
+        }
+        findLoops(main, "main");
+        context = new Nodes.Context(globals, definedGlobals, Map.of(), targets, output, heap, budget);
+    }
+
+    // the optimized body of function, or null while it is still interpreted
+    Nodes.Node enter(Resolved.Function function) {
+        // only linked code can be translated; functions called by name stay interpreted
+        var counter = functions.get(function);
+        if (counter == null) {
+            interpretedCalls++;
+            return null;
+        }
+        var optimized = optimized(counter, Kind.PROMOTION);
+        if (optimized != null) {
+            optimizedCalls++;
+            return optimized;
+        }
+        interpretedCalls++;
+        if (++counter.count >= callThreshold) {
+            request(counter, function.body());
+        }
+        return null;
+    }
+
+    // called after each interpreted iteration of a While or CountedLoop; non-null once the rest
+    // of the loop can run optimized
+    Nodes.Node backEdge(Resolved.Node loop) {
+        var counter = loops.get(loop);
+        if (counter == null) {
+            return null;
+        }
+        var optimized = optimized(counter, Kind.ON_STACK_REPLACEMENT);
+        if (optimized == null && ++counter.count >= backEdgeThreshold) {
+            request(counter, loop);
+        }
+        return optimized;
+    }
+
+    // main runs in the global scope with no frame of its own
+    int execute(Nodes.Node node, int[] frame) {
+        return node.execute(new Nodes.Frame(frame == null ? new int[0] : frame, context));
+    }
+
+    private Nodes.Node optimized(Counter counter, Kind kind) {
+        var optimized = counter.optimized;
+        if (optimized != null && !counter.reported) {
+            counter.reported = true;
+            transitions.add(new Transition(counter.name, kind, counter.count));
+        }
+        return optimized;
+    }
+
+    private void request(Counter counter, Resolved.Node code) {
+        if (!counter.requested) {
+            counter.requested = true;
+            compiler.execute(() -> counter.optimized = NodeCompiler.translate(code));
+        }
+    }
+
+    private void findLoops(Resolved.Node node, String function) {
+        if (node instanceof Resolved.While || node instanceof Resolved.CountedLoop) {
+            loops.put(node, new Counter(function));
+        }
+        for (var child : children(node)) {
+            findLoops(child, function);
+        }
+    }
+
+    private static List<Resolved.Node> children(Resolved.Node node) {
+        if (node instanceof Resolved.Binary binary) {
+            return List.of(binary.lhs(), binary.rhs());
+        } else if (node instanceof Resolved.LocalStore store) {
+            return List.of(store.value());
+        } else if (node instanceof Resolved.GlobalStore store) {
+            return List.of(store.value());
+        } else if (node instanceof Resolved.If ifNode) {
+            return List.of(ifNode.condition(), ifNode.thenClause(), ifNode.elseClause());
+        } else if (node instanceof Resolved.While whileNode) {
+            return List.of(whileNode.condition(), whileNode.body());
+        } else if (node instanceof Resolved.Block block) {
+            return List.of(block.elements());
+        } else if (node instanceof Resolved.DirectCall call) {
+            return List.of(call.args());
+        } else if (node instanceof Resolved.Println println) {
+            return List.of(println.arg());
+        } else if (node instanceof Resolved.NewArray newArray) {
+            return List.of(newArray.elements());
+        } else if (node instanceof Resolved.Index index) {
+            return List.of(index.array(), index.index());
+        } else if (node instanceof Resolved.IndexStore store) {
+            return List.of(store.array(), store.index(), store.value());
+        } else if (node instanceof Resolved.ArrayCall call) {
+            return List.of(call.args());
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            // the interpreter may run either version of the body
+            return List.of(loop.index(), loop.bound(), loop.checked(), loop.unchecked());
+        } else {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package calculator;
+
+import java.util.Arrays;
+
+import static calculator.Opcodes.*;
+
+/**
+ * Executes {@link VmProgram} code in a single dispatch loop.
+ *
+ * All frames share one register file; a call places the callee's registers right
+ * after the caller's. Return addresses live in a separate int stack, so calls
+ * never recurse on the Java stack. Both stacks are preallocated and grow on demand,
+ * the return stack up to {@code maxFrames} calls, where runaway recursion fails.
+ */
+public class Vm {
+    public static final int DEFAULT_MAX_FRAMES = 10_000_000;
+
+    // return pc, caller base, destination register, caller function
+    private static final int FRAME = 4;
+    private static final ArrayFunction[] ARRAY_FUNCTIONS = ArrayFunction.values();
+
+    private final VmProgram program;
+    private final int maxFrames;
+    private final OutputSink output;
+    private final ArrayHeap heap = new ArrayHeap();
+    private int[] globals;
+    private boolean[] definedGlobals;
+    private int[] registers = new int[1024];
+    private int[] frames;
+
+    public Vm(VmProgram program) {
+        this(program, DEFAULT_MAX_FRAMES);
+    }
+
+    public Vm(VmProgram program, int maxFrames) {
+        this(program, maxFrames, OutputSink.standardOutput());
+    }
+
+    public Vm(VmProgram program, OutputSink output) {
+        this(program, DEFAULT_MAX_FRAMES, output);
+    }
+
+    public Vm(VmProgram program, int maxFrames, OutputSink output) {
+        this.program = program;
+        this.maxFrames = maxFrames;
+        this.output = output;
+        this.frames = new int[FRAME * Math.min(256, Math.max(maxFrames, 0))];
+        int globalCount = program.resolver().globalCount();
+        this.globals = new int[globalCount];
+        this.definedGlobals = new boolean[globalCount];
+    }
+
+    public Integer getValue(String name) {
+        var slot = program.resolver().findGlobal(name);
+        if (slot == null || !definedGlobals[slot]) {
+            return null;
+        }
+        return globals[slot];
+    }
+
+    public int callMain() {
+        try {
+            return execute();
+        } finally {
+            output.flush();
+        }
+    }
+
+    private int execute() {
+        final int[] code = program.code();
+        final int[] entries = program.entries();
+        final int[] arities = program.arities();
+        final int[] frameSizes = program.frameSizes();
+        final int[] registerCounts = program.registerCounts();
+        int[] r = registers;
+        int[] stack = frames;
+        int sp = 0;
+        int function = program.run();
+        int base = 0;
+        int pc = entries[function];
+        if (registerCounts[function] > r.length) {
+            r = registers = Arrays.copyOf(r, registerCounts[function] * 2);
+        }
+        while (true) {
+            switch (code[pc]) {
+                case CONST -> {
+                    r[base + code[pc + 1]] = code[pc + 2];
+                    pc += 3;
+                }
+                case MOVE -> {
+                    r[base + code[pc + 1]] = r[base + code[pc + 2]];
+                    pc += 3;
+                }
+                case LOAD_GLOBAL -> {
+                    int slot = code[pc + 2];
+                    if (!definedGlobals[slot]) {
+                        throw program.errors().get(code[pc + 3]).get();
+                    }
+                    r[base + code[pc + 1]] = globals[slot];
+                    pc += 4;
+                }
+                case STORE_GLOBAL -> {
+                    int slot = code[pc + 1];
+                    globals[slot] = r[base + code[pc + 2]];
+                    definedGlobals[slot] = true;
+                    pc += 3;
+                }
+                case ADD -> {
+                    r[base + code[pc + 1]] = r[base + code[pc + 2]] + r[base + code[pc + 3]];
+                    pc += 4;
+                }
+                case SUBTRACT -> {
+                    r[base + code[pc + 1]] = r[base + code[pc + 2]] - r[base + code[pc + 3]];
+                    pc += 4;
+                }
+                case MULTIPLY -> {
+                    r[base + code[pc + 1]] = r[base + code[pc + 2]] * r[base + code[pc + 3]];
+                    pc += 4;
+                }
+                case DIVIDE -> {
+                    r[base + code[pc + 1]] = r[base + code[pc + 2]] / r[base + code[pc + 3]];
+                    pc += 4;
+                }
+                case LESS_THAN -> {
+                    r[base + code[pc + 1]] = r[base + code[pc + 2]] < r[base + code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                }
+                case LESS_OR_EQUAL -> {
+                    r[base + code[pc + 1]] = r[base + code[pc + 2]] <= r[base + code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                }
+                case GREATER_THAN -> {
+                    r[base + code[pc + 1]] = r[base + code[pc + 2]] > r[base + code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                }
+                case GREATER_OR_EQUAL -> {
+                    r[base + code[pc + 1]] = r[base + code[pc + 2]] >= r[base + code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                }
+                case EQUAL_EQUAL -> {
+                    r[base + code[pc + 1]] = r[base + code[pc + 2]] == r[base + code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                }
+                case NOT_EQUAL -> {
+                    r[base + code[pc + 1]] = r[base + code[pc + 2]] != r[base + code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                }
+                case ADD_IMMEDIATE -> {
+                    r[base + code[pc + 1]] = r[base + code[pc + 2]] + code[pc + 3];
+                    pc += 4;
+                }
+                case JUMP -> pc = code[pc + 1];
+                case JUMP_IF_ZERO -> pc = r[base + code[pc + 1]] == 0 ? code[pc + 2] : pc + 3;
+                case JUMP_IF_LESS_THAN ->
+                        pc = r[base + code[pc + 1]] < r[base + code[pc + 2]] ? code[pc + 3] : pc + 4;
+                case JUMP_IF_LESS_OR_EQUAL ->
+                        pc = r[base + code[pc + 1]] <= r[base + code[pc + 2]] ? code[pc + 3] : pc + 4;
+                case JUMP_IF_GREATER_THAN ->
+                        pc = r[base + code[pc + 1]] > r[base + code[pc + 2]] ? code[pc + 3] : pc + 4;
+                case JUMP_IF_GREATER_OR_EQUAL ->
+                        pc = r[base + code[pc + 1]] >= r[base + code[pc + 2]] ? code[pc + 3] : pc + 4;
+                case JUMP_IF_EQUAL ->
+                        pc = r[base + code[pc + 1]] == r[base + code[pc + 2]] ? code[pc + 3] : pc + 4;
+                case JUMP_IF_NOT_EQUAL ->
+                        pc = r[base + code[pc + 1]] != r[base + code[pc + 2]] ? code[pc + 3] : pc + 4;
+                case CALL -> {
+                    int callee = code[pc + 2];
+                    int first = base + code[pc + 3];
+                    int calleeBase = base + registerCounts[function];
+                    int limit = calleeBase + registerCounts[callee];
+                    if (limit > r.length) {
+                        r = registers = Arrays.copyOf(r, Math.max(limit, r.length * 2));
+                    }
+                    if (sp + FRAME > stack.length) {
+                        stack = frames = growFrames(stack);
+                    }
+                    stack[sp] = pc + 4;
+                    stack[sp + 1] = base;
+                    stack[sp + 2] = code[pc + 1];
+                    stack[sp + 3] = function;
+                    sp += FRAME;
+                    int arity = arities[callee];
+                    System.arraycopy(r, first, r, calleeBase, arity);
+                    Arrays.fill(r, calleeBase + arity, calleeBase + frameSizes[callee], 0);
+                    function = callee;
+                    base = calleeBase;
+                    pc = entries[callee];
+                }
+                case RETURN -> {
+                    int value = r[base + code[pc + 1]];
+                    if (sp == 0) {
+                        return value;
+                    }
+                    sp -= FRAME;
+                    pc = stack[sp];
+                    base = stack[sp + 1];
+                    function = stack[sp + 3];
+                    r[base + stack[sp + 2]] = value;
+                }
+                case ERROR -> throw program.errors().get(code[pc + 1]).get();
+                case PRINTLN -> {
+                    output.println(r[base + code[pc + 1]]);
+                    pc += 2;
+                }
+                case NEW_ARRAY -> {
+                    r[base + code[pc + 1]] = heap.allocate(code[pc + 2]);
+                    pc += 3;
+                }
+                case ARRAY_INITIALIZE -> {
+                    heap.initialize(r[base + code[pc + 1]], code[pc + 2], r[base + code[pc + 3]]);
+                    pc += 4;
+                }
+                case ARRAY_LOAD -> {
+                    r[base + code[pc + 1]] = heap.load(r[base + code[pc + 2]], r[base + code[pc + 3]]);
+                    pc += 4;
+                }
+                case ARRAY_LOAD_UNCHECKED -> {
+                    r[base + code[pc + 1]] = heap.loadUnchecked(r[base + code[pc + 2]], r[base + code[pc + 3]]);
+                    pc += 4;
+                }
+                case ARRAY_STORE -> {
+                    heap.store(r[base + code[pc + 1]], r[base + code[pc + 2]], r[base + code[pc + 3]]);
+                    pc += 4;
+                }
+                case ARRAY_STORE_UNCHECKED -> {
+                    heap.storeUnchecked(r[base + code[pc + 1]], r[base + code[pc + 2]], r[base + code[pc + 3]]);
+                    pc += 4;
+                }
+                case ARRAY_CALL -> {
+                    var arrayFunction = ARRAY_FUNCTIONS[code[pc + 2]];
+                    int first = base + code[pc + 3];
+                    int second = arrayFunction.arity() > 1 ? r[first + 1] : 0;
+                    r[base + code[pc + 1]] = heap.call(arrayFunction, r[first], second);
+                    pc += 4;
+                }
+                case PEEK_GLOBAL -> {
+                    r[base + code[pc + 1]] = globals[code[pc + 2]];
+                    pc += 3;
+                }
+                case JUMP_UNLESS_COVERS -> pc = heap.covers(r[base + code[pc + 1]], r[base + code[pc + 2]], r[base + code[pc + 3]])
+                        ? pc + 5
+                        : code[pc + 4];
+                default -> throw new IllegalStateException("unknown opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+
+    // the depth is only checked here, so calls below the current capacity cost nothing extra
+    private int[] growFrames(int[] stack) {
+        long limit = Math.min((long) maxFrames * FRAME, Integer.MAX_VALUE - 8);
+        if (stack.length + FRAME > limit) {
+            throw new LanguageException("Call depth exceeded the limit of " + maxFrames + " frames");
+        }
+        return Arrays.copyOf(stack, (int) Math.min(Math.max(stack.length * 2L, FRAME), limit));
+    }
+}
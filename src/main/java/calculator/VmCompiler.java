@@ -0,0 +1,449 @@
+package calculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static calculator.Opcodes.*;
+
+/**
+ * Compiles an {@link Ast.Program} to register code for the {@link Vm}.
+ *
+ * The locals of a function occupy its first registers, temporaries are allocated
+ * above them in stack order. Reading a local therefore needs no instruction at
+ * all, and call arguments are evaluated straight into consecutive registers.
+ */
+public class VmCompiler {
+    // a destination meaning "evaluate for side effects only"
+    private static final int DISCARD = -1;
+
+    private int[] code = new int[256];
+    private int length;
+    private final List<Supplier<RuntimeException>> errors = new ArrayList<>();
+    private final Map<String, Integer> functionIndexes = new HashMap<>();
+    private final List<Resolved.Function> functions = new ArrayList<>();
+
+    // per function state
+    private int nextRegister;
+    private int maxRegister;
+
+    public VmProgram compile(Ast.Program program) {
+        var resolver = new Resolver();
+        var resolved = resolver.resolveProgram(program);
+        for (var function : resolved.functions().values()) {
+            functionIndexes.put(function.name(), functions.size());
+            functions.add(function);
+        }
+        int count = functions.size() + 1;
+        var entries = new int[count];
+        var arities = new int[count];
+        var frameSizes = new int[count];
+        var registerCounts = new int[count];
+        for (int i = 0; i < functions.size(); i++) {
+            var function = functions.get(i);
+            entries[i] = length;
+            arities[i] = function.params().length;
+            frameSizes[i] = function.frameSize();
+            begin(function.frameSize());
+            int result = operand(function.body());
+            emit(RETURN, result);
+            registerCounts[i] = maxRegister;
+        }
+        int run = functions.size();
+        entries[run] = length;
+        begin(0);
+        for (var initializer : resolved.initializers()) {
+            compile(initializer, DISCARD);
+        }
+        int result = operand(resolved.main());
+        emit(RETURN, result);
+        registerCounts[run] = maxRegister;
+        return new VmProgram(
+                Arrays.copyOf(code, length),
+                entries,
+                arities,
+                frameSizes,
+                registerCounts,
+                run,
+                List.copyOf(errors),
+                resolver
+        );
+    }
+
+    private void begin(int locals) {
+        nextRegister = locals;
+        maxRegister = locals;
+    }
+
+    private int temporary() {
+        int register = nextRegister++;
+        maxRegister = Math.max(maxRegister, nextRegister);
+        return register;
+    }
+
+    private void emit(int... words) {
+        if (length + words.length > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, length + words.length));
+        }
+        System.arraycopy(words, 0, code, length, words.length);
+        length += words.length;
+    }
+
+    // emits a jump whose last operand is patched later; returns the position to patch
+    private int emitJump(int... words) {
+        emit(words);
+        return length - 1;
+    }
+
+    private void patch(int position) {
+        code[position] = length;
+    }
+
+    private int error(Supplier<RuntimeException> error) {
+        errors.add(error);
+        return errors.size() - 1;
+    }
+
+    private void raise(Supplier<RuntimeException> error) {
+        emit(ERROR, error(error));
+    }
+
+    // evaluates node into some register and returns it; locals are returned in place
+    private int operand(Resolved.Node node) {
+        if (node instanceof Resolved.LocalLoad load) {
+            return load.slot();
+        }
+        int register = temporary();
+        compile(node, register);
+        return register;
+    }
+
+    private void compile(Resolved.Node node, int destination) {
+        if (node instanceof Resolved.Binary binary) {
+            int mark = nextRegister;
+            int target = destination == DISCARD ? temporary() : destination;
+            var rhs = binary.rhs();
+            int lhsRegister = operand(binary.lhs());
+            if (binary.lhs() instanceof Resolved.LocalLoad && assigns(rhs, lhsRegister)) {
+                // the right operand overwrites the local, so keep its current value
+                int copy = temporary();
+                emit(MOVE, copy, lhsRegister);
+                lhsRegister = copy;
+            }
+            var operator = binary.operator();
+            if (rhs instanceof Resolved.Literal literal
+                    && (operator == Operator.ADD || operator == Operator.SUBTRACT)) {
+                int value = operator == Operator.ADD ? literal.value() : -literal.value();
+                emit(ADD_IMMEDIATE, target, lhsRegister, value);
+            } else {
+                int rhsRegister = operand(rhs);
+                emit(Opcodes.of(operator), target, lhsRegister, rhsRegister);
+            }
+            nextRegister = mark;
+        } else if (node instanceof Resolved.Literal literal) {
+            if (destination != DISCARD) {
+                emit(CONST, destination, literal.value());
+            }
+        } else if (node instanceof Resolved.LocalLoad load) {
+            if (destination != DISCARD && destination != load.slot()) {
+                emit(MOVE, destination, load.slot());
+            }
+        } else if (node instanceof Resolved.GuardedLoad load) {
+            int undefinedJump = emitJump(JUMP_IF_ZERO, load.flag(), 0);
+            int endJump = emitJump(JUMP, 0);
+            patch(undefinedJump);
+            var name = load.name();
+            raise(() -> new LanguageException("Variable " + name + " is not defined"));
+            patch(endJump);
+            if (destination != DISCARD && destination != load.slot()) {
+                emit(MOVE, destination, load.slot());
+            }
+        } else if (node instanceof Resolved.GlobalLoad load) {
+            int mark = nextRegister;
+            int target = destination == DISCARD ? temporary() : destination;
+            var name = load.name();
+            emit(LOAD_GLOBAL, target, load.slot(),
+                    error(() -> new LanguageException("Variable " + name + " is not defined")));
+            nextRegister = mark;
+        } else if (node instanceof Resolved.LocalStore store) {
+            compile(store.value(), store.slot());
+            if (destination != DISCARD && destination != store.slot()) {
+                emit(MOVE, destination, store.slot());
+            }
+        } else if (node instanceof Resolved.GlobalStore store) {
+            int mark = nextRegister;
+            int value = operand(store.value());
+            emit(STORE_GLOBAL, store.slot(), value);
+            if (destination != DISCARD && destination != value) {
+                emit(MOVE, destination, value);
+            }
+            nextRegister = mark;
+        } else if (node instanceof Resolved.If ifNode) {
+            int elseJump = branchUnless(ifNode.condition());
+            compile(ifNode.thenClause(), destination);
+            int endJump = emitJump(JUMP, 0);
+            patch(elseJump);
+            compile(ifNode.elseClause(), destination);
+            patch(endJump);
+        } else if (node instanceof Resolved.While whileNode) {
+            int top = length;
+            int exitJump = branchUnless(whileNode.condition());
+            compile(whileNode.body(), DISCARD);
+            emit(JUMP, top);
+            patch(exitJump);
+            if (destination != DISCARD) {
+                emit(CONST, destination, 1);
+            }
+        } else if (node instanceof Resolved.Block block) {
+            var elements = block.elements();
+            if (elements.length == 0 && destination != DISCARD) {
+                emit(CONST, destination, 0);
+            }
+            for (int i = 0; i < elements.length; i++) {
+                compile(elements[i], i == elements.length - 1 ? destination : DISCARD);
+            }
+        } else if (node instanceof Resolved.Call call) {
+            var index = functionIndexes.get(call.name());
+            if (index == null) {
+                var name = call.name();
+                raise(() -> new RuntimeException("Function " + name + " is not found"));
+                return;
+            }
+            var function = functions.get(index);
+            var args = call.args();
+            int arity = function.params().length;
+            if (args.length < arity) {
+                var message = "Function " + function.name() + " expects " + arity
+                        + " arguments but got " + args.length;
+                raise(() -> new LanguageException(message));
+                return;
+            }
+            int mark = nextRegister;
+            int first = nextRegister;
+            for (int i = 0; i < args.length; i++) {
+                temporary();
+            }
+            for (int i = 0; i < args.length; i++) {
+                compile(args[i], first + i);
+            }
+            emit(CALL, destination == DISCARD ? first : destination, index, first);
+            nextRegister = mark;
+        } else if (node instanceof Resolved.LabelledCall labelledCall) {
+            var index = functionIndexes.get(labelledCall.name());
+            if (index == null) {
+                var name = labelledCall.name();
+                raise(() -> new RuntimeException("Function " + name + " is not found"));
+                return;
+            }
+            var params = functions.get(index).params();
+            int mark = nextRegister;
+            int first = nextRegister;
+            for (int i = 0; i < params.length; i++) {
+                temporary();
+            }
+            for (int i = 0; i < params.length; i++) {
+                var arg = labelledArgument(labelledCall, params[i]);
+                if (arg == null) {
+                    var message = "Label " + params[i] + " is missing in call to " + labelledCall.name();
+                    raise(() -> new LanguageException(message));
+                    nextRegister = mark;
+                    return;
+                }
+                compile(arg, first + i);
+            }
+            emit(CALL, destination == DISCARD ? first : destination, index, first);
+            nextRegister = mark;
+        } else if (node instanceof Resolved.Println println) {
+            int mark = nextRegister;
+            int value = operand(println.arg());
+            emit(PRINTLN, value);
+            if (destination != DISCARD && destination != value) {
+                emit(MOVE, destination, value);
+            }
+            nextRegister = mark;
+        } else if (node instanceof Resolved.NewArray newArray) {
+            int mark = nextRegister;
+            // the handle lives in a temporary, an element may read the variable being assigned
+            int handle = temporary();
+            var elements = newArray.elements();
+            emit(NEW_ARRAY, handle, elements.length);
+            for (int i = 0; i < elements.length; i++) {
+                emit(ARRAY_INITIALIZE, handle, i, operand(elements[i]));
+                nextRegister = handle + 1;
+            }
+            if (destination != DISCARD) {
+                emit(MOVE, destination, handle);
+            }
+            nextRegister = mark;
+        } else if (node instanceof Resolved.Index index) {
+            int mark = nextRegister;
+            int target = destination == DISCARD ? temporary() : destination;
+            int array = protect(index.array(), operand(index.array()), index.index());
+            int i = operand(index.index());
+            emit(index.checked() ? ARRAY_LOAD : ARRAY_LOAD_UNCHECKED, target, array, i);
+            nextRegister = mark;
+        } else if (node instanceof Resolved.IndexStore store) {
+            int mark = nextRegister;
+            int array = protect(store.array(), operand(store.array()), store.index(), store.value());
+            int i = protect(store.index(), operand(store.index()), store.value());
+            int value = operand(store.value());
+            emit(store.checked() ? ARRAY_STORE : ARRAY_STORE_UNCHECKED, array, i, value);
+            if (destination != DISCARD && destination != value) {
+                emit(MOVE, destination, value);
+            }
+            nextRegister = mark;
+        } else if (node instanceof Resolved.ArrayCall call) {
+            int mark = nextRegister;
+            var args = call.args();
+            int first = nextRegister;
+            for (int i = 0; i < args.length; i++) {
+                temporary();
+            }
+            for (int i = 0; i < args.length; i++) {
+                compile(args[i], first + i);
+            }
+            emit(ARRAY_CALL, destination == DISCARD ? first : destination, call.function().ordinal(), first);
+            nextRegister = mark;
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            int mark = nextRegister;
+            // a global loop variable is counted in a register and written back after each iteration
+            int counter;
+            if (loop.index() instanceof Resolved.GlobalLoad load) {
+                // the variable was assigned just before the loop, so it needs no definedness check
+                counter = temporary();
+                emit(PEEK_GLOBAL, counter, load.slot());
+            } else {
+                counter = ((Resolved.LocalLoad) loop.index()).slot();
+            }
+            // the bound is evaluated once and kept in a register the body never reuses
+            int bound = temporary();
+            compile(loop.bound(), bound);
+            int bodyMark = nextRegister;
+            var fallbacks = new ArrayList<Integer>();
+            for (var array : loop.arrays()) {
+                int handle;
+                if (array instanceof Resolved.GlobalLoad load) {
+                    handle = temporary();
+                    emit(PEEK_GLOBAL, handle, load.slot());
+                } else {
+                    handle = ((Resolved.LocalLoad) array).slot();
+                }
+                fallbacks.add(emitJump(JUMP_UNLESS_COVERS, handle, counter, bound, 0));
+            }
+            nextRegister = bodyMark;
+            countedLoop(loop, loop.unchecked(), counter, bound);
+            if (!fallbacks.isEmpty()) {
+                int endJump = emitJump(JUMP, 0);
+                for (int fallback : fallbacks) {
+                    patch(fallback);
+                }
+                countedLoop(loop, loop.checked(), counter, bound);
+                patch(endJump);
+            }
+            nextRegister = mark;
+            if (destination != DISCARD) {
+                emit(CONST, destination, 1);
+            }
+        } else {
+            raise(() -> new RuntimeException("not reach here"));
+        }
+    }
+
+    private void countedLoop(Resolved.CountedLoop loop, Resolved.Node body, int counter, int bound) {
+        int top = length;
+        int exitJump = emitJump(JUMP_IF_GREATER_OR_EQUAL, counter, bound, 0);
+        compile(body, DISCARD);
+        emit(ADD_IMMEDIATE, counter, counter, 1);
+        if (loop.index() instanceof Resolved.GlobalLoad load) {
+            emit(STORE_GLOBAL, load.slot(), counter);
+        }
+        emit(JUMP, top);
+        patch(exitJump);
+    }
+
+    // copies a local operand when evaluating a later operand overwrites it
+    private int protect(Resolved.Node node, int register, Resolved.Node... later) {
+        if (node instanceof Resolved.LocalLoad) {
+            for (var next : later) {
+                if (assigns(next, register)) {
+                    int copy = temporary();
+                    emit(MOVE, copy, register);
+                    return copy;
+                }
+            }
+        }
+        return register;
+    }
+
+    // emits a conditional jump taken when condition is false; returns the position to patch
+    private int branchUnless(Resolved.Node condition) {
+        int mark = nextRegister;
+        try {
+            if (condition instanceof Resolved.Binary binary) {
+                int opcode = Opcodes.jumpUnless(binary.operator());
+                if (opcode != -1) {
+                    int lhs = operand(binary.lhs());
+                    if (binary.lhs() instanceof Resolved.LocalLoad && assigns(binary.rhs(), lhs)) {
+                        int copy = temporary();
+                        emit(MOVE, copy, lhs);
+                        lhs = copy;
+                    }
+                    int rhs = operand(binary.rhs());
+                    return emitJump(opcode, lhs, rhs, 0);
+                }
+            }
+            return emitJump(JUMP_IF_ZERO, operand(condition), 0);
+        } finally {
+            nextRegister = mark;
+        }
+    }
+
+    private static Resolved.Node labelledArgument(Resolved.LabelledCall labelledCall, String param) {
+        var labels = labelledCall.labels();
+        for (int i = labels.length - 1; i >= 0; i--) {
+            if (labels[i].equals(param)) {
+                return labelledCall.args()[i];
+            }
+        }
+        return null;
+    }
+
+    private static boolean assigns(Resolved.Node node, int slot) {
+        if (node instanceof Resolved.LocalStore store) {
+            return store.slot() == slot || assigns(store.value(), slot);
+        } else if (node instanceof Resolved.Binary binary) {
+            return assigns(binary.lhs(), slot) || assigns(binary.rhs(), slot);
+        } else if (node instanceof Resolved.GlobalStore store) {
+            return assigns(store.value(), slot);
+        } else if (node instanceof Resolved.If ifNode) {
+            return assigns(ifNode.condition(), slot)
+                    || assigns(ifNode.thenClause(), slot)
+                    || assigns(ifNode.elseClause(), slot);
+        } else if (node instanceof Resolved.While whileNode) {
+            return assigns(whileNode.condition(), slot) || assigns(whileNode.body(), slot);
+        } else if (node instanceof Resolved.Block block) {
+            return Arrays.stream(block.elements()).anyMatch(e -> assigns(e, slot));
+        } else if (node instanceof Resolved.Call call) {
+            return Arrays.stream(call.args()).anyMatch(e -> assigns(e, slot));
+        } else if (node instanceof Resolved.LabelledCall labelledCall) {
+            return Arrays.stream(labelledCall.args()).anyMatch(e -> assigns(e, slot));
+        } else if (node instanceof Resolved.Println println) {
+            return assigns(println.arg(), slot);
+        } else if (node instanceof Resolved.NewArray newArray) {
+            return Arrays.stream(newArray.elements()).anyMatch(e -> assigns(e, slot));
+        } else if (node instanceof Resolved.Index index) {
+            return assigns(index.array(), slot) || assigns(index.index(), slot);
+        } else if (node instanceof Resolved.IndexStore store) {
+            return assigns(store.array(), slot) || assigns(store.index(), slot) || assigns(store.value(), slot);
+        } else if (node instanceof Resolved.ArrayCall call) {
+            return Arrays.stream(call.args()).anyMatch(e -> assigns(e, slot));
+        } else if (node instanceof Resolved.CountedLoop loop) {
+            return loop.index() instanceof Resolved.LocalLoad load && load.slot() == slot
+                    || assigns(loop.checked(), slot);
+        }
+        return false;
+    }
+}
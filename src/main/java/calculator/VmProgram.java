@@ -0,0 +1,21 @@
+package calculator;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Output of {@link VmCompiler}: one flat code array holding every function.
+ * Function {@code i} starts at {@code entries[i]}, takes {@code arities[i]}
+ * arguments and needs {@code registerCounts[i]} registers. The global
+ * initializers and main form the function at index {@code run}.
+ */
+public record VmProgram(
+        int[] code,
+        int[] entries,
+        int[] arities,
+        int[] frameSizes,
+        int[] registerCounts,
+        int run,
+        List<Supplier<RuntimeException>> errors,
+        Resolver resolver
+) {}
@@ -0,0 +1,247 @@
+package calculator;
+
+import org.javafp.parsecj.input.Input;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArrayTest {
+    private static List<Function<Ast.Program, Integer>> engines(OutputSink output) {
+        return List.of(
+                program -> new Interpreter(0, null, output).callMain(program),
+                program -> new Compiler(output).callMain(program),
+                program -> new Vm(new VmCompiler().compile(program), output).callMain(),
+                program -> new NodeCompiler().compile(program, output).callMain(),
+                program -> new StackEvaluator(StackEvaluator.DEFAULT_MAX_FRAMES, output).callMain(program),
+                program -> LoadedProgram.load(program).newContext(output).run()
+        );
+    }
+
+    private static void assertAllEngines(int expected, String source) {
+        var program = PrattParser.parseProgram(source);
+        var engines = engines(OutputSink.standardOutput());
+        for (int i = 0; i < engines.size(); i++) {
+            assertEquals(expected, (int) engines.get(i).apply(program), "engine " + i);
+        }
+    }
+
+    private static void assertAllEnginesFail(String message, String expectedOutput, String source) {
+        var program = PrattParser.parseProgram(source);
+        var out = new ByteArrayOutputStream();
+        var sink = OutputSink.buffered(out, StandardCharsets.UTF_8, OutputSink.FlushPolicy.END);
+        for (var engine : engines(sink)) {
+            out.reset();
+            var e = assertThrows(LanguageException.class, () -> engine.apply(program));
+            assertEquals(message, e.getMessage());
+            assertEquals(expectedOutput, out.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testLiteralsIndexingAndLength() {
+        assertAllEngines(64, """
+                define main() {
+                  a = [1, 2 * 3, 0 - 4];
+                  a[2] = a[0] + a[1];
+                  b = [];
+                  length(a) * 10 + length(b) + a[2] * 5 - 1;
+                }""");
+    }
+
+    @Test
+    public void testBulkOperations() {
+        assertAllEngines(88, """
+                define main() {
+                  a = fill(array(4), 7);
+                  b = copy([1, 2, 3], array(5));
+                  sum(a) + sum(b) * 10 + b[4] + length(b) * 2 - 10;
+                }""");
+    }
+
+    @Test
+    public void testArraysArePassedByHandle() {
+        assertAllEngines(15, """
+                global data = [0, 0, 0, 0, 0];
+                define fill_up(a, n) {
+                  for (i in 0 to n) {
+                    a[i] = i + 1;
+                  }
+                }
+                define main() {
+                  fill_up(data, length(data));
+                  sum(data);
+                }""");
+    }
+
+    @Test
+    public void testCountedLoops() {
+        assertAllEngines(285, """
+                define squares(n) {
+                  a = array(n);
+                  for (i in 0 to length(a)) {
+                    a[i] = i * i;
+                  }
+                  total = 0;
+                  for (i in 0 to n) {
+                    total = total + a[i];
+                  }
+                  total;
+                }
+                define main() {
+                  squares(10);
+                }""");
+    }
+
+    @Test
+    public void testErrors() {
+        assertAllEnginesFail("Index 3 is out of bounds for length 3", "", """
+                define main() {
+                  a = [1, 2, 3];
+                  a[3];
+                }""");
+        assertAllEnginesFail("Index -1 is out of bounds for length 2", "", """
+                define main() {
+                  a = [1, 2];
+                  a[0 - 1] = 5;
+                }""");
+        assertAllEnginesFail("Value 7 is not an array", "", """
+                define main() {
+                  length(7);
+                }""");
+        assertAllEnginesFail("Array length -2 is negative", "", """
+                define main() {
+                  array(0 - 2);
+                }""");
+        assertAllEnginesFail("Array of length 1 cannot hold 2 elements", "", """
+                define main() {
+                  copy([1, 2], [0]);
+                }""");
+        assertThrows(LanguageException.class, () -> new Interpreter().callMain(PrattParser.parseProgram("""
+                define main() {
+                  length([1], [2]);
+                }""")));
+    }
+
+    @Test
+    public void testOutOfBoundsLoopFailsAtTheSameElement() {
+        // the range check fails up front, so the original loop runs and fails at a[3]
+        assertAllEnginesFail("Index 3 is out of bounds for length 3",
+                String.join(System.lineSeparator(), "10", "20", "30", ""), """
+                define main() {
+                  a = [10, 20, 30];
+                  for (i in 0 to 5) {
+                    println(a[i]);
+                  }
+                }""");
+        assertAllEnginesFail("Variable b is not defined", "", """
+                define walk(n) {
+                  for (i in 0 to n) {
+                    b[i];
+                  }
+                  b = 1;
+                }
+                define main() {
+                  walk(2);
+                }""");
+    }
+
+    @Test
+    public void testCountedLoopIsVersioned() {
+        var program = PrattParser.parseProgram("""
+                define main() {
+                  a = [1, 2, 3];
+                  for (i in 0 to length(a)) {
+                    a[i] = a[i] + a[0];
+                  }
+                }""");
+        var main = (Resolved.Block) new Resolver().resolveProgram(program).main();
+        var forIn = (Resolved.Block) main.elements()[1];
+        assertTrue(forIn.elements()[1] instanceof Resolved.CountedLoop);
+        var loop = (Resolved.CountedLoop) forIn.elements()[1];
+        assertEquals(1, loop.arrays().length);
+        var body = (Resolved.Block) loop.unchecked();
+        var store = (Resolved.IndexStore) ((Resolved.Block) body.elements()[0]).elements()[0];
+        assertFalse(store.checked());
+        var sum = (Resolved.Binary) store.value();
+        assertFalse(((Resolved.Index) sum.lhs()).checked());
+        // a[0] is not indexed by the loop variable
+        assertTrue(((Resolved.Index) sum.rhs()).checked());
+    }
+
+    @Test
+    public void testLoopsThatMayMoveAreNotVersioned() {
+        var program = PrattParser.parseProgram("""
+                define main() {
+                  a = [1, 2, 3];
+                  for (i in 0 to 3) {
+                    a = [4, 5];
+                    a[i];
+                  }
+                  for (i in 0 to 3) {
+                    i = i + 1;
+                    a[i];
+                  }
+                  n = 2;
+                  for (i in 0 to n) {
+                    n = n + 1;
+                    a[i];
+                  }
+                }""");
+        var main = (Resolved.Block) new Resolver().resolveProgram(program).main();
+        // the first loop still counts, but a is reassigned and so is not covered
+        var counted = (Resolved.CountedLoop) ((Resolved.Block) main.elements()[1]).elements()[1];
+        assertEquals(0, counted.arrays().length);
+        assertTrue(((Resolved.Block) main.elements()[2]).elements()[1] instanceof Resolved.While);
+        assertTrue(((Resolved.Block) main.elements()[4]).elements()[1] instanceof Resolved.While);
+    }
+
+    @Test
+    public void testDefinedFunctionsShadowBuiltins() {
+        assertAllEngines(5, """
+                define sum(a) {
+                  a + 1;
+                }
+                define main() {
+                  sum(4);
+                }""");
+    }
+
+    @Test
+    public void testLabelledCallsStillParse() throws Exception {
+        var source = """
+                define f(x) {
+                  x;
+                }
+                define g() {
+                  7;
+                }
+                define main() {
+                  a = [f[x=1], g[]];
+                  a[a[0]] = 3;
+                  a[1];
+                }""";
+        assertAllEngines(3, source);
+        assertEquals(PrattParser.parseProgram(source), Parsers.program().parse(Input.of(source)).getResult());
+    }
+
+    @Test
+    public void testBinaryProgramRoundTrip() {
+        var program = PrattParser.parseProgram("""
+                define main() {
+                  a = [1, 2];
+                  a[1] = 5;
+                  a[0] + a[1];
+                }""");
+        var decoded = BinaryProgram.of(java.nio.ByteBuffer.wrap(BinaryProgram.encode(program))).decode();
+        assertEquals(program, decoded);
+        assertEquals(program, Optimizer.optimize(program));
+    }
+}
@@ -0,0 +1,139 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AstArenaTest {
+    private static final String SOURCE = """
+            global base = -2147483648;
+            global scale = 3;
+            define area(width, height) {
+              width * height;
+            }
+            define fib(n) {
+              if (n < 2) {
+                n;
+              } else {
+                fib(n - 1) + fib(n - 2);
+              }
+            }
+            define fill(a, value) {
+              // shadows the builtin
+              for (i in 0 to length(a)) {
+                a[i] = value + i;
+              }
+              a;
+            }
+            define main() {
+              if (scale >= 3) { a = area[height=scale, width=7]; } else { a = 0; }
+              { }
+              b = fill(array(4), 10);
+              c = [1, 2, 3];
+              total = 0;
+              while (total < 100) {
+                total = total + sum(c) + b[3];
+              }
+              if (total == 0) println(0);
+              println(fib(15));
+              a + base + 2147483647 + 1 + total;
+            }""";
+
+    private static void assertSameAsInterpreter(String source) {
+        var program = PrattParser.parseProgram(source);
+        var expectedOut = new ByteArrayOutputStream();
+        var actualOut = new ByteArrayOutputStream();
+        int expected = new Interpreter(0, null, OutputSink.buffered(
+                expectedOut, StandardCharsets.UTF_8, OutputSink.FlushPolicy.END)).callMain(program);
+        int actual = AstArena.encode(program).callMain(OutputSink.buffered(
+                actualOut, StandardCharsets.UTF_8, OutputSink.FlushPolicy.END));
+        assertEquals(expected, actual);
+        assertEquals(expectedOut.toString(StandardCharsets.UTF_8), actualOut.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        var program = PrattParser.parseProgram(SOURCE);
+        assertEquals(program, AstArena.encode(program).decode());
+        assertEquals(program, AstArena.encode(program, false).decode());
+    }
+
+    @Test
+    public void testSameResultsAsInterpreter() {
+        assertSameAsInterpreter(SOURCE);
+        assertSameAsInterpreter("""
+                global g = 5;
+                define shadow(g) {
+                  g = g + 1;
+                  g;
+                }
+                define read() {
+                  g * 2;
+                }
+                define twice(a, a) {
+                  a;
+                }
+                define main() {
+                  x = shadow(1) + read() + twice(7, 8) + shadow(1, 100);
+                  i = 0;
+                  while (i < 3) {
+                    i = i + 1;
+                  }
+                  x * 10 + i;
+                }""");
+    }
+
+    @Test
+    public void testSharesIdenticalSubtrees() {
+        var source = new StringBuilder("define main() {\n  total = 0;\n");
+        for (int i = 0; i < 200; i++) {
+            source.append("  if (total < 1000) { total = total + 1 * 2; } else { total = total - 1; }\n");
+        }
+        source.append("  total;\n}");
+        var program = PrattParser.parseProgram(source);
+        var shared = AstArena.encode(program);
+        var unshared = AstArena.encode(program, false);
+        assertTrue(shared.nodeCount() * 50 < unshared.nodeCount(), shared.nodeCount() + " " + unshared.nodeCount());
+        assertEquals(2, shared.symbolCount());
+        assertEquals(400, shared.callMain());
+        assertEquals(program, shared.decode());
+    }
+
+    @Test
+    public void testErrors() {
+        var missingMain = AstArena.encode(PrattParser.parseProgram("define f() { 1; }"));
+        var e = assertThrows(LanguageException.class, missingMain::callMain);
+        assertEquals("This program doesn't have main() function", e.getMessage());
+        e = assertThrows(LanguageException.class, () -> AstArena.encode(PrattParser.parseProgram("""
+                define main() {
+                  x + 1;
+                }""")).callMain());
+        assertEquals("Variable x is not defined", e.getMessage());
+        e = assertThrows(LanguageException.class, () -> AstArena.encode(PrattParser.parseProgram("""
+                define sub(a, b) {
+                  a - b;
+                }
+                define main() {
+                  sub[a = 1];
+                }""")).callMain());
+        assertEquals("Label b is missing in call to sub", e.getMessage());
+        e = assertThrows(LanguageException.class, () -> AstArena.encode(PrattParser.parseProgram("""
+                define sub(a, b) {
+                  a - b;
+                }
+                define main() {
+                  sub(1);
+                }""")).callMain());
+        assertEquals("Function sub expects 2 arguments but got 1", e.getMessage());
+        var r = assertThrows(RuntimeException.class, () -> AstArena.encode(PrattParser.parseProgram("""
+                define main() {
+                  nothing(1);
+                }""")).callMain());
+        assertEquals("Function nothing is not found", r.getMessage());
+    }
+}
@@ -0,0 +1,163 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchEvaluatorTest {
+    private static final String PROGRAM = """
+            global weight = 3;
+            define score(age, income, debt) {
+              ratio = debt * 100 / (income + 1);
+              base = age * 2 + income / 1000 - ratio;
+              base + (ratio < 40) * 50 - (age >= 65) * 10;
+            }
+            define bucket(x) {
+              if (x < 0) {
+                0 - 1;
+              } else {
+                digits(x);
+              }
+            }
+            define digits(x) {
+              if (x < 10) {
+                1;
+              } else {
+                1 + digits(x / 10);
+              }
+            }
+            define weighted(x) {
+              println(x);
+              x * weight;
+            }
+            define main() {
+              0;
+            }""";
+
+    private static int[] column(Random random, int rows, int bound) {
+        var column = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            column[i] = random.nextInt(bound);
+        }
+        return column;
+    }
+
+    private static int[] rowByRow(String function, int[]... columns) {
+        var context = LoadedProgram.load(PrattParser.parseProgram(PROGRAM), function).newContext();
+        var result = new int[columns[0].length];
+        var args = new int[columns.length];
+        for (int row = 0; row < result.length; row++) {
+            for (int i = 0; i < columns.length; i++) {
+                args[i] = columns[i][row];
+            }
+            result[row] = context.call(function, args);
+        }
+        return result;
+    }
+
+    @Test
+    public void testBranchFreeFunctionIsVectorized() {
+        var random = new Random(42);
+        int rows = 5 * BatchEvaluator.SPLIT_THRESHOLD + 17;
+        var age = column(random, rows, 100);
+        var income = column(random, rows, 200_000);
+        var debt = column(random, rows, 50_000);
+        var batch = BatchEvaluator.load(PrattParser.parseProgram(PROGRAM), "score");
+        assertTrue(batch.isVectorized());
+        assertTrue(batch.isParallel());
+        assertArrayEquals(rowByRow("score", age, income, debt), batch.evaluate(age, income, debt));
+    }
+
+    @Test
+    public void testVectorLoopsMatchScalarLoops() {
+        // started with the module, as the vectorTest task does, the kernel uses the Vector API
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            assertEquals("VectorLoops", ColumnKernel.LOOPS.getClass().getSimpleName());
+        }
+        var random = new Random(7);
+        // 1000 is not a multiple of any vector length, so the scalar tail runs as well
+        int size = 1000;
+        var lhs = random.ints(size, -50, 50).toArray();
+        var rhs = random.ints(size, -50, 50).toArray();
+        rhs[0] = lhs[0];
+        rhs[size - 1] = lhs[size - 1];
+        for (var operator : Operator.values()) {
+            if (operator == Operator.DIVIDE) {
+                for (int i = 0; i < size; i++) {
+                    rhs[i] = rhs[i] == 0 ? 1 : rhs[i];
+                }
+            }
+            var expected = new int[size];
+            var actual = new int[size];
+            ColumnKernel.SCALAR.apply(operator, lhs, rhs, expected, size);
+            ColumnKernel.LOOPS.apply(operator, lhs, rhs, actual, size);
+            assertArrayEquals(expected, actual);
+        }
+        var zero = new int[size];
+        assertThrows(ArithmeticException.class, () -> ColumnKernel.LOOPS.apply(Operator.DIVIDE, lhs, zero, zero, size));
+    }
+
+    @Test
+    public void testControlFlowFallsBackToRows() {
+        var random = new Random(7);
+        int rows = 3 * BatchEvaluator.SPLIT_THRESHOLD;
+        var x = column(random, rows, Integer.MAX_VALUE);
+        x[5] = -4;
+        var batch = BatchEvaluator.load(PrattParser.parseProgram(PROGRAM), "bucket");
+        assertFalse(batch.isVectorized());
+        assertTrue(batch.isParallel());
+        var result = batch.evaluate(x);
+        assertArrayEquals(rowByRow("bucket", x), result);
+        assertEquals(-1, result[5]);
+    }
+
+    @Test
+    public void testImpureFunctionRunsInOrder() {
+        var out = new ByteArrayOutputStream();
+        var sink = OutputSink.buffered(out, StandardCharsets.UTF_8, OutputSink.FlushPolicy.END);
+        var batch = BatchEvaluator.load(PrattParser.parseProgram(PROGRAM), "weighted", sink);
+        assertFalse(batch.isParallel());
+        assertArrayEquals(new int[] {6, 0, -9}, batch.evaluate(new int[] {2, 0, -3}));
+        assertEquals(String.join(System.lineSeparator(), "2", "0", "-3", ""), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        var batch = BatchEvaluator.load(PrattParser.parseProgram(PROGRAM), "score");
+        assertEquals(0, batch.evaluate(new int[0], new int[0], new int[0]).length);
+    }
+
+    @Test
+    public void testDivisionByZeroFails() {
+        var batch = BatchEvaluator.load(PrattParser.parseProgram(PROGRAM), "score");
+        int rows = 4 * BatchEvaluator.SPLIT_THRESHOLD;
+        var income = new int[rows];
+        income[rows - 1] = -1;
+        assertThrows(ArithmeticException.class, () -> batch.evaluate(new int[rows], income, new int[rows]));
+    }
+
+    @Test
+    public void testMismatchedColumns() {
+        var batch = BatchEvaluator.load(PrattParser.parseProgram(PROGRAM), "score");
+        var e = assertThrows(LanguageException.class, () -> batch.evaluate(new int[1], new int[1]));
+        assertEquals("Function score expects 3 arguments but got 2", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> batch.evaluate(new int[2], new int[2], new int[1]));
+    }
+
+    @Test
+    public void testCallNeedsAnEntry() {
+        var context = LoadedProgram.load(PrattParser.parseProgram(PROGRAM), "digits").newContext();
+        assertEquals(3, context.call("digits", 512));
+        assertThrows(RuntimeException.class, () -> context.call("bucket", 1));
+        var e = assertThrows(LanguageException.class, () -> context.call("digits"));
+        assertEquals("Function digits expects 1 arguments but got 0", e.getMessage());
+    }
+}
@@ -0,0 +1,92 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinaryProgramTest {
+    private static final String SOURCE = """
+            global base = -2147483648;
+            global scale = 3;
+            define unused(x) {
+              while (x > 0) { x = x - 1; }
+              println(x);
+            }
+            define area(width, height) {
+              width * height;
+            }
+            define main() {
+              if (scale >= 3) { a = area[height=scale, width=7]; } else { a = 0; }
+              { }
+              a + base + 2147483647 + 1;
+            }""";
+
+    @Test
+    public void testRoundTrip() {
+        var program = PrattParser.parseProgram(SOURCE);
+        var bytes = BinaryProgram.encode(program);
+        assertEquals(program, BinaryProgram.of(ByteBuffer.wrap(bytes)).decode());
+        assertTrue(bytes.length < SOURCE.length());
+    }
+
+    @Test
+    public void testDecodesOnlyReachableFunctions() throws Exception {
+        var program = PrattParser.parseProgram(SOURCE);
+        var path = Files.createTempFile("program", ".calc");
+        try {
+            BinaryProgram.write(program, path);
+            var loaded = BinaryProgram.load(path);
+            assertEquals(0, loaded.decodedBodies());
+            assertEquals(new Interpreter().callMain(program), loaded.callMain());
+            // two global initializers, main and area; unused is never decoded
+            assertEquals(4, loaded.decodedBodies());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testMemoizationDecodesOnlyReachedFunctions() {
+        var program = PrattParser.parseProgram(SOURCE);
+        var loaded = BinaryProgram.of(ByteBuffer.wrap(BinaryProgram.encode(program)));
+        assertEquals(new Interpreter().callMain(program), loaded.callMain(1024, null, OutputSink.standardOutput()));
+        // purity is only decided for the linked functions, so unused is still not decoded
+        assertEquals(4, loaded.decodedBodies());
+    }
+
+    @Test
+    public void testRejectsOtherData() {
+        assertThrows(LanguageException.class, () -> BinaryProgram.of(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5})));
+    }
+
+    @Test
+    public void testRejectsTruncatedPrograms() {
+        var bytes = BinaryProgram.encode(PrattParser.parseProgram(SOURCE));
+        for (int length = 0; length < bytes.length; length++) {
+            var truncated = ByteBuffer.wrap(bytes, 0, length);
+            var e = assertThrows(LanguageException.class, () -> BinaryProgram.of(truncated));
+            assertTrue(e.getMessage().contains("binary program"), e.getMessage());
+        }
+    }
+
+    @Test
+    public void testCorruptBytesFailAsLanguageErrors() {
+        var bytes = BinaryProgram.encode(PrattParser.parseProgram(SOURCE));
+        for (int i = 4; i < bytes.length; i++) {
+            for (int value : new int[]{0x00, 0x0f, 0x7f, 0xff}) {
+                var corrupt = bytes.clone();
+                corrupt[i] = (byte) value;
+                try {
+                    BinaryProgram.of(ByteBuffer.wrap(corrupt)).decode();
+                } catch (LanguageException e) {
+                    // out-of-range string, operator and tag indexes and counts are all reported like this
+                }
+            }
+        }
+    }
+}
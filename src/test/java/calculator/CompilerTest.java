@@ -0,0 +1,101 @@
+package calculator;
+
+import org.javafp.parsecj.input.Input;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static calculator.Ast.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CompilerTest {
+    private Compiler compiler = new Compiler();
+
+    private static Program parse(String source) throws Exception {
+        return Parsers.program().parse(Input.of(source)).getResult();
+    }
+
+    private void assertSameAsInterpreter(Program program) {
+        assertEquals(new Interpreter().callMain(program), compiler.callMain(program));
+    }
+
+    @Test
+    public void testFactorial() {
+        var program = new Program(List.of(
+                DefineFunction("main", List.of(),
+                        Block(call("fact", integer(5)))
+                ),
+                DefineFunction("fact", List.of("n"),
+                        Block(
+                                If(
+                                        lessThan(identifier("n"), integer(2)),
+                                        integer(1),
+                                        Optional.of(
+                                                multiply(
+                                                        identifier("n"),
+                                                        call("fact",
+                                                                subtract(identifier("n"), integer(1))
+                                                        )
+                                                )
+                                        )
+                                )
+                        )
+                )
+        ));
+        assertEquals(120, compiler.callMain(program));
+        assertSameAsInterpreter(program);
+    }
+
+    @Test
+    public void testLabelledCall() throws Exception {
+        assertSameAsInterpreter(parse("""
+                define power(n) {
+                  n * n;
+                }
+                define main() {
+                  power[n = 5];
+                }"""));
+    }
+
+    @Test
+    public void testLoopsAndGlobals() throws Exception {
+        var program = parse("""
+                global limit = 100000;
+                define sum(n) {
+                  total = 0;
+                  for(i in 0 to n) {
+                    total = total + i;
+                  }
+                  total;
+                }
+                define main() {
+                  i = 0;
+                  while(i < 3) {
+                    i = i + 1;
+                  }
+                  sum(limit) + i;
+                }""");
+        var compiled = compiler.compile(program);
+        assertEquals(new Interpreter().callMain(program), compiled.callMain());
+        assertEquals(3, compiled.getValue("i"));
+        assertEquals(100000, compiled.getValue("limit"));
+    }
+
+    @Test
+    public void testRuntimeErrors() throws Exception {
+        var program = parse("""
+                define main() {
+                  if(1 < 2) {
+                    missing;
+                  }
+                }""");
+        assertThrows(LanguageException.class, () -> compiler.callMain(program));
+        var division = parse("""
+                define main() {
+                  1 / 0;
+                }""");
+        assertThrows(ArithmeticException.class, () -> compiler.callMain(division));
+    }
+}
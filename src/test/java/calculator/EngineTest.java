@@ -0,0 +1,163 @@
+package calculator;
+
+import org.javafp.parsecj.input.Input;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+import static calculator.Ast.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class EngineTest {
+    private static Ast.Program parse(String source) throws Exception {
+        return Parsers.program().parse(Input.of(source)).getResult();
+    }
+
+    private static void assertAllEngines(int expected, String source) throws Exception {
+        var program = parse(source);
+        for (var engine : Engine.values()) {
+            assertEquals(expected, engine.callMain(program), engine.name());
+        }
+    }
+
+    @Test
+    public void testFactorial() throws Exception {
+        assertAllEngines(120, """
+                define factorial(n) {
+                  if(n < 2) {
+                    1;
+                  } else {
+                    n * factorial(n - 1);
+                  }
+                }
+                define main() {
+                  factorial(5);
+                }""");
+    }
+
+    @Test
+    public void testFibonacci() throws Exception {
+        assertAllEngines(6765, """
+                define fib(n) {
+                  if(n < 2) {
+                    n;
+                  } else {
+                    fib(n - 1) + fib(n - 2);
+                  }
+                }
+                define main() {
+                  fib(20);
+                }""");
+    }
+
+    @Test
+    public void testLabelledCall() throws Exception {
+        assertAllEngines(7, """
+                define sub(a, b) {
+                  a - b;
+                }
+                define main() {
+                  sub[b = 3, a = 10];
+                }""");
+    }
+
+    @Test
+    public void testLoopsAndGlobals() throws Exception {
+        assertAllEngines(4950 + 3 + 7, """
+                global offset = 7;
+                define sum(n) {
+                  total = 0;
+                  for(i in 0 to n) {
+                    total = total + i;
+                  }
+                  total + offset;
+                }
+                define main() {
+                  i = 0;
+                  while(i < 3) {
+                    i = i + 1;
+                  }
+                  sum(100) + i;
+                }""");
+    }
+
+    @Test
+    public void testEvaluationOrder() {
+        // define f(x) { x + (x = 3) + x; } with an assignment as an operand
+        var program = new Ast.Program(List.of(
+                DefineFunction("f", List.of("x"),
+                        Block(add(add(identifier("x"), assignment("x", integer(3))), identifier("x")))
+                ),
+                DefineFunction("main", List.of(), Block(call("f", integer(5))))
+        ));
+        for (var engine : Engine.values()) {
+            assertEquals(11, engine.callMain(program), engine.name());
+        }
+    }
+
+    @Test
+    public void testUnassignedLocals() throws Exception {
+        var source = """
+                global x = 5;
+                define f(n) {
+                  if (n > 0) {
+                    x = n;
+                  }
+                  x;
+                }
+                define g(n) {
+                  i = 0;
+                  while (i < n) {
+                    if (i == 1) {
+                      y = 10;
+                    }
+                    i = i + 1;
+                  }
+                  y;
+                }
+                define h(c) {
+                  if (c) { z = 1; } else { z = 2; }
+                  z + z;
+                }
+                define main() {
+                  f(%d) + g(%d) + h(0);
+                }""";
+        // x is local to f because f assigns it, so the global does not show through
+        assertAllEngines(3 + 10 + 4, source.formatted(3, 2));
+        for (var arguments : List.of(List.of(0, 2), List.of(3, 1))) {
+            var program = parse(source.formatted(arguments.get(0), arguments.get(1)));
+            var name = arguments.get(0) == 0 ? "x" : "y";
+            var loaded = LoadedProgram.load(program);
+            var runs = new ArrayList<IntSupplier>();
+            for (var engine : Engine.values()) {
+                runs.add(() -> engine.callMain(program));
+            }
+            runs.add(() -> loaded.newContext().run());
+            runs.add(() -> loaded.newExactContext().run().intValue());
+            runs.add(() -> AstArena.encode(program).callMain());
+            for (var run : runs) {
+                var e = assertThrows(LanguageException.class, run::getAsInt);
+                assertEquals("Variable " + name + " is not defined", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        var undefined = parse("""
+                define main() {
+                  missing;
+                }""");
+        var division = parse("""
+                define main() {
+                  1 / 0;
+                }""");
+        for (var engine : Engine.values()) {
+            assertThrows(LanguageException.class, () -> engine.callMain(undefined));
+            assertThrows(ArithmeticException.class, () -> engine.callMain(division));
+        }
+    }
+}
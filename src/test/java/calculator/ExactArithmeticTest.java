@@ -0,0 +1,171 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ExactArithmeticTest {
+    private static BigInteger exact(String source) {
+        return LoadedProgram.load(PrattParser.parseProgram(source)).newExactContext().run();
+    }
+
+    private static BigInteger factorial(int n) {
+        var result = BigInteger.ONE;
+        for (int i = 2; i <= n; i++) {
+            result = result.multiply(BigInteger.valueOf(i));
+        }
+        return result;
+    }
+
+    @Test
+    public void testPromotesOnOverflow() {
+        var source = """
+                define fact(n) {
+                  if (n < 2) {
+                    1;
+                  } else {
+                    n * fact(n - 1);
+                  }
+                }
+                define main() {
+                  fact(30);
+                }""";
+        assertEquals(factorial(30), exact(source));
+        // the int engines wrap
+        assertEquals(factorial(30).intValue(), LoadedProgram.load(PrattParser.parseProgram(source)).run());
+    }
+
+    @Test
+    public void testConstantsAreNotFoldedPastInt() {
+        // load runs the Optimizer, which must not wrap what an exact context promotes
+        assertEquals(BigInteger.valueOf(Integer.MAX_VALUE).add(BigInteger.ONE).multiply(BigInteger.TWO), exact("""
+                define main() {
+                  (2147483647 + 1) * 2;
+                }"""));
+    }
+
+    @Test
+    public void testSameAsIntWithoutOverflow() {
+        var source = """
+                global total = 0;
+                define fib(n) {
+                  if (n < 2) {
+                    n;
+                  } else {
+                    fib(n - 1) + fib(n - 2);
+                  }
+                }
+                define main() {
+                  a = [5, 0 - 3, 7];
+                  for (i in 0 to length(a)) {
+                    a[i] = a[i] * 2 - 1;
+                    total = total + a[i];
+                  }
+                  fib(20) + total + sum(a) / 3 - (7 / 2);
+                }""";
+        var program = LoadedProgram.load(PrattParser.parseProgram(source));
+        var context = program.newExactContext();
+        assertEquals(BigInteger.valueOf(program.run()), context.run());
+        assertEquals(BigInteger.valueOf(15), context.getValue("total"));
+    }
+
+    @Test
+    public void testDemotesBackToSmallValues() {
+        var context = LoadedProgram.load(PrattParser.parseProgram("""
+                global big = 0;
+                define main() {
+                  x = 1;
+                  i = 0;
+                  while (i < 100) {
+                    x = x * 2;
+                    i = i + 1;
+                  }
+                  big = x;
+                  while (0 < i) {
+                    x = x / 2;
+                    i = i - 1;
+                  }
+                  (x == 1) + (big > x) * 10;
+                }""")).newExactContext();
+        assertEquals(BigInteger.valueOf(11), context.run());
+        assertEquals(BigInteger.TWO.pow(100), context.getValue("big"));
+    }
+
+    @Test
+    public void testLongMinValueIsNotMistakenForBig() {
+        // -2^63 is the long sentinel for a big value, so it must stay a correct value
+        var min = exact("""
+                define main() {
+                  x = -2147483648 * -2147483648 * -2;
+                  x + 0;
+                }""");
+        assertEquals(BigInteger.valueOf(Long.MIN_VALUE), min);
+        assertEquals(BigInteger.valueOf(Long.MIN_VALUE).subtract(BigInteger.ONE), exact("""
+                define main() {
+                  -2147483648 * -2147483648 * -2 - 1;
+                }"""));
+    }
+
+    @Test
+    public void testPrintsBigValues() {
+        var out = new ByteArrayOutputStream();
+        var sink = OutputSink.buffered(out, StandardCharsets.UTF_8, OutputSink.FlushPolicy.END, 16);
+        LoadedProgram.load(PrattParser.parseProgram("""
+                define main() {
+                  println(7);
+                  println(1500000000 * 2);
+                  p = 65536 * 65536;
+                  println(p * p * p);
+                }""")).newExactContext(sink).run();
+        assertEquals(String.join(System.lineSeparator(), "7", "3000000000", BigInteger.TWO.pow(96).toString(), ""), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testErrors() {
+        var e = assertThrows(ArithmeticException.class, () -> exact("""
+                define main() {
+                  p = 65536 * 65536;
+                  p * p * p / 0;
+                }"""));
+        assertEquals("/ by zero", e.getMessage());
+        var l = assertThrows(LanguageException.class, () -> exact("""
+                define main() {
+                  a = array(2);
+                  a[0] = 1500000000 * 2;
+                }"""));
+        assertEquals("Value 3000000000 does not fit in an array element", l.getMessage());
+        l = assertThrows(LanguageException.class, () -> exact("""
+                define main() {
+                  a = array(2);
+                  a[65536 * 65536];
+                }"""));
+        assertEquals("Index 4294967296 is out of bounds for length 2", l.getMessage());
+    }
+
+    @Test
+    public void testCountedLoopBeyondLong() {
+        assertEquals(BigInteger.TWO.pow(128).add(BigInteger.valueOf(3)), exact("""
+                define main() {
+                  p = 65536 * 65536;
+                  p = p * p;
+                  n = 0;
+                  for (i in p * p - 3 to p * p) {
+                    n = n + 1;
+                  }
+                  i + n;
+                }"""));
+    }
+
+    @Test
+    public void testSumOfArrayDoesNotWrap() {
+        assertEquals(BigInteger.valueOf(3L * Integer.MAX_VALUE), exact("""
+                define main() {
+                  sum(fill(array(3), 2147483647));
+                }"""));
+    }
+}
@@ -0,0 +1,225 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExecutionBudgetTest {
+    private static final String FOREVER = """
+            define main() {
+              x = 0;
+              while (1) {
+                x = x + 1;
+              }
+            }""";
+
+    private static final String COUNTING = """
+            define f(n) {
+              n + 1;
+            }
+            define main() {
+              i = 0;
+              while (i < 10) {
+                i = f(i);
+              }
+              for (j in 0 to 5) {
+                i = i + j;
+              }
+              i;
+            }""";
+
+    private static Interpreter interpreter(ExecutionBudget budget) {
+        return new Interpreter(0, null, OutputSink.standardOutput(), null, budget);
+    }
+
+    private static LimitExceededException.Limit exceeded(ExecutionBudget budget, String source) {
+        var program = PrattParser.parseProgram(source);
+        var e = assertThrows(LimitExceededException.class, () -> interpreter(budget).callMain(program));
+        return e.limit();
+    }
+
+    @Test
+    public void testFuelCountsIterationsAndCalls() {
+        var program = PrattParser.parseProgram(COUNTING);
+        // 10 while iterations, 10 calls and 5 for iterations
+        var exact = new ExecutionBudget(25, ExecutionBudget.UNLIMITED_DEPTH);
+        assertEquals(20, interpreter(exact).callMain(program));
+        assertEquals(0, exact.remainingFuel());
+        assertEquals(25, exact.usedFuel());
+
+        var e = assertThrows(LimitExceededException.class,
+                () -> interpreter(new ExecutionBudget(24, ExecutionBudget.UNLIMITED_DEPTH)).callMain(program));
+        assertEquals(LimitExceededException.Limit.FUEL, e.limit());
+        assertEquals("Fuel of 24 steps is exhausted", e.getMessage());
+    }
+
+    @Test
+    public void testInfiniteLoopRunsOutOfFuel() {
+        var budget = new ExecutionBudget(100_000, ExecutionBudget.UNLIMITED_DEPTH);
+        assertEquals(LimitExceededException.Limit.FUEL, exceeded(budget, FOREVER));
+        assertEquals(100_000, budget.usedFuel());
+    }
+
+    @Test
+    public void testMaxDepth() {
+        var recursion = """
+                define down(n) {
+                  if (n == 0) {
+                    0;
+                  } else {
+                    down(n - 1) + 1;
+                  }
+                }
+                define main() {
+                  down(%d);
+                }""";
+        var program = PrattParser.parseProgram(recursion.formatted(50));
+        assertEquals(50, interpreter(new ExecutionBudget(ExecutionBudget.UNLIMITED_FUEL, 51)).callMain(program));
+        var e = assertThrows(LimitExceededException.class,
+                () -> interpreter(new ExecutionBudget(ExecutionBudget.UNLIMITED_FUEL, 50)).callMain(program));
+        assertEquals(LimitExceededException.Limit.DEPTH, e.limit());
+        assertEquals("Call depth exceeds 50", e.getMessage());
+        // runaway recursion stops long before the Java stack would overflow
+        var budget = new ExecutionBudget(ExecutionBudget.UNLIMITED_FUEL, 100);
+        assertEquals(LimitExceededException.Limit.DEPTH, exceeded(budget, """
+                define forever(n) {
+                  forever(n + 1);
+                }
+                define main() {
+                  forever(0);
+                }"""));
+    }
+
+    @Test
+    public void testParallelProgramIsMeteredLikeSequential() {
+        var program = PrattParser.parseProgram("""
+                define fib(n) {
+                  if (n < 2) {
+                    n;
+                  } else {
+                    fib(n - 1) + fib(n - 2);
+                  }
+                }
+                define main() {
+                  fib(27);
+                }""");
+        var sequential = new ExecutionBudget(ExecutionBudget.UNLIMITED_FUEL, 40);
+        assertEquals(196418, LoadedProgram.load(program).newContext(OutputSink.standardOutput(), sequential).run());
+        var parallel = new ExecutionBudget(ExecutionBudget.UNLIMITED_FUEL, 40);
+        assertEquals(196418, LoadedProgram.loadParallel(program).newContext(OutputSink.standardOutput(), parallel).run());
+        assertEquals(sequential.usedFuel(), parallel.usedFuel());
+    }
+
+    @Test
+    public void testDeadline() {
+        var budget = new ExecutionBudget(ExecutionBudget.UNLIMITED_FUEL, ExecutionBudget.UNLIMITED_DEPTH,
+                Duration.ofMillis(50));
+        assertEquals(LimitExceededException.Limit.DEADLINE, exceeded(budget, FOREVER));
+    }
+
+    @Test
+    public void testCancellation() throws Exception {
+        var budget = new ExecutionBudget(ExecutionBudget.UNLIMITED_FUEL, ExecutionBudget.UNLIMITED_DEPTH);
+        var program = PrattParser.parseProgram(FOREVER);
+        var thrown = new LimitExceededException[1];
+        var runner = new Thread(() -> {
+            try {
+                interpreter(budget).callMain(program);
+            } catch (LimitExceededException e) {
+                thrown[0] = e;
+            }
+        });
+        runner.start();
+        Thread.sleep(20);
+        budget.cancel();
+        runner.join(10_000);
+        assertTrue(budget.isCancelled());
+        assertEquals(LimitExceededException.Limit.CANCELLED, thrown[0].limit());
+        assertEquals("Execution was cancelled", thrown[0].getMessage());
+    }
+
+    @Test
+    public void testBudgetSpansStatements() throws Exception {
+        var budget = new ExecutionBudget(10, ExecutionBudget.UNLIMITED_DEPTH);
+        var interpreter = new Interpreter(0, null,
+                OutputSink.buffered(new ByteArrayOutputStream(), StandardCharsets.UTF_8, OutputSink.FlushPolicy.END),
+                null, budget);
+        var stream = new StatementStream(interpreter, new StringReader("""
+                i = 0;
+                while (8 > i) i = i + 1;
+                while (i > 5) i = i - 1;
+                """));
+        var e = assertThrows(LimitExceededException.class, stream::run);
+        assertEquals(LimitExceededException.Limit.FUEL, e.limit());
+        assertEquals(6, interpreter.getValue("i"));
+    }
+
+    @Test
+    public void testOptimizedCodeIsCharged() {
+        var program = PrattParser.parseProgram(COUNTING);
+        var exact = new ExecutionBudget(25, ExecutionBudget.UNLIMITED_DEPTH);
+        var tiering = new Tiering(1, 1, Runnable::run);
+        assertEquals(20, new Interpreter(0, null, OutputSink.standardOutput(), tiering, exact).callMain(program));
+        assertEquals(25, exact.usedFuel());
+        assertTrue(tiering.statistics().transitions().size() > 0);
+        var e = assertThrows(LimitExceededException.class, () -> new Interpreter(0, null,
+                OutputSink.standardOutput(), new Tiering(1, 1, Runnable::run),
+                new ExecutionBudget(24, ExecutionBudget.UNLIMITED_DEPTH)).callMain(program));
+        assertEquals(LimitExceededException.Limit.FUEL, e.limit());
+
+        var recursion = PrattParser.parseProgram("""
+                define down(n) {
+                  if (n == 0) {
+                    0;
+                  } else {
+                    down(n - 1) + 1;
+                  }
+                }
+                define main() {
+                  down(1);
+                  down(50);
+                }""");
+        // the first call promotes down, so the deep recursion runs as nodes
+        var deep = new ExecutionBudget(ExecutionBudget.UNLIMITED_FUEL, 50);
+        e = assertThrows(LimitExceededException.class, () -> new Interpreter(0, null,
+                OutputSink.standardOutput(), new Tiering(1, 1, Runnable::run), deep).callMain(recursion));
+        assertEquals(LimitExceededException.Limit.DEPTH, e.limit());
+    }
+
+    @Test
+    public void testLoadedProgramContexts() throws Exception {
+        var program = LoadedProgram.load(PrattParser.parseProgram(FOREVER));
+        var budget = new ExecutionBudget(1000, ExecutionBudget.UNLIMITED_DEPTH);
+        var e = assertThrows(LimitExceededException.class,
+                () -> program.newContext(OutputSink.standardOutput(), budget).run());
+        assertEquals(LimitExceededException.Limit.FUEL, e.limit());
+        assertEquals(1000, budget.usedFuel());
+
+        var counting = LoadedProgram.load(PrattParser.parseProgram(COUNTING));
+        var exact = new ExecutionBudget(25, ExecutionBudget.UNLIMITED_DEPTH);
+        assertEquals(20, counting.newContext(OutputSink.standardOutput(), exact).run());
+        assertEquals(25, exact.usedFuel());
+
+        try (var executor = new ProgramExecutor(Executors.newSingleThreadExecutor())) {
+            var future = executor.submit(program, new ExecutionBudget(100, ExecutionBudget.UNLIMITED_DEPTH));
+            var failure = assertThrows(ExecutionException.class, future::get);
+            assertEquals(LimitExceededException.Limit.FUEL, ((LimitExceededException) failure.getCause()).limit());
+            assertEquals(20, executor.submit(counting, new ExecutionBudget(25, 1)).get());
+        }
+    }
+
+    @Test
+    public void testInvalidBudgets() {
+        assertThrows(IllegalArgumentException.class, () -> new ExecutionBudget(-1, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ExecutionBudget(10, -1));
+    }
+}
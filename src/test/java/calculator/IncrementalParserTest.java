@@ -0,0 +1,54 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class IncrementalParserTest {
+    private static final String SOURCE = """
+            // counters
+            global total = 0;
+            define add(a, b) {
+              if (a > b) { a; } else { b; }
+              a + b;
+            }
+            define main() {
+              add(1, 2);
+            }
+            """;
+
+    @Test
+    public void testReusesUnchangedDefinitions() {
+        var parser = new IncrementalParser();
+        var first = parser.parse(SOURCE);
+        assertEquals(PrattParser.parseProgram(SOURCE), first);
+        assertEquals(3, parser.lastParsed());
+
+        var edited = SOURCE.replace("add(1, 2)", "add(3, 4)");
+        var second = parser.parse(edited);
+        assertEquals(PrattParser.parseProgram(edited), second);
+        assertEquals(1, parser.lastParsed());
+        assertEquals(2, parser.lastReused());
+        assertSame(first.definitions().get(0), second.definitions().get(0));
+        assertSame(first.definitions().get(1), second.definitions().get(1));
+    }
+
+    @Test
+    public void testReportsErrorsAgainstTheWholeSource() {
+        var parser = new IncrementalParser();
+        parser.parse(SOURCE);
+        var error = assertThrows(LanguageException.class, () -> parser.parse(SOURCE.replace("a + b;", "a + ;")));
+        assertEquals(assertThrows(LanguageException.class,
+                () -> PrattParser.parseProgram(SOURCE.replace("a + b;", "a + ;"))).getMessage(), error.getMessage());
+    }
+
+    @Test
+    public void testKeywordsInsideBodiesDoNotSplit() {
+        var source = "define f(global_x) { define_y = global_x; }\ndefine main() { f(1); }";
+        var parser = new IncrementalParser();
+        assertEquals(PrattParser.parseProgram(source), parser.parse(source));
+        assertEquals(2, parser.lastParsed());
+    }
+}
@@ -7,6 +7,8 @@ import java.util.Optional;
 
 import static calculator.Ast.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class InterpreterTest {
     private Interpreter interpreter = new Interpreter();
@@ -46,4 +48,61 @@ public class InterpreterTest {
         int result = interpreter.callMain(new Ast.Program(topLevels));
         assertEquals(120, result);
     }
+
+    @Test
+    public void testGlobalsAndLocals() {
+        List<Ast.TopLevel> topLevels = List.of(
+                // global x = 10;
+                new GlobalVariableDefinition("x", integer(10)),
+                // define main() {
+                //   y = shadow(1);
+                //   x + y;
+                // }
+                DefineFunction("main", List.of(),
+                        Block(
+                                assignment("y", call("shadow", integer(1))),
+                                add(identifier("x"), identifier("y"))
+                        )
+                ),
+                // define shadow(n) {
+                //   x = n + 100;
+                //   x;
+                // }
+                DefineFunction("shadow", List.of("n"),
+                        Block(
+                                assignment("x", add(identifier("n"), integer(100))),
+                                identifier("x")
+                        )
+                )
+        );
+        int result = interpreter.callMain(new Ast.Program(topLevels));
+        assertEquals(111, result);
+        assertEquals(10, interpreter.getValue("x"));
+        assertEquals(101, interpreter.getValue("y"));
+        assertNull(interpreter.getValue("n"));
+    }
+
+    @Test
+    public void testUndefinedVariable() {
+        assertThrows(LanguageException.class, () -> interpreter.interpret(identifier("undefined")));
+    }
+
+    @Test
+    public void testCallsAreLinkedBeforeMainRuns() {
+        // define main() {
+        //   x = 1;
+        //   if (x == 0) { missing(x); }
+        // }
+        var program = new Ast.Program(List.of(
+                DefineFunction("main", List.of(),
+                        Block(
+                                assignment("x", integer(1)),
+                                If(equalEqual(identifier("x"), integer(0)), call("missing", identifier("x")))
+                        )
+                )
+        ));
+        var error = assertThrows(RuntimeException.class, () -> interpreter.callMain(program));
+        assertEquals("Function missing is not found", error.getMessage());
+        assertNull(interpreter.getValue("x"));
+    }
 }
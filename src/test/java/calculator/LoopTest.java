@@ -0,0 +1,166 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoopTest {
+    private static void assertAllEngines(int expected, String source) {
+        var program = PrattParser.parseProgram(source);
+        for (var engine : Engine.values()) {
+            assertEquals(expected, engine.callMain(program), engine.name());
+        }
+        assertEquals(expected, LoadedProgram.load(program).newContext().run(), "context");
+    }
+
+    private static Resolved.Function resolve(String source, String name) {
+        return new Resolver().resolveProgram(PrattParser.parseProgram(source)).functions().get(name);
+    }
+
+    @Test
+    public void testCountedLoopLeavesVariableAtBound() {
+        assertAllEngines(571, """
+                define last() {
+                  for (k in 0 to 0) {
+                    k;
+                  }
+                }
+                define main() {
+                  for (i in 0 to 5) {
+                    seen = i;
+                  }
+                  for (j in 7 to 3) {
+                    seen = j;
+                  }
+                  i * 100 + j * 10 + last();
+                }""");
+    }
+
+    @Test
+    public void testCountedLoopsInFunctions() {
+        assertAllEngines(90 + 90, """
+                define triangle(n, k) {
+                  total = 0;
+                  for (i in 0 to n) {
+                    total = total + i * k;
+                  }
+                  total;
+                }
+                define nested(n) {
+                  total = 0;
+                  for (i in 0 to n) {
+                    for (j in 0 to n) {
+                      total = total + i + j;
+                    }
+                  }
+                  total / 10;
+                }
+                define main() {
+                  triangle(10, 2) + nested(10);
+                }""");
+    }
+
+    @Test
+    public void testBoundIsCheckedOnEntry() {
+        for (var engine : Engine.values()) {
+            var e = assertThrows(LanguageException.class, () -> engine.callMain(PrattParser.parseProgram("""
+                    define main() {
+                      for (i in 0 to n) {
+                        println(i);
+                      }
+                    }""")));
+            assertEquals("Variable n is not defined", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testOnlyUnassignedLoopsAreCounted() {
+        var function = resolve("""
+                define f(n) {
+                  for (i in 0 to n) {
+                    i = i + 1;
+                  }
+                  for (i in 0 to n) {
+                    n = n - 1;
+                  }
+                  for (i in 0 to n) {
+                    n;
+                  }
+                }
+                define main() {
+                  f(4);
+                }""", "f");
+        var elements = ((Resolved.Block) function.body()).elements();
+        assertTrue(((Resolved.Block) elements[0]).elements()[1] instanceof Resolved.While);
+        assertTrue(((Resolved.Block) elements[1]).elements()[1] instanceof Resolved.While);
+        assertTrue(((Resolved.Block) elements[2]).elements()[1] instanceof Resolved.CountedLoop);
+    }
+
+    @Test
+    public void testInvariantsAreHoisted() {
+        var function = resolve("""
+                define f(n, k) {
+                  total = 0;
+                  i = 0;
+                  while (i < n * k) {
+                    total = total + (n * k) / 2 + i;
+                    i = i + 1;
+                  }
+                  total;
+                }
+                define main() {
+                  f(2, 3);
+                }""", "f");
+        // total and i follow the parameters; n * k and (n * k) / 2 get one slot each
+        assertEquals(6, function.frameSize());
+        var hoisted = (Resolved.Block) ((Resolved.Block) function.body()).elements()[2];
+        assertEquals(3, hoisted.elements().length);
+        assertEquals(new Resolved.LocalStore(4, new Resolved.Binary(
+                Operator.MULTIPLY,
+                new Resolved.LocalLoad(0),
+                new Resolved.LocalLoad(1)
+        )), hoisted.elements()[0]);
+        var loop = (Resolved.While) hoisted.elements()[2];
+        assertEquals(
+                new Resolved.Binary(Operator.LESS_THAN, new Resolved.LocalLoad(3), new Resolved.LocalLoad(4)),
+                loop.condition()
+        );
+        assertAllEngines(3 * 6 + 15, """
+                define f(n, k) {
+                  total = 0;
+                  i = 0;
+                  while (i < n * k) {
+                    total = total + (n * k) / 2 + i;
+                    i = i + 1;
+                  }
+                  total;
+                }
+                define main() {
+                  f(2, 3);
+                }""");
+    }
+
+    @Test
+    public void testExpressionsThatMayFailStay() {
+        var source = """
+                define f(d, x) {
+                  for (i in 0 to 0) {
+                    println(1 / d + x * 2);
+                  }
+                  for (i in 0 to 3) {
+                    x = x + g;
+                  }
+                  x;
+                }
+                define main() {
+                  f(0, 1);
+                }""";
+        var function = resolve(source, "f");
+        // only x * 2 can be hoisted: 1 / d may divide by zero and x changes in the second loop
+        assertEquals(4, function.frameSize());
+        var e = assertThrows(LanguageException.class, () -> Engine.INTERPRETER.callMain(PrattParser.parseProgram(source)));
+        assertEquals("Variable g is not defined", e.getMessage());
+    }
+}
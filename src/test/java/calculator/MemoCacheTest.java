@@ -0,0 +1,39 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class MemoCacheTest {
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        var cache = new MemoCache(2);
+        var f = new Object();
+        cache.put(f, new int[]{1}, 1, 10);
+        cache.put(f, new int[]{2}, 1, 20);
+        assertEquals(10, cache.get(f, new int[]{1, 99}, 1));
+        cache.put(f, new int[]{3}, 1, 30);
+        assertNull(cache.get(f, new int[]{2}, 1));
+        assertEquals(30, cache.get(f, new int[]{3}, 1));
+        assertNull(cache.get(new Object(), new int[]{3}, 1));
+        assertEquals(new MemoCache.Statistics(2, 2, 1, 2, 2), cache.statistics());
+    }
+
+    @Test
+    public void testInterpreterMemoizesPureCalls() {
+        var program = PrattParser.parseProgram("""
+                global base = 0;
+                define fib(n) { if (n < 2) { n; } else { fib(n - 1) + fib(n - 2); } }
+                define shifted(n) { n + base; }
+                define main() { a = shifted(1); base = 10; b = shifted(1); fib(30); }""");
+        var interpreter = new Interpreter(1024);
+        assertEquals(832040, interpreter.callMain(program));
+        assertEquals(1, interpreter.getValue("a"));
+        assertEquals(11, interpreter.getValue("b"));
+        var statistics = interpreter.memoStatistics();
+        assertEquals(31, statistics.misses());
+        assertEquals(28, statistics.hits());
+        assertEquals(832040, new Interpreter().callMain(program));
+    }
+}
@@ -0,0 +1,24 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NodeCompilerTest {
+    @Test
+    public void testSpecializesShapes() {
+        var increment = NodeCompiler.translate(new Resolved.Binary(
+                Operator.SUBTRACT, new Resolved.LocalLoad(0), new Resolved.Literal(1)));
+        assertTrue(increment instanceof Nodes.AddLocalConstant);
+
+        var bound = NodeCompiler.translate(new Resolved.Binary(
+                Operator.LESS_THAN, new Resolved.LocalLoad(0), new Resolved.LocalLoad(1)));
+        assertTrue(bound instanceof Nodes.LocalLessThanLocal);
+
+        var generic = NodeCompiler.translate(new Resolved.Binary(
+                Operator.MULTIPLY, new Resolved.Literal(6), new Resolved.Literal(7)));
+        assertTrue(generic instanceof Nodes.Multiply);
+        assertEquals(42, generic.execute(null));
+    }
+}
@@ -0,0 +1,114 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static calculator.Ast.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class OptimizerTest {
+    @Test
+    public void testFoldsConstants() {
+        assertEquals(integer(7), Optimizer.optimize(add(integer(1), multiply(integer(2), integer(3)))));
+        assertEquals(integer(1), Optimizer.optimize(lessThan(integer(1), integer(2))));
+        // an overflow is left to run time, where only the wrapping engines wrap it
+        var overflow = add(integer(Integer.MAX_VALUE), integer(1));
+        assertEquals(overflow, Optimizer.optimize(overflow));
+        assertEquals(integer(Integer.MIN_VALUE), Optimizer.optimize(subtract(integer(Integer.MIN_VALUE + 1), integer(1))));
+        assertEquals(integer(-3), Optimizer.optimize(divide(integer(-7), integer(2))));
+    }
+
+    @Test
+    public void testKeepsDivisionByZero() {
+        var expression = divide(integer(1), integer(0));
+        assertEquals(expression, Optimizer.optimize(expression));
+        var program = Optimizer.optimize(new Program(List.of(
+                DefineFunction("main", List.of(), Block(divide(integer(1), subtract(integer(1), integer(1)))))
+        )));
+        assertThrows(ArithmeticException.class, () -> new Interpreter().callMain(program));
+    }
+
+    @Test
+    public void testRemovesDeadBranches() {
+        var x = identifier("x");
+        assertEquals(x, Optimizer.optimize(If(lessThan(integer(1), integer(2)), x, Optional.of(integer(2)))));
+        assertEquals(integer(1), Optimizer.optimize(If(integer(0), x)));
+        assertEquals(integer(1), Optimizer.optimize(While(greaterThan(integer(1), integer(2)), Println(x))));
+    }
+
+    @Test
+    public void testKeepsDeadCodeThatAssigns() {
+        var dead = If(integer(0), assignment("x", integer(1)));
+        assertEquals(dead, Optimizer.optimize(dead));
+        var loop = While(integer(0), assignment("x", integer(1)));
+        assertEquals(loop, Optimizer.optimize(loop));
+        // a call that never runs is still linked, so a missing function is still reported
+        var call = While(integer(0), call("f"));
+        assertEquals(call, Optimizer.optimize(call));
+        // the assignment in the dead branch makes x local to f, so f must still fail
+        var program = PrattParser.parseProgram("""
+                global x = 5;
+                define f() {
+                  if (0) { x = 1; }
+                  x;
+                }
+                define main() {
+                  f();
+                }""");
+        var optimized = Optimizer.optimize(program);
+        for (var engine : Engine.values()) {
+            var expected = assertThrows(LanguageException.class, () -> engine.callMain(program));
+            var actual = assertThrows(LanguageException.class, () -> engine.callMain(optimized));
+            assertEquals(expected.getMessage(), actual.getMessage());
+        }
+    }
+
+    @Test
+    public void testFlattensBlocks() {
+        var a = assignment("a", integer(1));
+        var b = assignment("b", integer(2));
+        assertEquals(Block(a, b), Optimizer.optimize(Block(Block(a), integer(5), Block(b))));
+        assertEquals(Block(a, integer(0)), Optimizer.optimize(Block(a, Block())));
+        assertEquals(a, Optimizer.optimize(Block(Block(a))));
+    }
+
+    @Test
+    public void testStrengthReduction() {
+        var x = identifier("x");
+        assertEquals(add(x, x), Optimizer.optimize(multiply(integer(2), x)));
+        assertEquals(x, Optimizer.optimize(divide(x, integer(1))));
+        assertEquals(subtract(integer(0), x), Optimizer.optimize(divide(x, integer(-1))));
+        // x * 2 is only duplicated when evaluating x twice is harmless
+        assertEquals(multiply(call("f"), integer(2)), Optimizer.optimize(multiply(call("f"), integer(2))));
+        // x / 2 rounds toward zero, which no shift reproduces for negative x
+        assertEquals(divide(x, integer(2)), Optimizer.optimize(divide(x, integer(2))));
+    }
+
+    @Test
+    public void testSameResultAsUnoptimized() {
+        var source = String.join("\n",
+                "global total = 0;",
+                "define f(n) {",
+                "  total = 0;",
+                "  i = 0;",
+                "  while (i < n) {",
+                "    total = total + i * 2 + (3 * 4 - 10) / 1;",
+                "    if (1 < 0) { println(total); }",
+                "    i = i + 1;",
+                "  }",
+                "  total / -1;",
+                "}",
+                "define main() {",
+                "  x = 2147483647;",
+                "  f(100) + (x + 1) * 2;",
+                "}");
+        var program = PrattParser.parseProgram(source);
+        var optimized = Optimizer.optimize(program);
+        for (var engine : Engine.values()) {
+            assertEquals(engine.callMain(program), engine.callMain(optimized));
+        }
+    }
+}
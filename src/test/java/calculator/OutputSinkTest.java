@@ -0,0 +1,270 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class OutputSinkTest {
+    private static final String PROGRAM = """
+            define main() {
+              i = 0;
+              while (i < 3) {
+                println(i * 10);
+                i = i + 1;
+              }
+              println(0 - 7);
+            }""";
+
+    private static final String EXPECTED = lines(0, 10, 20, -7);
+
+    // the sinks end every value with the platform line separator
+    private static String lines(Object... values) {
+        var lines = new StringBuilder();
+        for (var value : values) {
+            lines.append(value).append(System.lineSeparator());
+        }
+        return lines.toString();
+    }
+
+    private static final class CountingStream extends ByteArrayOutputStream {
+        int flushes;
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+    }
+
+    // keeps ints as Integer and lines of text as String
+    private static class RecordingSink implements OutputSink {
+        final List<Object> values = new ArrayList<>();
+        int flushes;
+
+        @Override
+        public void println(int value) {
+            values.add(value);
+        }
+
+        @Override
+        public void println(CharSequence line) {
+            values.add(line.toString());
+        }
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+    }
+
+    @Test
+    public void testFormatsValues() {
+        var out = new ByteArrayOutputStream();
+        var sink = OutputSink.buffered(out, StandardCharsets.US_ASCII, OutputSink.FlushPolicy.END);
+        sink.println(0);
+        sink.println(42);
+        sink.println(-1);
+        sink.println(Integer.MAX_VALUE);
+        sink.println(Integer.MIN_VALUE);
+        sink.flush();
+        assertEquals(lines(0, 42, -1, Integer.MAX_VALUE, Integer.MIN_VALUE), out.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testEncodesWithCharset() {
+        var out = new ByteArrayOutputStream();
+        var sink = OutputSink.buffered(out, StandardCharsets.UTF_16BE, OutputSink.FlushPolicy.END);
+        sink.println(-12);
+        sink.flush();
+        assertEquals(lines(-12), out.toString(StandardCharsets.UTF_16BE));
+        assertEquals(2 * lines(-12).length(), out.size());
+    }
+
+    @Test
+    public void testLinePolicyFlushesEveryLine() {
+        var out = new CountingStream();
+        var sink = OutputSink.buffered(out, StandardCharsets.UTF_8, OutputSink.FlushPolicy.LINE);
+        sink.println(1);
+        assertEquals(lines(1), out.toString(StandardCharsets.UTF_8));
+        assertEquals(1, out.flushes);
+        sink.println(2);
+        assertEquals(lines(1, 2), out.toString(StandardCharsets.UTF_8));
+        assertEquals(2, out.flushes);
+    }
+
+    @Test
+    public void testSizePolicyWritesWhenBufferFills() {
+        var out = new CountingStream();
+        var sink = OutputSink.buffered(out, StandardCharsets.UTF_8, OutputSink.FlushPolicy.SIZE, 8);
+        sink.println(123);
+        assertEquals(0, out.size());
+        sink.println(4567);
+        sink.println(8);
+        assertEquals(lines(123, 4567), out.toString(StandardCharsets.UTF_8));
+        sink.flush();
+        assertEquals(lines(123, 4567, 8), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testEndPolicyWritesOnlyOnFlush() {
+        var out = new CountingStream();
+        var sink = OutputSink.buffered(out, StandardCharsets.UTF_8, OutputSink.FlushPolicy.END, 4);
+        for (int i = 0; i < 100; i++) {
+            sink.println(i);
+        }
+        assertEquals(0, out.flushes);
+        sink.close();
+        assertEquals(1, out.flushes);
+        // 190 digits and a line separator after each of the 100 values
+        assertEquals(190 + 100 * System.lineSeparator().length(), out.size());
+    }
+
+    @Test
+    public void testWriteFailureIsUnchecked() {
+        var failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        var sink = OutputSink.buffered(failing, StandardCharsets.UTF_8, OutputSink.FlushPolicy.LINE);
+        assertThrows(UncheckedIOException.class, () -> sink.println(1));
+    }
+
+    @Test
+    public void testAsyncDeliversBatchesInOrder() {
+        var recording = new RecordingSink();
+        var sink = OutputSink.async(recording, 3);
+        for (int i = 0; i < 10; i++) {
+            sink.println(i);
+        }
+        sink.flush();
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), recording.values);
+        assertEquals(1, recording.flushes);
+        sink.println(10);
+        sink.close();
+        assertEquals(11, recording.values.size());
+        assertThrows(IllegalStateException.class, () -> sink.println(11));
+    }
+
+    @Test
+    public void testAsyncBatchesLargeValuesWithoutFlushing() {
+        var recording = new RecordingSink();
+        var sink = OutputSink.async(recording, 4);
+        var large = BigInteger.TWO.pow(40);
+        sink.println(1);
+        sink.println(large);
+        sink.println(BigInteger.valueOf(-2));
+        sink.println(large.negate());
+        sink.println(3);
+        assertEquals(0, recording.flushes);
+        sink.flush();
+        assertEquals(List.of(1, large.toString(), -2, large.negate().toString(), 3), recording.values);
+        assertEquals(1, recording.flushes);
+        sink.close();
+    }
+
+    @Test
+    public void testTextSinkPrintsEveryValue() {
+        var text = new StringBuilder();
+        var sink = new OutputSink() {
+            @Override
+            public void println(CharSequence line) {
+                text.append(line).append(';');
+            }
+
+            @Override
+            public void flush() {
+            }
+        };
+        sink.println(-5);
+        sink.println(BigInteger.TEN);
+        sink.println(BigInteger.TWO.pow(64));
+        assertEquals("-5;10;18446744073709551616;", text.toString());
+    }
+
+    @Test
+    public void testBufferedPrintsLines() {
+        var out = new ByteArrayOutputStream();
+        var sink = OutputSink.buffered(out, StandardCharsets.UTF_8, OutputSink.FlushPolicy.END, 16);
+        var large = BigInteger.TEN.pow(30);
+        sink.println(large);
+        sink.println(new StringBuilder("x"));
+        sink.println(7);
+        sink.flush();
+        assertEquals(lines(large, "x", 7), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testAsyncRethrowsDelegateFailure() {
+        var failing = new RecordingSink() {
+            @Override
+            public void println(int value) {
+                throw new IllegalArgumentException("rejected " + value);
+            }
+        };
+        var sink = OutputSink.async(failing, 1);
+        sink.println(5);
+        var e = assertThrows(IllegalArgumentException.class, sink::flush);
+        assertEquals("rejected 5", e.getMessage());
+    }
+
+    @Test
+    public void testEnginesPrintThroughSink() {
+        var program = PrattParser.parseProgram(PROGRAM);
+        List<java.util.function.Function<OutputSink, Integer>> runs = List.of(
+                sink -> new Interpreter(0, null, sink).callMain(program),
+                sink -> new Compiler(sink).callMain(program),
+                sink -> new Vm(new VmCompiler().compile(program), sink).callMain(),
+                sink -> new NodeCompiler().compile(program, sink).callMain(),
+                sink -> new StackEvaluator(StackEvaluator.DEFAULT_MAX_FRAMES, sink).callMain(program),
+                sink -> LoadedProgram.load(program).newContext(sink).run()
+        );
+        for (var run : runs) {
+            var out = new ByteArrayOutputStream();
+            var sink = OutputSink.buffered(out, StandardCharsets.UTF_8, OutputSink.FlushPolicy.END);
+            assertEquals(-7, run.apply(sink));
+            assertEquals(EXPECTED, out.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testOutputIsFlushedWhenRunFails() {
+        var program = PrattParser.parseProgram("""
+                define main() {
+                  println(1);
+                  1 / 0;
+                }""");
+        var out = new ByteArrayOutputStream();
+        var sink = OutputSink.async(OutputSink.buffered(out, StandardCharsets.UTF_8, OutputSink.FlushPolicy.END));
+        assertThrows(ArithmeticException.class, () -> new Interpreter(0, null, sink).callMain(program));
+        assertEquals(lines(1), out.toString(StandardCharsets.UTF_8));
+        sink.close();
+    }
+
+    @Test
+    public void testStandardOutputFollowsSetOut() {
+        var program = PrattParser.parseProgram(PROGRAM);
+        // created before System.setOut, as a long-lived engine would be
+        var interpreter = new Interpreter();
+        var original = System.out;
+        var out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+        try {
+            assertEquals(-7, interpreter.callMain(program));
+        } finally {
+            System.setOut(original);
+        }
+        assertEquals(EXPECTED, out.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,170 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelismTest {
+    private static final String PROGRAM = """
+            global offset = 1;
+            define fib(n) {
+              if (n < 2) {
+                n;
+              } else {
+                fib(n - 1) + fib(n - 2);
+              }
+            }
+            define square(x) {
+              x * x;
+            }
+            define squares(a, b) {
+              square(a) + square(b);
+            }
+            define shifted(n) {
+              if (n < 1) {
+                offset;
+              } else {
+                shifted(n - 1);
+              }
+            }
+            define noisy(n) {
+              if (n < 1) {
+                println(n);
+              } else {
+                noisy(n - 1);
+              }
+            }
+            define mixed(n) {
+              shifted(n) + fib(n) + noisy(n) + noisy(n);
+            }
+            define main() {
+              fib(20) + fib(21) + squares(3, 4) + mixed(5);
+            }""";
+
+    private static boolean forks(Resolved.Node node) {
+        if (node instanceof Resolved.ForkedBinary) {
+            return true;
+        } else if (node instanceof Resolved.Binary binary) {
+            return forks(binary.lhs()) || forks(binary.rhs());
+        } else if (node instanceof Resolved.If ifNode) {
+            return forks(ifNode.thenClause()) || forks(ifNode.elseClause());
+        } else if (node instanceof Resolved.Block block) {
+            for (var element : block.elements()) {
+                if (forks(element)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testForksIndependentPureCalls() {
+        var program = LoadedProgram.loadParallel(PrattParser.parseProgram(PROGRAM));
+        assertTrue(forks(program.main()));
+        for (int i = 0; ; i++) {
+            var function = program.function(i);
+            if (function.name().equals("fib")) {
+                assertTrue(forks(function.body()));
+                break;
+            }
+        }
+    }
+
+    @Test
+    public void testLeavesCheapAndImpureCallsAlone() {
+        var program = LoadedProgram.loadParallel(PrattParser.parseProgram(PROGRAM));
+        int checked = 0;
+        for (int i = 0; checked < 2; i++) {
+            var function = program.function(i);
+            if (function.name().equals("squares") || function.name().equals("mixed")) {
+                // square is not worth a task; shifted reads a global and noisy prints
+                assertFalse(forks(function.body()), function.name());
+                checked++;
+            }
+        }
+    }
+
+    @Test
+    public void testSameResultsAsSequential() {
+        var ast = PrattParser.parseProgram(PROGRAM);
+        var sequentialOut = new ByteArrayOutputStream();
+        var parallelOut = new ByteArrayOutputStream();
+        int sequential = LoadedProgram.load(ast)
+                .newContext(OutputSink.buffered(sequentialOut, StandardCharsets.UTF_8, OutputSink.FlushPolicy.END))
+                .run();
+        int parallel = LoadedProgram.loadParallel(ast)
+                .newContext(OutputSink.buffered(parallelOut, StandardCharsets.UTF_8, OutputSink.FlushPolicy.END))
+                .run();
+        assertEquals(6765 + 10946 + 25 + 1 + 5, sequential);
+        assertEquals(sequential, parallel);
+        assertEquals(String.join(System.lineSeparator(), "0", "0", ""), parallelOut.toString(StandardCharsets.UTF_8));
+        assertEquals(sequentialOut.toString(StandardCharsets.UTF_8), parallelOut.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testDeepRecursionForksAtManyLevels() {
+        var program = LoadedProgram.loadParallel(PrattParser.parseProgram("""
+                define fib(n) {
+                  if (n < 2) {
+                    n;
+                  } else {
+                    fib(n - 1) + fib(n - 2);
+                  }
+                }
+                define main() {
+                  fib(27);
+                }"""), "fib");
+        assertEquals(196418, program.run());
+        assertEquals(832040, program.newContext().call("fib", 30));
+    }
+
+    @Test
+    public void testFailureIsRethrownAsIs() {
+        var program = LoadedProgram.loadParallel(PrattParser.parseProgram("""
+                define down(n) {
+                  if (n < 1) {
+                    1 / n;
+                  } else {
+                    down(n - 1) + down(n - 2);
+                  }
+                }
+                define main() {
+                  down(12) + down(3);
+                }"""));
+        var e = assertThrows(ArithmeticException.class, program::run);
+        assertEquals("/ by zero", e.getMessage());
+    }
+
+    @Test
+    public void testFailureStopsTheOtherOperand() {
+        var program = LoadedProgram.loadParallel(PrattParser.parseProgram("""
+                define spin(n) {
+                  while (1) {
+                    n = n + 1;
+                  }
+                }
+                define fail(n) {
+                  i = 0;
+                  while (i < 100000) {
+                    i = i + 1;
+                  }
+                  1 / n;
+                }
+                define main() {
+                  fail(0) + spin(1);
+                }"""));
+        var e = assertThrows(ArithmeticException.class, program::run);
+        assertEquals("/ by zero", e.getMessage());
+        // spin never ends by itself, yet no operand is left running once the failure is thrown
+        assertTrue(ForkJoinPool.commonPool().awaitQuiescence(10, TimeUnit.SECONDS));
+    }
+}
@@ -2,7 +2,11 @@ package calculator;
 
 import org.javafp.parsecj.input.Input;
 import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ParsersTest {
     private Interpreter interpreter = new Interpreter();
@@ -59,4 +63,44 @@ public class ParsersTest {
         var result = interpreter.callMain(program);
         assertEquals(25, result);
     }
+
+    @Test
+    public void testMemoizedParseGivesSameProgram() throws Exception {
+        var source = generateProgram(10);
+        var expected = Parsers.program().parse(Input.of(source)).getResult();
+        assertEquals(expected, Parsers.parseMemoized(Parsers.program(), Input.of(source)).getResult());
+    }
+
+    @Test
+    public void testParseWorkGrowsLinearly() throws Exception {
+        // every generated function is the same apart from its name, which no memoized rule looks at,
+        // so linear parsing does exactly the same work for each of them; ParserScalingBenchmark times it
+        var tables = new ArrayList<Parsers.MemoTable>();
+        for (int functions : new int[]{100, 200, 400}) {
+            var table = new Parsers.MemoTable();
+            var source = generateProgram(functions);
+            Parsers.parseMemoized(Parsers.program(), Input.of(source), table).getResult();
+            assertTrue(table.size() <= source.length() * 3, table.size() + " entries for " + source.length());
+            tables.add(table);
+        }
+        long first = tables.get(1).lookups() - tables.get(0).lookups();
+        long second = tables.get(2).lookups() - tables.get(1).lookups();
+        assertEquals(2 * first, second);
+        assertEquals(2L * (tables.get(1).size() - tables.get(0).size()), tables.get(2).size() - tables.get(1).size());
+    }
+
+    private static String generateProgram(int functions) {
+        var source = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            source.append("define f").append(i).append("(n) {\n")
+                    .append("  total = 0;\n")
+                    .append("  for(i in 0 to n) {\n")
+                    .append("    if((i - 1) * 2 < n / 3) total = total + g[x = i, y = (n + 1)]; else total = f(i, 2);\n")
+                    .append("  }\n")
+                    .append("  while(total > 10) total = total - 10;\n")
+                    .append("  total;\n")
+                    .append("}\n");
+        }
+        return source.append("define main() {\n  f0(10);\n}\n").toString();
+    }
 }
@@ -0,0 +1,91 @@
+package calculator;
+
+import org.javafp.parsecj.input.Input;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.util.List;
+
+import static calculator.Ast.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PrattParserTest {
+    private static final String FACTORIAL = """
+            define factorial(n) {
+              if(n < 2) {
+                1;
+              } else {
+                n * factorial(n - 1);
+              }
+            }
+            define main() {
+              factorial(5);
+            }""";
+
+    private static void assertSameProgram(String source) throws Exception {
+        var expected = Parsers.program().parse(Input.of(source)).getResult();
+        assertEquals(expected, PrattParser.parseProgram(source));
+    }
+
+    private static void assertSameLines(String source) throws Exception {
+        var expected = Parsers.lines().parse(Input.of(source)).getResult();
+        assertEquals(expected, PrattParser.parseLines(source));
+    }
+
+    @Test
+    public void testSameAstAsParsers() throws Exception {
+        assertSameLines("""
+                i = 0;
+                while(i < 10) {
+                  i = i + 1;
+                }""");
+        assertSameLines("""
+                for(i in 1 to 10) {
+                  i = i + 1;
+                }""");
+        assertSameProgram(FACTORIAL);
+        assertSameProgram("""
+                define power(n) {
+                  n * n;
+                }
+                define main() {
+                  power[n = 5];
+                }""");
+        assertSameProgram("""
+                // comments and every operator
+                global limit = -3 + 4 * (2 - 1) / 2;
+                define main() {
+                  if(limit != 1) println(limit >= 2 == 0);
+                  x = limit <= 3 - -5;
+                  f(x, limit > 1, g());
+                }""");
+    }
+
+    @Test
+    public void testPrecedenceAndAssociativity() {
+        var lines = PrattParser.parseLines("1 - 2 - 3 * 4 / 2 < 5;");
+        assertEquals(List.of(lessThan(
+                subtract(subtract(integer(1), integer(2)), divide(multiply(integer(3), integer(4)), integer(2))),
+                integer(5)
+        )), lines);
+    }
+
+    @Test
+    public void testParseFile() throws Exception {
+        var file = Files.createTempFile("factorial", ".toys");
+        try {
+            Files.writeString(file, FACTORIAL);
+            assertEquals(120, new Interpreter().callMain(PrattParser.parseFile(file)));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testErrors() {
+        var error = assertThrows(LanguageException.class, () -> PrattParser.parseProgram("define main() {\n  1 +;\n}"));
+        assertEquals("2:6: expected expression but found ';'", error.getMessage());
+        assertThrows(LanguageException.class, () -> PrattParser.parseLines("x = 2147483648;"));
+    }
+}
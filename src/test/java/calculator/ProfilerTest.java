@@ -0,0 +1,109 @@
+package calculator;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProfilerTest {
+    @Test
+    public void testCountsCallsDepthAndLoops() {
+        var program = PrattParser.parseProgram("""
+                define fact(n) {
+                  if (n < 2) {
+                    1;
+                  } else {
+                    n * fact(n - 1);
+                  }
+                }
+                define loop(n) {
+                  i = 0;
+                  while (i < n) {
+                    i = i + 1;
+                  }
+                  fact(5);
+                }
+                define main() {
+                  loop(10) + loop[n=3];
+                }""");
+        var profiler = new Profiler();
+        assertEquals(240, new Interpreter(0, profiler).callMain(program));
+        var snapshot = profiler.snapshot();
+
+        var fact = snapshot.get("fact");
+        assertEquals(10, fact.calls());
+        assertEquals(5, fact.maxDepth());
+        assertEquals(10, fact.frameAllocations());
+        assertTrue(fact.exclusiveNanos() <= fact.inclusiveNanos());
+
+        var loop = snapshot.get("loop");
+        assertEquals(2, loop.calls());
+        assertEquals(13, loop.loopIterations());
+        assertTrue(loop.inclusiveNanos() >= fact.inclusiveNanos());
+
+        var main = snapshot.get("main");
+        assertEquals(1, main.calls());
+        assertEquals(0, main.frameAllocations());
+        profiler.emitEvents();
+    }
+
+    @Test
+    public void testUnwindsOnError() {
+        var program = PrattParser.parseProgram("""
+                define fail(n) { n / 0; }
+                define main() { fail(1); }""");
+        var profiler = new Profiler();
+        var interpreter = new Interpreter(0, profiler);
+        assertThrows(ArithmeticException.class, () -> interpreter.callMain(program));
+        interpreter.interpret(Ast.assignment("x", Ast.integer(0)));
+        interpreter.interpret(Ast.While(
+                Ast.lessThan(Ast.identifier("x"), Ast.integer(3)),
+                Ast.assignment("x", Ast.add(Ast.identifier("x"), Ast.integer(1)))
+        ));
+        // the failed calls were popped, so this loop is attributed to the top level
+        assertEquals(1, profiler.snapshot().get("fail").calls());
+        assertEquals(0, profiler.snapshot().get("fail").loopIterations());
+        assertEquals(3, profiler.snapshot().get(Profiler.TOP_LEVEL).loopIterations());
+    }
+
+    @Test
+    public void testFunctionCallEventsSpanTheCall() throws Exception {
+        var program = PrattParser.parseProgram("""
+                define down(n) {
+                  if (n == 0) {
+                    0;
+                  } else {
+                    down(n - 1);
+                  }
+                }
+                define main() {
+                  down(2);
+                }""");
+        var file = Files.createTempFile("profiler", ".jfr");
+        try (var recording = new Recording()) {
+            recording.enable(Profiler.FunctionCallEvent.class);
+            recording.start();
+            new Interpreter(0, new Profiler()).callMain(program);
+            recording.stop();
+            recording.dump(file);
+            var depths = new ArrayList<String>();
+            for (var event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().equals("calculator.FunctionCall")) {
+                    depths.add(event.getString("function") + event.getInt("depth"));
+                    assertTrue(!event.getDuration().isNegative());
+                }
+            }
+            depths.sort(null);
+            assertEquals(List.of("down1", "down2", "down3", "main1"), depths);
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
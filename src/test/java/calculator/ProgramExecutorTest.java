@@ -0,0 +1,74 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProgramExecutorTest {
+    private static final LoadedProgram PROGRAM = LoadedProgram.load(PrattParser.parseProgram("""
+            global calls = 0;
+            define fib(n) {
+              if (n < 2) {
+                n;
+              } else {
+                fib(n - 1) + fib(n - 2);
+              }
+            }
+            define area(width, height) {
+              width * height;
+            }
+            define main() {
+              calls = calls + 1;
+              fib(15) + area[height=2, width=3];
+            }"""));
+
+    @Test
+    public void testContextsAreIndependent() {
+        var first = PROGRAM.newContext();
+        var second = PROGRAM.newContext();
+        assertEquals(616, first.run());
+        assertEquals(1, first.getValue("calls"));
+        assertNull(second.getValue("calls"));
+        assertEquals(616, second.run());
+        assertEquals(1, second.getValue("calls"));
+    }
+
+    @Test
+    public void testRunsManyExecutionsConcurrently() throws Exception {
+        try (var executor = ProgramExecutor.create()) {
+            var results = executor.runAll(PROGRAM, 2000);
+            assertEquals(2000, results.size());
+            assertTrue(results.stream().allMatch(r -> r == 616));
+            assertEquals(1, executor.submit(PROGRAM, context -> {
+                context.run();
+                return context.getValue("calls");
+            }).get());
+        }
+    }
+
+    @Test
+    public void testLinkErrorsAreReportedByLoad() {
+        assertThrows(LanguageException.class, () -> LoadedProgram.load(PrattParser.parseProgram("""
+                define f(a) { a; }
+                define main() { if (0) { f[b=1]; } }""")));
+        assertThrows(RuntimeException.class, () -> LoadedProgram.load(PrattParser.parseProgram("""
+                define main() { if (0) { g(1); } }""")));
+    }
+
+    @Test
+    public void testErrorsSurfaceFromFutures() {
+        var program = LoadedProgram.load(PrattParser.parseProgram("""
+                define f(a) { a / 0; }
+                define main() { f(1); }"""));
+        assertThrows(ArithmeticException.class, program::run);
+        try (var executor = ProgramExecutor.create()) {
+            var error = assertThrows(ExecutionException.class, () -> executor.submit(program).get());
+            assertTrue(error.getCause() instanceof ArithmeticException);
+        }
+    }
+}
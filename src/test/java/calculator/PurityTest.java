@@ -0,0 +1,73 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PurityTest {
+    private static Map<String, Resolved.Function> resolve(String source) {
+        var functions = new HashMap<String, Resolved.Function>();
+        for (var function : new Resolver().resolveProgram(PrattParser.parseProgram(source)).functions().values()) {
+            functions.put(function.name(), function);
+        }
+        return functions;
+    }
+
+    @Test
+    public void testGlobals() {
+        var functions = resolve("""
+                global g = 1;
+                define fib(n) { if (n < 2) { n; } else { fib(n - 1) + fib(n - 2); } }
+                define local(n) { x = n * 2; x + fib(n); }
+                define reader(n) { n + g; }
+                define writer(n) { g = n; }
+                define indirect(n) { reader(n); }
+                define main() { fib(10); }""");
+        // an assignment inside a function always defines a local, so writer is pure
+        assertEquals(Set.of("fib", "local", "writer", "main"), Purity.pureFunctions(functions));
+    }
+
+    @Test
+    public void testPrintlnAndArrays() {
+        var functions = resolve("""
+                define printer(n) { println(n); }
+                define maker(n) { a = [n, 1]; a[0]; }
+                define caller(n) { printer(n); }
+                define main() { 0; }""");
+        assertEquals(Set.of("main"), Purity.pureFunctions(functions));
+    }
+
+    @Test
+    public void testMutualRecursion() {
+        var functions = resolve("""
+                define even(n) { if (n == 0) { 1; } else { odd(n - 1); } }
+                define odd(n) { if (n == 0) { 0; } else { even(n - 1); } }
+                define loud(n) { if (n == 0) { println(0); } else { quiet(n - 1); } }
+                define quiet(n) { if (n == 0) { 0; } else { loud(n - 1); } }
+                define main() { even(4); }""");
+        assertEquals(Set.of("even", "odd", "main"), Purity.pureFunctions(functions));
+    }
+
+    @Test
+    public void testLinkedFunctions() {
+        var program = PrattParser.parseProgram("""
+                global g = 1;
+                define square(n) { n * n; }
+                define reader(n) { square(n) + g; }
+                define caller(n) { reader(n) + square(n); }
+                define unused(n) { n; }
+                define main() { caller(2) + square[n = 3]; }""");
+        var functions = new HashMap<String, Resolved.Function>();
+        for (var function : new Resolver().resolveProgram(program).functions().values()) {
+            functions.put(function.name(), function);
+        }
+        var linker = new Linker(functions::get);
+        linker.link(functions.get("main").body());
+        // the bodies now call through DirectCall, so caller is impure through reader; unused was never reached
+        assertEquals(Set.of("square"), Purity.pureFunctions(linker.functions()));
+    }
+}
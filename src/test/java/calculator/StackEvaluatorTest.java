@@ -0,0 +1,59 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StackEvaluatorTest {
+    @Test
+    public void testDeepRecursionDoesNotUseJavaStack() {
+        var program = PrattParser.parseProgram("""
+                define count(n) {
+                  if(n == 0) {
+                    0;
+                  } else {
+                    1 + count(n - 1);
+                  }
+                }
+                define main() {
+                  depth = count(1000000);
+                }""");
+        var evaluator = new StackEvaluator();
+        assertEquals(1000000, evaluator.callMain(program));
+        assertEquals(1000000, evaluator.getValue("depth"));
+    }
+
+    @Test
+    public void testTailCallsReuseTheFrame() {
+        var program = PrattParser.parseProgram("""
+                define sum(n, acc) {
+                  if(n == 0) {
+                    acc;
+                  } else {
+                    sum(n - 1, acc + n);
+                  }
+                }
+                define main() {
+                  sum(100000, 0);
+                }""");
+        assertEquals(705082704, new StackEvaluator(2).callMain(program));
+    }
+
+    @Test
+    public void testFrameBudget() {
+        var program = PrattParser.parseProgram("""
+                define count(n) {
+                  if(n == 0) {
+                    0;
+                  } else {
+                    1 + count(n - 1);
+                  }
+                }
+                define main() {
+                  count(100);
+                }""");
+        assertEquals(100, new StackEvaluator(101).callMain(program));
+        assertThrows(LanguageException.class, () -> new StackEvaluator(100).callMain(program));
+    }
+}
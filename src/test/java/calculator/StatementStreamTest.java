@@ -0,0 +1,182 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StatementStreamTest {
+    // hands out at most one character per read, calling back before each one
+    private static final class TrickleReader extends Reader {
+        private final String source;
+        private final Runnable beforeRead;
+        private int position;
+
+        TrickleReader(String source, Runnable beforeRead) {
+            this.source = source;
+            this.beforeRead = beforeRead;
+        }
+
+        int position() {
+            return position;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position == source.length()) {
+                return -1;
+            }
+            beforeRead.run();
+            buffer[offset] = source.charAt(position++);
+            return 1;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // a long script that is generated while it is read and never held as a whole
+    private static final class CountingReader extends Reader {
+        private final int statements;
+        private final String first;
+        private final String next;
+        private int written;
+        private String pending = "";
+
+        CountingReader(int statements, String first, String next) {
+            this.statements = statements;
+            this.first = first;
+            this.next = next;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (pending.isEmpty()) {
+                if (written == statements) {
+                    return -1;
+                }
+                pending = written == 0 ? first : next;
+                written++;
+            }
+            int count = Math.min(length, pending.length());
+            pending.getChars(0, count, buffer, offset);
+            pending = pending.substring(count);
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static Interpreter interpreter(ByteArrayOutputStream out) {
+        return new Interpreter(0, null, OutputSink.buffered(out, StandardCharsets.UTF_8, OutputSink.FlushPolicy.END));
+    }
+
+    @Test
+    public void testStatementsAndDefinitions() throws Exception {
+        var out = new ByteArrayOutputStream();
+        var interpreter = interpreter(out);
+        var stream = new StatementStream(interpreter, new StringReader("""
+                global base = 10;
+                // braces in comments { do not count
+                define twice(x) {
+                  x * 2;
+                }
+                elsewhere = twice(base);
+                if (elsewhere > 15) {
+                  println(1);
+                } // a comment before else
+                else {
+                  println(2);
+                }
+                if (elsewhere < 0) println(3);
+                while (base < 13) base = base + 1;
+                a = [1, 2, 3];
+                a[1] + elsewhere;
+                """), 8);
+        assertEquals(22, stream.run());
+        assertEquals(6, stream.statements());
+        assertEquals(20, interpreter.getValue("elsewhere"));
+        assertEquals(13, interpreter.getValue("base"));
+        assertEquals("1" + System.lineSeparator(), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testExecutesBeforeInputEnds() throws Exception {
+        var out = new ByteArrayOutputStream();
+        var interpreter = interpreter(out);
+        var source = "println(1);\nx = 2;\nif (x > 1) println(x);\nprintln(3);\n";
+        var seen = new ArrayList<String>();
+        var reader = new TrickleReader(source, () -> seen.add(out.toString(StandardCharsets.UTF_8)));
+        var stream = new StatementStream(interpreter, reader);
+        assertTrue(stream.executeNext());
+        assertEquals("println(1);".length(), reader.position());
+        assertEquals(3, stream.run());
+        // printed values are flushed as soon as the stream has to wait for input
+        assertEquals("1" + System.lineSeparator(), seen.get("println(1);".length()));
+        // the if statement ends once the word after it turns out not to be else
+        assertTrue(seen.get(source.indexOf("(3)") + 1).endsWith("2" + System.lineSeparator()));
+        assertEquals(String.join(System.lineSeparator(), "1", "2", "3", ""), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testBufferStaysSmall() throws Exception {
+        var interpreter = interpreter(new ByteArrayOutputStream());
+        var stream = new StatementStream(interpreter, new CountingReader(
+                100_000, "n = 0;\n", "if (n < 1) { n = n + 1; } else { n = n - 1; }\n"), 64);
+        stream.run();
+        assertEquals(100_000, stream.statements());
+        assertEquals(64, stream.bufferCapacity());
+        assertEquals(1, interpreter.getValue("n"));
+    }
+
+    @Test
+    public void testArraysOfEarlierStatementsAreFreed() throws Exception {
+        var interpreter = interpreter(new ByteArrayOutputStream());
+        var stream = new StatementStream(interpreter, new CountingReader(
+                200_000, "b = [[5, 6], 7];\n", "a = [1, 2, 3, 4, 5, 6, 7, 8];\n"));
+        stream.run();
+        assertTrue(interpreter.arrayCount() < ArrayHeap.MIN_COLLECTION, "live arrays: " + interpreter.arrayCount());
+        // arrays the globals still hold survive, including one held by another array
+        assertEquals(14, new StatementStream(interpreter, new StringReader("c = b[0];\nc[1] + a[7];")).run());
+    }
+
+    @Test
+    public void testLongStatementGrowsBuffer() throws Exception {
+        var interpreter = interpreter(new ByteArrayOutputStream());
+        var stream = new StatementStream(interpreter, new StringReader("x = 1 + 2 + 3 + 4 + 5 + 6 + 7 + 8 + 9;"), 4);
+        assertEquals(45, stream.run());
+        assertTrue(stream.bufferCapacity() >= 32);
+    }
+
+    @Test
+    public void testChannel() throws Exception {
+        var interpreter = interpreter(new ByteArrayOutputStream());
+        var channel = Channels.newChannel(new ByteArrayInputStream("x = 6;\nx * 7;\n".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(42, StatementStream.of(interpreter, channel, StandardCharsets.UTF_8).run());
+    }
+
+    @Test
+    public void testErrors() {
+        var interpreter = interpreter(new ByteArrayOutputStream());
+        var unfinished = new StatementStream(interpreter, new StringReader("x = 1;\ny = (x + 2"));
+        var e = assertThrows(LanguageException.class, unfinished::run);
+        assertTrue(e.getMessage().contains("end of input"), e.getMessage());
+        assertEquals(1, interpreter.getValue("x"));
+
+        var invalid = new StatementStream(interpreter, new StringReader("z = 1;\nz = ;\nz = 3;"));
+        assertThrows(LanguageException.class, invalid::run);
+        assertEquals(1, interpreter.getValue("z"));
+    }
+}
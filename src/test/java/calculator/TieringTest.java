@@ -0,0 +1,149 @@
+package calculator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TieringTest {
+    private static final String PROGRAM = """
+            global total = 0;
+            define fib(n) {
+              if (n < 2) {
+                n;
+              } else {
+                fib(n - 1) + fib(n - 2);
+              }
+            }
+            define once(x) {
+              x + 1;
+            }
+            define main() {
+              i = 0;
+              while (i < 500) {
+                i = i + 1;
+                total = total + i;
+              }
+              fib(15) + once(total);
+            }""";
+
+    private static final int EXPECTED = 610 + 125250 + 1;
+
+    private static Interpreter interpreter(Tiering tiering) {
+        return new Interpreter(0, null, OutputSink.standardOutput(), tiering, null);
+    }
+
+    @Test
+    public void testPromotesHotFunctionsAndReplacesLoops() {
+        var tiering = new Tiering(10, 100, Runnable::run);
+        var interpreter = interpreter(tiering);
+        assertEquals(EXPECTED, interpreter.callMain(PrattParser.parseProgram(PROGRAM)));
+        assertEquals(125250, interpreter.getValue("total"));
+        var statistics = tiering.statistics();
+        assertEquals(List.of(
+                new Tiering.Transition("main", Tiering.Kind.ON_STACK_REPLACEMENT, 100),
+                new Tiering.Transition("fib", Tiering.Kind.PROMOTION, 10)
+        ), statistics.transitions());
+        // ten interpreted fib frames each call into optimized fib, whose calls are not counted
+        assertEquals(10 + 1, statistics.interpretedCalls());
+        assertEquals(9 + 2, statistics.optimizedCalls());
+    }
+
+    @Test
+    public void testColdCodeStaysInterpreted() {
+        var tiering = new Tiering(Integer.MAX_VALUE, Integer.MAX_VALUE, Runnable::run);
+        assertEquals(EXPECTED, interpreter(tiering).callMain(PrattParser.parseProgram(PROGRAM)));
+        var statistics = tiering.statistics();
+        assertEquals(List.of(), statistics.transitions());
+        assertEquals(0, statistics.optimizedCalls());
+        assertEquals(1973 + 1, statistics.interpretedCalls());
+    }
+
+    @Test
+    public void testTranslationDoesNotBlockExecution() {
+        // the compiler never gets to run, so everything keeps being interpreted
+        var queued = new ArrayList<Runnable>();
+        var tiering = new Tiering(1, 1, queued::add);
+        assertEquals(EXPECTED, interpreter(tiering).callMain(PrattParser.parseProgram(PROGRAM)));
+        assertEquals(List.of(), tiering.statistics().transitions());
+        assertEquals(3, queued.size());
+    }
+
+    @Test
+    public void testBackgroundCompilerGivesSameResults() {
+        var tiering = new Tiering(5, 50);
+        assertEquals(EXPECTED, interpreter(tiering).callMain(PrattParser.parseProgram(PROGRAM)));
+        var program = PrattParser.parseProgram("""
+                define fib(n) {
+                  if (n < 2) {
+                    n;
+                  } else {
+                    fib(n - 1) + fib(n - 2);
+                  }
+                }
+                define main() {
+                  fib(25);
+                }""");
+        assertEquals(75025, Engine.TIERED.callMain(program));
+    }
+
+    @Test
+    public void testErrorsInOptimizedCode() {
+        var tiering = new Tiering(3, 1, Runnable::run);
+        var e = assertThrows(LanguageException.class, () -> interpreter(tiering).callMain(PrattParser.parseProgram("""
+                define at(a, i) {
+                  a[i];
+                }
+                define main() {
+                  a = [1, 2, 3];
+                  i = 0;
+                  while (i < 10) {
+                    at(a, i);
+                    i = i + 1;
+                  }
+                }""")));
+        assertEquals("Index 3 is out of bounds for length 3", e.getMessage());
+        assertTrue(tiering.statistics().transitions().size() > 0);
+    }
+
+    @Test
+    public void testReplacesCountedLoops() {
+        var program = PrattParser.parseProgram("""
+                global total = 0;
+                define sum(n) {
+                  s = 0;
+                  i = 0;
+                  while (i < n) {
+                    s = s + i;
+                    i = i + 1;
+                  }
+                  s;
+                }
+                define main() {
+                  a = [5, 6, 7, 8];
+                  for (j in 0 to length(a)) {
+                    total = total + a[j];
+                  }
+                  sum(100) + total;
+                }""");
+        var tiering = new Tiering(1, 1, Runnable::run);
+        var interpreter = interpreter(tiering);
+        assertEquals(4950 + 26, interpreter.callMain(program));
+        assertEquals(26, interpreter.getValue("total"));
+        // both loops are counted loops, and each switches after its first iteration
+        assertEquals(List.of(
+                new Tiering.Transition("main", Tiering.Kind.ON_STACK_REPLACEMENT, 1),
+                new Tiering.Transition("sum", Tiering.Kind.ON_STACK_REPLACEMENT, 1)
+        ), tiering.statistics().transitions());
+    }
+
+    @Test
+    public void testThresholdsMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new Tiering(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new Tiering(1, -1));
+    }
+}
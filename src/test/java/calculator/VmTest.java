@@ -0,0 +1,49 @@
+package calculator;
+
+import org.javafp.parsecj.input.Input;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class VmTest {
+    @Test
+    public void testDeepRecursionDoesNotUseJavaStack() throws Exception {
+        var program = Parsers.program().parse(Input.of("""
+                define count(n) {
+                  if(n == 0) {
+                    0;
+                  } else {
+                    1 + count(n - 1);
+                  }
+                }
+                define main() {
+                  depth = count(1000000);
+                }""")).getResult();
+        var vm = new Vm(new VmCompiler().compile(program));
+        assertEquals(1000000, vm.callMain());
+        assertEquals(1000000, vm.getValue("depth"));
+    }
+
+    @Test
+    public void testRunawayRecursionHitsTheFrameLimit() {
+        var program = PrattParser.parseProgram("""
+                define forever(n) {
+                  forever(n + 1);
+                }
+                define main() {
+                  forever(0);
+                }""");
+        var e = assertThrows(LanguageException.class, () -> new Vm(new VmCompiler().compile(program), 1000).callMain());
+        assertEquals("Call depth exceeded the limit of 1000 frames", e.getMessage());
+        var deep = PrattParser.parseProgram("""
+                define down(n) {
+                  if (n == 0) { 0; } else { down(n - 1) + 1; }
+                }
+                define main() {
+                  down(999);
+                }""");
+        assertEquals(999, new Vm(new VmCompiler().compile(deep), 1000).callMain());
+        assertThrows(LanguageException.class, () -> new Vm(new VmCompiler().compile(deep), 999).callMain());
+    }
+}
@@ -0,0 +1,58 @@
+package calculator;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The loops of a {@link ColumnKernel} written with the incubating Vector API,
+ * a full vector of the widest species the hardware has at a time. The elements
+ * after the last full vector go through the scalar loops.
+ *
+ * Division stays scalar: there is no SIMD instruction for int division, and a
+ * zero divisor has to throw the same ArithmeticException a row would.
+ *
+ * Only {@link ColumnKernel} refers to this class, reflectively, once it has seen
+ * that the module is present. It is the one class compiled with the module, in a
+ * source set of its own, so the rest of the build stays free of incubator warnings.
+ */
+final class VectorLoops implements ColumnKernel.Loops {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public void apply(Operator operator, int[] lhs, int[] rhs, int[] out, int size) {
+        int bound = operator == Operator.DIVIDE ? 0 : SPECIES.loopBound(size);
+        switch (operator) {
+            case ADD -> arithmetic(VectorOperators.ADD, lhs, rhs, out, bound);
+            case SUBTRACT -> arithmetic(VectorOperators.SUB, lhs, rhs, out, bound);
+            case MULTIPLY -> arithmetic(VectorOperators.MUL, lhs, rhs, out, bound);
+            case DIVIDE -> {
+            }
+            case LESS_THAN -> comparison(VectorOperators.LT, lhs, rhs, out, bound);
+            case LESS_OR_EQUAL -> comparison(VectorOperators.LE, lhs, rhs, out, bound);
+            case GREATER_THAN -> comparison(VectorOperators.GT, lhs, rhs, out, bound);
+            case GREATER_OR_EQUAL -> comparison(VectorOperators.GE, lhs, rhs, out, bound);
+            case EQUAL_EQUAL -> comparison(VectorOperators.EQ, lhs, rhs, out, bound);
+            case NOT_EQUAL -> comparison(VectorOperators.NE, lhs, rhs, out, bound);
+        }
+        ColumnKernel.scalar(operator, lhs, rhs, out, bound, size);
+    }
+
+    private static void arithmetic(VectorOperators.Binary operator, int[] lhs, int[] rhs, int[] out, int bound) {
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            var a = IntVector.fromArray(SPECIES, lhs, i);
+            var b = IntVector.fromArray(SPECIES, rhs, i);
+            a.lanewise(operator, b).intoArray(out, i);
+        }
+    }
+
+    // true lanes become 1 and false ones 0, as in the scalar loops
+    private static void comparison(VectorOperators.Comparison operator, int[] lhs, int[] rhs, int[] out, int bound) {
+        var zero = IntVector.zero(SPECIES);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            var a = IntVector.fromArray(SPECIES, lhs, i);
+            var b = IntVector.fromArray(SPECIES, rhs, i);
+            zero.blend(1, a.compare(operator, b)).intoArray(out, i);
+        }
+    }
+}